@@ -0,0 +1,252 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * A simple, thread safe, size bounded cache where entries expire a fixed
+ * time after they were loaded.  When the cache is full the least recently
+ * accessed entry is evicted.
+ *
+ * Values are loaded outside of the cache lock, therefore concurrent misses
+ * for the same key may result in the loader being called more than once.
+ * A load which was started before an invalidation is returned to its
+ * caller but not cached, so stale values cannot reappear once invalidated.
+ * Hit, miss and eviction counts are maintained for monitoring purposes.
+ *
+ * @param <K> key type, must have sensible equals/hashcode implementations
+ * @param <V> value type
+ */
+public class ExpiringCache<K, V> {
+
+    private static class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * Incremented (whilst holding the lock on <code>entries</code>) by every invalidation
+     */
+    private long generation = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+
+    public ExpiringCache(int maxSize,
+                         long ttl,
+                         TimeUnit ttlUnit) {
+        this(maxSize, ttl, ttlUnit, System::currentTimeMillis);
+    }
+
+
+    public ExpiringCache(int maxSize,
+                         long ttl,
+                         TimeUnit ttlUnit,
+                         LongSupplier clock) {
+        checkTrue(maxSize > 0, "maxSize must be greater than zero");
+        checkTrue(ttl > 0, "ttl must be greater than zero");
+        checkNotNull(ttlUnit, "ttlUnit cannot be null");
+        checkNotNull(clock, "clock cannot be null");
+
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlUnit.toMillis(ttl);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > ExpiringCache.this.maxSize;
+                if (evict) {
+                    evictionCount.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the cached value for the key, or if absent/expired, calls the
+     * loader and caches the result.  Null values are not cached.
+     *
+     * @param key  lookup key
+     * @param loader  function used to compute the value on a miss
+     * @return  the (possibly newly loaded) value
+     */
+    public V get(K key, Function<K, V> loader) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(loader, "loader cannot be null");
+
+        long generationAtMiss;
+        synchronized (entries) {
+            Optional<V> cached = getIfPresent(key);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            generationAtMiss = generation;
+        }
+
+        V value = loader.apply(key);
+        if (value != null) {
+            synchronized (entries) {
+                // skip caching if invalidated whilst loading, the value may be stale
+                if (generation == generationAtMiss) {
+                    entries.put(key, new Entry<>(value, clock.getAsLong()));
+                }
+            }
+        }
+        return value;
+    }
+
+
+    public Optional<V> getIfPresent(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && ! isExpired(entry)) {
+                hitCount.incrementAndGet();
+                return Optional.of(entry.value);
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            missCount.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+
+    public void put(K key, V value) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(value, "value cannot be null");
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, clock.getAsLong()));
+        }
+    }
+
+
+    /**
+     * Adds the value unless an unexpired entry already exists for the key.
+     * Does not affect the hit/miss counts.
+     *
+     * @return true if the value was added
+     */
+    public boolean putIfAbsent(K key, V value) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(value, "value cannot be null");
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && ! isExpired(entry)) {
+                return false;
+            }
+            entries.put(key, new Entry<>(value, clock.getAsLong()));
+            return true;
+        }
+    }
+
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(key);
+        }
+    }
+
+
+    /**
+     * Removes all entries whose key satisfies the given predicate
+     * @param keyPredicate  test to determine if an entry should be removed
+     * @return  number of entries removed
+     */
+    public int invalidateIf(Predicate<K> keyPredicate) {
+        checkNotNull(keyPredicate, "keyPredicate cannot be null");
+        int removed = 0;
+        synchronized (entries) {
+            generation++;
+            Iterator<K> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keyPredicate.test(keys.next())) {
+                    keys.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+
+    private boolean isExpired(Entry<V> entry) {
+        return clock.getAsLong() - entry.loadedAt >= ttlMillis;
+    }
+
+}
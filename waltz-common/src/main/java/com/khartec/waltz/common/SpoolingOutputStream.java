@@ -0,0 +1,157 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Output stream which holds everything written to it so it can be copied
+ * elsewhere later, e.g. so a database cursor can be read to the end, and
+ * closed, before a response is sent to a (possibly slow) client.
+ *
+ * Bytes are held in memory until <code>memoryThreshold</code> is exceeded,
+ * thereafter everything is spooled to a temporary file.  Once finished with
+ * <code>dispose</code> must be called to remove any temporary file.
+ *
+ * Not thread safe.
+ */
+public class SpoolingOutputStream extends OutputStream {
+
+    private final int memoryThreshold;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private File file = null;
+    private OutputStream current = memory;
+    private long size = 0;
+    private boolean closed = false;
+
+
+    public SpoolingOutputStream(int memoryThreshold) {
+        checkTrue(memoryThreshold >= 0, "memoryThreshold cannot be negative");
+        this.memoryThreshold = memoryThreshold;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        current.write(b);
+        size++;
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(len);
+        current.write(b, off, len);
+        size += len;
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        current.flush();
+    }
+
+
+    /**
+     * Finishes writing, the content remains available to <code>writeTo</code>.
+     */
+    @Override
+    public void close() throws IOException {
+        if (! closed) {
+            closed = true;
+            current.close();
+        }
+    }
+
+
+    /**
+     * Closes this stream (if it has not already been) and copies everything
+     * written to it to the given output stream, which is left open.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        checkNotNull(out, "out cannot be null");
+        close();
+        if (file == null) {
+            memory.writeTo(out);
+        } else {
+            try (InputStream in = new FileInputStream(file)) {
+                IOUtilities.copyStream(in, out);
+            }
+        }
+    }
+
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long size() {
+        return size;
+    }
+
+
+    public boolean isSpooledToFile() {
+        return file != null;
+    }
+
+
+    /**
+     * Releases the content, deleting the temporary file if one was created.
+     */
+    public void dispose() {
+        try {
+            close();
+        } catch (IOException e) {
+            // nothing more can be written so nothing is lost, the file is removed below
+        }
+        memory = null;
+        if (file != null && ! file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    private void ensureCapacity(int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+        if (file == null && size + len > memoryThreshold) {
+            file = File.createTempFile("waltz-spool", ".tmp");
+            OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file));
+            memory.writeTo(fileOut);
+            memory = new ByteArrayOutputStream(0);
+            current = fileOut;
+        }
+    }
+
+}
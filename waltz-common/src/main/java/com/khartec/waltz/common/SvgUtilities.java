@@ -26,6 +26,12 @@ import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -33,35 +39,55 @@ import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.XmlUtilities.*;
 
 public class SvgUtilities {
 
-    public static String convertVisioSvg(String key, String svgStr) throws ParserConfigurationException, SAXException, IOException, XPathExpressionException, TransformerException {
-        DocumentBuilder builder = createNonValidatingDocumentBuilderFactory().newDocumentBuilder();
-        InputSource svgSource = new InputSource(new ByteArrayInputStream(svgStr.getBytes()));
-        Document svg = builder.parse(svgSource);
+    private static final Pattern VISIO_VALUE_PATTERN = Pattern.compile("^.*\\((.*)\\)$");
 
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        NodeList nodes = (NodeList) xpath.evaluate("//*", svg, XPathConstants.NODESET);
+    private static final XMLInputFactory INPUT_FACTORY = mkInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
 
-        stream(nodes)
-                .forEach(n -> stream(n.getChildNodes())
-                        .filter(c -> c.getNodeName().contains("custProps"))
-                        .forEach(c -> stream(c.getChildNodes())
-                                .filter(cp -> cp.getNodeName().contains("cp"))
-                                .map(cp -> (Element) cp)
-                                .filter(cp -> key.equals(cp.getAttribute("v:lbl")))
-                                .map(cp -> cp.getAttribute("v:val"))
-                                .map(v -> v.replaceAll("^.*\\((.*)\\)$", "$1"))
-                                .forEach(v -> ((Element) n).setAttribute("data-"+key, v))
-                        )
-                );
 
-        return printDocument(svg, false); // do NOT toPrettyString print visio
+    /**
+     * Visio stores shape data as custom properties, e.g.
+     *
+     * <pre>
+     *     &lt;g&gt;
+     *         &lt;v:custProps&gt;
+     *             &lt;v:cp v:lbl="appId" v:val="VT4(1234)"/&gt;
+     *         &lt;/v:custProps&gt;
+     *         ...
+     * </pre>
+     *
+     * This copies the value of the property labelled with the given key onto
+     * the owning element as a data attribute (<code>&lt;g data-appId="1234"&gt;</code>).
+     *
+     * The document is streamed (StAX) twice rather than being parsed into a
+     * DOM.  The first pass finds the values (as the owning element is written
+     * before its properties are seen), the second copies the document adding
+     * the attributes.  The doctype, if any, is dropped.
+     *
+     * @param key  label of the custom property to copy
+     * @param svgStr  visio svg
+     * @return  converted svg
+     */
+    public static String convertVisioSvg(String key, String svgStr) throws XMLStreamException {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(svgStr, "svgStr cannot be null");
+
+        Map<Integer, String> valuesByElementIndex = findVisioPropertyValues(key, svgStr);
+        return copyWithDataAttributes(svgStr, "data-" + key, valuesByElementIndex);
     }
 
 
@@ -97,4 +123,195 @@ public class SvgUtilities {
         return printDocument(svg, false);
     }
 
+
+    // -- HELPERS ---
+
+    /**
+     * @return  property values keyed by the (document order) index of the
+     *   element which owns them, i.e. the grandparent of the <code>cp</code> element
+     */
+    private static Map<Integer, String> findVisioPropertyValues(String key,
+                                                                String svgStr) throws XMLStreamException {
+        Map<Integer, String> valuesByElementIndex = new HashMap<>();
+
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(svgStr));
+        try {
+            int elementIndex = -1;
+            int depth = 0;
+            int[] indexStack = new int[32];
+            String[] nameStack = new String[32];
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    elementIndex++;
+                    String name = reader.getLocalName();
+
+                    if (depth >= 2
+                            && name.contains("cp")
+                            && nameStack[depth - 1].contains("custProps")
+                            && key.equals(getAttribute(reader, "v:lbl"))) {
+                        String value = VISIO_VALUE_PATTERN
+                                .matcher(getAttribute(reader, "v:val"))
+                                .replaceAll("$1");
+                        valuesByElementIndex.put(indexStack[depth - 2], value);
+                    }
+
+                    if (depth == indexStack.length) {
+                        indexStack = Arrays.copyOf(indexStack, depth * 2);
+                        nameStack = Arrays.copyOf(nameStack, depth * 2);
+                    }
+                    indexStack[depth] = elementIndex;
+                    nameStack[depth] = name;
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return valuesByElementIndex;
+    }
+
+
+    private static String copyWithDataAttributes(String svgStr,
+                                                 String attributeName,
+                                                 Map<Integer, String> valuesByElementIndex) throws XMLStreamException {
+        StringWriter out = new StringWriter(svgStr.length() + valuesByElementIndex.size() * 32 + 64);
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out);
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(svgStr));
+
+        try {
+            int elementIndex = -1;
+            int event = reader.getEventType();
+
+            while (true) {
+                switch (event) {
+                    case XMLStreamConstants.START_DOCUMENT:
+                        writer.writeStartDocument("UTF-8", "1.0");
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                        elementIndex++;
+                        event = copyStartElement(
+                                reader,
+                                writer,
+                                attributeName,
+                                valuesByElementIndex.get(elementIndex));
+                        continue; // the event following the start element has already been read
+                    case XMLStreamConstants.END_ELEMENT:
+                        writer.writeEndElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        writer.writeCData(reader.getText());
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        writer.writeComment(reader.getText());
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        writer.writeProcessingInstruction(reader.getPITarget(), StringUtilities.mkSafe(reader.getPIData()));
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        writer.writeEndDocument();
+                        writer.flush();
+                        return out.toString();
+                    default:
+                        // doctype etc. are not copied
+                }
+                event = reader.next();
+            }
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Copies the current start element (adding/replacing the data attribute
+     * if a value is given).  Elements with no content are written as empty
+     * elements.
+     *
+     * @return  the next, unprocessed, event
+     */
+    private static int copyStartElement(XMLStreamReader reader,
+                                        XMLStreamWriter writer,
+                                        String attributeName,
+                                        String attributeValue) throws XMLStreamException {
+        String name = reader.getLocalName();
+        int attributeCount = reader.getAttributeCount();
+        String[] names = new String[attributeCount];
+        String[] values = new String[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            names[i] = getAttributeName(reader, i);
+            values[i] = reader.getAttributeValue(i);
+        }
+
+        int next = reader.next();
+        boolean isEmpty = next == XMLStreamConstants.END_ELEMENT;
+
+        if (isEmpty) {
+            writer.writeEmptyElement(name);
+        } else {
+            writer.writeStartElement(name);
+        }
+
+        boolean attributeWritten = false;
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeValue != null && names[i].equals(attributeName)) {
+                writer.writeAttribute(attributeName, attributeValue);
+                attributeWritten = true;
+            } else {
+                writer.writeAttribute(names[i], values[i]);
+            }
+        }
+
+        if (attributeValue != null && ! attributeWritten) {
+            writer.writeAttribute(attributeName, attributeValue);
+        }
+
+        return isEmpty
+                ? reader.next()
+                : next;
+    }
+
+
+    /**
+     * @return  attribute value, or an empty string if the element does not have the attribute
+     */
+    private static String getAttribute(XMLStreamReader reader, String qualifiedName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (qualifiedName.equals(getAttributeName(reader, i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return "";
+    }
+
+
+    private static String getAttributeName(XMLStreamReader reader, int idx) {
+        String prefix = reader.getAttributePrefix(idx);
+        return StringUtilities.isEmpty(prefix)
+                ? reader.getAttributeLocalName(idx)
+                : prefix + ":" + reader.getAttributeLocalName(idx);
+    }
+
+
+    /**
+     * Namespace processing is disabled (as with the dom based utilities) so
+     * prefixed names, e.g. <code>v:cp</code>, are treated literally.
+     */
+    private static XMLInputFactory mkInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
 }
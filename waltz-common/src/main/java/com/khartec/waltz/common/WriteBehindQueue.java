@@ -0,0 +1,404 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static com.khartec.waltz.common.Checks.checkNotEmpty;
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Bounded, in-memory queue of items which are written, in batches, by a
+ * single background thread.
+ *
+ * Producers never block or take a lock: items are added to a lock-free
+ * queue with the bound enforced by an atomic counter.  The writer wakes
+ * once <code>batchSize</code> items are waiting, or every
+ * <code>flushMillis</code>, and passes the waiting items to the sink.
+ *
+ * Failed batches are retried (<code>maxAttempts</code> in total) as the
+ * whole batch, so an item may be written more than once.  If all attempts
+ * fail the items are put back on the queue, to be tried again in a later
+ * flush, up to <code>maxRequeues</code> times.  Only then (or if the final
+ * flush on shutdown fails) are items dropped, each is logged at error level
+ * (a dead letter log) and counted.
+ *
+ * If the queue is full, or is not running, <code>offer</code> returns
+ * false and the caller decides what to do with the item.  Shutdown waits
+ * for the writer, and for any <code>offer</code> calls still in progress,
+ * to finish and then writes anything remaining (including batches the
+ * writer put back after failing) on the calling thread.  If the writer
+ * does not stop in time it is interrupted, and if it still has not
+ * stopped the final flush is skipped, so the sink is never called
+ * concurrently, and the remaining depth is logged.
+ *
+ * @param <T> type of the queued items
+ */
+public class WriteBehindQueue<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindQueue.class);
+    private static final int DEFAULT_MAX_REQUEUES = 5;
+
+    private final String name;
+    private final Consumer<List<T>> sink;
+    private final Queue<Pending<T>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger offersInProgress = new AtomicInteger();
+    private final int capacity;
+    private final int batchSize;
+    private final long flushMillis;
+    private final int maxAttempts;
+    private final int maxRequeues;
+    private final Thread writer;
+
+    private volatile boolean running = false;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong requeuedCount = new AtomicLong();
+    private final AtomicLong failedAttemptCount = new AtomicLong();
+    private volatile long lastFlushMillis = 0;
+    private volatile long maxFlushMillis = 0;
+
+
+    public WriteBehindQueue(String name,
+                            Consumer<List<T>> sink,
+                            int capacity,
+                            int batchSize,
+                            long flushMillis,
+                            int maxAttempts) {
+        this(name, sink, capacity, batchSize, flushMillis, maxAttempts, DEFAULT_MAX_REQUEUES);
+    }
+
+
+    /**
+     * @param name  used to name the writer thread and in log messages
+     * @param sink  writes a batch of items, throwing an exception if it fails
+     * @param capacity  maximum number of waiting items
+     * @param batchSize  maximum number of items passed to the sink at once
+     * @param flushMillis  maximum time an item waits before being written
+     * @param maxAttempts  number of times a failing batch is tried before it is put back on the queue
+     * @param maxRequeues  number of times an item is put back on the queue before it is dropped
+     */
+    public WriteBehindQueue(String name,
+                            Consumer<List<T>> sink,
+                            int capacity,
+                            int batchSize,
+                            long flushMillis,
+                            int maxAttempts,
+                            int maxRequeues) {
+        checkNotEmpty(name, "name cannot be empty");
+        checkNotNull(sink, "sink cannot be null");
+        checkTrue(capacity > 0, "capacity must be positive");
+        checkTrue(batchSize > 0, "batchSize must be positive");
+        checkTrue(flushMillis > 0, "flushMillis must be positive");
+        checkTrue(maxAttempts > 0, "maxAttempts must be positive");
+        checkTrue(maxRequeues >= 0, "maxRequeues cannot be negative");
+
+        this.name = name;
+        this.sink = sink;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.maxAttempts = maxAttempts;
+        this.maxRequeues = maxRequeues;
+        this.writer = new Thread(this::runWriter, name + "Writer");
+        this.writer.setDaemon(true);
+    }
+
+
+    public synchronized void start() {
+        if (! running) {
+            running = true;
+            writer.start();
+        }
+    }
+
+
+    /**
+     * @return true if the item has been queued, false if the queue is full or not running
+     */
+    public boolean offer(T item) {
+        checkNotNull(item, "item cannot be null");
+
+        // registered before checking running, so shutdown can wait for us to finish enqueuing
+        offersInProgress.incrementAndGet();
+        try {
+            if (! running) {
+                return false;
+            }
+
+            int current;
+            do {
+                current = size.get();
+                if (current >= capacity) {
+                    overflowCount.incrementAndGet();
+                    return false;
+                }
+            } while (! size.compareAndSet(current, current + 1));
+
+            queue.offer(new Pending<>(item, 0));
+
+            if (current + 1 == batchSize) {
+                LockSupport.unpark(writer);
+            }
+            return true;
+        } finally {
+            offersInProgress.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return the items which could not be queued
+     */
+    public List<T> offerAll(Collection<T> items) {
+        List<T> rejected = new ArrayList<>();
+        for (T item : items) {
+            if (! offer(item)) {
+                rejected.add(item);
+            }
+        }
+        return rejected;
+    }
+
+
+    /**
+     * Writes everything currently queued on the calling thread.  Batches
+     * which still fail are dropped rather than put back on the queue.
+     *
+     * @return number of items written
+     */
+    public int flush() {
+        int total = 0;
+        List<Pending<T>> batch = drain();
+        while (! batch.isEmpty()) {
+            total += writeBatch(batch, false);
+            batch = drain();
+        }
+        return total;
+    }
+
+
+    /**
+     * Stops accepting items, waits (up to <code>timeoutMillis</code>, zero
+     * meaning forever) for the writer to finish and then flushes the remainder.
+     * A writer still running after the timeout is interrupted and given the
+     * same time again, if it has still not finished nothing is flushed.
+     */
+    public void shutdown(long timeoutMillis) {
+        synchronized (this) {
+            if (! running) {
+                return;
+            }
+            running = false;
+        }
+        LockSupport.unpark(writer);
+        join(timeoutMillis);
+        if (writer.isAlive()) {
+            LOG.warn("{} writer did not stop within {}ms, interrupting", name, timeoutMillis);
+            writer.interrupt();
+            join(timeoutMillis);
+        }
+        if (writer.isAlive()) {
+            // flushing now would call the sink concurrently with the writer
+            LOG.error("{} writer did not stop, skipping final flush, {} items remain", name, getQueueDepth());
+            return;
+        }
+        while (offersInProgress.get() > 0) {
+            // an offer which saw us running may still be enqueuing its item
+            Thread.yield();
+        }
+        int remaining = flush();
+        LOG.info("{} writer stopped, flushed {} remaining items", name, remaining);
+    }
+
+
+    public int getQueueDepth() {
+        return size.get();
+    }
+
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+
+    public long getRequeuedCount() {
+        return requeuedCount.get();
+    }
+
+
+    public long getFailedAttemptCount() {
+        return failedAttemptCount.get();
+    }
+
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+
+    // -- HELPERS ---
+
+    private void runWriter() {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        while (running) {
+            try {
+                if (size.get() < batchSize) {
+                    // woken early by offer once a full batch is waiting, or by shutdown
+                    LockSupport.parkNanos(this, flushNanos);
+                }
+                List<Pending<T>> batch = drain();
+                if (! batch.isEmpty()) {
+                    writeBatch(batch, true);
+                }
+            } catch (Exception e) {
+                LOG.error("Unexpected error in " + name + " writer", e);
+            }
+        }
+    }
+
+
+    private List<Pending<T>> drain() {
+        List<Pending<T>> batch = new ArrayList<>(Math.min(batchSize, size.get()));
+        Pending<T> pending;
+        while (batch.size() < batchSize && (pending = queue.poll()) != null) {
+            batch.add(pending);
+            size.decrementAndGet();
+        }
+        return batch;
+    }
+
+
+    private int writeBatch(List<Pending<T>> batch, boolean allowRequeue) {
+        List<T> items = new ArrayList<>(batch.size());
+        batch.forEach(p -> items.add(p.item));
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            long start = System.currentTimeMillis();
+            try {
+                sink.accept(items);
+                long duration = System.currentTimeMillis() - start;
+                lastFlushMillis = duration;
+                maxFlushMillis = Math.max(maxFlushMillis, duration);
+                flushCount.incrementAndGet();
+                writtenCount.addAndGet(batch.size());
+                return batch.size();
+            } catch (Exception e) {
+                failedAttemptCount.incrementAndGet();
+                LOG.warn("{}: failed to write batch of {} items (attempt {} of {}): {}",
+                        name,
+                        batch.size(),
+                        attempt,
+                        maxAttempts,
+                        e.getMessage());
+                if (attempt < maxAttempts) {
+                    pause(attempt * flushMillis);
+                }
+                if (allowRequeue && Thread.currentThread().isInterrupted()) {
+                    // interrupted by shutdown, leave the remaining attempts to the final flush
+                    break;
+                }
+            }
+        }
+
+        for (Pending<T> pending : batch) {
+            if (allowRequeue && pending.requeues < maxRequeues) {
+                // may briefly exceed capacity, these items were already accepted,
+                // if we are shutting down the final flush will write them
+                size.incrementAndGet();
+                queue.offer(new Pending<>(pending.item, pending.requeues + 1));
+                requeuedCount.incrementAndGet();
+            } else {
+                droppedCount.incrementAndGet();
+                LOG.error("{}: dropped item: {}", name, pending.item);
+            }
+        }
+        return 0;
+    }
+
+
+    private static class Pending<T> {
+
+        private final T item;
+        private final int requeues;
+
+        private Pending(T item, int requeues) {
+            this.item = item;
+            this.requeues = requeues;
+        }
+    }
+
+
+    private void join(long timeoutMillis) {
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
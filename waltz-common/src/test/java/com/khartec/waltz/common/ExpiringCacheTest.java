@@ -0,0 +1,134 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.common;
+
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class ExpiringCacheTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+
+    @Test
+    public void loaderOnlyCalledOnMiss() {
+        ExpiringCache<String, Integer> cache = mkCache(10, 1000);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(3, (int) cache.get("bob", k -> calls.incrementAndGet() + 2));
+        assertEquals(3, (int) cache.get("bob", k -> calls.incrementAndGet() + 2));
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+
+    @Test
+    public void entriesExpireAfterTtl() {
+        ExpiringCache<String, Integer> cache = mkCache(10, 1000);
+        cache.put("bob", 1);
+
+        now.set(999);
+        assertEquals(Optional.of(1), cache.getIfPresent("bob"));
+
+        now.set(1000);
+        assertEquals(Optional.empty(), cache.getIfPresent("bob"));
+        assertEquals(0, cache.size());
+    }
+
+
+    @Test
+    public void leastRecentlyUsedEntryEvictedWhenFull() {
+        ExpiringCache<String, Integer> cache = mkCache(2, 1000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.getIfPresent("a");
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(Optional.of(1), cache.getIfPresent("a"));
+        assertEquals(Optional.empty(), cache.getIfPresent("b"));
+    }
+
+
+    @Test
+    public void canInvalidateByPredicate() {
+        ExpiringCache<String, Integer> cache = mkCache(10, 1000);
+        cache.put("apple", 1);
+        cache.put("avocado", 2);
+        cache.put("banana", 3);
+
+        assertEquals(2, cache.invalidateIf(k -> k.startsWith("a")));
+        assertEquals(1, cache.size());
+        assertEquals(Optional.of(3), cache.getIfPresent("banana"));
+    }
+
+
+    @Test
+    public void nullValuesAreNotCached() {
+        ExpiringCache<String, Integer> cache = mkCache(10, 1000);
+        cache.get("bob", k -> null);
+        assertEquals(0, cache.size());
+    }
+
+
+    @Test
+    public void putIfAbsentOnlyReplacesExpiredEntries() {
+        ExpiringCache<String, Integer> cache = mkCache(10, 1000);
+
+        assertEquals(true, cache.putIfAbsent("bob", 1));
+        assertEquals(false, cache.putIfAbsent("bob", 2));
+
+        now.set(1000);
+        assertEquals(true, cache.putIfAbsent("bob", 3));
+        assertEquals(Optional.of(3), cache.getIfPresent("bob"));
+        assertEquals(0, cache.getMissCount());
+    }
+
+
+    @Test
+    public void loadsStartedBeforeAnInvalidationAreNotCached() {
+        ExpiringCache<String, Integer> cache = mkCache(10, 1000);
+
+        Integer loaded = cache.get("bob", k -> {
+            // e.g. roles updated (and invalidated) whilst the old ones were being read
+            cache.invalidate("bob");
+            return 1;
+        });
+
+        assertEquals(1, (int) loaded);
+        assertEquals(Optional.empty(), cache.getIfPresent("bob"));
+        assertEquals(2, (int) cache.get("bob", k -> 2));
+        assertEquals(Optional.of(2), cache.getIfPresent("bob"));
+    }
+
+
+    private ExpiringCache<String, Integer> mkCache(int maxSize, long ttlMillis) {
+        return new ExpiringCache<>(maxSize, ttlMillis, TimeUnit.MILLISECONDS, now::get);
+    }
+
+}
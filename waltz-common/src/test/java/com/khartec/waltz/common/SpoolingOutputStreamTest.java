@@ -0,0 +1,84 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class SpoolingOutputStreamTest {
+
+    @Test
+    public void smallContentIsHeldInMemory() throws IOException {
+        SpoolingOutputStream spool = new SpoolingOutputStream(100);
+        try {
+            spool.write("hello".getBytes(UTF_8));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            spool.writeTo(out);
+
+            assertEquals("hello", out.toString("UTF-8"));
+            assertEquals(5, spool.size());
+            assertFalse(spool.isSpooledToFile());
+        } finally {
+            spool.dispose();
+        }
+    }
+
+
+    @Test
+    public void largeContentIsSpooledToFile() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        SpoolingOutputStream spool = new SpoolingOutputStream(100);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                byte[] chunk = ("line " + i + "\n").getBytes(UTF_8);
+                spool.write(chunk);
+                spool.write('.');
+                expected.append("line ").append(i).append("\n.");
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            spool.writeTo(out);
+
+            assertTrue(spool.isSpooledToFile());
+            assertEquals(expected.length(), spool.size());
+            assertEquals(expected.toString(), out.toString("UTF-8"));
+        } finally {
+            spool.dispose();
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void cannotWriteOnceClosed() throws IOException {
+        SpoolingOutputStream spool = new SpoolingOutputStream(100);
+        try {
+            spool.close();
+            spool.write(1);
+        } finally {
+            spool.dispose();
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.common;
+
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+
+import static org.junit.Assert.*;
+
+public class SvgUtilitiesTest {
+
+    private static final String VISIO_SVG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n" +
+            "<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n" +
+            "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:v=\"http://schemas.microsoft.com/visio/2003/SVGExtensions/\">" +
+            "<g id=\"shape1\"><v:custProps><v:cp v:lbl=\"other\" v:val=\"VT4(9)\"/><v:cp v:lbl=\"appId\" v:val=\"VT4(12)\"/></v:custProps><text>A &amp; B</text></g>" +
+            "<g id=\"shape2\" data-appId=\"old\"><v:custProps><v:cp v:lbl=\"appId\" v:val=\"34\"/></v:custProps></g>" +
+            "<g id=\"shape3\"><rect width=\"10\"/><!-- no props --></g>" +
+            "</svg>";
+
+
+    @Test
+    public void visioPropertiesAreCopiedToOwningElement() throws XMLStreamException {
+        String converted = SvgUtilities.convertVisioSvg("appId", VISIO_SVG);
+
+        assertTrue(converted.contains("<g id=\"shape1\" data-appId=\"12\">"));
+        assertFalse(converted.contains("data-appId=\"9\""));
+    }
+
+
+    @Test
+    public void valuesWithoutParenthesesAreCopiedAsIsAndReplaceExistingAttributes() throws XMLStreamException {
+        String converted = SvgUtilities.convertVisioSvg("appId", VISIO_SVG);
+
+        assertTrue(converted.contains("<g id=\"shape2\" data-appId=\"34\">"));
+        assertFalse(converted.contains("old"));
+    }
+
+
+    @Test
+    public void restOfDocumentIsPreserved() throws XMLStreamException {
+        String converted = SvgUtilities.convertVisioSvg("appId", VISIO_SVG);
+
+        assertTrue(converted.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+        assertTrue(converted.contains("<g id=\"shape3\"><rect width=\"10\"/><!-- no props --></g>"));
+        assertTrue(converted.contains("<text>A &amp; B</text>"));
+        assertTrue(converted.contains("<v:cp v:lbl=\"other\" v:val=\"VT4(9)\"/>"));
+        assertTrue(converted.contains("xmlns:v=\"http://schemas.microsoft.com/visio/2003/SVGExtensions/\""));
+        assertFalse(converted.contains("DOCTYPE"));
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindQueueTest {
+
+    @Test
+    public void itemsAreOnlyAcceptedWhileRunning() {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(
+                "Test", b -> {}, 100, 2, 10, 1);
+
+        assertFalse("rejected until started", queue.offer("item0"));
+        queue.start();
+        assertTrue(queue.offer("item1"));
+        queue.shutdown(10_000);
+        assertFalse("rejected once shut down", queue.offer("item2"));
+        assertEquals(1, queue.getWrittenCount());
+    }
+
+
+    @Test
+    public void itemsAreWrittenInBatchesAndFlushedOnShutdown() {
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(
+                "Test", batches::add, 100, 2, 50, 1);
+        queue.start();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.offer("item " + i));
+        }
+        queue.shutdown(10_000);
+
+        assertEquals(5, batches.stream().mapToInt(List::size).sum());
+        assertTrue(batches.stream().allMatch(b -> b.size() <= 2));
+        assertEquals(5, queue.getWrittenCount());
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+
+    @Test
+    public void fullQueueRejectsItems() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(
+                "Test",
+                b -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                },
+                2,
+                1,
+                50,
+                1);
+        queue.start();
+
+        // the writer holds at most one item (batch size) while blocked in the sink
+        List<String> rejected = queue.offerAll(Collections.nCopies(10, "item1"));
+        assertTrue(rejected.size() == 7 || rejected.size() == 8);
+        assertEquals(rejected.size(), queue.getOverflowCount());
+
+        release.countDown();
+        queue.shutdown(10_000);
+        assertEquals(10 - rejected.size(), queue.getWrittenCount());
+    }
+
+
+    @Test
+    public void failedBatchesAreRetriedThenDropped() {
+        AtomicInteger attempts = new AtomicInteger();
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(
+                "Test",
+                b -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("expected failure");
+                },
+                10,
+                10,
+                1,
+                3,
+                0);
+
+        queue.start();
+        queue.offer("item1");
+        queue.shutdown(10_000);
+
+        assertEquals(3, attempts.get());
+        assertEquals(3, queue.getFailedAttemptCount());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, queue.getWrittenCount());
+    }
+
+
+    @Test
+    public void failedBatchesAreRequeuedAndWrittenLater() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(
+                "Test",
+                b -> {
+                    if (attempts.incrementAndGet() <= 2) {
+                        throw new IllegalStateException("expected failure");
+                    }
+                    written.addAll(b);
+                },
+                10,
+                10,
+                1,
+                1,
+                5);
+
+        queue.start();
+        queue.offer("item1");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (written.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        queue.shutdown(10_000);
+
+        assertEquals(Collections.singletonList("item1"), written);
+        assertEquals(2, queue.getRequeuedCount());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+
+    @Test
+    public void batchFailingDuringShutdownIsWrittenByTheFinalFlush() throws InterruptedException {
+        CountDownLatch inSink = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(
+                "Test",
+                b -> {
+                    if (attempts.incrementAndGet() == 1) {
+                        inSink.countDown();
+                        try {
+                            // stuck until shutdown interrupts the writer
+                            new CountDownLatch(1).await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("expected failure", e);
+                        }
+                    }
+                    written.addAll(b);
+                },
+                10,
+                10,
+                10,
+                3,
+                5);
+
+        queue.start();
+        queue.offer("item1");
+        inSink.await();
+        queue.shutdown(100);
+
+        assertEquals("remaining attempts are left to the final flush", 2, attempts.get());
+        assertEquals(Collections.singletonList("item1"), written);
+        assertEquals(1, queue.getRequeuedCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+
+    @Test
+    public void offersRacingShutdownAreEitherWrittenOrRejected() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            AtomicInteger writtenCount = new AtomicInteger();
+            WriteBehindQueue<Integer> queue = new WriteBehindQueue<>(
+                    "Test", b -> writtenCount.addAndGet(b.size()), 100_000, 50, 1, 1);
+            queue.start();
+
+            AtomicInteger accepted = new AtomicInteger();
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (queue.offer(i)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            producer.start();
+            queue.shutdown(10_000);
+            producer.join();
+
+            assertEquals(accepted.get(), writtenCount.get());
+            assertEquals(0, queue.getQueueDepth());
+        }
+    }
+
+}
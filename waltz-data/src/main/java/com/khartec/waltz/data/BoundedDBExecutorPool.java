@@ -0,0 +1,236 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Executor for running database work concurrently on behalf of a request.
+ *
+ * The number of tasks which may run at once is bounded, the limit should be
+ * sized relative to the connection pool, so that fan-outs cannot starve
+ * ordinary request threads of connections.  The time tasks spend waiting to
+ * start is recorded.
+ *
+ * When running on a JDK which supports virtual threads, each task is given
+ * its own virtual thread and a semaphore enforces the limit (as the virtual
+ * thread executor itself is unbounded).  Otherwise a fixed pool of daemon
+ * platform threads, sized to the limit, is used and the pool alone bounds
+ * concurrency.
+ *
+ * Tasks submitted from within a task (i.e. nested fan-outs) are run inline on
+ * the submitting thread.  The outer task already holds a permit, and queueing
+ * the inner tasks behind it could otherwise deadlock the pool.
+ */
+public class BoundedDBExecutorPool implements DBExecutorPoolInterface {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedDBExecutorPool.class);
+
+    private final int maxConcurrency;
+    private final Duration defaultDeadline;
+    private final ExecutorService executor;
+    private final boolean usingVirtualThreads;
+
+    /**
+     * Only used with virtual threads, null when running on the fixed pool
+     */
+    private final Semaphore permits;
+
+    private final ThreadLocal<Boolean> inTask = ThreadLocal.withInitial(() -> false);
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder inlineCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+
+    public BoundedDBExecutorPool(int maxConcurrency, Duration defaultDeadline) {
+        checkTrue(maxConcurrency > 0, "maxConcurrency must be positive");
+        checkNotNull(defaultDeadline, "defaultDeadline cannot be null");
+
+        this.maxConcurrency = maxConcurrency;
+        this.defaultDeadline = defaultDeadline;
+
+        ExecutorService virtualExecutor = mkVirtualThreadExecutor();
+        this.usingVirtualThreads = virtualExecutor != null;
+        this.executor = usingVirtualThreads
+                ? virtualExecutor
+                : mkPlatformThreadExecutor(maxConcurrency);
+        this.permits = usingVirtualThreads
+                ? new Semaphore(maxConcurrency, true)
+                : null;
+
+        LOG.info(
+                "DB executor started with concurrency limit: {}, default deadline: {}, virtual threads: {}",
+                maxConcurrency,
+                defaultDeadline,
+                usingVirtualThreads);
+    }
+
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        checkNotNull(task, "task cannot be null");
+
+        if (inTask.get()) {
+            inlineCount.increment();
+            FutureTask<T> inline = new FutureTask<>(task);
+            inline.run();
+            return inline;
+        }
+
+        long enqueuedAt = System.nanoTime();
+        return executor.submit(() -> runBounded(task, enqueuedAt));
+    }
+
+
+    @Override
+    public Duration getDefaultDeadline() {
+        return defaultDeadline;
+    }
+
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+
+    public boolean isUsingVirtualThreads() {
+        return usingVirtualThreads;
+    }
+
+
+    /**
+     * @return number of tasks waiting to start, derived from the executor
+     *   (or limiter) so cancelled and rejected tasks are never counted
+     */
+    public int getQueueDepth() {
+        return permits == null
+                ? ((ThreadPoolExecutor) executor).getQueue().size()
+                : permits.getQueueLength();
+    }
+
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+
+    public long getInlineCount() {
+        return inlineCount.sum();
+    }
+
+
+    public double getMeanWaitMillis() {
+        long completed = completedCount.sum();
+        return completed == 0
+                ? 0
+                : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / completed) / 1000D;
+    }
+
+
+    public double getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()) / 1000D;
+    }
+
+
+    // -- HELPERS ---
+
+    private <T> T runBounded(Callable<T> task, long enqueuedAt) throws Exception {
+        if (permits != null) {
+            permits.acquire();
+        }
+
+        long waited = System.nanoTime() - enqueuedAt;
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        active.incrementAndGet();
+        inTask.set(true);
+        try {
+            return task.call();
+        } finally {
+            inTask.set(false);
+            active.decrementAndGet();
+            completedCount.increment();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+
+    /**
+     * Looks up <code>Executors.newVirtualThreadPerTaskExecutor</code> reflectively
+     * as it is only available from JDK 21 onwards.
+     *
+     * @return the executor, or null if virtual threads are not supported
+     */
+    private static ExecutorService mkVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+
+    private static ExecutorService mkPlatformThreadExecutor(int threadCount) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "DB Executor-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+}
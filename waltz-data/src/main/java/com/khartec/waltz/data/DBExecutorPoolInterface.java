@@ -19,10 +19,65 @@
 package com.khartec.waltz.data;
 
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static java.util.stream.Collectors.toList;
 
 public interface DBExecutorPoolInterface {
 
+    Duration DEFAULT_DEADLINE = Duration.ofSeconds(60);
+
+
     <T> Future<T> submit(Callable<T> task);
+
+
+    /**
+     * The deadline applied to fan-outs which do not specify their own.
+     */
+    default Duration getDefaultDeadline() {
+        return DEFAULT_DEADLINE;
+    }
+
+
+    /**
+     * Starts a structured fan-out, tasks are forked into the pool and then
+     * joined, subject to the default deadline.
+     */
+    default DBFanOut fanOut() {
+        return fanOut(getDefaultDeadline());
+    }
+
+
+    default DBFanOut fanOut(Duration deadline) {
+        return new DBFanOut(this, deadline);
+    }
+
+
+    /**
+     * Runs all tasks concurrently and returns their results in the same
+     * order as the given tasks.  If any task fails, or the default deadline
+     * passes, the outstanding tasks are cancelled and an exception is thrown.
+     */
+    default <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks) {
+        checkNotNull(tasks, "tasks cannot be null");
+
+        DBFanOut fanOut = fanOut();
+        List<Supplier<T>> results = tasks
+                .stream()
+                .map(fanOut::fork)
+                .collect(toList());
+
+        fanOut.join();
+
+        return results
+                .stream()
+                .map(Supplier::get)
+                .collect(toList());
+    }
 }
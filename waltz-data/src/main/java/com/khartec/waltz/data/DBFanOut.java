@@ -0,0 +1,187 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static com.khartec.waltz.common.Checks.checkFalse;
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * A structured 'fan-out then join' over a {@link DBExecutorPoolInterface}.
+ *
+ * Tasks are forked into the pool and the caller then blocks in {@link #join()}
+ * until either all tasks complete, one of them fails or the deadline passes.
+ * On failure, or timeout, all sibling tasks are cancelled (interrupting any
+ * which are running) and the failure is rethrown to the caller.  Results
+ * are read via the suppliers returned from {@link #fork(Callable)}, which
+ * are only valid once the fan-out has been successfully joined.
+ *
+ * Instances are single use and are not intended to be shared.
+ */
+public class DBFanOut {
+
+    private final DBExecutorPoolInterface pool;
+    private final Duration deadline;
+    private final long deadlineAtNanos;
+
+    private final Object lock = new Object();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private int outstanding = 0;
+    private Throwable failure = null;
+    private boolean joined = false;
+
+
+    DBFanOut(DBExecutorPoolInterface pool, Duration deadline) {
+        checkNotNull(pool, "pool cannot be null");
+        checkNotNull(deadline, "deadline cannot be null");
+        checkFalse(deadline.isNegative(), "deadline cannot be negative");
+
+        this.pool = pool;
+        this.deadline = deadline;
+        this.deadlineAtNanos = System.nanoTime() + deadline.toNanos();
+    }
+
+
+    public <T> Supplier<T> fork(Callable<T> task) {
+        checkNotNull(task, "task cannot be null");
+
+        synchronized (lock) {
+            checkFalse(joined, "Cannot fork new tasks once the fan-out has been joined");
+            outstanding++;
+        }
+
+        Future<T> future = pool.submit(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                onFailure(e);
+                throw e;
+            } finally {
+                onComplete();
+            }
+        });
+
+        synchronized (lock) {
+            futures.add(future);
+            if (failure != null) {
+                future.cancel(true);
+            }
+        }
+
+        return () -> getResult(future);
+    }
+
+
+    /**
+     * Waits for all forked tasks to complete.
+     *
+     * @throws RuntimeException the first failure raised by a forked task
+     *      (checked exceptions are wrapped in an <code>IllegalStateException</code>)
+     * @throws IllegalStateException if the deadline passes or the caller is interrupted
+     */
+    public void join() {
+        synchronized (lock) {
+            joined = true;
+            try {
+                while (outstanding > 0 && failure == null) {
+                    long remaining = deadlineAtNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        cancelAll();
+                        throw new IllegalStateException(
+                                String.format("%d of %d task/s did not complete within deadline of %s", outstanding, futures.size(), deadline),
+                                new TimeoutException());
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            } catch (InterruptedException e) {
+                cancelAll();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted whilst waiting for tasks to complete", e);
+            }
+
+            if (failure != null) {
+                throw asUnchecked(failure);
+            }
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    private void onFailure(Throwable t) {
+        synchronized (lock) {
+            if (failure == null) {
+                failure = t;
+                cancelAll();
+            }
+            lock.notifyAll();
+        }
+    }
+
+
+    private void onComplete() {
+        synchronized (lock) {
+            outstanding--;
+            lock.notifyAll();
+        }
+    }
+
+
+    private void cancelAll() {
+        futures.forEach(f -> f.cancel(true));
+    }
+
+
+    private <T> T getResult(Future<T> future) {
+        synchronized (lock) {
+            checkTrue(joined && failure == null, "Results are only available once the fan-out has been successfully joined");
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw asUnchecked(e.getCause());
+        } catch (InterruptedException | CancellationException e) {
+            throw new IllegalStateException("Task did not complete", e);
+        }
+    }
+
+
+    private static RuntimeException asUnchecked(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else {
+            return new IllegalStateException("Task failed: " + t.getMessage(), t);
+        }
+    }
+
+}
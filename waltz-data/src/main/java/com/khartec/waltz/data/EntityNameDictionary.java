@@ -0,0 +1,343 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data;
+
+import com.khartec.waltz.model.EntityKind;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * In-memory dictionary of entity names, held per <code>EntityKind</code> as
+ * a pair of parallel arrays (sorted ids and their names) so lookups are a
+ * binary search with no boxing.
+ *
+ * Kinds are loaded lazily, on first lookup.  Each table records a checksum
+ * of its source data at load time, <code>refresh</code> recalculates the
+ * checksums of all loaded kinds and reloads those which differ.  Kinds may
+ * also be invalidated explicitly, in which case they are reloaded on next
+ * use, or individual entities evicted (e.g. following a change log entry).
+ * Evicted entities are reported as misses until their kind is next
+ * (re)loaded by a load which started after the eviction, <code>refresh</code>
+ * reloads any kind with evicted entities so they miss for at most one
+ * refresh interval and the evictions do not accumulate.
+ *
+ * Ids which are not present in the dictionary are reported as misses, the
+ * caller is expected to fall back to the database.
+ */
+public class EntityNameDictionary {
+
+    private final Set<EntityKind> supportedKinds;
+    private final ToLongFunction<EntityKind> checksumLoader;
+    private final Function<EntityKind, NameTable> tableLoader;
+    private final ConcurrentMap<EntityKind, NameTable> tables = new ConcurrentHashMap<>();
+
+    // evicted ids per kind, mapped to the sequence number of their eviction
+    private final ConcurrentMap<EntityKind, ConcurrentMap<Long, Long>> evictions = new ConcurrentHashMap<>();
+    private final AtomicLong evictionSequence = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+
+
+    /**
+     * @param supportedKinds  kinds which may be held in the dictionary
+     * @param checksumLoader  calculates the current checksum of a kind's source data
+     * @param tableLoader  loads all names for a kind, the table must carry the checksum
+     *                     calculated <i>before</i> the names were read
+     */
+    public EntityNameDictionary(Set<EntityKind> supportedKinds,
+                                ToLongFunction<EntityKind> checksumLoader,
+                                Function<EntityKind, NameTable> tableLoader) {
+        checkNotNull(supportedKinds, "supportedKinds cannot be null");
+        checkNotNull(checksumLoader, "checksumLoader cannot be null");
+        checkNotNull(tableLoader, "tableLoader cannot be null");
+        this.supportedKinds = supportedKinds;
+        this.checksumLoader = checksumLoader;
+        this.tableLoader = tableLoader;
+    }
+
+
+    public boolean supports(EntityKind kind) {
+        return supportedKinds.contains(kind);
+    }
+
+
+    /**
+     * @return the name of the given entity or <code>null</code> if it is not
+     *   present in the dictionary (or the kind is not supported)
+     */
+    public String lookup(EntityKind kind, long id) {
+        if (! supports(kind)) {
+            return null;
+        }
+
+        NameTable table = tables.computeIfAbsent(kind, this::loadAndClearEvictions);
+        String name = isEvicted(kind, id)
+                ? null
+                : table.lookup(id);
+
+        if (name == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return name;
+    }
+
+
+    public void invalidate(EntityKind kind) {
+        if (kind != null) {
+            tables.remove(kind);
+        }
+    }
+
+
+    /**
+     * Marks the name held for a single entity as stale, lookups for it miss
+     * until its kind is reloaded (by <code>refresh</code> or <code>invalidate</code>).
+     * Should be called once the change to the entity has been written.
+     */
+    public void evict(EntityKind kind, long id) {
+        if (supports(kind)) {
+            evictions
+                    .computeIfAbsent(kind, k -> new ConcurrentHashMap<>())
+                    .put(id, evictionSequence.incrementAndGet());
+        }
+    }
+
+
+    public int getEvictedCount() {
+        return evictions
+                .values()
+                .stream()
+                .mapToInt(Map::size)
+                .sum();
+    }
+
+
+    public boolean isEvicted(EntityKind kind, long id) {
+        Map<Long, Long> evictedIds = evictions.get(kind);
+        return evictedIds != null && evictedIds.containsKey(id);
+    }
+
+
+    public void invalidateAll() {
+        tables.clear();
+    }
+
+
+    /**
+     * Reloads every loaded kind which has evicted entities, or whose checksum
+     * has changed since it was loaded.
+     *
+     * @return number of kinds reloaded
+     */
+    public int refresh() {
+        int reloaded = 0;
+        for (EntityKind kind : tables.keySet()) {
+            NameTable current = tables.get(kind);
+            if (current != null && (hasEvictions(kind) || current.checksum != checksumLoader.applyAsLong(kind))) {
+                long sequence = evictionSequence.get();
+                tables.put(kind, load(kind));
+                clearEvictions(kind, sequence);
+                reloaded++;
+            }
+        }
+        return reloaded;
+    }
+
+
+    public Set<EntityKind> getLoadedKinds() {
+        return tables.keySet();
+    }
+
+
+    public int getEntryCount() {
+        return tables
+                .values()
+                .stream()
+                .mapToInt(t -> t.ids.length)
+                .sum();
+    }
+
+
+    /**
+     * @return approximate number of bytes retained by the loaded tables
+     */
+    public long getEstimatedMemoryBytes() {
+        return tables
+                .values()
+                .stream()
+                .mapToLong(t -> t.estimatedBytes)
+                .sum();
+    }
+
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0
+                ? 0
+                : (double) hits / total;
+    }
+
+
+    // -- HELPERS ---
+
+    private NameTable load(EntityKind kind) {
+        loadCount.incrementAndGet();
+        return tableLoader.apply(kind);
+    }
+
+
+    private NameTable loadAndClearEvictions(EntityKind kind) {
+        long sequence = evictionSequence.get();
+        NameTable table = load(kind);
+        clearEvictions(kind, sequence);
+        return table;
+    }
+
+
+    private boolean hasEvictions(EntityKind kind) {
+        Map<Long, Long> evictedIds = evictions.get(kind);
+        return evictedIds != null && ! evictedIds.isEmpty();
+    }
+
+
+    /**
+     * Evictions made before a load started are reflected in the loaded
+     * table so no longer need to be reported as misses.
+     */
+    private void clearEvictions(EntityKind kind, long loadStartedAt) {
+        Map<Long, Long> evictedIds = evictions.get(kind);
+        if (evictedIds != null) {
+            evictedIds.values().removeIf(evictedAt -> evictedAt <= loadStartedAt);
+        }
+    }
+
+
+    /**
+     * Immutable id to name table for a single entity kind.
+     */
+    public static final class NameTable {
+
+        // object header, hash and array reference for a string plus the array header
+        private static final int STRING_OVERHEAD_BYTES = 40;
+        private static final int ARRAY_OVERHEAD_BYTES = 16;
+
+        private final long checksum;
+        private final long[] ids;
+        private final String[] names;
+        private final long estimatedBytes;
+
+
+        private NameTable(long checksum, long[] ids, String[] names) {
+            this.checksum = checksum;
+            this.ids = ids;
+            this.names = names;
+
+            long bytes = ARRAY_OVERHEAD_BYTES * 2 + (8L * ids.length) + (4L * names.length);
+            for (String name : names) {
+                if (name != null) {
+                    bytes += STRING_OVERHEAD_BYTES + (2L * name.length());
+                }
+            }
+            this.estimatedBytes = bytes;
+        }
+
+
+        /**
+         * Creates a table from parallel id and name arrays.  The arrays are
+         * sorted by id if they are not already (loaders should order by id
+         * to avoid the copy).
+         */
+        public static NameTable mkNameTable(long checksum, long[] ids, String[] names) {
+            checkNotNull(ids, "ids cannot be null");
+            checkNotNull(names, "names cannot be null");
+            checkTrue(ids.length == names.length, "ids and names must be the same length");
+
+            if (isSorted(ids)) {
+                return new NameTable(checksum, ids, names);
+            }
+
+            int[] order = IntStream
+                    .range(0, ids.length)
+                    .boxed()
+                    .sorted(Comparator.comparingLong(i -> ids[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            long[] sortedIds = new long[ids.length];
+            String[] sortedNames = new String[names.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedIds[i] = ids[order[i]];
+                sortedNames[i] = names[order[i]];
+            }
+            return new NameTable(checksum, sortedIds, sortedNames);
+        }
+
+
+        private String lookup(long id) {
+            int idx = Arrays.binarySearch(ids, id);
+            return idx < 0
+                    ? null
+                    : names[idx];
+        }
+
+
+        private static boolean isSorted(long[] ids) {
+            for (int i = 1; i < ids.length; i++) {
+                if (ids[i - 1] > ids[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
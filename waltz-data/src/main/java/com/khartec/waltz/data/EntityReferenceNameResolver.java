@@ -23,40 +23,124 @@ import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.math.BigDecimal;
+import java.util.*;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.CollectionUtilities.maybeFirst;
 import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.data.EntityNameDictionary.NameTable.mkNameTable;
 import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 /**
  * Service which takes a list of entity references and returns a list
  * enriched with entity names.
+ *
+ * Names are served from an in-memory {@link EntityNameDictionary}, loaded
+ * lazily per kind.  References which cannot be resolved from the dictionary
+ * (unsupported kinds or ids not yet known to it) are resolved against the
+ * database in a single query.  If the database knows a name the dictionary
+ * did not (and the entity was not explicitly evicted) the kind is
+ * invalidated so it is reloaded on next use.
  */
 @Repository
 public class EntityReferenceNameResolver {
 
     private final DSLContext dsl;
+    private final EntityNameDictionary dictionary;
+
 
     @Autowired
     public EntityReferenceNameResolver(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
         this.dsl = dsl;
+        this.dictionary = new EntityNameDictionary(
+                InlineSelectFieldFactory.getNameSupportedEntityKinds(),
+                this::calcChecksum,
+                this::loadNameTable);
     }
 
+
     public Optional<EntityReference> resolve(EntityReference ref) {
         return maybeFirst(resolve(newArrayList(ref)));
     }
 
+
+    /**
+     * Resolves names for the given references.  Duplicate references are
+     * collapsed, the result is otherwise in the same order as the input.
+     */
     public List<EntityReference> resolve(List<EntityReference> refs) {
         checkNotNull(refs, "refs cannot be null");
-        
+
+        Map<Tuple2<EntityKind, Long>, EntityReference> resolved = new LinkedHashMap<>(refs.size() * 2);
+        List<EntityReference> unresolved = new ArrayList<>();
+
+        for (EntityReference ref : refs) {
+            Tuple2<EntityKind, Long> key = tuple(ref.kind(), ref.id());
+            if (resolved.containsKey(key)) {
+                continue;
+            }
+            String name = dictionary.lookup(ref.kind(), ref.id());
+            if (name == null) {
+                unresolved.add(ref);
+                resolved.put(key, null);  // placeholder, keeps the input ordering
+            } else {
+                resolved.put(key, mkRef(ref.kind(), ref.id(), name));
+            }
+        }
+
+        for (EntityReference ref : resolveFromDatabase(unresolved)) {
+            resolved.put(tuple(ref.kind(), ref.id()), ref);
+            if (ref.name().isPresent()
+                    && dictionary.supports(ref.kind())
+                    && ! dictionary.isEvicted(ref.kind(), ref.id())) {
+                dictionary.invalidate(ref.kind());
+            }
+        }
+
+        return resolved
+                .values()
+                .stream()
+                .filter(Objects::nonNull)
+                .collect(toList());
+    }
+
+
+    /**
+     * Marks the names held for the given kind as stale, they will be
+     * reloaded on next use.
+     */
+    public void invalidate(EntityKind kind) {
+        dictionary.invalidate(kind);
+    }
+
+
+    /**
+     * Marks the name held for the given entity as stale, it will be
+     * resolved against the database until its kind is next reloaded.
+     */
+    public void evict(EntityReference ref) {
+        dictionary.evict(ref.kind(), ref.id());
+    }
+
+
+    public EntityNameDictionary getDictionary() {
+        return dictionary;
+    }
+
+
+    // -- HELPERS ---
+
+    private List<EntityReference> resolveFromDatabase(List<EntityReference> refs) {
         Field<Long> idField = DSL.field("tref_id", Long.class);
         Field<String> kindField = DSL.field("tref_kind", String.class);
 
@@ -89,7 +173,63 @@ public class EntityReferenceNameResolver {
         } else {
             return Collections.emptyList();
         }
+    }
+
+
+    /**
+     * A cheap checksum over the kind's table: row count, sum of ids and sum
+     * of name lengths.  Sufficient to detect additions, removals and most
+     * renames, other renames are caught via explicit invalidation.
+     */
+    private long calcChecksum(EntityKind kind) {
+        Tuple3<Table, Field<Long>, Field<String>> mapping = getNameMapping(kind);
+
+        Field<Integer> rowCount = DSL.count();
+        Field<BigDecimal> idSum = DSL.sum(mapping.v2());
+        Field<BigDecimal> nameLengthSum = DSL.sum(DSL.charLength(mapping.v3()));
+
+        Record3<Integer, BigDecimal, BigDecimal> r = dsl
+                .select(rowCount, idSum, nameLengthSum)
+                .from(mapping.v1())
+                .fetchOne();
+
+        return 31L * (31L * r.get(rowCount) + toLong(r.get(idSum))) + toLong(r.get(nameLengthSum));
+    }
+
+
+    private EntityNameDictionary.NameTable loadNameTable(EntityKind kind) {
+        Tuple3<Table, Field<Long>, Field<String>> mapping = getNameMapping(kind);
+
+        long checksum = calcChecksum(kind);
+
+        Result<Record2<Long, String>> rows = dsl
+                .select(mapping.v2(), mapping.v3())
+                .from(mapping.v1())
+                .orderBy(mapping.v2())
+                .fetch();
+
+        long[] ids = new long[rows.size()];
+        String[] names = new String[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            ids[i] = rows.get(i).value1();
+            names[i] = rows.get(i).value2();
+        }
+
+        return mkNameTable(checksum, ids, names);
+    }
+
+
+    private static Tuple3<Table, Field<Long>, Field<String>> getNameMapping(EntityKind kind) {
+        return InlineSelectFieldFactory
+                .getNameMapping(kind)
+                .orElseThrow(() -> new IllegalArgumentException("Cannot resolve names for kind: " + kind));
+    }
+
 
+    private static long toLong(BigDecimal value) {
+        return value == null
+                ? 0
+                : value.longValue();
     }
 
 }
@@ -88,6 +88,19 @@ public class InlineSelectFieldFactory {
     }
 
 
+    /**
+     * @return the table, id field and name field used to resolve names for the given kind
+     */
+    static Optional<Tuple3<Table, Field<Long>, Field<String>>> getNameMapping(EntityKind kind) {
+        return Optional.ofNullable(NAME_RESOLVER.mappings.get(kind));
+    }
+
+
+    static Set<EntityKind> getNameSupportedEntityKinds() {
+        return NAME_RESOLVER.getSupportedEntityKinds();
+    }
+
+
     // --- Internals ----------------------
 
     private static final InlineSelectFieldFactory NAME_RESOLVER = new InlineSelectFieldFactory(mkNameFieldMappings());
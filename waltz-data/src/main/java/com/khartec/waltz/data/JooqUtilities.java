@@ -32,6 +32,7 @@ import org.jooq.*;
 import org.jooq.impl.DSL;
 
 import java.sql.Date;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.*;
 import java.util.function.BinaryOperator;
@@ -79,6 +80,26 @@ public class JooqUtilities {
     }
 
 
+    /**
+     * Totals the update counts returned by executing a batch.  Drivers may
+     * report a statement as <code>Statement.SUCCESS_NO_INFO</code> (-2)
+     * rather than giving its count, such statements are counted as one row.
+     * Failures (<code>Statement.EXECUTE_FAILED</code>) are not counted.
+     */
+    public static int countBatchResults(int[] updateCounts) {
+        checkNotNull(updateCounts, "updateCounts cannot be null");
+        int count = 0;
+        for (int n : updateCounts) {
+            if (n > 0) {
+                count += n;
+            } else if (n == Statement.SUCCESS_NO_INFO) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
     private static <T extends TableRecord<?>> Collector<T, Set<T>, Batch> batchOperationCollector(DSLContext dsl,
                                                                                                   Function<Set<T>, Batch> operation) {
         return Collector.of(
@@ -25,6 +25,7 @@ import com.khartec.waltz.model.accesslog.ImmutableAccessTime;
 import com.khartec.waltz.schema.tables.records.AccessLogRecord;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.InsertValuesStep4;
 import org.jooq.Record;
 import org.jooq.RecordMapper;
 import org.jooq.impl.DSL;
@@ -35,6 +36,7 @@ import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -84,6 +86,31 @@ public class AccessLogDao {
     }
 
 
+    /**
+     * Inserts the entries using a single, multi-row, insert statement
+     */
+    public int write(Collection<AccessLog> logEntries) {
+        if (logEntries.isEmpty()) {
+            return 0;
+        }
+
+        InsertValuesStep4<AccessLogRecord, String, String, String, Timestamp> insert = dsl
+                .insertInto(ACCESS_LOG)
+                .columns(ACCESS_LOG.PARAMS,
+                        ACCESS_LOG.STATE,
+                        ACCESS_LOG.USER_ID,
+                        ACCESS_LOG.CREATED_AT);
+
+        logEntries.forEach(logEntry -> insert.values(
+                logEntry.params(),
+                logEntry.state(),
+                logEntry.userId(),
+                Timestamp.valueOf(logEntry.createdAt())));
+
+        return insert.execute();
+    }
+
+
     public List<AccessLog> findForUserId(String userId,
                                          Optional<Integer> limit) {
         return dsl.select(ACCESS_LOG.fields())
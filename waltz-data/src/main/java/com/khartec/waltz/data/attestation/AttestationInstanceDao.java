@@ -28,18 +28,23 @@ import com.khartec.waltz.model.attestation.ImmutableAttestationInstance;
 import com.khartec.waltz.schema.tables.records.AttestationInstanceRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
 import static com.khartec.waltz.schema.Tables.*;
 import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static java.util.stream.Collectors.toMap;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 
 @Repository
@@ -101,6 +106,63 @@ public class AttestationInstanceDao {
     }
 
 
+    /**
+     * Inserts the given instances using a single multi-row insert.  Callers
+     * are expected to bound the size of the collection and to have excluded
+     * instances which already exist.
+     *
+     * @param attestationInstances  instances to insert
+     * @return number of instances inserted
+     */
+    public int createAll(Collection<AttestationInstance> attestationInstances) {
+        checkNotNull(attestationInstances, "attestationInstances cannot be null");
+
+        if (attestationInstances.isEmpty()) {
+            return 0;
+        }
+
+        InsertValuesStep4<AttestationInstanceRecord, Long, String, Long, String> insert = dsl
+                .insertInto(ATTESTATION_INSTANCE)
+                .columns(ATTESTATION_INSTANCE.ATTESTATION_RUN_ID,
+                        ATTESTATION_INSTANCE.PARENT_ENTITY_KIND,
+                        ATTESTATION_INSTANCE.PARENT_ENTITY_ID,
+                        ATTESTATION_INSTANCE.ATTESTED_ENTITY_KIND);
+
+        attestationInstances.forEach(i -> insert.values(
+                i.attestationRunId(),
+                i.parentEntity().kind().name(),
+                i.parentEntity().id(),
+                i.attestedEntityKind().name()));
+
+        return insert.execute();
+    }
+
+
+    /**
+     * @param runId  attestation run
+     * @return ids of the instances in the run, keyed by parent entity (without name) and attested kind
+     */
+    public Map<Tuple2<EntityReference, EntityKind>, Long> findIdsByRunId(long runId) {
+        return dsl
+                .select(ATTESTATION_INSTANCE.ID,
+                        ATTESTATION_INSTANCE.PARENT_ENTITY_KIND,
+                        ATTESTATION_INSTANCE.PARENT_ENTITY_ID,
+                        ATTESTATION_INSTANCE.ATTESTED_ENTITY_KIND)
+                .from(ATTESTATION_INSTANCE)
+                .where(ATTESTATION_INSTANCE.ATTESTATION_RUN_ID.eq(runId))
+                .fetch()
+                .stream()
+                .collect(toMap(
+                        r -> tuple(
+                                EntityReference.mkRef(
+                                        EntityKind.valueOf(r.get(ATTESTATION_INSTANCE.PARENT_ENTITY_KIND)),
+                                        r.get(ATTESTATION_INSTANCE.PARENT_ENTITY_ID)),
+                                EntityKind.valueOf(r.get(ATTESTATION_INSTANCE.ATTESTED_ENTITY_KIND))),
+                        r -> r.get(ATTESTATION_INSTANCE.ID),
+                        Math::min));
+    }
+
+
     public List<AttestationInstance> findByRecipient(String userId, boolean unattestedOnly) {
         Condition condition = ATTESTATION_INSTANCE_RECIPIENT.USER_ID.eq(userId);
         if(unattestedOnly) {
@@ -20,13 +20,20 @@ package com.khartec.waltz.data.attestation;
 
 import com.khartec.waltz.schema.tables.records.AttestationInstanceRecipientRecord;
 import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep2;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.schema.tables.AttestationInstance.ATTESTATION_INSTANCE;
 import static com.khartec.waltz.schema.tables.AttestationInstanceRecipient.ATTESTATION_INSTANCE_RECIPIENT;
+import static java.util.stream.Collectors.toSet;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Repository
 public class AttestationInstanceRecipientDao {
@@ -52,6 +59,51 @@ public class AttestationInstanceRecipientDao {
     }
 
 
+    /**
+     * Inserts the given recipients using a single multi-row insert.  Callers
+     * are expected to bound the size of the collection and to have excluded
+     * recipients which already exist.
+     *
+     * @param instanceIdAndUserIds  pairs of attestation instance id and user id
+     * @return number of recipients inserted
+     */
+    public int createAll(Collection<Tuple2<Long, String>> instanceIdAndUserIds) {
+        checkNotNull(instanceIdAndUserIds, "instanceIdAndUserIds cannot be null");
+
+        if (instanceIdAndUserIds.isEmpty()) {
+            return 0;
+        }
+
+        InsertValuesStep2<AttestationInstanceRecipientRecord, Long, String> insert = dsl
+                .insertInto(ATTESTATION_INSTANCE_RECIPIENT)
+                .columns(ATTESTATION_INSTANCE_RECIPIENT.ATTESTATION_INSTANCE_ID,
+                        ATTESTATION_INSTANCE_RECIPIENT.USER_ID);
+
+        instanceIdAndUserIds.forEach(t -> insert.values(t.v1, t.v2));
+
+        return insert.execute();
+    }
+
+
+    /**
+     * @param runId  attestation run
+     * @return pairs of attestation instance id and user id for every recipient in the run
+     */
+    public Set<Tuple2<Long, String>> findInstanceIdAndUserIdsByRunId(long runId) {
+        return dsl
+                .select(ATTESTATION_INSTANCE_RECIPIENT.ATTESTATION_INSTANCE_ID,
+                        ATTESTATION_INSTANCE_RECIPIENT.USER_ID)
+                .from(ATTESTATION_INSTANCE_RECIPIENT)
+                .innerJoin(ATTESTATION_INSTANCE)
+                .on(ATTESTATION_INSTANCE.ID.eq(ATTESTATION_INSTANCE_RECIPIENT.ATTESTATION_INSTANCE_ID))
+                .where(ATTESTATION_INSTANCE.ATTESTATION_RUN_ID.eq(runId))
+                .fetch()
+                .stream()
+                .map(r -> tuple(r.value1(), r.value2()))
+                .collect(toSet());
+    }
+
+
     public List<String> findRecipientsByRunId(Long id) {
 
         return dsl
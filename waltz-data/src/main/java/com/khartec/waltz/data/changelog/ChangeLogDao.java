@@ -36,6 +36,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkNotEmpty;
 import static com.khartec.waltz.common.Checks.checkNotNull;
@@ -147,6 +149,53 @@ public class ChangeLogDao {
     }
 
 
+    /**
+     * @return  id of the most recent change log entry, or 0 if there are none
+     */
+    public long getMaxId() {
+        Long maxId = dsl
+                .select(DSL.max(CHANGE_LOG.ID))
+                .from(CHANGE_LOG)
+                .fetchOne(0, Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+
+
+    /**
+     * Finds the ids of all entities of the given parent kind which have change
+     * log entries, with one of the given child kinds, within the given id range.
+     * Ids (rather than creation times) are used as entries may be written some
+     * time after they were created, e.g. by the write-behind queue.
+     *
+     * @param parentKind  kind of entity to find ids for
+     * @param childKinds  kinds of change of interest
+     * @param afterId  exclusive lower bound on the change log entry id
+     * @param upToId  inclusive upper bound on the change log entry id
+     * @return  distinct parent ids
+     */
+    public Set<Long> findParentIdsChangedBetween(EntityKind parentKind,
+                                                 Collection<EntityKind> childKinds,
+                                                 long afterId,
+                                                 long upToId) {
+        checkNotNull(parentKind, "parentKind cannot be null");
+        checkNotEmpty(childKinds, "childKinds cannot be empty");
+
+        Field<Long> id = CHANGE_LOG.ID.coerce(Long.class);
+
+        return dsl
+                .selectDistinct(CHANGE_LOG.PARENT_ID)
+                .from(CHANGE_LOG)
+                .where(CHANGE_LOG.PARENT_KIND.eq(parentKind.name()))
+                .and(CHANGE_LOG.CHILD_KIND.in(childKinds
+                        .stream()
+                        .map(Enum::name)
+                        .collect(Collectors.toSet())))
+                .and(id.greaterThan(afterId))
+                .and(id.lessOrEqual(upToId))
+                .fetchSet(CHANGE_LOG.PARENT_ID);
+    }
+
+
     public List<OrderedTally<String>> getContributionLeaderBoard(int limit) {
         return makeOrderedTallyQuery(
                     dsl,
@@ -212,22 +261,39 @@ public class ChangeLogDao {
     }
 
 
+    /**
+     * Inserts the entries using a single, re-bound, insert statement
+     * (i.e. a jdbc batch) rather than one statement per entry.
+     */
     public int[] write(Collection<ChangeLog> changeLogs) {
         checkNotNull(changeLogs, "changeLogs must not be null");
 
-        Query[] queries = changeLogs
-                .stream()
-                .map(changeLog -> DSL.insertInto(CHANGE_LOG)
-                        .set(CHANGE_LOG.MESSAGE, changeLog.message())
-                        .set(CHANGE_LOG.PARENT_ID, changeLog.parentReference().id())
-                        .set(CHANGE_LOG.PARENT_KIND, changeLog.parentReference().kind().name())
-                        .set(CHANGE_LOG.USER_ID, changeLog.userId())
-                        .set(CHANGE_LOG.SEVERITY, changeLog.severity().name())
-                        .set(CHANGE_LOG.CHILD_KIND, changeLog.childKind().map(ck -> ck.name()).orElse(null))
-                        .set(CHANGE_LOG.OPERATION, changeLog.operation().name())
-                        .set(CHANGE_LOG.CREATED_AT, Timestamp.valueOf(changeLog.createdAt())))
-                .toArray(Query[]::new);
-        return dsl.batch(queries).execute();
+        if (changeLogs.isEmpty()) {
+            return new int[0];
+        }
+
+        BatchBindStep batch = dsl.batch(DSL
+                .insertInto(CHANGE_LOG)
+                .set(CHANGE_LOG.MESSAGE, (String) null)
+                .set(CHANGE_LOG.PARENT_ID, (Long) null)
+                .set(CHANGE_LOG.PARENT_KIND, (String) null)
+                .set(CHANGE_LOG.USER_ID, (String) null)
+                .set(CHANGE_LOG.SEVERITY, (String) null)
+                .set(CHANGE_LOG.CHILD_KIND, (String) null)
+                .set(CHANGE_LOG.OPERATION, (String) null)
+                .set(CHANGE_LOG.CREATED_AT, (Timestamp) null));
+
+        changeLogs.forEach(changeLog -> batch.bind(
+                changeLog.message(),
+                changeLog.parentReference().id(),
+                changeLog.parentReference().kind().name(),
+                changeLog.userId(),
+                changeLog.severity().name(),
+                changeLog.childKind().map(ck -> ck.name()).orElse(null),
+                changeLog.operation().name(),
+                Timestamp.valueOf(changeLog.createdAt())));
+
+        return batch.execute();
     }
 
 
@@ -18,27 +18,46 @@
 
 package com.khartec.waltz.data.complexity;
 
-import com.khartec.waltz.common.Checks;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.complexity.*;
 import com.khartec.waltz.schema.tables.records.ComplexityScoreRecord;
 import org.jooq.*;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.data.JooqUtilities.countBatchResults;
 import static com.khartec.waltz.schema.tables.ComplexityScore.COMPLEXITY_SCORE;
 import static java.util.Collections.emptyList;
 
 @Repository
 public class ComplexityScoreDao {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ComplexityScoreDao.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Number of decimal places held by the <code>score</code> column
+     */
+    private static final int SCORE_SCALE = 3;
+
     private static final Function<Record, ComplexityScore> TO_COMPLEXITY_SCORE_MAPPER = r -> {
         ComplexityScoreRecord record = r.into(COMPLEXITY_SCORE);
         return ImmutableComplexityScore.builder()
@@ -78,7 +97,7 @@ public class ComplexityScoreDao {
 
     @Autowired
     public ComplexityScoreDao(DSLContext dsl) {
-        Checks.checkNotNull(dsl, "dsl cannot be null");
+        checkNotNull(dsl, "dsl cannot be null");
         this.dsl = dsl;
     }
 
@@ -118,11 +137,123 @@ public class ComplexityScoreDao {
     }
 
 
-    public int deleteAll() {
-        return dsl.deleteFrom(COMPLEXITY_SCORE).execute();
+    /**
+     * @return all stored application complexity scores
+     */
+    public List<ComplexityScore> findAllScores() {
+        return dsl
+                .selectFrom(COMPLEXITY_SCORE)
+                .where(COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                .fetch(TO_COMPLEXITY_SCORE_MAPPER::apply);
+    }
+
+
+    public List<ComplexityScore> findScoresForAppIds(Collection<Long> appIds) {
+        checkNotNull(appIds, "appIds cannot be null");
+
+        List<Long> idList = new ArrayList<>(appIds);
+        List<ComplexityScore> result = new ArrayList<>();
+
+        for (int i = 0; i < idList.size(); i += BATCH_SIZE) {
+            List<Long> chunk = idList.subList(i, Math.min(i + BATCH_SIZE, idList.size()));
+            result.addAll(dsl
+                    .selectFrom(COMPLEXITY_SCORE)
+                    .where(COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                    .and(COMPLEXITY_SCORE.ENTITY_ID.in(chunk))
+                    .fetch(TO_COMPLEXITY_SCORE_MAPPER::apply));
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Applies the given delta within a single transaction, using batched
+     * statements for each of the deletes, updates and inserts.  Readers
+     * therefore never see a partially rebuilt table.
+     *
+     * @return number of rows affected
+     */
+    public int applyDelta(ComplexityScoreDelta delta) {
+        checkNotNull(delta, "delta cannot be null");
+
+        LOG.info("Applying complexity score delta, inserts: {}, updates: {}, deletes: {}",
+                delta.inserts().size(),
+                delta.updates().size(),
+                delta.deletes().size());
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            int deleteCount = executeBatched(
+                    delta.deletes(),
+                    () -> txDsl.batch(txDsl
+                            .deleteFrom(COMPLEXITY_SCORE)
+                            .where(COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                            .and(COMPLEXITY_SCORE.ENTITY_ID.eq((Long) null))
+                            .and(COMPLEXITY_SCORE.COMPLEXITY_KIND.eq((String) null))),
+                    (batch, score) -> batch.bind(
+                            EntityKind.APPLICATION.name(),
+                            score.id(),
+                            score.kind().name()));
+
+            int updateCount = executeBatched(
+                    delta.updates(),
+                    () -> txDsl.batch(txDsl
+                            .update(COMPLEXITY_SCORE)
+                            .set(COMPLEXITY_SCORE.SCORE, (BigDecimal) null)
+                            .where(COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                            .and(COMPLEXITY_SCORE.ENTITY_ID.eq((Long) null))
+                            .and(COMPLEXITY_SCORE.COMPLEXITY_KIND.eq((String) null))),
+                    (batch, score) -> batch.bind(
+                            toScoreValue(score),
+                            EntityKind.APPLICATION.name(),
+                            score.id(),
+                            score.kind().name()));
+
+            List<ComplexityScoreRecord> records = map(delta.inserts(), ComplexityScoreDao::mkRecord);
+            int insertCount = records.isEmpty()
+                    ? 0
+                    : countBatchResults(txDsl.batchInsert(records).execute());
+
+            return deleteCount + updateCount + insertCount;
+        });
+    }
+
+
+    /**
+     * Scores are stored to a fixed precision, comparisons against stored
+     * scores should be made using this value.
+     */
+    public static BigDecimal toScoreValue(ComplexityScore score) {
+        return BigDecimal
+                .valueOf(score.score())
+                .setScale(SCORE_SCALE, RoundingMode.HALF_UP);
+    }
+
+
+    // -- HELPERS ---
+
+    private static ComplexityScoreRecord mkRecord(ComplexityScore score) {
+        ComplexityScoreRecord record = new ComplexityScoreRecord();
+        record.setEntityKind(EntityKind.APPLICATION.name());
+        record.setEntityId(score.id());
+        record.setComplexityKind(score.kind().name());
+        record.setScore(toScoreValue(score));
+        return record;
     }
 
-    public int[] bulkInsert(List<ComplexityScoreRecord> records) {
-        return dsl.batchInsert(records).execute();
+
+    private static int executeBatched(List<ComplexityScore> scores,
+                                      Supplier<BatchBindStep> batchFactory,
+                                      BiConsumer<BatchBindStep, ComplexityScore> binder) {
+        int count = 0;
+        for (int i = 0; i < scores.size(); i += BATCH_SIZE) {
+            BatchBindStep batch = batchFactory.get();
+            scores.subList(i, Math.min(i + BATCH_SIZE, scores.size()))
+                    .forEach(score -> binder.accept(batch, score));
+            count += countBatchResults(batch.execute());
+        }
+        return count;
     }
 }
\ No newline at end of file
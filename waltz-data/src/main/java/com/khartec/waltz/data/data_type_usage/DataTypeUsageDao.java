@@ -42,6 +42,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.StringUtilities.limit;
@@ -257,8 +258,20 @@ public class DataTypeUsageDao {
 
 
     public boolean recalculateForIdSelector(EntityKind kind, Select<Record1<Long>> idSelector) {
+        recalculateUsagesForIdSelector(kind, idSelector);
+        return true;
+    }
+
 
-        dsl.transaction(configuration -> {
+    /**
+     * Recalculates the calculated (consumer, originator, distributor) usages
+     * for the selected entities within a single transaction.
+     *
+     * @return number of usage rows inserted, updated or deleted
+     */
+    public int recalculateUsagesForIdSelector(EntityKind kind, Select<Record1<Long>> idSelector) {
+
+        return dsl.transactionResult(configuration -> {
             DSLContext tx = DSL.using(configuration);
 
             Condition isCalculatedUsageKind = DATA_TYPE_USAGE.USAGE_KIND.in(
@@ -267,7 +280,7 @@ public class DataTypeUsageDao {
                     UsageKind.DISTRIBUTOR.name());
 
             // clear calculated usages
-            tx.deleteFrom(DATA_TYPE_USAGE)
+            int changes = tx.deleteFrom(DATA_TYPE_USAGE)
                     .where(isCalculatedUsageKind)
                     .and(DATA_TYPE_USAGE.DESCRIPTION.eq(""))
                     .and(DATA_TYPE_USAGE.ENTITY_ID.in(idSelector))
@@ -276,13 +289,14 @@ public class DataTypeUsageDao {
 
             // clear usages where the datatype is not tied to an active logical flow
             List<DataTypeUsageRecord> recordsToDelete = findAllNonActiveDataTypeUsages(tx, kind, idSelector);
-            tx.batchDelete(recordsToDelete)
-                    .execute();
+            changes += IntStream.of(tx.batchDelete(recordsToDelete)
+                    .execute())
+                    .sum();
 
 
 
             // mark commented usages inactive
-            tx.update(DATA_TYPE_USAGE)
+            changes += tx.update(DATA_TYPE_USAGE)
                     .set(DATA_TYPE_USAGE.IS_SELECTED, false)
                     .where(isCalculatedUsageKind)
                     .and(DATA_TYPE_USAGE.DESCRIPTION.ne(""))
@@ -290,23 +304,22 @@ public class DataTypeUsageDao {
                     .and(DATA_TYPE_USAGE.ENTITY_KIND.eq(kind.name()))
                     .execute();
 
-            insertUsages(
+            changes += insertUsages(
                     tx,
                     mkConsumerDistributorUsagesToInsertSelector(kind, idSelector));
-            updateUsageKinds(
+            changes += updateUsageKinds(
                     tx,
                     mkFlowWithTypesForConsumerDistributors(kind, idSelector));
 
-            insertUsages(
+            changes += insertUsages(
                     tx,
                     mkOriginatorUsagesToInsertSelector(kind, idSelector));
-            updateUsageKinds(
+            changes += updateUsageKinds(
                     tx,
                     mkFlowWithTypesForOriginators(kind, idSelector));
-        });
-
-        return true;
 
+            return changes;
+        });
     }
 
 
@@ -362,9 +375,9 @@ public class DataTypeUsageDao {
 
 
 
-    private void insertUsages(DSLContext tx,
-                              Select<Record7<Long, String, Long, String, String, String, Boolean>> usagesSelector) {
-        tx.insertInto(DATA_TYPE_USAGE)
+    private int insertUsages(DSLContext tx,
+                             Select<Record7<Long, String, Long, String, String, String, Boolean>> usagesSelector) {
+        return tx.insertInto(DATA_TYPE_USAGE)
                 .columns(
                         DATA_TYPE_USAGE.ENTITY_ID,
                         DATA_TYPE_USAGE.ENTITY_KIND,
@@ -378,9 +391,9 @@ public class DataTypeUsageDao {
     }
 
 
-    private void updateUsageKinds(DSLContext tx,
-                                  Table<Record3<Long, Long, String>> flowTable) {
-        tx.update(DATA_TYPE_USAGE)
+    private int updateUsageKinds(DSLContext tx,
+                                 Table<Record3<Long, Long, String>> flowTable) {
+        return tx.update(DATA_TYPE_USAGE)
                 .set(DATA_TYPE_USAGE.IS_SELECTED, true)
                 .where(DATA_TYPE_USAGE.IS_SELECTED.eq(false))
                 .and(exists(
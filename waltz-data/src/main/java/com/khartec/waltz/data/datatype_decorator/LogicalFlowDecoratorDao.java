@@ -22,35 +22,32 @@ import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityLifecycleStatus;
 import com.khartec.waltz.model.EntityReference;
-import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingVantagePoint;
 import com.khartec.waltz.model.datatype.DataTypeDecorator;
 import com.khartec.waltz.model.datatype.DataTypeUsageCharacteristics;
 import com.khartec.waltz.model.datatype.ImmutableDataTypeDecorator;
 import com.khartec.waltz.model.datatype.ImmutableDataTypeUsageCharacteristics;
 import com.khartec.waltz.model.rating.AuthoritativenessRating;
-import com.khartec.waltz.schema.tables.LogicalFlowDecorator;
 import com.khartec.waltz.schema.tables.records.LogicalFlowDecoratorRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
-import org.jooq.lambda.function.Function2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.data.JooqUtilities.countBatchResults;
 import static com.khartec.waltz.data.logical_flow.LogicalFlowDao.LOGICAL_NOT_REMOVED;
 import static com.khartec.waltz.model.EntityKind.DATA_TYPE;
 import static com.khartec.waltz.model.EntityKind.LOGICAL_DATA_FLOW;
 import static com.khartec.waltz.model.EntityReference.mkRef;
 import static com.khartec.waltz.schema.Tables.PHYSICAL_FLOW;
-import static com.khartec.waltz.schema.tables.Application.APPLICATION;
-import static com.khartec.waltz.schema.tables.EntityHierarchy.ENTITY_HIERARCHY;
 import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
 import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
 import static com.khartec.waltz.schema.tables.PhysicalSpecDataType.PHYSICAL_SPEC_DATA_TYPE;
@@ -95,6 +92,8 @@ public class LogicalFlowDecoratorDao extends DataTypeDecoratorDao {
         return r;
     };
 
+    private static final int UPDATE_BATCH_SIZE = 1000;
+
     private final DSLContext dsl;
 
     @Autowired
@@ -232,54 +231,6 @@ public class LogicalFlowDecoratorDao extends DataTypeDecoratorDao {
     }
 
 
-    public int updateDecoratorsForAuthSource(AuthoritativeRatingVantagePoint ratingVantagePoint) {
-        LogicalFlowDecorator lfd = LOGICAL_FLOW_DECORATOR.as("lfd");
-
-        EntityReference vantagePoint = ratingVantagePoint.vantagePoint();
-        Long appId = ratingVantagePoint.applicationId();
-        EntityReference dataType = ratingVantagePoint.dataType();
-        AuthoritativenessRating rating = ratingVantagePoint.rating();
-
-        SelectConditionStep<Record1<Long>> orgUnitSubselect = DSL.select(ENTITY_HIERARCHY.ID)
-                .from(ENTITY_HIERARCHY)
-                .where(ENTITY_HIERARCHY.KIND.eq(vantagePoint.kind().name()))
-                .and(ENTITY_HIERARCHY.ANCESTOR_ID.eq(vantagePoint.id()));
-
-        SelectConditionStep<Record1<Long>> dataTypeSubselect = DSL.select(ENTITY_HIERARCHY.ID)
-                .from(ENTITY_HIERARCHY)
-                .where(ENTITY_HIERARCHY.KIND.eq(DATA_TYPE.name()))
-                .and(ENTITY_HIERARCHY.ANCESTOR_ID.eq(dataType.id()));
-
-        Condition usingAuthSource = LOGICAL_FLOW.SOURCE_ENTITY_ID.eq(appId);
-        Condition notUsingAuthSource = LOGICAL_FLOW.SOURCE_ENTITY_ID.ne(appId);
-
-        Function2<Condition, String, Update<LogicalFlowDecoratorRecord>> mkQuery = (appScopingCondition, ratingName) -> dsl
-                .update(LOGICAL_FLOW_DECORATOR)
-                .set(LOGICAL_FLOW_DECORATOR.RATING, ratingName)
-                .where(LOGICAL_FLOW_DECORATOR.ID.in(
-                        DSL.select(lfd.ID)
-                                .from(lfd)
-                                .innerJoin(LOGICAL_FLOW).on(LOGICAL_FLOW.ID.eq(lfd.LOGICAL_FLOW_ID))
-                                .innerJoin(APPLICATION)
-                                .on(APPLICATION.ID.eq(LOGICAL_FLOW.TARGET_ENTITY_ID)
-                                        .and(LOGICAL_FLOW.TARGET_ENTITY_KIND.eq(EntityKind.APPLICATION.name())))
-                                .where(LOGICAL_FLOW.SOURCE_ENTITY_KIND.eq(EntityKind.APPLICATION.name())
-                                        .and(appScopingCondition)
-                                        .and(APPLICATION.ORGANISATIONAL_UNIT_ID.in(orgUnitSubselect))
-                                        .and(lfd.DECORATOR_ENTITY_KIND.eq(DATA_TYPE.name()))
-                                        .and(lfd.DECORATOR_ENTITY_ID.in(dataTypeSubselect)))
-                                .and(lfd.RATING.in(AuthoritativenessRating.NO_OPINION.name(), AuthoritativenessRating.DISCOURAGED.name()))
-
-                ));
-
-        Update<LogicalFlowDecoratorRecord> updateAuthSources = mkQuery.apply(usingAuthSource, rating.name());
-        Update<LogicalFlowDecoratorRecord> updateNonAuthSources = mkQuery.apply(notUsingAuthSource, AuthoritativenessRating.DISCOURAGED.name());
-        int authSourceUpdateCount = updateAuthSources.execute();
-        int nonAuthSourceUpdateCount = updateNonAuthSources.execute();
-        return authSourceUpdateCount + nonAuthSourceUpdateCount;
-    }
-
-
     @Override
     public List<DataTypeUsageCharacteristics> findDatatypeUsageCharacteristics(EntityReference ref) {
 
@@ -330,6 +281,43 @@ public class LogicalFlowDecoratorDao extends DataTypeDecoratorDao {
     }
 
 
+    /**
+     * Sets the rating of each decorator (keyed by decorator id) using
+     * batches of a single prepared update statement.
+     *
+     * @return total number of rows updated
+     */
+    public int updateRatingsByIds(Map<Long, AuthoritativenessRating> ratingsByDecoratorId) {
+        checkNotNull(ratingsByDecoratorId, "ratingsByDecoratorId cannot be null");
+
+        int updateCount = 0;
+        BatchBindStep batch = null;
+        int batchSize = 0;
+
+        for (Map.Entry<Long, AuthoritativenessRating> entry : ratingsByDecoratorId.entrySet()) {
+            if (batch == null) {
+                batch = dsl.batch(dsl
+                        .update(LOGICAL_FLOW_DECORATOR)
+                        .set(LOGICAL_FLOW_DECORATOR.RATING, (String) null)
+                        .where(LOGICAL_FLOW_DECORATOR.ID.eq((Long) null)));
+            }
+            batch.bind(entry.getValue().name(), entry.getKey());
+
+            if (++batchSize == UPDATE_BATCH_SIZE) {
+                updateCount += countBatchResults(batch.execute());
+                batch = null;
+                batchSize = 0;
+            }
+        }
+
+        if (batch != null) {
+            updateCount += countBatchResults(batch.execute());
+        }
+
+        return updateCount;
+    }
+
+
     public int updateRatingsByCondition(AuthoritativenessRating rating, Condition condition) {
         return dsl
                 .update(LOGICAL_FLOW_DECORATOR)
@@ -21,12 +21,14 @@ package com.khartec.waltz.data.entity_hierarchy;
 import com.khartec.waltz.data.JooqUtilities;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyDelta;
 import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
 import com.khartec.waltz.model.entity_hierarchy.ImmutableEntityHierarchyItem;
 import com.khartec.waltz.model.tally.Tally;
 import com.khartec.waltz.schema.tables.EntityHierarchy;
 import com.khartec.waltz.schema.tables.records.ApplicationRecord;
 import com.khartec.waltz.schema.tables.records.EntityHierarchyRecord;
+import org.jooq.BatchBindStep;
 import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Record;
@@ -37,12 +39,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.data.JooqUtilities.TO_STRING_TALLY;
+import static com.khartec.waltz.data.JooqUtilities.countBatchResults;
 import static com.khartec.waltz.schema.tables.EntityHierarchy.ENTITY_HIERARCHY;
 
 @Repository
@@ -52,6 +59,8 @@ public class EntityHierarchyDao {
 
     private static final EntityHierarchy eh = ENTITY_HIERARCHY;
 
+    private static final int BATCH_SIZE = 1000;
+
     private static final Function<EntityHierarchyItem, EntityHierarchyRecord> ITEM_TO_RECORD_MAPPER =
             item -> new EntityHierarchyRecord(
                     item.kind().name(),
@@ -103,6 +112,81 @@ public class EntityHierarchyDao {
     }
 
 
+    /**
+     * Applies the given delta within a single transaction, using batched
+     * statements for each of the deletes, updates and inserts.
+     *
+     * @return number of rows affected
+     */
+    public int applyDelta(EntityKind kind, EntityHierarchyDelta delta) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(delta, "delta cannot be null");
+
+        LOG.info("Applying hierarchy delta for kind: {}, inserts: {}, updates: {}, deletes: {}",
+                kind,
+                delta.inserts().size(),
+                delta.updates().size(),
+                delta.deletes().size());
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            int deleteCount = executeBatched(
+                    delta.deletes(),
+                    () -> txDsl.batch(txDsl
+                            .deleteFrom(eh)
+                            .where(eh.KIND.eq(kind.name()))
+                            .and(eh.ID.eq((Long) null))
+                            .and(eh.ANCESTOR_ID.eq((Long) null))),
+                    (batch, item) -> batch.bind(
+                            kind.name(),
+                            item.id().get(),
+                            item.parentId().get()));
+
+            int updateCount = executeBatched(
+                    delta.updates(),
+                    () -> txDsl.batch(txDsl
+                            .update(eh)
+                            .set(eh.LEVEL, (Integer) null)
+                            .where(eh.KIND.eq(kind.name()))
+                            .and(eh.ID.eq((Long) null))
+                            .and(eh.ANCESTOR_ID.eq((Long) null))),
+                    (batch, item) -> batch.bind(
+                            item.level(),
+                            kind.name(),
+                            item.id().get(),
+                            item.parentId().get()));
+
+            List<EntityHierarchyRecord> records = map(delta.inserts(), ITEM_TO_RECORD_MAPPER);
+            int insertCount = records.isEmpty()
+                    ? 0
+                    : countBatchResults(txDsl.batchInsert(records).execute());
+
+            return deleteCount + updateCount + insertCount;
+        });
+    }
+
+
+    public List<EntityHierarchyItem> findByIds(EntityKind kind, Collection<Long> ids) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(ids, "ids cannot be null");
+
+        List<Long> idList = new ArrayList<>(ids);
+        List<EntityHierarchyItem> result = new ArrayList<>();
+
+        for (int i = 0; i < idList.size(); i += BATCH_SIZE) {
+            List<Long> chunk = idList.subList(i, Math.min(i + BATCH_SIZE, idList.size()));
+            result.addAll(dsl
+                    .selectFrom(ENTITY_HIERARCHY)
+                    .where(ENTITY_HIERARCHY.KIND.eq(kind.name()))
+                    .and(ENTITY_HIERARCHY.ID.in(chunk))
+                    .fetch(TO_DOMAIN_MAPPER));
+        }
+
+        return result;
+    }
+
+
     public List<Tally<String>> tallyByKind() {
         return JooqUtilities.calculateStringTallies(dsl, eh, eh.KIND, DSL.trueCondition());
     }
@@ -127,4 +211,21 @@ public class EntityHierarchyDao {
                 .fetch(TO_DOMAIN_MAPPER);
     }
 
+
+
+    // -- HELPERS ---
+
+    private static int executeBatched(List<EntityHierarchyItem> items,
+                                      Supplier<BatchBindStep> batchFactory,
+                                      BiConsumer<BatchBindStep, EntityHierarchyItem> binder) {
+        int count = 0;
+        for (int i = 0; i < items.size(); i += BATCH_SIZE) {
+            BatchBindStep batch = batchFactory.get();
+            items.subList(i, Math.min(i + BATCH_SIZE, items.size()))
+                    .forEach(item -> binder.accept(batch, item));
+            count += countBatchResults(batch.execute());
+        }
+        return count;
+    }
+
 }
@@ -0,0 +1,282 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data.entity_search;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.ImmutableEntitySearchDocument;
+import com.khartec.waltz.model.ImmutableEntityReference;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.schema.tables.Actor.ACTOR;
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static com.khartec.waltz.schema.tables.ChangeInitiative.CHANGE_INITIATIVE;
+import static com.khartec.waltz.schema.tables.ChangeLog.CHANGE_LOG;
+import static com.khartec.waltz.schema.tables.DataType.DATA_TYPE;
+import static com.khartec.waltz.schema.tables.EntityAlias.ENTITY_ALIAS;
+import static com.khartec.waltz.schema.tables.LogicalDataElement.LOGICAL_DATA_ELEMENT;
+import static com.khartec.waltz.schema.tables.Measurable.MEASURABLE;
+import static com.khartec.waltz.schema.tables.OrganisationalUnit.ORGANISATIONAL_UNIT;
+import static com.khartec.waltz.schema.tables.Person.PERSON;
+import static com.khartec.waltz.schema.tables.PhysicalSpecification.PHYSICAL_SPECIFICATION;
+import static com.khartec.waltz.schema.tables.Roadmap.ROADMAP;
+import static com.khartec.waltz.schema.tables.ServerInformation.SERVER_INFORMATION;
+import static com.khartec.waltz.schema.tables.SoftwarePackage.SOFTWARE_PACKAGE;
+import static java.util.stream.Collectors.*;
+
+
+/**
+ * Loads the searchable fields (names, codes and aliases) of entities for
+ * the in-memory search index.
+ */
+@Repository
+public class EntitySearchIndexDao {
+
+    private static class SearchSource {
+        private final Table<?> table;
+        private final Field<Long> id;
+        private final Field<String> name;
+        private final Field<String> description;
+        private final Field<String> lifecycleStatus;
+        private final Field<Boolean> isRemoved;
+        private final List<Field<String>> codes;
+
+        private SearchSource(Table<?> table,
+                             Field<Long> id,
+                             Field<String> name,
+                             Field<String> description,
+                             Field<String> lifecycleStatus,
+                             Field<Boolean> isRemoved,
+                             List<Field<String>> codes) {
+            this.table = table;
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.lifecycleStatus = lifecycleStatus;
+            this.isRemoved = isRemoved;
+            this.codes = codes;
+        }
+    }
+
+
+    private static final Map<EntityKind, SearchSource> SOURCES = new EnumMap<>(EntityKind.class);
+
+    static {
+        SOURCES.put(EntityKind.ACTOR, new SearchSource(
+                ACTOR, ACTOR.ID, ACTOR.NAME, ACTOR.DESCRIPTION, null, null,
+                newArrayList()));
+        SOURCES.put(EntityKind.APPLICATION, new SearchSource(
+                APPLICATION, APPLICATION.ID, APPLICATION.NAME, APPLICATION.DESCRIPTION, APPLICATION.ENTITY_LIFECYCLE_STATUS, null,
+                newArrayList(APPLICATION.ASSET_CODE)));
+        SOURCES.put(EntityKind.CHANGE_INITIATIVE, new SearchSource(
+                CHANGE_INITIATIVE, CHANGE_INITIATIVE.ID, CHANGE_INITIATIVE.NAME, CHANGE_INITIATIVE.DESCRIPTION, null, null,
+                newArrayList(CHANGE_INITIATIVE.EXTERNAL_ID)));
+        SOURCES.put(EntityKind.DATA_TYPE, new SearchSource(
+                DATA_TYPE, DATA_TYPE.ID, DATA_TYPE.NAME, DATA_TYPE.DESCRIPTION, null, null,
+                newArrayList(DATA_TYPE.CODE)));
+        SOURCES.put(EntityKind.LOGICAL_DATA_ELEMENT, new SearchSource(
+                LOGICAL_DATA_ELEMENT, LOGICAL_DATA_ELEMENT.ID, LOGICAL_DATA_ELEMENT.NAME, LOGICAL_DATA_ELEMENT.DESCRIPTION, LOGICAL_DATA_ELEMENT.ENTITY_LIFECYCLE_STATUS, null,
+                newArrayList(LOGICAL_DATA_ELEMENT.EXTERNAL_ID)));
+        SOURCES.put(EntityKind.MEASURABLE, new SearchSource(
+                MEASURABLE, MEASURABLE.ID, MEASURABLE.NAME, MEASURABLE.DESCRIPTION, MEASURABLE.ENTITY_LIFECYCLE_STATUS, null,
+                newArrayList(MEASURABLE.EXTERNAL_ID)));
+        SOURCES.put(EntityKind.ORG_UNIT, new SearchSource(
+                ORGANISATIONAL_UNIT, ORGANISATIONAL_UNIT.ID, ORGANISATIONAL_UNIT.NAME, ORGANISATIONAL_UNIT.DESCRIPTION, null, null,
+                newArrayList(ORGANISATIONAL_UNIT.EXTERNAL_ID)));
+        SOURCES.put(EntityKind.PERSON, new SearchSource(
+                PERSON, PERSON.ID, PERSON.DISPLAY_NAME, null, null, PERSON.IS_REMOVED,
+                newArrayList(PERSON.EMAIL, PERSON.EMPLOYEE_ID, PERSON.USER_PRINCIPAL_NAME)));
+        SOURCES.put(EntityKind.PHYSICAL_SPECIFICATION, new SearchSource(
+                PHYSICAL_SPECIFICATION, PHYSICAL_SPECIFICATION.ID, PHYSICAL_SPECIFICATION.NAME, PHYSICAL_SPECIFICATION.DESCRIPTION, null, PHYSICAL_SPECIFICATION.IS_REMOVED,
+                newArrayList(PHYSICAL_SPECIFICATION.EXTERNAL_ID)));
+        SOURCES.put(EntityKind.ROADMAP, new SearchSource(
+                ROADMAP, ROADMAP.ID, ROADMAP.NAME, ROADMAP.DESCRIPTION, ROADMAP.ENTITY_LIFECYCLE_STATUS, null,
+                newArrayList()));
+        SOURCES.put(EntityKind.SERVER, new SearchSource(
+                SERVER_INFORMATION, SERVER_INFORMATION.ID, SERVER_INFORMATION.HOSTNAME, null, null, null,
+                newArrayList(SERVER_INFORMATION.EXTERNAL_ID)));
+        SOURCES.put(EntityKind.SOFTWARE, new SearchSource(
+                SOFTWARE_PACKAGE, SOFTWARE_PACKAGE.ID, SOFTWARE_PACKAGE.NAME, SOFTWARE_PACKAGE.DESCRIPTION, null, null,
+                newArrayList(SOFTWARE_PACKAGE.EXTERNAL_ID)));
+    }
+
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public EntitySearchIndexDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    public static Set<EntityKind> getSupportedKinds() {
+        return Collections.unmodifiableSet(SOURCES.keySet());
+    }
+
+
+    public List<EntitySearchDocument> findAll(EntityKind kind) {
+        return findWithCondition(kind, DSL.trueCondition(), ENTITY_ALIAS.KIND.eq(kind.name()));
+    }
+
+
+    public List<EntitySearchDocument> findByIds(EntityKind kind, Collection<Long> ids) {
+        checkNotNull(ids, "ids cannot be null");
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return findWithCondition(
+                kind,
+                getSource(kind).id.in(ids),
+                ENTITY_ALIAS.KIND.eq(kind.name()).and(ENTITY_ALIAS.ID.in(ids)));
+    }
+
+
+    public long getMaxChangeLogId() {
+        Integer maxId = dsl
+                .select(DSL.max(CHANGE_LOG.ID))
+                .from(CHANGE_LOG)
+                .fetchOne()
+                .value1();
+        return maxId == null ? 0 : maxId;
+    }
+
+
+    /**
+     * Returns the entities (grouped by kind) which have had change log entries
+     * recorded against them with ids in the range (afterId, uptoId].
+     */
+    public Map<EntityKind, Set<Long>> findChangedEntityIds(long afterId, long uptoId) {
+        Set<String> kindNames = SOURCES
+                .keySet()
+                .stream()
+                .map(Enum::name)
+                .collect(toSet());
+
+        return dsl
+                .selectDistinct(CHANGE_LOG.PARENT_KIND, CHANGE_LOG.PARENT_ID)
+                .from(CHANGE_LOG)
+                .where(CHANGE_LOG.ID.gt((int) afterId))
+                .and(CHANGE_LOG.ID.le((int) uptoId))
+                .and(CHANGE_LOG.PARENT_KIND.in(kindNames))
+                .fetch()
+                .stream()
+                .collect(groupingBy(
+                        r -> EntityKind.valueOf(r.get(CHANGE_LOG.PARENT_KIND)),
+                        () -> new EnumMap<>(EntityKind.class),
+                        mapping(r -> r.get(CHANGE_LOG.PARENT_ID), toSet())));
+    }
+
+
+    // -- HELPERS ---
+
+    private List<EntitySearchDocument> findWithCondition(EntityKind kind,
+                                                         Condition entityCondition,
+                                                         Condition aliasCondition) {
+        SearchSource source = getSource(kind);
+
+        Map<Long, List<String>> aliasesById = dsl
+                .select(ENTITY_ALIAS.ID, ENTITY_ALIAS.ALIAS)
+                .from(ENTITY_ALIAS)
+                .where(aliasCondition)
+                .fetch()
+                .stream()
+                .collect(groupingBy(
+                        r -> r.get(ENTITY_ALIAS.ID),
+                        mapping(r -> r.get(ENTITY_ALIAS.ALIAS), toList())));
+
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(source.id);
+        fields.add(source.name);
+        Optional.ofNullable(source.description).ifPresent(fields::add);
+        Optional.ofNullable(source.lifecycleStatus).ifPresent(fields::add);
+        Optional.ofNullable(source.isRemoved).ifPresent(fields::add);
+        fields.addAll(source.codes);
+
+        return dsl
+                .select(fields)
+                .from(source.table)
+                .where(entityCondition)
+                .fetch()
+                .stream()
+                .map(r -> mkDocument(kind, source, r, aliasesById))
+                .collect(toList());
+    }
+
+
+    private static EntitySearchDocument mkDocument(EntityKind kind,
+                                                   SearchSource source,
+                                                   Record r,
+                                                   Map<Long, List<String>> aliasesById) {
+        Long id = r.get(source.id);
+
+        List<String> codes = source.codes
+                .stream()
+                .map(r::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        return ImmutableEntitySearchDocument.builder()
+                .entityReference(ImmutableEntityReference.builder()
+                        .kind(kind)
+                        .id(id)
+                        .name(Optional.ofNullable(r.get(source.name)))
+                        .description(source.description == null ? null : r.get(source.description))
+                        .entityLifecycleStatus(readLifecycleStatus(source, r))
+                        .build())
+                .codes(codes)
+                .aliases(aliasesById.getOrDefault(id, Collections.emptyList()))
+                .build();
+    }
+
+
+    private static EntityLifecycleStatus readLifecycleStatus(SearchSource source, Record r) {
+        if (source.lifecycleStatus != null) {
+            return EntityLifecycleStatus.valueOf(r.get(source.lifecycleStatus));
+        } else if (source.isRemoved != null) {
+            return EntityLifecycleStatus.fromIsRemovedFlag(Boolean.TRUE.equals(r.get(source.isRemoved)));
+        } else {
+            return EntityLifecycleStatus.ACTIVE;
+        }
+    }
+
+
+    private static SearchSource getSource(EntityKind kind) {
+        checkNotNull(kind, "kind cannot be null");
+        SearchSource source = SOURCES.get(kind);
+        checkTrue(source != null, "Entity kind: %s is not supported by the search index", kind);
+        return source;
+    }
+
+}
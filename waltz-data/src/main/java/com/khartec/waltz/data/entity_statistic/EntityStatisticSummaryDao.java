@@ -29,7 +29,6 @@ import com.khartec.waltz.model.tally.TallyPack;
 import org.jooq.*;
 import org.jooq.impl.DSL;
 import org.jooq.impl.SQLDataType;
-import org.jooq.lambda.Unchecked;
 import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -41,7 +40,7 @@ import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
 import java.util.function.Function;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
@@ -144,15 +143,12 @@ public class EntityStatisticSummaryDao {
             return Collections.emptyList();
         }
 
-        List<Future<TallyPack<String>>> summaryFutures = statisticIds.stream()
-                .map(statId -> dbExecutorPool.submit(() ->
-                        generateWithNoRollup(statId, entityReference)))
+        List<Callable<TallyPack<String>>> summaries = statisticIds.stream()
+                .map(statId -> (Callable<TallyPack<String>>) () ->
+                        generateWithNoRollup(statId, entityReference))
                 .collect(toList());
 
-        return summaryFutures.stream()
-                .map(f -> Unchecked.supplier(f::get)
-                        .get())
-                .collect(toList());
+        return dbExecutorPool.invokeAll(summaries);
     }
 
 
@@ -282,15 +278,12 @@ public class EntityStatisticSummaryDao {
             return Collections.emptyList();
         }
 
-        List<Future<TallyPack<String>>> summaryFutures = statisticIds.stream()
-                .map(statId -> dbExecutorPool.submit(() ->
-                        generateSummary(statId, appIdSelector, aggregateField, toTally)))
+        List<Callable<TallyPack<String>>> summaries = statisticIds.stream()
+                .map(statId -> (Callable<TallyPack<String>>) () ->
+                        generateSummary(statId, appIdSelector, aggregateField, toTally))
                 .collect(toList());
 
-        return summaryFutures.stream()
-                .map(f -> Unchecked.supplier(f::get)
-                        .get())
-                .collect(toList());
+        return dbExecutorPool.invokeAll(summaries);
     }
 
 
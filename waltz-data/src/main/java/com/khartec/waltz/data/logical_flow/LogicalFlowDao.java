@@ -35,7 +35,9 @@ import org.springframework.stereotype.Repository;
 import java.sql.Timestamp;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.CollectionUtilities.map;
@@ -59,6 +61,8 @@ public class LogicalFlowDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(LogicalFlowDao.class);
 
+    private static final int STREAM_FETCH_SIZE = 1000;
+
     private static final Field<String> SOURCE_NAME_FIELD = InlineSelectFieldFactory.mkNameField(
             LOGICAL_FLOW.SOURCE_ENTITY_ID,
             LOGICAL_FLOW.SOURCE_ENTITY_KIND,
@@ -117,8 +121,7 @@ public class LogicalFlowDao {
     };
 
 
-    public static final Condition LOGICAL_NOT_REMOVED = LOGICAL_FLOW.IS_REMOVED.isFalse()
-            .and(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name()));
+    public static final Condition LOGICAL_NOT_REMOVED = mkLogicalNotRemoved(LOGICAL_FLOW);
 
     public static final Condition PHYSICAL_FLOW_NOT_REMOVED = PHYSICAL_FLOW.IS_REMOVED.isFalse()
             .and(PHYSICAL_FLOW.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name()));
@@ -128,6 +131,18 @@ public class LogicalFlowDao {
     private final DSLContext dsl;
 
 
+    /**
+     * Excludes removed flows.  Used by every query which lists or counts
+     * flows (including the flow stats and flow graph) so they all agree.
+     *
+     * @param flowTable  the logical flow table, or an alias of it
+     */
+    public static Condition mkLogicalNotRemoved(com.khartec.waltz.schema.tables.LogicalFlow flowTable) {
+        return flowTable.IS_REMOVED.isFalse()
+                .and(flowTable.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name()));
+    }
+
+
     @Autowired
     public LogicalFlowDao(DSLContext dsl) {
         checkNotNull(dsl, "dsl must not be null");
@@ -322,6 +337,28 @@ public class LogicalFlowDao {
     }
 
 
+    /**
+     * Lazy equivalent of {@link #findBySelector(Select)}, rows are mapped as
+     * the stream is consumed.  The stream is only valid whilst the consumer
+     * runs, it is read within a transaction as some drivers (e.g. Postgres)
+     * only honour the fetch size when auto-commit is disabled.  A pooled
+     * connection is held until the consumer returns so it should not block,
+     * e.g. on writes to a client.
+     */
+    public void streamBySelector(Select<Record1<Long>> flowIdSelector,
+                                 Consumer<Stream<LogicalFlow>> consumer) {
+        dsl.transaction(ctx -> {
+            try (Stream<LogicalFlow> flows = baseQuery(ctx.dsl())
+                    .where(LOGICAL_FLOW.ID.in(flowIdSelector))
+                    .fetchSize(STREAM_FETCH_SIZE)
+                    .fetchStream()
+                    .map(TO_DOMAIN_MAPPER::map)) {
+                consumer.accept(flows);
+            }
+        });
+    }
+
+
     public Integer cleanupOrphans() {
         Select<Record1<Long>> appIds = DSL
                 .select(APPLICATION.ID)
@@ -398,6 +435,11 @@ public class LogicalFlowDao {
     }
 
     private SelectJoinStep<Record> baseQuery() {
+        return baseQuery(dsl);
+    }
+
+
+    private static SelectJoinStep<Record> baseQuery(DSLContext dsl) {
         return dsl
                 .select(LOGICAL_FLOW.fields())
                 .select(SOURCE_NAME_FIELD, TARGET_NAME_FIELD)
@@ -0,0 +1,153 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.data.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.MapUtilities.groupBy;
+import static com.khartec.waltz.model.EntityKind.DATA_TYPE;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
+import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
+
+
+/**
+ * Loads the minimal details (endpoints and data types) of active logical
+ * flows needed to build the in-memory flow graph.
+ */
+@Repository
+public class LogicalFlowGraphDao {
+
+    private static final int FETCH_SIZE = 5000;
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public LogicalFlowGraphDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    public List<LogicalFlowGraphEdge> findAllActive() {
+        return findByCondition(LogicalFlowDao.LOGICAL_NOT_REMOVED);
+    }
+
+
+    /**
+     * @param flowIds  flows to load, flows which are not active are omitted from the result
+     */
+    public List<LogicalFlowGraphEdge> findActiveByFlowIds(Collection<Long> flowIds) {
+        if (flowIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return findByCondition(LogicalFlowDao.LOGICAL_NOT_REMOVED.and(LOGICAL_FLOW.ID.in(flowIds)));
+    }
+
+
+    /**
+     * Finds active flows touching any of the given entities, used to answer
+     * lineage queries a hop at a time before the graph has been loaded.
+     *
+     * @param refs  entities to find flows for
+     * @param inbound  include flows targeting the entities
+     * @param outbound  include flows sourced from the entities
+     */
+    public List<LogicalFlowGraphEdge> findActiveByEndpoints(Collection<EntityReference> refs,
+                                                            boolean inbound,
+                                                            boolean outbound) {
+        if (refs.isEmpty() || ! (inbound || outbound)) {
+            return Collections.emptyList();
+        }
+
+        Condition endpointCondition = DSL.falseCondition();
+        for (Map.Entry<EntityKind, Collection<Long>> idsForKind : groupBy(EntityReference::kind, EntityReference::id, refs).entrySet()) {
+            String kind = idsForKind.getKey().name();
+            Collection<Long> ids = idsForKind.getValue();
+            if (inbound) {
+                endpointCondition = endpointCondition.or(LOGICAL_FLOW.TARGET_ENTITY_KIND.eq(kind)
+                        .and(LOGICAL_FLOW.TARGET_ENTITY_ID.in(ids)));
+            }
+            if (outbound) {
+                endpointCondition = endpointCondition.or(LOGICAL_FLOW.SOURCE_ENTITY_KIND.eq(kind)
+                        .and(LOGICAL_FLOW.SOURCE_ENTITY_ID.in(ids)));
+            }
+        }
+
+        return findByCondition(LogicalFlowDao.LOGICAL_NOT_REMOVED.and(endpointCondition));
+    }
+
+
+    // -- HELPERS ---
+
+    private List<LogicalFlowGraphEdge> findByCondition(Condition condition) {
+        Map<Long, Set<Long>> dataTypesByFlowId = new HashMap<>();
+        dsl.select(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID, LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_ID)
+                .from(LOGICAL_FLOW_DECORATOR)
+                .innerJoin(LOGICAL_FLOW).on(LOGICAL_FLOW.ID.eq(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID))
+                .where(condition)
+                .and(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_KIND.eq(DATA_TYPE.name()))
+                .fetchSize(FETCH_SIZE)
+                .fetch()
+                .forEach(r -> dataTypesByFlowId
+                        .computeIfAbsent(r.value1(), k -> new HashSet<>())
+                        .add(r.value2()));
+
+        List<LogicalFlowGraphEdge> edges = new ArrayList<>();
+        dsl.select(
+                    LOGICAL_FLOW.ID,
+                    LOGICAL_FLOW.SOURCE_ENTITY_KIND,
+                    LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                    LOGICAL_FLOW.TARGET_ENTITY_KIND,
+                    LOGICAL_FLOW.TARGET_ENTITY_ID)
+                .from(LOGICAL_FLOW)
+                .where(condition)
+                .fetchSize(FETCH_SIZE)
+                .fetch()
+                .forEach(r -> edges.add(ImmutableLogicalFlowGraphEdge.builder()
+                        .flowId(r.value1())
+                        .source(mkRef(EntityKind.valueOf(r.value2()), r.value3()))
+                        .target(mkRef(EntityKind.valueOf(r.value4()), r.value5()))
+                        .dataTypeIds(dataTypesByFlowId.getOrDefault(r.value1(), Collections.emptySet()))
+                        .build()));
+
+        return edges;
+    }
+
+}
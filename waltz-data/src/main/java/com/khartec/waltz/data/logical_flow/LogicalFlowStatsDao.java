@@ -19,6 +19,7 @@
 package com.khartec.waltz.data.logical_flow;
 
 import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowMeasures;
@@ -31,7 +32,6 @@ import com.khartec.waltz.schema.tables.LogicalFlow;
 import com.khartec.waltz.schema.tables.LogicalFlowDecorator;
 import org.jooq.*;
 import org.jooq.impl.DSL;
-import org.jooq.lambda.Unchecked;
 import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -39,13 +39,11 @@ import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.data.JooqUtilities.safeGet;
 import static com.khartec.waltz.model.EntityKind.DATA_TYPE;
-import static com.khartec.waltz.model.EntityLifecycleStatus.REMOVED;
 import static com.khartec.waltz.model.EntityReference.mkRef;
 import static com.khartec.waltz.schema.tables.Application.APPLICATION;
 import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
@@ -66,7 +64,7 @@ public class LogicalFlowStatsDao {
             lf.SOURCE_ENTITY_KIND.eq(inline(EntityKind.APPLICATION.name()))
                 .and(lf.TARGET_ENTITY_KIND.eq(inline(EntityKind.APPLICATION.name())));
 
-    private static final Condition NOT_REMOVED = lf.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name());
+    private static final Condition NOT_REMOVED = LogicalFlowDao.mkLogicalNotRemoved(lf);
 
     private final DBExecutorPoolInterface dbExecutorPool;
 
@@ -102,17 +100,19 @@ public class LogicalFlowStatsDao {
                     .from(APPLICATION)
                     .where(dsl.renderInlined(APPLICATION.ID.in(appIdSelector)));
 
-        Future<Integer> inAppCount = dbExecutorPool.submit(() -> inAppCounter.fetchOne().value1());
-        Future<Integer> outAppCount = dbExecutorPool.submit(() -> outAppCounter.fetchOne().value1());
-        Future<Integer> intraAppCount = dbExecutorPool.submit(() -> intraAppCounter.fetchOne().value1());
+        DBFanOut fanOut = dbExecutorPool.fanOut();
 
-        Supplier<ImmutableLogicalFlowMeasures> appCountSupplier = Unchecked.supplier(() -> ImmutableLogicalFlowMeasures.builder()
+        Supplier<Integer> inAppCount = fanOut.fork(() -> inAppCounter.fetchOne().value1());
+        Supplier<Integer> outAppCount = fanOut.fork(() -> outAppCounter.fetchOne().value1());
+        Supplier<Integer> intraAppCount = fanOut.fork(() -> intraAppCounter.fetchOne().value1());
+
+        fanOut.join();
+
+        return ImmutableLogicalFlowMeasures.builder()
                 .inbound(inAppCount.get())
                 .outbound(outAppCount.get())
                 .intra(intraAppCount.get())
-                .build());
-
-        return appCountSupplier.get();
+                .build();
     }
 
 
@@ -38,7 +38,9 @@ import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.DateTimeUtilities.toLocalDateTime;
@@ -55,6 +57,8 @@ import static java.lang.String.format;
 @Repository
 public class MeasurableRatingDao {
 
+    private static final int STREAM_FETCH_SIZE = 1000;
+
     private static final Condition APP_JOIN_CONDITION = APPLICATION.ID.eq(MEASURABLE_RATING.ENTITY_ID)
             .and(MEASURABLE_RATING.ENTITY_KIND.eq(EntityKind.APPLICATION.name()));
 
@@ -228,6 +232,28 @@ public class MeasurableRatingDao {
     }
 
 
+    /**
+     * Lazy equivalent of {@link #findByCategory(long)}, rows are mapped as
+     * the stream is consumed.  The stream is only valid whilst the consumer
+     * runs, it is read within a transaction as some drivers (e.g. Postgres)
+     * only honour the fetch size when auto-commit is disabled.  A pooled
+     * connection is held until the consumer returns so it should not block,
+     * e.g. on writes to a client.
+     */
+    public void streamByCategory(long id, Consumer<Stream<MeasurableRating>> consumer) {
+        dsl.transaction(ctx -> {
+            try (Stream<MeasurableRating> ratings = mkBaseQuery(ctx.dsl())
+                    .innerJoin(MEASURABLE).on(MEASURABLE_RATING.MEASURABLE_ID.eq(MEASURABLE.ID))
+                    .where(MEASURABLE.MEASURABLE_CATEGORY_ID.eq(id))
+                    .fetchSize(STREAM_FETCH_SIZE)
+                    .fetchStream()
+                    .map(TO_DOMAIN_MAPPER::map)) {
+                consumer.accept(ratings);
+            }
+        });
+    }
+
+
     // --- stats
 
     public List<Tally<Long>> tallyByMeasurableCategoryId(long categoryId) {
@@ -305,6 +331,11 @@ public class MeasurableRatingDao {
     // --- utils
 
     private SelectJoinStep<Record> mkBaseQuery() {
+        return mkBaseQuery(dsl);
+    }
+
+
+    private static SelectJoinStep<Record> mkBaseQuery(DSLContext dsl) {
         return dsl
                 .select(MEASURABLE_RATING.fields())
                 .select(ENTITY_NAME_FIELD)
@@ -0,0 +1,643 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.data.physical_flow;
+
+import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
+import com.khartec.waltz.data.physical_specification.PhysicalSpecificationDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.UserTimestamp;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlow;
+import com.khartec.waltz.model.physical_flow.ImmutablePhysicalFlow;
+import com.khartec.waltz.model.physical_flow.ImmutablePhysicalFlowBulkUploadResult;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowBulkUploadResult;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowParsed;
+import com.khartec.waltz.model.physical_specification.ImmutablePhysicalSpecification;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import com.khartec.waltz.schema.tables.records.LogicalFlowDecoratorRecord;
+import com.khartec.waltz.schema.tables.records.LogicalFlowRecord;
+import com.khartec.waltz.schema.tables.records.PhysicalFlowRecord;
+import com.khartec.waltz.schema.tables.records.PhysicalSpecDataTypeRecord;
+import com.khartec.waltz.schema.tables.records.PhysicalSpecificationRecord;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.jooq.lambda.tuple.Tuple6;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.data.physical_specification.PhysicalSpecificationDao.PHYSICAL_SPEC_NOT_REMOVED;
+import static com.khartec.waltz.model.EntityKind.DATA_TYPE;
+import static com.khartec.waltz.model.EntityLifecycleStatus.ACTIVE;
+import static com.khartec.waltz.model.EntityLifecycleStatus.REMOVED;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
+import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
+import static com.khartec.waltz.schema.tables.PhysicalFlow.PHYSICAL_FLOW;
+import static com.khartec.waltz.schema.tables.PhysicalSpecDataType.PHYSICAL_SPEC_DATA_TYPE;
+import static com.khartec.waltz.schema.tables.PhysicalSpecification.PHYSICAL_SPECIFICATION;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Set based resolution and creation of the logical flows, specifications,
+ * data type decorations and physical flows described by a physical flow
+ * upload.  Existing entities are found with a handful of (chunked) queries
+ * and missing entities are created using batched inserts, rather than
+ * issuing several queries for each uploaded row.
+ */
+@Repository
+public class PhysicalFlowUploadDao {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final String PROVENANCE = "waltz";
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public PhysicalFlowUploadDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    /**
+     * Set based equivalent of {@link PhysicalFlowDao#getByParsedFlow(PhysicalFlowParsed)}.
+     *
+     * @param flows  fully resolved (i.e. valid) parsed flows
+     * @return  ids of existing physical flows, keyed by the parsed flow they match.
+     *          Flows without a match are not included.
+     */
+    public Map<PhysicalFlowParsed, Long> findExistingPhysicalFlowIds(Collection<PhysicalFlowParsed> flows) {
+        checkNotNull(flows, "flows cannot be null");
+
+        Set<Long> ownerIds = flows.stream().map(f -> f.owner().id()).collect(toSet());
+        Map<List<Object>, Long> idsByKey = new HashMap<>();
+
+        for (List<Long> chunk : chunk(ownerIds)) {
+            dsl.select(
+                        LOGICAL_FLOW.SOURCE_ENTITY_KIND,
+                        LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                        LOGICAL_FLOW.TARGET_ENTITY_KIND,
+                        LOGICAL_FLOW.TARGET_ENTITY_ID,
+                        PHYSICAL_SPECIFICATION.OWNING_ENTITY_KIND,
+                        PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID,
+                        PHYSICAL_SPECIFICATION.FORMAT,
+                        PHYSICAL_SPECIFICATION.NAME,
+                        PHYSICAL_FLOW.BASIS_OFFSET,
+                        PHYSICAL_FLOW.FREQUENCY,
+                        PHYSICAL_FLOW.TRANSPORT,
+                        PHYSICAL_FLOW.CRITICALITY,
+                        PHYSICAL_SPEC_DATA_TYPE.DATA_TYPE_ID,
+                        PHYSICAL_FLOW.ID)
+                    .from(PHYSICAL_FLOW)
+                    .innerJoin(LOGICAL_FLOW).on(LOGICAL_FLOW.ID.eq(PHYSICAL_FLOW.LOGICAL_FLOW_ID))
+                    .innerJoin(PHYSICAL_SPECIFICATION).on(PHYSICAL_SPECIFICATION.ID.eq(PHYSICAL_FLOW.SPECIFICATION_ID))
+                    .innerJoin(PHYSICAL_SPEC_DATA_TYPE).on(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID.eq(PHYSICAL_SPECIFICATION.ID))
+                    .where(PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID.in(chunk))
+                    .and(PHYSICAL_SPECIFICATION.IS_REMOVED.isFalse())
+                    .and(PhysicalFlowDao.PHYSICAL_FLOW_NOT_REMOVED)
+                    .and(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name()))
+                    .fetch()
+                    .forEach(r -> idsByKey.putIfAbsent(
+                            mkParsedFlowKey(
+                                    mkRef(EntityKind.valueOf(r.value1()), r.value2()),
+                                    mkRef(EntityKind.valueOf(r.value3()), r.value4()),
+                                    mkRef(EntityKind.valueOf(r.value5()), r.value6()),
+                                    r.value7(),
+                                    r.value8(),
+                                    r.value9(),
+                                    r.value10(),
+                                    r.value11(),
+                                    r.value12(),
+                                    r.value13()),
+                            r.value14()));
+        }
+
+        Map<PhysicalFlowParsed, Long> result = new HashMap<>();
+        flows.forEach(f -> Optional
+                .ofNullable(idsByKey.get(mkParsedFlowKey(f)))
+                .ifPresent(id -> result.put(f, id)));
+        return result;
+    }
+
+
+    /**
+     * Finds or creates everything needed to represent the given flows, within
+     * a single transaction:
+     *
+     * <ol>
+     *     <li>logical flows (restoring removed flows where possible)</li>
+     *     <li>specifications</li>
+     *     <li>specification data types</li>
+     *     <li>logical flow data types, including those implied by specifications
+     *     gaining new data types (mirroring the behaviour of the data type
+     *     decorator service)</li>
+     *     <li>physical flows</li>
+     * </ol>
+     *
+     * New logical flow data types are given a rating of
+     * <code>NO_OPINION</code>, callers are expected to calculate the
+     * actual ratings once the transaction has committed.
+     *
+     * @param flows  fully resolved (i.e. valid) parsed flows
+     * @param username  who is performing the upload
+     */
+    public PhysicalFlowBulkUploadResult upload(List<PhysicalFlowParsed> flows, String username) {
+        checkNotNull(flows, "flows cannot be null");
+        checkNotNull(username, "username cannot be null");
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+            LocalDateTime now = nowUtc();
+            ImmutablePhysicalFlowBulkUploadResult.Builder result = ImmutablePhysicalFlowBulkUploadResult.builder();
+
+            Map<Tuple2<EntityReference, EntityReference>, Long> logicalFlowIds = resolveLogicalFlows(tx, flows, username, now, result);
+            Map<Tuple3<EntityReference, String, String>, Long> specIds = resolveSpecifications(tx, flows, username, now, result);
+
+            Map<Long, Set<Long>> addedSpecDataTypes = addSpecificationDataTypes(tx, flows, specIds, username, now);
+
+            Map<Long, Set<Long>> requiredLogicalDataTypes = new HashMap<>();
+            flows.forEach(f -> requiredLogicalDataTypes
+                    .computeIfAbsent(logicalFlowIds.get(mkLogicalFlowKey(f)), k -> new HashSet<>())
+                    .add(f.dataType().id()));
+            addImpliedLogicalFlowDataTypes(tx, addedSpecDataTypes, requiredLogicalDataTypes);
+
+            Map<Long, Set<Long>> addedLogicalDataTypes = addLogicalFlowDataTypes(tx, requiredLogicalDataTypes, username, now);
+
+            List<Long> physicalFlowIds = resolvePhysicalFlows(tx, flows, logicalFlowIds, specIds, username, now, result);
+
+            return result
+                    .physicalFlowIds(physicalFlowIds)
+                    .logicalFlowIds(logicalFlowIds.values())
+                    .addedSpecificationDataTypes(addedSpecDataTypes)
+                    .addedLogicalFlowDataTypes(addedLogicalDataTypes)
+                    .build();
+        });
+    }
+
+
+    // -- HELPERS ---
+
+    private Map<Tuple2<EntityReference, EntityReference>, Long> resolveLogicalFlows(DSLContext tx,
+                                                                                   List<PhysicalFlowParsed> flows,
+                                                                                   String username,
+                                                                                   LocalDateTime now,
+                                                                                   ImmutablePhysicalFlowBulkUploadResult.Builder result) {
+        Set<Tuple2<EntityReference, EntityReference>> required = flows
+                .stream()
+                .map(PhysicalFlowUploadDao::mkLogicalFlowKey)
+                .collect(toSet());
+
+        Set<Long> removedIds = new HashSet<>();
+        Map<Tuple2<EntityReference, EntityReference>, Long> existing = fetchLogicalFlowIds(tx, required, removedIds);
+
+        for (List<Long> chunk : chunk(removedIds)) {
+            tx.update(LOGICAL_FLOW)
+                    .set(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS, ACTIVE.name())
+                    .set(LOGICAL_FLOW.IS_REMOVED, false)
+                    .set(LOGICAL_FLOW.LAST_UPDATED_BY, username)
+                    .set(LOGICAL_FLOW.LAST_UPDATED_AT, Timestamp.valueOf(now))
+                    .where(LOGICAL_FLOW.ID.in(chunk))
+                    .execute();
+        }
+
+        List<LogicalFlowRecord> toCreate = required
+                .stream()
+                .filter(k -> ! existing.containsKey(k))
+                .map(k -> LogicalFlowDao.TO_RECORD_MAPPER.apply(
+                        ImmutableLogicalFlow.builder()
+                                .source(k.v1)
+                                .target(k.v2)
+                                .lastUpdatedBy(username)
+                                .lastUpdatedAt(now)
+                                .provenance(PROVENANCE)
+                                .created(UserTimestamp.mkForUser(username, now))
+                                .build(),
+                        tx))
+                .collect(toList());
+
+        result.logicalFlowsRestored(removedIds.size())
+                .logicalFlowsCreated(toCreate.size());
+
+        if (toCreate.isEmpty()) {
+            return existing;
+        }
+
+        tx.batchInsert(toCreate).execute();
+        return fetchLogicalFlowIds(tx, required, new HashSet<>());
+    }
+
+
+    private Map<Tuple2<EntityReference, EntityReference>, Long> fetchLogicalFlowIds(DSLContext tx,
+                                                                                   Set<Tuple2<EntityReference, EntityReference>> required,
+                                                                                   Set<Long> removedIds) {
+        Set<Long> sourceIds = required.stream().map(k -> k.v1.id()).collect(toSet());
+        Map<Tuple2<EntityReference, EntityReference>, Long> idsByKey = new HashMap<>();
+
+        for (List<Long> chunk : chunk(sourceIds)) {
+            tx.select(
+                        LOGICAL_FLOW.ID,
+                        LOGICAL_FLOW.SOURCE_ENTITY_KIND,
+                        LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                        LOGICAL_FLOW.TARGET_ENTITY_KIND,
+                        LOGICAL_FLOW.TARGET_ENTITY_ID,
+                        LOGICAL_FLOW.IS_REMOVED,
+                        LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS)
+                    .from(LOGICAL_FLOW)
+                    .where(LOGICAL_FLOW.SOURCE_ENTITY_ID.in(chunk))
+                    .fetch()
+                    .forEach(r -> {
+                        Tuple2<EntityReference, EntityReference> key = tuple(
+                                mkRef(EntityKind.valueOf(r.value2()), r.value3()),
+                                mkRef(EntityKind.valueOf(r.value4()), r.value5()));
+
+                        if (required.contains(key) && idsByKey.putIfAbsent(key, r.value1()) == null) {
+                            if (r.value6() || REMOVED.name().equals(r.value7())) {
+                                removedIds.add(r.value1());
+                            }
+                        }
+                    });
+        }
+
+        return idsByKey;
+    }
+
+
+    private Map<Tuple3<EntityReference, String, String>, Long> resolveSpecifications(DSLContext tx,
+                                                                                     List<PhysicalFlowParsed> flows,
+                                                                                     String username,
+                                                                                     LocalDateTime now,
+                                                                                     ImmutablePhysicalFlowBulkUploadResult.Builder result) {
+        // first flow describing a spec determines its details
+        Map<Tuple3<EntityReference, String, String>, PhysicalFlowParsed> required = new LinkedHashMap<>();
+        flows.forEach(f -> required.putIfAbsent(mkSpecKey(f), f));
+
+        Map<Tuple3<EntityReference, String, String>, Long> existing = fetchSpecificationIds(tx, required.keySet());
+
+        List<PhysicalSpecificationRecord> toCreate = required
+                .entrySet()
+                .stream()
+                .filter(e -> ! existing.containsKey(e.getKey()))
+                .map(e -> PhysicalSpecificationDao.TO_RECORD_MAPPER.apply(
+                        ImmutablePhysicalSpecification.builder()
+                                .owningEntity(e.getValue().owner())
+                                .format(e.getValue().format())
+                                .name(e.getValue().name())
+                                .externalId(Optional.ofNullable(e.getValue().specExternalId()).orElse(""))
+                                .description(Optional.ofNullable(e.getValue().specDescription()).orElse(""))
+                                .lastUpdatedBy(username)
+                                .lastUpdatedAt(now)
+                                .provenance(PROVENANCE)
+                                .created(UserTimestamp.mkForUser(username, now))
+                                .build(),
+                        tx))
+                .collect(toList());
+
+        result.specificationsCreated(toCreate.size());
+
+        if (toCreate.isEmpty()) {
+            return existing;
+        }
+
+        tx.batchInsert(toCreate).execute();
+        return fetchSpecificationIds(tx, required.keySet());
+    }
+
+
+    private Map<Tuple3<EntityReference, String, String>, Long> fetchSpecificationIds(DSLContext tx,
+                                                                                     Set<Tuple3<EntityReference, String, String>> required) {
+        Set<Long> ownerIds = required.stream().map(k -> k.v1.id()).collect(toSet());
+        Map<Tuple3<EntityReference, String, String>, Long> idsByKey = new HashMap<>();
+
+        for (List<Long> chunk : chunk(ownerIds)) {
+            tx.select(
+                        PHYSICAL_SPECIFICATION.ID,
+                        PHYSICAL_SPECIFICATION.OWNING_ENTITY_KIND,
+                        PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID,
+                        PHYSICAL_SPECIFICATION.FORMAT,
+                        PHYSICAL_SPECIFICATION.NAME)
+                    .from(PHYSICAL_SPECIFICATION)
+                    .where(PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID.in(chunk))
+                    .and(PHYSICAL_SPEC_NOT_REMOVED)
+                    .orderBy(PHYSICAL_SPECIFICATION.ID)
+                    .fetch()
+                    .forEach(r -> {
+                        Tuple3<EntityReference, String, String> key = tuple(
+                                mkRef(EntityKind.valueOf(r.value2()), r.value3()),
+                                r.value4(),
+                                r.value5());
+
+                        if (required.contains(key)) {
+                            idsByKey.putIfAbsent(key, r.value1());
+                        }
+                    });
+        }
+
+        return idsByKey;
+    }
+
+
+    private Map<Long, Set<Long>> addSpecificationDataTypes(DSLContext tx,
+                                                           List<PhysicalFlowParsed> flows,
+                                                           Map<Tuple3<EntityReference, String, String>, Long> specIds,
+                                                           String username,
+                                                           LocalDateTime now) {
+        Map<Long, Set<Long>> required = new HashMap<>();
+        flows.forEach(f -> required
+                .computeIfAbsent(specIds.get(mkSpecKey(f)), k -> new HashSet<>())
+                .add(f.dataType().id()));
+
+        Map<Long, Set<Long>> missing = findMissing(
+                required,
+                chunk -> tx
+                        .select(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID, PHYSICAL_SPEC_DATA_TYPE.DATA_TYPE_ID)
+                        .from(PHYSICAL_SPEC_DATA_TYPE)
+                        .where(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID.in(chunk))
+                        .fetch()
+                        .map(r -> tuple(r.value1(), r.value2())));
+
+        List<PhysicalSpecDataTypeRecord> toCreate = new ArrayList<>();
+        missing.forEach((specId, dataTypeIds) -> dataTypeIds.forEach(dataTypeId -> {
+            PhysicalSpecDataTypeRecord record = tx.newRecord(PHYSICAL_SPEC_DATA_TYPE);
+            record.setSpecificationId(specId);
+            record.setDataTypeId(dataTypeId);
+            record.setProvenance(PROVENANCE);
+            record.setLastUpdatedAt(Timestamp.valueOf(now));
+            record.setLastUpdatedBy(username);
+            record.setIsReadonly(false);
+            toCreate.add(record);
+        }));
+
+        tx.batchInsert(toCreate).execute();
+        return missing;
+    }
+
+
+    /**
+     * When a specification gains a data type, the logical flows of the
+     * (non removed) physical flows using that specification gain it too.
+     */
+    private void addImpliedLogicalFlowDataTypes(DSLContext tx,
+                                                Map<Long, Set<Long>> addedSpecDataTypes,
+                                                Map<Long, Set<Long>> requiredLogicalDataTypes) {
+        for (List<Long> chunk : chunk(addedSpecDataTypes.keySet())) {
+            tx.select(PHYSICAL_FLOW.SPECIFICATION_ID, PHYSICAL_FLOW.LOGICAL_FLOW_ID)
+                    .from(PHYSICAL_FLOW)
+                    .where(PHYSICAL_FLOW.SPECIFICATION_ID.in(chunk))
+                    .and(PhysicalFlowDao.PHYSICAL_FLOW_NOT_REMOVED)
+                    .fetch()
+                    .forEach(r -> requiredLogicalDataTypes
+                            .computeIfAbsent(r.value2(), k -> new HashSet<>())
+                            .addAll(addedSpecDataTypes.get(r.value1())));
+        }
+    }
+
+
+    private Map<Long, Set<Long>> addLogicalFlowDataTypes(DSLContext tx,
+                                                         Map<Long, Set<Long>> required,
+                                                         String username,
+                                                         LocalDateTime now) {
+        Map<Long, Set<Long>> missing = findMissing(
+                required,
+                chunk -> tx
+                        .select(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID, LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_ID)
+                        .from(LOGICAL_FLOW_DECORATOR)
+                        .where(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID.in(chunk))
+                        .and(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_KIND.eq(DATA_TYPE.name()))
+                        .fetch()
+                        .map(r -> tuple(r.value1(), r.value2())));
+
+        List<LogicalFlowDecoratorRecord> toCreate = new ArrayList<>();
+        missing.forEach((flowId, dataTypeIds) -> dataTypeIds.forEach(dataTypeId -> {
+            LogicalFlowDecoratorRecord record = tx.newRecord(LOGICAL_FLOW_DECORATOR);
+            record.setLogicalFlowId(flowId);
+            record.setDecoratorEntityKind(DATA_TYPE.name());
+            record.setDecoratorEntityId(dataTypeId);
+            record.setRating(AuthoritativenessRating.NO_OPINION.name());
+            record.setProvenance(PROVENANCE);
+            record.setLastUpdatedAt(Timestamp.valueOf(now));
+            record.setLastUpdatedBy(username);
+            record.setIsReadonly(false);
+            toCreate.add(record);
+        }));
+
+        tx.batchInsert(toCreate).execute();
+        return missing;
+    }
+
+
+    private List<Long> resolvePhysicalFlows(DSLContext tx,
+                                            List<PhysicalFlowParsed> flows,
+                                            Map<Tuple2<EntityReference, EntityReference>, Long> logicalFlowIds,
+                                            Map<Tuple3<EntityReference, String, String>, Long> specIds,
+                                            String username,
+                                            LocalDateTime now,
+                                            ImmutablePhysicalFlowBulkUploadResult.Builder result) {
+        List<Tuple6<Long, Long, Integer, String, String, String>> keys = flows
+                .stream()
+                .map(f -> tuple(
+                        logicalFlowIds.get(mkLogicalFlowKey(f)),
+                        specIds.get(mkSpecKey(f)),
+                        f.basisOffset(),
+                        f.frequency().name(),
+                        f.transport(),
+                        f.criticality().name()))
+                .collect(toList());
+
+        Map<Tuple6<Long, Long, Integer, String, String, String>, Long> existing = fetchPhysicalFlowIds(tx, logicalFlowIds.values());
+
+        // first flow with a given key determines the details of the created flow
+        Map<Tuple6<Long, Long, Integer, String, String, String>, PhysicalFlowRecord> toCreate = new LinkedHashMap<>();
+        for (int i = 0; i < flows.size(); i++) {
+            Tuple6<Long, Long, Integer, String, String, String> key = keys.get(i);
+            if (existing.containsKey(key) || toCreate.containsKey(key)) {
+                continue;
+            }
+
+            PhysicalFlowParsed flow = flows.get(i);
+            toCreate.put(key, PhysicalFlowDao.TO_RECORD_MAPPER.apply(
+                    ImmutablePhysicalFlow.builder()
+                            .logicalFlowId(key.v1)
+                            .specificationId(key.v2)
+                            .basisOffset(flow.basisOffset())
+                            .frequency(flow.frequency())
+                            .transport(flow.transport())
+                            .criticality(flow.criticality())
+                            .description(flow.description())
+                            .externalId(Optional.ofNullable(flow.externalId()))
+                            .lastUpdatedBy(username)
+                            .lastUpdatedAt(now)
+                            .build(),
+                    tx));
+        }
+
+        result.physicalFlowsCreated(toCreate.size());
+
+        Map<Tuple6<Long, Long, Integer, String, String, String>, Long> ids = existing;
+        if (! toCreate.isEmpty()) {
+            tx.batchInsert(toCreate.values()).execute();
+            ids = fetchPhysicalFlowIds(tx, logicalFlowIds.values());
+        }
+
+        return keys
+                .stream()
+                .map(ids::get)
+                .collect(toList());
+    }
+
+
+    /**
+     * Mirrors {@link PhysicalFlowDao#matchPhysicalFlow}, which does not consider the removed flag
+     */
+    private Map<Tuple6<Long, Long, Integer, String, String, String>, Long> fetchPhysicalFlowIds(DSLContext tx,
+                                                                                               Collection<Long> logicalFlowIds) {
+        Map<Tuple6<Long, Long, Integer, String, String, String>, Long> idsByKey = new HashMap<>();
+
+        for (List<Long> chunk : chunk(new LinkedHashSet<>(logicalFlowIds))) {
+            tx.select(
+                        PHYSICAL_FLOW.LOGICAL_FLOW_ID,
+                        PHYSICAL_FLOW.SPECIFICATION_ID,
+                        PHYSICAL_FLOW.BASIS_OFFSET,
+                        PHYSICAL_FLOW.FREQUENCY,
+                        PHYSICAL_FLOW.TRANSPORT,
+                        PHYSICAL_FLOW.CRITICALITY,
+                        PHYSICAL_FLOW.ID)
+                    .from(PHYSICAL_FLOW)
+                    .where(PHYSICAL_FLOW.LOGICAL_FLOW_ID.in(chunk))
+                    .orderBy(PHYSICAL_FLOW.ID)
+                    .fetch()
+                    .forEach(r -> idsByKey.putIfAbsent(
+                            tuple(r.value1(), r.value2(), r.value3(), r.value4(), r.value5(), r.value6()),
+                            r.value7()));
+        }
+
+        return idsByKey;
+    }
+
+
+    /**
+     * @param required  required values keyed by owner id
+     * @param existingFinder  given a chunk of owner ids, returns the existing (owner id, value) pairs
+     * @return  the required values which do not already exist, keyed by owner id
+     */
+    private static Map<Long, Set<Long>> findMissing(Map<Long, Set<Long>> required,
+                                                    Function<List<Long>, List<Tuple2<Long, Long>>> existingFinder) {
+        Map<Long, Set<Long>> missing = new HashMap<>();
+        required.forEach((k, vs) -> missing.put(k, new HashSet<>(vs)));
+
+        for (List<Long> chunk : chunk(required.keySet())) {
+            existingFinder
+                    .apply(chunk)
+                    .forEach(t -> Optional
+                            .ofNullable(missing.get(t.v1))
+                            .ifPresent(vs -> vs.remove(t.v2)));
+        }
+
+        missing.values().removeIf(Set::isEmpty);
+        return missing;
+    }
+
+
+    private static Tuple2<EntityReference, EntityReference> mkLogicalFlowKey(PhysicalFlowParsed flow) {
+        return tuple(normalise(flow.source()), normalise(flow.target()));
+    }
+
+
+    private static Tuple3<EntityReference, String, String> mkSpecKey(PhysicalFlowParsed flow) {
+        return tuple(normalise(flow.owner()), flow.format().name(), flow.name());
+    }
+
+
+    private static List<Object> mkParsedFlowKey(PhysicalFlowParsed flow) {
+        return mkParsedFlowKey(
+                normalise(flow.source()),
+                normalise(flow.target()),
+                normalise(flow.owner()),
+                flow.format().name(),
+                flow.name(),
+                flow.basisOffset(),
+                flow.frequency().name(),
+                flow.transport(),
+                flow.criticality().name(),
+                flow.dataType().id());
+    }
+
+
+    private static List<Object> mkParsedFlowKey(EntityReference source,
+                                                EntityReference target,
+                                                EntityReference owner,
+                                                String format,
+                                                String name,
+                                                Integer basisOffset,
+                                                String frequency,
+                                                String transport,
+                                                String criticality,
+                                                Long dataTypeId) {
+        List<Object> key = new ArrayList<>();
+        key.add(source);
+        key.add(target);
+        key.add(owner);
+        key.add(format);
+        key.add(name);
+        key.add(basisOffset);
+        key.add(frequency);
+        key.add(transport);
+        key.add(criticality);
+        key.add(dataTypeId);
+        return key;
+    }
+
+
+    private static EntityReference normalise(EntityReference ref) {
+        return mkRef(ref.kind(), ref.id());
+    }
+
+
+    private static List<List<Long>> chunk(Collection<Long> ids) {
+        List<Long> idList = new ArrayList<>(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i += CHUNK_SIZE) {
+            chunks.add(idList.subList(i, Math.min(i + CHUNK_SIZE, idList.size())));
+        }
+        return chunks;
+    }
+
+}
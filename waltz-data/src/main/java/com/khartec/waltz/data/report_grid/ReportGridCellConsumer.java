@@ -0,0 +1,19 @@
+package com.khartec.waltz.data.report_grid;
+
+import com.khartec.waltz.model.EntityKind;
+
+
+/**
+ * Receives the cells of a report grid as they are read from the database.
+ * Implementations may be called concurrently, see
+ * {@link ReportGridDao#fetchCellData}.
+ */
+@FunctionalInterface
+public interface ReportGridCellConsumer {
+
+    void accept(EntityKind columnEntityKind,
+                long columnEntityId,
+                long applicationId,
+                long ratingId);
+
+}
@@ -2,6 +2,8 @@ package com.khartec.waltz.data.report_grid;
 
 
 import com.khartec.waltz.common.SetUtilities;
+import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.report_grid.*;
@@ -15,10 +17,11 @@ import org.springframework.stereotype.Repository;
 
 import java.util.Comparator;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.ToIntFunction;
-import java.util.stream.Collectors;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.DateTimeUtilities.toLocalDateTime;
 import static com.khartec.waltz.common.MapUtilities.groupBy;
 import static com.khartec.waltz.common.SetUtilities.union;
@@ -31,6 +34,7 @@ import static org.jooq.lambda.tuple.Tuple.tuple;
 public class ReportGridDao {
 
     private final DSLContext dsl;
+    private final DBExecutorPoolInterface dbExecutorPool;
 
     private final com.khartec.waltz.schema.tables.Measurable m = MEASURABLE.as("m");
     private final com.khartec.waltz.schema.tables.MeasurableRating mr = MEASURABLE_RATING.as("mr");
@@ -44,8 +48,11 @@ public class ReportGridDao {
 
 
     @Autowired
-    public ReportGridDao(DSLContext dsl) {
+    public ReportGridDao(DSLContext dsl, DBExecutorPoolInterface dbExecutorPool) {
+        checkNotNull(dsl, "dsl cannot be null");
+        checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
         this.dsl = dsl;
+        this.dbExecutorPool = dbExecutorPool;
     }
 
 
@@ -78,6 +85,58 @@ public class ReportGridDao {
     }
 
 
+    /**
+     * Evaluates the cells of an already resolved grid definition, passing each
+     * one to the given consumer rather than materialising them.
+     *
+     * The summary measurable, exact measurable and assessment queries are
+     * independent and are executed concurrently on the db executor pool,
+     * therefore the consumer must be safe to call from multiple threads.
+     * Returns once all queries have completed.
+     *
+     * @param gridDefn  definition of the grid, typically cached by the caller
+     * @param appSelector  applications (rows) to evaluate the grid for
+     * @param consumer  receives each (column, application, rating) cell
+     */
+    public void fetchCellData(ReportGridDefinition gridDefn,
+                              Select<Record1<Long>> appSelector,
+                              ReportGridCellConsumer consumer) {
+        checkNotNull(gridDefn, "gridDefn cannot be null");
+        checkNotNull(appSelector, "appSelector cannot be null");
+        checkNotNull(consumer, "consumer cannot be null");
+
+        Map<EntityKind, Collection<ReportGridColumnDefinition>> colsByKind = groupBy(
+                gridDefn.columnDefinitions(),
+                cd -> cd.columnEntityReference().kind());
+
+        Set<Long> requiredAssessmentDefinitions = SetUtilities.map(
+                colsByKind.getOrDefault(EntityKind.ASSESSMENT_DEFINITION, emptySet()),
+                cd -> cd.columnEntityReference().id());
+
+        Map<RatingRollupRule, Collection<ReportGridColumnDefinition>> measurableColumnsByRollupKind = groupBy(
+                colsByKind.getOrDefault(EntityKind.MEASURABLE, emptySet()),
+                ReportGridColumnDefinition::ratingRollupRule);
+
+        Set<Long> exactMeasurableIds = SetUtilities.map(
+                measurableColumnsByRollupKind.get(RatingRollupRule.NONE),
+                cd -> cd.columnEntityReference().id());
+
+        Set<Long> summaryMeasurableIdsUsingHighest = SetUtilities.map(
+                measurableColumnsByRollupKind.get(RatingRollupRule.PICK_HIGHEST),
+                cd -> cd.columnEntityReference().id());
+
+        Set<Long> summaryMeasurableIdsUsingLowest = SetUtilities.map(
+                measurableColumnsByRollupKind.get(RatingRollupRule.PICK_LOWEST),
+                cd -> cd.columnEntityReference().id());
+
+        DBFanOut fanOut = dbExecutorPool.fanOut();
+        fanOut.fork(() -> fetchSummaryMeasurableData(appSelector, summaryMeasurableIdsUsingHighest, summaryMeasurableIdsUsingLowest, consumer));
+        fanOut.fork(() -> fetchAssessmentData(appSelector, requiredAssessmentDefinitions, consumer));
+        fanOut.fork(() -> fetchExactMeasurableData(appSelector, exactMeasurableIds, consumer));
+        fanOut.join();
+    }
+
+
     public ReportGridDefinition getGridDefinitionById(long id) {
         return getGridDefinitionByCondition(rg.ID.eq(id));
     }
@@ -156,43 +215,28 @@ public class ReportGridDao {
 
         ReportGridDefinition gridDefn = getGridDefinitionByCondition(gridCondition);
 
-        Map<EntityKind, Collection<ReportGridColumnDefinition>> colsByKind = groupBy(
-                gridDefn.columnDefinitions(),
-                cd -> cd.columnEntityReference().kind());
-
-        Set<Long> requiredAssessmentDefinitions = SetUtilities.map(
-                colsByKind.getOrDefault(EntityKind.ASSESSMENT_DEFINITION, emptySet()),
-                cd -> cd.columnEntityReference().id());
-
-        Map<RatingRollupRule, Collection<ReportGridColumnDefinition>> measurableColumnsByRollupKind = groupBy(
-                colsByKind.getOrDefault(EntityKind.MEASURABLE, emptySet()),
-                ReportGridColumnDefinition::ratingRollupRule);
-
-        Set<Long> exactMeasurableIds = SetUtilities.map(
-                measurableColumnsByRollupKind.get(RatingRollupRule.NONE),
-                cd -> cd.columnEntityReference().id());
-
-        Set<Long> summaryMeasurableIdsUsingHighest = SetUtilities.map(
-                measurableColumnsByRollupKind.get(RatingRollupRule.PICK_HIGHEST),
-                cd -> cd.columnEntityReference().id());
-
-        Set<Long> summaryMeasurableIdsUsingLowest = SetUtilities.map(
-                measurableColumnsByRollupKind.get(RatingRollupRule.PICK_LOWEST),
-                cd -> cd.columnEntityReference().id());
-
-        return union(
-            fetchSummaryMeasurableData(appSelector, summaryMeasurableIdsUsingHighest, summaryMeasurableIdsUsingLowest),
-            fetchAssessmentData(appSelector, requiredAssessmentDefinitions),
-            fetchExactMeasurableData(appSelector, exactMeasurableIds));
+        Set<ReportGridRatingCell> cells = ConcurrentHashMap.newKeySet();
+        fetchCellData(
+                gridDefn,
+                appSelector,
+                (columnEntityKind, columnEntityId, applicationId, ratingId) -> cells.add(ImmutableReportGridRatingCell
+                        .builder()
+                        .applicationId(applicationId)
+                        .columnEntityId(columnEntityId)
+                        .columnEntityKind(columnEntityKind)
+                        .ratingId(ratingId)
+                        .build()));
+        return cells;
     }
 
 
-    private Set<ReportGridRatingCell> fetchSummaryMeasurableData(Select<Record1<Long>> appSelector,
-                                                                 Set<Long> measurableIdsUsingHighest,
-                                                                 Set<Long> measurableIdsUsingLowest) {
+    private Void fetchSummaryMeasurableData(Select<Record1<Long>> appSelector,
+                                            Set<Long> measurableIdsUsingHighest,
+                                            Set<Long> measurableIdsUsingLowest,
+                                            ReportGridCellConsumer consumer) {
 
         if (measurableIdsUsingHighest.size() == 0 && measurableIdsUsingLowest.size() == 0){
-            return emptySet();
+            return null;
         }
 
         Table<Record5<Long, String, Long, Integer, String>> ratingSchemeItems = DSL
@@ -226,7 +270,7 @@ public class ReportGridDao {
                 .and(mr.ENTITY_ID.in(appSelector))
                 .and(m.ID.in(union(measurableIdsUsingHighest, measurableIdsUsingLowest)));
 
-        return dsl
+        dsl
                 .resultQuery(dsl.renderInlined(ratings))
                 .fetchGroups(
                         r -> tuple(
@@ -237,8 +281,7 @@ public class ReportGridDao {
                                 r.get("rsiPos", Integer.class),
                                 r.get("rsiName", String.class)))
                 .entrySet()
-                .stream()
-                .map(e -> {
+                .forEach(e -> {
                     Tuple2<EntityReference, Long> entityAndMeasurable = e.getKey();
                     Long measurableId = entityAndMeasurable.v2();
                     long applicationId = entityAndMeasurable.v1().id();
@@ -254,28 +297,26 @@ public class ReportGridDao {
                                     : compareByPositionDesc)
                             .thenComparing(compareByName);
 
-                    return ratingsForEntityAndMeasurable
+                    ratingsForEntityAndMeasurable
                             .stream()
                             .min(cmp)
-                            .map(t -> ImmutableReportGridRatingCell
-                                    .builder()
-                                    .applicationId(applicationId)
-                                    .columnEntityId(measurableId)
-                                    .columnEntityKind(EntityKind.MEASURABLE)
-                                    .ratingId(t.v1)
-                                    .build())
-                            .orElse(null);
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+                            .ifPresent(t -> consumer.accept(
+                                    EntityKind.MEASURABLE,
+                                    measurableId,
+                                    applicationId,
+                                    t.v1));
+                });
+
+        return null;
     }
 
 
-    private Set<ReportGridRatingCell> fetchExactMeasurableData(Select<Record1<Long>> appSelector,
-                                                               Set<Long> exactMeasurableIds) {
+    private Void fetchExactMeasurableData(Select<Record1<Long>> appSelector,
+                                          Set<Long> exactMeasurableIds,
+                                          ReportGridCellConsumer consumer) {
 
         if (exactMeasurableIds.size() == 0) {
-            return emptySet();
+            return null;
         }
 
         SelectConditionStep<Record3<Long, Long, Long>> qry = dsl
@@ -290,23 +331,25 @@ public class ReportGridDao {
                 .and(mr.ENTITY_ID.in(appSelector))
                 .and(mr.ENTITY_KIND.eq(EntityKind.APPLICATION.name()));
 
-        return  dsl
+        dsl
                 .resultQuery(dsl.renderInlined(qry))
-                .fetchSet(r -> ImmutableReportGridRatingCell.builder()
-                        .applicationId(r.get(mr.ENTITY_ID))
-                        .columnEntityId(r.get(mr.MEASURABLE_ID))
-                        .columnEntityKind(EntityKind.MEASURABLE)
-                        .ratingId(r.get(rsi.ID))
-                        .build());
+                .forEach(r -> consumer.accept(
+                        EntityKind.MEASURABLE,
+                        r.get(mr.MEASURABLE_ID),
+                        r.get(mr.ENTITY_ID),
+                        r.get(rsi.ID)));
+
+        return null;
     }
 
 
-    private Set<ReportGridRatingCell> fetchAssessmentData(Select<Record1<Long>> appSelector,
-                                                          Set<Long> requiredAssessmentDefinitionIds) {
+    private Void fetchAssessmentData(Select<Record1<Long>> appSelector,
+                                     Set<Long> requiredAssessmentDefinitionIds,
+                                     ReportGridCellConsumer consumer) {
         if (requiredAssessmentDefinitionIds.size() == 0) {
-            return emptySet();
+            return null;
         } else {
-            return dsl
+            dsl
                     .select(ar.ENTITY_ID,
                             ar.ASSESSMENT_DEFINITION_ID,
                             ar.RATING_ID)
@@ -314,12 +357,12 @@ public class ReportGridDao {
                     .where(ar.ASSESSMENT_DEFINITION_ID.in(requiredAssessmentDefinitionIds)
                             .and(ar.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
                             .and(ar.ENTITY_ID.in(appSelector)))
-                    .fetchSet(r -> ImmutableReportGridRatingCell.builder()
-                            .applicationId(r.get(ar.ENTITY_ID))
-                            .columnEntityId(r.get(ar.ASSESSMENT_DEFINITION_ID))
-                            .columnEntityKind(EntityKind.ASSESSMENT_DEFINITION)
-                            .ratingId(r.get(ar.RATING_ID))
-                            .build());
+                    .forEach(r -> consumer.accept(
+                            EntityKind.ASSESSMENT_DEFINITION,
+                            r.get(ar.ASSESSMENT_DEFINITION_ID),
+                            r.get(ar.ENTITY_ID),
+                            r.get(ar.RATING_ID)));
+            return null;
         }
     }
 }
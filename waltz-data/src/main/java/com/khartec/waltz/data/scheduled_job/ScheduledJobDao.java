@@ -22,16 +22,35 @@ package com.khartec.waltz.data.scheduled_job;
 import com.khartec.waltz.model.scheduled_job.JobKey;
 import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
 import org.jooq.DSLContext;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.StringUtilities.isEmpty;
 import static com.khartec.waltz.schema.tables.Settings.SETTINGS;
 
 @Repository
 public class ScheduledJobDao {
 
+    /**
+     * Number of recent run durations kept for each job, they are stored
+     * alongside the job status (in the settings table) as a comma separated list
+     */
+    public static final int DURATION_HISTORY_SIZE = 10;
+
+    private static final String DURATIONS_SUFFIX = ".durations";
+    private static final String STATE_SUFFIX = ".state";
+
     private final DSLContext dsl;
 
 
@@ -62,10 +81,176 @@ public class ScheduledJobDao {
     }
 
 
+    /**
+     * Flags a job to run again.  Jobs which are already runnable or running
+     * are left alone.  If the job has no status row one is created, if
+     * another server creates it first this call has no effect.
+     *
+     * @return true if the job was flagged by this call
+     */
+    public boolean markJobAsRunnable(JobKey jobKey) {
+        int updated = dsl.update(SETTINGS)
+                .set(SETTINGS.VALUE, JobLifecycleStatus.RUNNABLE.name())
+                .where(SETTINGS.NAME.eq(jobKey.name()))
+                .and(SETTINGS.VALUE.in(
+                        JobLifecycleStatus.COMPLETED.name(),
+                        JobLifecycleStatus.ERRORED.name()))
+                .execute();
+
+        if (updated == 1) {
+            return true;
+        }
+
+        try {
+            return dsl.insertInto(SETTINGS)
+                    .set(SETTINGS.NAME, jobKey.name())
+                    .set(SETTINGS.VALUE, JobLifecycleStatus.RUNNABLE.name())
+                    .set(SETTINGS.RESTRICTED, true)
+                    .onDuplicateKeyIgnore()
+                    .execute()
+                    ==
+                    1;
+        } catch (DataAccessException e) {
+            // created concurrently by another server
+            return false;
+        }
+    }
+
+
     public void updateJobStatus(JobKey jobKey, JobLifecycleStatus newStatus) {
         dsl.update(SETTINGS)
                 .set(SETTINGS.VALUE, newStatus.name())
                 .where(SETTINGS.NAME.eq(jobKey.name()))
                 .execute();
     }
+
+
+    public Map<JobKey, JobLifecycleStatus> findAllJobStatuses() {
+        List<String> jobNames = Stream.of(JobKey.values())
+                .map(Enum::name)
+                .collect(Collectors.toList());
+
+        return dsl
+                .select(SETTINGS.NAME, SETTINGS.VALUE)
+                .from(SETTINGS)
+                .where(SETTINGS.NAME.in(jobNames))
+                .fetch()
+                .stream()
+                .filter(r -> r.value2() != null)
+                .collect(Collectors.toMap(
+                        r -> JobKey.valueOf(r.value1()),
+                        r -> JobLifecycleStatus.valueOf(r.value2())));
+    }
+
+
+    /**
+     * @return durations (in millis) of the most recent runs of each job, most recent first
+     */
+    public Map<JobKey, List<Long>> findAllDurationHistories() {
+        List<String> historyNames = Stream.of(JobKey.values())
+                .map(ScheduledJobDao::mkDurationsName)
+                .collect(Collectors.toList());
+
+        return dsl
+                .select(SETTINGS.NAME, SETTINGS.VALUE)
+                .from(SETTINGS)
+                .where(SETTINGS.NAME.in(historyNames))
+                .fetch()
+                .stream()
+                .collect(Collectors.toMap(
+                        r -> JobKey.valueOf(r.value1().substring(0, r.value1().length() - DURATIONS_SUFFIX.length())),
+                        r -> parseDurations(r.value2())));
+    }
+
+
+    /**
+     * @return state saved by the last run of the job, if any
+     */
+    public Optional<String> findJobState(JobKey jobKey) {
+        return dsl
+                .select(SETTINGS.VALUE)
+                .from(SETTINGS)
+                .where(SETTINGS.NAME.eq(mkStateName(jobKey)))
+                .fetchOptional(SETTINGS.VALUE);
+    }
+
+
+    /**
+     * Saves state (e.g. a high water mark) for the next run of the job,
+     * which may be on a different server.
+     */
+    public void saveJobState(JobKey jobKey, String state) {
+        upsert(mkStateName(jobKey), state);
+    }
+
+
+    /**
+     * Prepends the given duration to the job's history, discarding the
+     * oldest entries once {@link #DURATION_HISTORY_SIZE} is reached.
+     * Only one instance of a job runs at a time so the read/modify/write
+     * does not need further guarding.
+     */
+    public void recordDuration(JobKey jobKey, long durationInMillis) {
+        String name = mkDurationsName(jobKey);
+
+        Optional<String> existing = dsl
+                .select(SETTINGS.VALUE)
+                .from(SETTINGS)
+                .where(SETTINGS.NAME.eq(name))
+                .fetchOptional(SETTINGS.VALUE);
+
+        List<Long> durations = new ArrayList<>(DURATION_HISTORY_SIZE);
+        durations.add(durationInMillis);
+        existing.map(ScheduledJobDao::parseDurations)
+                .ifPresent(durations::addAll);
+
+        String value = durations
+                .stream()
+                .limit(DURATION_HISTORY_SIZE)
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        upsert(name, value);
+    }
+
+
+    // -- HELPERS ---
+
+    private void upsert(String name, String value) {
+        int updated = dsl
+                .update(SETTINGS)
+                .set(SETTINGS.VALUE, value)
+                .where(SETTINGS.NAME.eq(name))
+                .execute();
+
+        if (updated == 0) {
+            dsl.insertInto(SETTINGS)
+                    .set(SETTINGS.NAME, name)
+                    .set(SETTINGS.VALUE, value)
+                    .set(SETTINGS.RESTRICTED, true)
+                    .execute();
+        }
+    }
+
+
+    private static String mkStateName(JobKey jobKey) {
+        return jobKey.name() + STATE_SUFFIX;
+    }
+
+
+    private static String mkDurationsName(JobKey jobKey) {
+        return jobKey.name() + DURATIONS_SUFFIX;
+    }
+
+
+    private static List<Long> parseDurations(String value) {
+        if (isEmpty(value)) {
+            return Collections.emptyList();
+        }
+        return Stream.of(value.split(","))
+                .map(String::trim)
+                .filter(v -> !v.isEmpty())
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+    }
 }
@@ -45,6 +45,7 @@ import static com.khartec.waltz.common.DateTimeUtilities.toSqlDate;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
 import static com.khartec.waltz.schema.Tables.*;
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toMap;
 
 @Repository
 public class SurveyInstanceDao {
@@ -148,6 +149,63 @@ public class SurveyInstanceDao {
     }
 
 
+    /**
+     * Inserts the given instances using a single multi-row insert.  Callers
+     * are expected to bound the size of the collection.
+     *
+     * @param commands  instances to insert
+     * @return number of instances inserted
+     */
+    public int createAll(Collection<SurveyInstanceCreateCommand> commands) {
+        checkNotNull(commands, "commands cannot be null");
+
+        if (commands.isEmpty()) {
+            return 0;
+        }
+
+        InsertValuesStep7<SurveyInstanceRecord, Long, String, Long, String, Date, Long, String> insert = dsl
+                .insertInto(SURVEY_INSTANCE)
+                .columns(SURVEY_INSTANCE.SURVEY_RUN_ID,
+                        SURVEY_INSTANCE.ENTITY_KIND,
+                        SURVEY_INSTANCE.ENTITY_ID,
+                        SURVEY_INSTANCE.STATUS,
+                        SURVEY_INSTANCE.DUE_DATE,
+                        SURVEY_INSTANCE.OWNER_ID,
+                        SURVEY_INSTANCE.OWNING_ROLE);
+
+        commands.forEach(c -> insert.values(
+                c.surveyRunId(),
+                c.entityReference().kind().name(),
+                c.entityReference().id(),
+                c.status().name(),
+                c.dueDate().map(Date::valueOf).orElse(null),
+                c.ownerId(),
+                c.owningRole()));
+
+        return insert.execute();
+    }
+
+
+    /**
+     * @param surveyRunId  survey run
+     * @return the entity (without name) of each original instance in the run, keyed by instance id
+     */
+    public Map<Long, EntityReference> findEntitiesByInstanceIdForSurveyRun(long surveyRunId) {
+        return dsl
+                .select(SURVEY_INSTANCE.ID,
+                        SURVEY_INSTANCE.ENTITY_KIND,
+                        SURVEY_INSTANCE.ENTITY_ID)
+                .from(SURVEY_INSTANCE)
+                .where(SURVEY_INSTANCE.SURVEY_RUN_ID.eq(surveyRunId))
+                .and(IS_ORIGINAL_INSTANCE_CONDITION)
+                .fetch()
+                .stream()
+                .collect(toMap(
+                        Record3::value1,
+                        r -> EntityReference.mkRef(EntityKind.valueOf(r.value2()), r.value3())));
+    }
+
+
     public long createPreviousVersion(SurveyInstance currentInstance) {
         checkNotNull(currentInstance, "currentInstance cannot be null");
 
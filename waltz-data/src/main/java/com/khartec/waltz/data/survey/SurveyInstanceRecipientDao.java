@@ -25,13 +25,18 @@ import com.khartec.waltz.model.survey.*;
 import com.khartec.waltz.schema.tables.records.SurveyInstanceRecipientRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.schema.Tables.*;
+import static java.util.stream.Collectors.*;
 
 @Repository
 public class SurveyInstanceRecipientDao {
@@ -83,6 +88,52 @@ public class SurveyInstanceRecipientDao {
     }
 
 
+    /**
+     * Inserts the given recipients using a single multi-row insert.  Callers
+     * are expected to bound the size of the collection and to have excluded
+     * recipients which already exist.
+     *
+     * @param instanceIdAndPersonIds  pairs of survey instance id and person id
+     * @return number of recipients inserted
+     */
+    public int createAll(Collection<Tuple2<Long, Long>> instanceIdAndPersonIds) {
+        checkNotNull(instanceIdAndPersonIds, "instanceIdAndPersonIds cannot be null");
+
+        if (instanceIdAndPersonIds.isEmpty()) {
+            return 0;
+        }
+
+        InsertValuesStep2<SurveyInstanceRecipientRecord, Long, Long> insert = dsl
+                .insertInto(SURVEY_INSTANCE_RECIPIENT)
+                .columns(SURVEY_INSTANCE_RECIPIENT.SURVEY_INSTANCE_ID,
+                        SURVEY_INSTANCE_RECIPIENT.PERSON_ID);
+
+        instanceIdAndPersonIds.forEach(t -> insert.values(t.v1, t.v2));
+
+        return insert.execute();
+    }
+
+
+    /**
+     * @param surveyRunId  survey run
+     * @return person ids of the recipients of each (original) instance in the run, keyed by instance id
+     */
+    public Map<Long, Set<Long>> findPersonIdsByInstanceIdForSurveyRun(long surveyRunId) {
+        return dsl
+                .select(SURVEY_INSTANCE_RECIPIENT.SURVEY_INSTANCE_ID,
+                        SURVEY_INSTANCE_RECIPIENT.PERSON_ID)
+                .from(SURVEY_INSTANCE_RECIPIENT)
+                .innerJoin(SURVEY_INSTANCE).on(SURVEY_INSTANCE.ID.eq(SURVEY_INSTANCE_RECIPIENT.SURVEY_INSTANCE_ID))
+                .where(SURVEY_INSTANCE.SURVEY_RUN_ID.eq(surveyRunId))
+                .and(SURVEY_INSTANCE.ORIGINAL_INSTANCE_ID.isNull())
+                .fetch()
+                .stream()
+                .collect(groupingBy(
+                        Record2::value1,
+                        mapping(Record2::value2, toSet())));
+    }
+
+
     public boolean delete(long surveyInstanceRecipientId) {
 
         return dsl.deleteFrom(SURVEY_INSTANCE_RECIPIENT)
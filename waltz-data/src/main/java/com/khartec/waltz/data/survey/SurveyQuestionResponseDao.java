@@ -32,6 +32,7 @@ import com.khartec.waltz.schema.tables.records.SurveyQuestionListResponseRecord;
 import com.khartec.waltz.schema.tables.records.SurveyQuestionResponseRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
@@ -58,6 +59,7 @@ import static java.util.Comparator.comparingInt;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 import static org.jooq.impl.DSL.*;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Repository
 public class SurveyQuestionResponseDao {
@@ -107,41 +109,20 @@ public class SurveyQuestionResponseDao {
 
 
     public List<SurveyInstanceQuestionResponse> findForInstance(long surveyInstanceId) {
-        // fetch list responses
-        Map<Long, List<SurveyQuestionListResponseRecord>> questionIdToListResponses =
-                dsl.selectFrom(SURVEY_QUESTION_LIST_RESPONSE)
-                .where(SURVEY_QUESTION_LIST_RESPONSE.SURVEY_INSTANCE_ID.eq(surveyInstanceId))
-                .fetch()
-                .stream()
-                .collect(groupingBy(SurveyQuestionListResponseRecord::getQuestionId, toList()));
+        return findForInstanceIdSelector(DSL.select(DSL.val(surveyInstanceId)));
+    }
 
-        // fetch responses
-        List<SurveyInstanceQuestionResponse> responses = dsl.select(SURVEY_QUESTION_RESPONSE.fields())
-                .select(entityNameField)
-                .from(SURVEY_QUESTION_RESPONSE)
-                .where(SURVEY_QUESTION_RESPONSE.SURVEY_INSTANCE_ID.eq(surveyInstanceId))
-                .fetch(TO_DOMAIN_MAPPER);
 
-        // plug list responses into responses
-        return responses.stream()
-                .map(r -> {
-                    if (questionIdToListResponses.containsKey(r.questionResponse().questionId())) {
-                        List<String> listResponse = questionIdToListResponses.get(r.questionResponse().questionId())
-                                .stream()
-                                .sorted(comparingInt(SurveyQuestionListResponseRecord::getPosition))
-                                .map(SurveyQuestionListResponseRecord::getResponse)
-                                .collect(toList());
-
-                        return ImmutableSurveyInstanceQuestionResponse
-                                .copyOf(r)
-                                .withQuestionResponse(ImmutableSurveyQuestionResponse
-                                                        .copyOf(r.questionResponse())
-                                                        .withListResponse(listResponse));
-                    } else {
-                        return r;
-                    }
-                })
-                .collect(toList());
+    /**
+     * Responses for all (original) instances of the given run, fetched in two queries
+     * rather than two per instance.
+     */
+    public List<SurveyInstanceQuestionResponse> findForSurveyRun(long surveyRunId) {
+        return findForInstanceIdSelector(DSL
+                .select(SURVEY_INSTANCE.ID)
+                .from(SURVEY_INSTANCE)
+                .where(SURVEY_INSTANCE.SURVEY_RUN_ID.eq(surveyRunId))
+                .and(SURVEY_INSTANCE.ORIGINAL_INSTANCE_ID.isNull()));
     }
 
 
@@ -284,6 +265,46 @@ public class SurveyQuestionResponseDao {
     }
 
 
+    private List<SurveyInstanceQuestionResponse> findForInstanceIdSelector(Select<Record1<Long>> instanceIdSelector) {
+        // fetch list responses
+        Map<Tuple2<Long, Long>, List<SurveyQuestionListResponseRecord>> listResponsesByInstanceAndQuestionId =
+                dsl.selectFrom(SURVEY_QUESTION_LIST_RESPONSE)
+                .where(SURVEY_QUESTION_LIST_RESPONSE.SURVEY_INSTANCE_ID.in(instanceIdSelector))
+                .fetch()
+                .stream()
+                .collect(groupingBy(r -> tuple(r.getSurveyInstanceId(), r.getQuestionId()), toList()));
+
+        // fetch responses
+        List<SurveyInstanceQuestionResponse> responses = dsl.select(SURVEY_QUESTION_RESPONSE.fields())
+                .select(entityNameField)
+                .from(SURVEY_QUESTION_RESPONSE)
+                .where(SURVEY_QUESTION_RESPONSE.SURVEY_INSTANCE_ID.in(instanceIdSelector))
+                .fetch(TO_DOMAIN_MAPPER);
+
+        // plug list responses into responses
+        return responses.stream()
+                .map(r -> {
+                    Tuple2<Long, Long> key = tuple(r.surveyInstanceId(), r.questionResponse().questionId());
+                    if (listResponsesByInstanceAndQuestionId.containsKey(key)) {
+                        List<String> listResponse = listResponsesByInstanceAndQuestionId.get(key)
+                                .stream()
+                                .sorted(comparingInt(SurveyQuestionListResponseRecord::getPosition))
+                                .map(SurveyQuestionListResponseRecord::getResponse)
+                                .collect(toList());
+
+                        return ImmutableSurveyInstanceQuestionResponse
+                                .copyOf(r)
+                                .withQuestionResponse(ImmutableSurveyQuestionResponse
+                                                        .copyOf(r.questionResponse())
+                                                        .withListResponse(listResponse));
+                    } else {
+                        return r;
+                    }
+                })
+                .collect(toList());
+    }
+
+
     private SurveyQuestionResponseRecord mkRecord(SurveyInstanceQuestionResponse response) {
         SurveyQuestionResponse questionResponse = response.questionResponse();
         Optional<EntityReference> entityResponse = questionResponse.entityResponse();
@@ -0,0 +1,149 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static org.junit.Assert.*;
+
+
+public class DBFanOutTest {
+
+    private final BoundedDBExecutorPool pool = new BoundedDBExecutorPool(2, Duration.ofSeconds(5));
+
+
+    @Test
+    public void resultsAreReturnedInTaskOrder() {
+        List<Callable<Integer>> tasks = newArrayList(
+                () -> sleepThen(50, 1),
+                () -> 2,
+                () -> sleepThen(10, 3));
+
+        assertEquals(newArrayList(1, 2, 3), pool.invokeAll(tasks));
+        assertEquals(3, pool.getCompletedCount());
+    }
+
+
+    @Test
+    public void failureCancelsSiblings() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        DBFanOut fanOut = pool.fanOut();
+        fanOut.fork(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return 1;
+        });
+        fanOut.fork(() -> {
+            started.await();
+            throw new IllegalArgumentException("boom");
+        });
+
+        try {
+            fanOut.join();
+            fail("expected failure to be rethrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("boom", e.getMessage());
+        }
+
+        waitFor(interrupted);
+        assertTrue(interrupted.get());
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void joinFailsWhenDeadlinePasses() {
+        DBFanOut fanOut = pool.fanOut(Duration.ofMillis(20));
+        fanOut.fork(() -> sleepThen(1000, 1));
+        fanOut.join();
+    }
+
+
+    @Test
+    public void nestedFanOutsRunInlineRatherThanDeadlocking() {
+        BoundedDBExecutorPool singlePermitPool = new BoundedDBExecutorPool(1, Duration.ofSeconds(5));
+
+        List<Callable<Integer>> innerTasks = newArrayList(() -> 1, () -> 2);
+
+        DBFanOut outer = singlePermitPool.fanOut();
+        Supplier<List<Integer>> inner = outer.fork(() -> singlePermitPool.invokeAll(innerTasks));
+        outer.join();
+
+        assertEquals(newArrayList(1, 2), inner.get());
+        assertEquals(2, singlePermitPool.getInlineCount());
+    }
+
+
+    @Test
+    public void cancelledTasksAreNotLeftInTheQueueDepth() throws Exception {
+        BoundedDBExecutorPool singleThreadPool = new BoundedDBExecutorPool(1, Duration.ofSeconds(5));
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Boolean> blocker = singleThreadPool.submit(() -> release.await(5, TimeUnit.SECONDS));
+        Future<Integer> waiting = singleThreadPool.submit(() -> 1);
+        assertEquals(1, singleThreadPool.getQueueDepth());
+
+        waiting.cancel(true);
+        release.countDown();
+        blocker.get();
+        singleThreadPool.submit(() -> 2).get();
+
+        assertEquals(0, singleThreadPool.getQueueDepth());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resultsAreUnavailableBeforeJoin() {
+        DBFanOut fanOut = pool.fanOut();
+        Supplier<Integer> result = fanOut.fork(() -> 1);
+        result.get();
+    }
+
+
+    // -- HELPERS ---
+
+    private static <T> T sleepThen(long millis, T result) throws InterruptedException {
+        Thread.sleep(millis);
+        return result;
+    }
+
+
+    private static void waitFor(AtomicBoolean flag) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (! flag.get() && System.nanoTime() < until) {
+            Thread.sleep(5);
+        }
+    }
+
+}
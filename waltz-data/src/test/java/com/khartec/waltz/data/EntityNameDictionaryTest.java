@@ -0,0 +1,149 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data;
+
+import com.khartec.waltz.model.EntityKind;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.data.EntityNameDictionary.NameTable.mkNameTable;
+import static org.junit.Assert.*;
+
+public class EntityNameDictionaryTest {
+
+    private final AtomicLong checksum = new AtomicLong(1);
+    private final AtomicLong loads = new AtomicLong();
+
+    private final EntityNameDictionary dictionary = new EntityNameDictionary(
+            asSet(EntityKind.APPLICATION),
+            k -> checksum.get(),
+            k -> {
+                loads.incrementAndGet();
+                return mkNameTable(
+                        checksum.get(),
+                        new long[] { 30, 10, 20 },
+                        new String[] { "c" + checksum.get(), "a", "b" });
+            });
+
+
+    @Test
+    public void namesAreLoadedLazilyAndFoundRegardlessOfLoadOrder() {
+        assertEquals(0, loads.get());
+        assertEquals("a", dictionary.lookup(EntityKind.APPLICATION, 10));
+        assertEquals("b", dictionary.lookup(EntityKind.APPLICATION, 20));
+        assertEquals("c1", dictionary.lookup(EntityKind.APPLICATION, 30));
+        assertEquals(1, loads.get());
+        assertEquals(3, dictionary.getEntryCount());
+        assertTrue(dictionary.getEstimatedMemoryBytes() > 0);
+    }
+
+
+    @Test
+    public void unknownIdsAndUnsupportedKindsAreNotResolved() {
+        assertNull(dictionary.lookup(EntityKind.APPLICATION, 99));
+        assertNull(dictionary.lookup(EntityKind.PERSON, 10));
+        assertEquals("a", dictionary.lookup(EntityKind.APPLICATION, 10));
+
+        assertEquals(1, dictionary.getHitCount());
+        assertEquals(1, dictionary.getMissCount());
+        assertEquals(0.5, dictionary.getHitRate(), 0.001);
+        assertFalse(dictionary.getLoadedKinds().contains(EntityKind.PERSON));
+    }
+
+
+    @Test
+    public void refreshOnlyReloadsKindsWhoseChecksumHasChanged() {
+        dictionary.lookup(EntityKind.APPLICATION, 30);
+        assertEquals(0, dictionary.refresh());
+
+        checksum.set(2);
+        assertEquals(1, dictionary.refresh());
+        assertEquals("c2", dictionary.lookup(EntityKind.APPLICATION, 30));
+        assertEquals(2, loads.get());
+    }
+
+
+    @Test
+    public void invalidatedKindsAreReloadedOnNextUse() {
+        dictionary.lookup(EntityKind.APPLICATION, 10);
+        dictionary.invalidate(EntityKind.APPLICATION);
+        assertTrue(dictionary.getLoadedKinds().isEmpty());
+
+        dictionary.lookup(EntityKind.APPLICATION, 10);
+        assertEquals(2, loads.get());
+    }
+
+
+
+    @Test
+    public void evictedEntitiesMissUntilTheirKindIsReloaded() {
+        dictionary.lookup(EntityKind.APPLICATION, 10);
+        dictionary.evict(EntityKind.APPLICATION, 30);
+
+        assertNull("evicted entity is not served", dictionary.lookup(EntityKind.APPLICATION, 30));
+        assertEquals("others are unaffected", "a", dictionary.lookup(EntityKind.APPLICATION, 10));
+        assertEquals(1, loads.get());
+        assertTrue(dictionary.isEvicted(EntityKind.APPLICATION, 30));
+
+        checksum.set(2);
+        dictionary.refresh();
+
+        assertFalse(dictionary.isEvicted(EntityKind.APPLICATION, 30));
+        assertEquals("c2", dictionary.lookup(EntityKind.APPLICATION, 30));
+    }
+
+
+    @Test
+    public void evictionsMadeDuringALoadOutliveIt() {
+        EntityNameDictionary[] holder = new EntityNameDictionary[1];
+        EntityNameDictionary racingDictionary = new EntityNameDictionary(
+                asSet(EntityKind.APPLICATION),
+                k -> 1L,
+                k -> {
+                    // the entity changes whilst its kind is being loaded
+                    holder[0].evict(EntityKind.APPLICATION, 10);
+                    return mkNameTable(1, new long[] { 10 }, new String[] { "a" });
+                });
+        holder[0] = racingDictionary;
+
+        assertNull(racingDictionary.lookup(EntityKind.APPLICATION, 10));
+        assertTrue(racingDictionary.isEvicted(EntityKind.APPLICATION, 10));
+    }
+
+
+
+    @Test
+    public void refreshReloadsKindsWithEvictionsEvenIfTheirChecksumIsUnchanged() {
+        dictionary.lookup(EntityKind.APPLICATION, 30);
+        dictionary.evict(EntityKind.APPLICATION, 30);
+        assertNull(dictionary.lookup(EntityKind.APPLICATION, 30));
+        assertEquals(1, dictionary.getEvictedCount());
+
+        // e.g. a description edit, which does not alter the checksum
+        assertEquals(1, dictionary.refresh());
+
+        assertEquals(0, dictionary.getEvictedCount());
+        assertEquals("c1", dictionary.lookup(EntityKind.APPLICATION, 30));
+        assertEquals(2, loads.get());
+        assertEquals("nothing pending, nothing reloaded", 0, dictionary.refresh());
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.data;
+
+import org.junit.Test;
+
+import java.sql.Statement;
+
+import static com.khartec.waltz.data.JooqUtilities.countBatchResults;
+import static org.junit.Assert.assertEquals;
+
+public class JooqUtilities_CountBatchResultsTest {
+
+    @Test
+    public void updateCountsAreTotalled() {
+        assertEquals(0, countBatchResults(new int[0]));
+        assertEquals(5, countBatchResults(new int[]{2, 0, 3}));
+    }
+
+
+    @Test
+    public void statementsWithoutInfoCountAsOneRow() {
+        assertEquals(
+                5,
+                countBatchResults(new int[]{Statement.SUCCESS_NO_INFO, 3, Statement.SUCCESS_NO_INFO}));
+        assertEquals(
+                "failures are not counted",
+                1,
+                countBatchResults(new int[]{Statement.EXECUTE_FAILED, 1}));
+    }
+
+}
@@ -18,8 +18,9 @@
 
 package com.khartec.waltz.integration_test;
 
-import com.khartec.waltz.data.DBExecutorPool;
+import com.khartec.waltz.data.BoundedDBExecutorPool;
 import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import liquibase.integration.spring.SpringLiquibase;
@@ -58,9 +59,16 @@ public class DITestingConfiguration {
             .withStartupTimeout(Duration.ofSeconds(600));
 
 
+    @Bean
+    @Autowired
+    public ApplicationIdSelectorCacheService applicationIdSelectorCacheService(DSLContext dsl) {
+        return new ApplicationIdSelectorCacheService(dsl, 500, 60);
+    }
+
+
     @Bean
     public DBExecutorPoolInterface dbExecutorPool() {
-        return new DBExecutorPool(2, 4);
+        return new BoundedDBExecutorPool(2, Duration.ofSeconds(30));
     }
 
 
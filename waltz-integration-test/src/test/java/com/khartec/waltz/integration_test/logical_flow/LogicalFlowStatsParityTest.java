@@ -0,0 +1,130 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.integration_test.logical_flow;
+
+import com.khartec.waltz.common.DateTimeUtilities;
+import com.khartec.waltz.data.logical_flow.LogicalFlowGraphDao;
+import com.khartec.waltz.data.logical_flow.LogicalFlowStatsDao;
+import com.khartec.waltz.integration_test.BaseIntegrationTest;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.LogicalFlowMeasures;
+import com.khartec.waltz.model.logical_flow.LogicalFlowStatistics;
+import com.khartec.waltz.model.tally.Tally;
+import com.khartec.waltz.model.tally.TallyPack;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.khartec.waltz.schema.Tables.APPLICATION;
+import static com.khartec.waltz.schema.Tables.LOGICAL_FLOW;
+import static com.khartec.waltz.schema.Tables.LOGICAL_FLOW_DECORATOR;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+
+public class LogicalFlowStatsParityTest extends BaseIntegrationTest {
+
+    private static final long DT_1 = 3_000_001;
+    private static final long DT_2 = 3_000_002;
+
+
+    @Test
+    public void graphStatisticsMatchDatabaseStatistics() {
+        EntityReference a = createNewApp("parityA", null);
+        EntityReference b = createNewApp("parityB", null);
+        EntityReference c = createNewApp("parityC", null);
+        EntityReference d = createNewApp("parityD", null);
+        EntityReference actor = EntityReference.mkRef(EntityKind.ACTOR, createActor("parityActor"));
+
+        decorate(createLogicalFlow(a, b).id().get(), DT_1);
+        decorate(createLogicalFlow(b, c).id().get(), DT_1, DT_2);
+        decorate(createLogicalFlow(d, a).id().get(), DT_2);
+        decorate(createLogicalFlow(c, d).id().get(), DT_1);
+        decorate(createLogicalFlow(actor, a).id().get(), DT_1);
+
+        // flagged as removed without changing the lifecycle status, excluded by both
+        long removedFlowId = createLogicalFlow(a, d).id().get();
+        decorate(removedFlowId, DT_1);
+        getDsl().update(LOGICAL_FLOW)
+                .set(LOGICAL_FLOW.IS_REMOVED, true)
+                .where(LOGICAL_FLOW.ID.eq(removedFlowId))
+                .execute();
+
+        Select<Record1<Long>> appIdSelector = DSL
+                .select(APPLICATION.ID)
+                .from(APPLICATION)
+                .where(APPLICATION.ID.in(a.id(), b.id()));
+
+        LogicalFlowStatsDao statsDao = ctx.getBean(LogicalFlowStatsDao.class);
+        LogicalFlowGraph graph = new LogicalFlowGraph(ctx.getBean(LogicalFlowGraphDao.class).findAllActive());
+
+        long[] appIds = a.id() < b.id()
+                ? new long[] {a.id(), b.id()}
+                : new long[] {b.id(), a.id()};
+        LogicalFlowStatistics fromGraph = graph.calculateStatistics(appIds);
+
+        assertMeasuresEqual(statsDao.countDistinctFlowInvolvementByAppIdSelector(appIdSelector), fromGraph.flowCounts());
+        assertMeasuresEqual(statsDao.countDistinctAppInvolvementByAppIdSelector(appIdSelector), fromGraph.appCounts());
+        assertEquals(
+                toTallyMap(statsDao.tallyDataTypesByAppIdSelector(appIdSelector)),
+                toTallyMap(fromGraph.dataTypeCounts()));
+
+        assertEquals(1, fromGraph.flowCounts().intra(), 0);
+        assertEquals(1, fromGraph.flowCounts().outbound(), 0);
+        assertEquals(1, fromGraph.flowCounts().inbound(), 0);
+    }
+
+
+    // -- HELPERS ---
+
+    private void decorate(long flowId, long... dataTypeIds) {
+        for (long dataTypeId : dataTypeIds) {
+            getDsl().insertInto(LOGICAL_FLOW_DECORATOR)
+                    .set(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID, flowId)
+                    .set(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_KIND, EntityKind.DATA_TYPE.name())
+                    .set(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_ID, dataTypeId)
+                    .set(LOGICAL_FLOW_DECORATOR.PROVENANCE, PROVENANCE)
+                    .set(LOGICAL_FLOW_DECORATOR.LAST_UPDATED_AT, DateTimeUtilities.nowUtcTimestamp())
+                    .set(LOGICAL_FLOW_DECORATOR.LAST_UPDATED_BY, LAST_UPDATE_USER)
+                    .execute();
+        }
+    }
+
+
+    private static void assertMeasuresEqual(LogicalFlowMeasures expected, LogicalFlowMeasures actual) {
+        assertEquals(expected.inbound(), actual.inbound(), 0);
+        assertEquals(expected.outbound(), actual.outbound(), 0);
+        assertEquals(expected.intra(), actual.intra(), 0);
+    }
+
+
+    private static Map<Long, Map<String, Double>> toTallyMap(List<TallyPack<String>> tallyPacks) {
+        return tallyPacks
+                .stream()
+                .collect(toMap(
+                        tp -> tp.entityReference().id(),
+                        tp -> tp.tallies().stream().collect(toMap(Tally::id, Tally::count))));
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.integration_test.physical_flow;
+
+import com.khartec.waltz.common.DateTimeUtilities;
+import com.khartec.waltz.data.physical_flow.PhysicalFlowUploadDao;
+import com.khartec.waltz.integration_test.BaseIntegrationTest;
+import com.khartec.waltz.model.Criticality;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.physical_flow.FrequencyKind;
+import com.khartec.waltz.model.physical_flow.ImmutablePhysicalFlowParsed;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowBulkUploadResult;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowParsed;
+import com.khartec.waltz.model.physical_specification.DataFormatKind;
+import com.khartec.waltz.schema.tables.records.DataTypeRecord;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.model.EntityKind.ACTOR;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.Tables.DATA_TYPE;
+import static org.junit.Assert.*;
+
+public class PhysicalFlowUploadDaoTest extends BaseIntegrationTest {
+
+    private static final AtomicLong dataTypeIdCtr = new AtomicLong(2_000_000);
+
+
+    @Test
+    public void uploadCreatesMissingEntitiesOnce() {
+        PhysicalFlowUploadDao dao = ctx.getBean(PhysicalFlowUploadDao.class);
+
+        EntityReference a = mkRef(ACTOR, createActor("uploadA"));
+        EntityReference b = mkRef(ACTOR, createActor("uploadB"));
+        EntityReference c = mkRef(ACTOR, createActor("uploadC"));
+        EntityReference dt = mkRef(EntityKind.DATA_TYPE, createDataType("uploadDt"));
+
+        PhysicalFlowParsed abDaily = mkParsed(a, b, "spec1", FrequencyKind.DAILY, dt);
+        PhysicalFlowParsed abWeekly = mkParsed(a, b, "spec1", FrequencyKind.WEEKLY, dt);
+        PhysicalFlowParsed acDaily = mkParsed(a, c, "spec2", FrequencyKind.DAILY, dt);
+
+        PhysicalFlowBulkUploadResult first = dao.upload(newArrayList(abDaily, abWeekly, acDaily, abDaily), "admin");
+
+        assertEquals(2, first.logicalFlowsCreated());
+        assertEquals(2, first.specificationsCreated());
+        assertEquals(3, first.physicalFlowsCreated());
+        assertEquals(4, first.physicalFlowIds().size());
+        assertEquals("duplicate rows resolve to the same flow", first.physicalFlowIds().get(0), first.physicalFlowIds().get(3));
+        assertEquals(2, first.addedLogicalFlowDataTypes().size());
+        assertEquals(2, first.addedSpecificationDataTypes().size());
+
+        PhysicalFlowBulkUploadResult second = dao.upload(newArrayList(abDaily, acDaily), "admin");
+
+        assertEquals(0, second.logicalFlowsCreated());
+        assertEquals(0, second.specificationsCreated());
+        assertEquals(0, second.physicalFlowsCreated());
+        assertTrue(second.addedLogicalFlowDataTypes().isEmpty());
+        assertEquals(first.physicalFlowIds().get(0), second.physicalFlowIds().get(0));
+        assertEquals(first.physicalFlowIds().get(2), second.physicalFlowIds().get(1));
+    }
+
+
+    @Test
+    public void existingFlowsCanBeFound() {
+        PhysicalFlowUploadDao dao = ctx.getBean(PhysicalFlowUploadDao.class);
+
+        EntityReference a = mkRef(ACTOR, createActor("findA"));
+        EntityReference b = mkRef(ACTOR, createActor("findB"));
+        EntityReference dt = mkRef(EntityKind.DATA_TYPE, createDataType("findDt"));
+
+        PhysicalFlowParsed existing = mkParsed(a, b, "spec", FrequencyKind.DAILY, dt);
+        PhysicalFlowParsed missing = mkParsed(a, b, "spec", FrequencyKind.MONTHLY, dt);
+
+        Long id = dao.upload(newArrayList(existing), "admin").physicalFlowIds().get(0);
+        Map<PhysicalFlowParsed, Long> found = dao.findExistingPhysicalFlowIds(newArrayList(existing, missing));
+
+        assertEquals(id, found.get(existing));
+        assertFalse(found.containsKey(missing));
+    }
+
+
+    // -- HELPERS ---
+
+    private PhysicalFlowParsed mkParsed(EntityReference source,
+                                        EntityReference target,
+                                        String specName,
+                                        FrequencyKind frequency,
+                                        EntityReference dataType) {
+        return ImmutablePhysicalFlowParsed.builder()
+                .source(source)
+                .target(target)
+                .owner(source)
+                .name(specName)
+                .format(DataFormatKind.FLAT_FILE)
+                .basisOffset(0)
+                .frequency(frequency)
+                .transport("UNKNOWN")
+                .criticality(Criticality.MEDIUM)
+                .description("test")
+                .dataType(dataType)
+                .build();
+    }
+
+
+    private long createDataType(String name) {
+        DataTypeRecord record = getDsl().newRecord(DATA_TYPE);
+        record.setId(dataTypeIdCtr.incrementAndGet());
+        record.setCode(name);
+        record.setName(name);
+        record.setDescription(name);
+        record.setConcrete(true);
+        record.setUnknown(false);
+        record.setDeprecated(false);
+        record.setLastUpdatedAt(DateTimeUtilities.nowUtcTimestamp());
+        record.insert();
+        return record.getId();
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.jobs.harness;
+
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingRecalculation;
+import com.khartec.waltz.service.DIConfiguration;
+import com.khartec.waltz.service.authoritative_source.AuthSourceRatingRecalculator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Map;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+
+
+public class AuthSourceRecalculationHarness {
+
+    public static void main(String[] args) {
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
+        AuthSourceRatingRecalculator recalculator = ctx.getBean(AuthSourceRatingRecalculator.class);
+
+        AuthoritativeRatingRecalculation dryRun = recalculator.recalculateAll(true);
+        report("Dry run", dryRun);
+
+        Map<String, Long> transitions = dryRun
+                .changes()
+                .stream()
+                .collect(groupingBy(
+                        c -> c.currentRating() + " -> " + c.newRating(),
+                        counting()));
+
+        transitions.forEach((k, v) -> System.out.printf("  %-35s %d\n", k, v));
+
+        report("Recalculation", recalculator.recalculateAll(false));
+
+        // a second pass should find nothing left to change
+        report("Recalculation (repeat)", recalculator.recalculateAll(false));
+    }
+
+
+    private static void report(String label, AuthoritativeRatingRecalculation result) {
+        System.out.printf(
+                "%s: evaluated %d decorators, %d changed, %d rows updated in %dms\n",
+                label,
+                result.decoratorsEvaluated(),
+                result.changes().size(),
+                result.decoratorsUpdated(),
+                result.durationMillis());
+    }
+
+}
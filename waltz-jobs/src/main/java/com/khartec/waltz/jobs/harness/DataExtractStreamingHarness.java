@@ -0,0 +1,191 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.jobs.harness;
+
+import com.khartec.waltz.service.DIConfiguration;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.Select;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
+
+
+/**
+ * Compares peak heap usage of the materialised (fetch everything, build the
+ * workbook/string in memory) extract approach against the streaming approach
+ * used by <code>DirectQueryBasedDataExtractor</code> for increasing row counts.
+ *
+ * Output goes to a null stream so only the cost of producing the extract is measured.
+ */
+public class DataExtractStreamingHarness {
+
+    private static final int[] ROW_COUNTS = {1_000, 10_000, 50_000, 100_000};
+
+    private static final OutputStream NULL_OUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+
+    public static void main(String[] args) {
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
+        DSLContext dsl = ctx.getBean(DSLContext.class);
+
+        System.out.println("rows, format, mode, durationMs, peakHeapMb");
+
+        for (int rowCount : ROW_COUNTS) {
+            Select<Record> qry = dsl
+                    .select(LOGICAL_FLOW.fields())
+                    .from(LOGICAL_FLOW)
+                    .limit(rowCount);
+
+            measure(rowCount, "CSV", "materialised", () -> materialisedCsv(qry));
+            measure(rowCount, "CSV", "streaming", () -> streamingCsv(dsl, qry));
+            measure(rowCount, "XLSX", "materialised", () -> materialisedExcel(qry));
+            measure(rowCount, "XLSX", "streaming", () -> streamingExcel(dsl, qry));
+        }
+    }
+
+
+    private static void materialisedCsv(Select<Record> qry) {
+        try {
+            NULL_OUT.write(qry.fetch().formatCSV().getBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private static void streamingCsv(DSLContext dsl, Select<Record> qry) {
+        Writer writer = new OutputStreamWriter(NULL_OUT);
+        withCursor(dsl, qry, cursor -> {
+            cursor.fetchNext(1000).formatCSV(writer, true);
+            while (cursor.hasNext()) {
+                cursor.fetchNext(1000).formatCSV(writer, false);
+            }
+        });
+    }
+
+
+    private static void materialisedExcel(Select<Record> qry) {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Result<Record> records = qry.fetch();
+            Sheet sheet = workbook.createSheet("extract");
+            int rowNum = 0;
+            for (Record r : records) {
+                writeRow(sheet.createRow(rowNum++), r);
+            }
+            workbook.write(NULL_OUT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private static void streamingExcel(DSLContext dsl, Select<Record> qry) {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        try {
+            Sheet sheet = workbook.createSheet("extract");
+            withCursor(dsl, qry, cursor -> {
+                int rowNum = 0;
+                for (Record r : cursor) {
+                    writeRow(sheet.createRow(rowNum++), r);
+                }
+            });
+            workbook.write(NULL_OUT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+
+    private static void writeRow(Row row, Record r) {
+        for (int i = 0; i < r.size(); i++) {
+            row.createCell(i).setCellValue(Objects.toString(r.get(i), ""));
+        }
+    }
+
+
+    private static void withCursor(DSLContext dsl,
+                                   Select<Record> qry,
+                                   Consumer<Cursor<Record>> consumer) {
+        dsl.transaction(tx -> {
+            try (Cursor<Record> cursor = tx.dsl().fetchLazy(qry.fetchSize(1000))) {
+                consumer.accept(cursor);
+            }
+        });
+    }
+
+
+    private static void measure(int rowCount,
+                                String format,
+                                String mode,
+                                Runnable extract) {
+        System.gc();
+        ManagementFactory
+                .getMemoryPoolMXBeans()
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long st = System.currentTimeMillis();
+        extract.run();
+        long dur = System.currentTimeMillis() - st;
+
+        long peakHeap = ManagementFactory
+                .getMemoryPoolMXBeans()
+                .stream()
+                .filter(p -> p.getType() == MemoryType.HEAP)
+                .mapToLong(p -> p.getPeakUsage().getUsed())
+                .sum();
+
+        System.out.printf(
+                "%d, %s, %s, %d, %d\n",
+                rowCount,
+                format,
+                mode,
+                dur,
+                peakHeap / (1024 * 1024));
+    }
+
+}
@@ -18,11 +18,17 @@
 
 package com.khartec.waltz.jobs.harness;
 
+import com.khartec.waltz.common.FunctionUtilities;
 import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.service.DIConfiguration;
 import com.khartec.waltz.service.entity_hierarchy.EntityHierarchyService;
+import org.jooq.DSLContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.Tables.ORGANISATIONAL_UNIT;
+
 /**
  * Created by dwatkins on 30/07/2016.
  */
@@ -32,6 +38,29 @@ public class EntityHierarchyHarness {
         AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
 
         EntityHierarchyService svc = ctx.getBean(EntityHierarchyService.class);
-        svc.buildFor(EntityKind.ORG_UNIT);
+        DSLContext dsl = ctx.getBean(DSLContext.class);
+
+        int fullCount = FunctionUtilities.time(
+                "full rebuild",
+                () -> svc.buildFor(EntityKind.ORG_UNIT));
+
+        System.out.printf("Full rebuild wrote %d rows\n", fullCount);
+
+        // pick a non-root org unit and treat it as having been moved
+        Long orgUnitId = dsl
+                .select(ORGANISATIONAL_UNIT.ID)
+                .from(ORGANISATIONAL_UNIT)
+                .where(ORGANISATIONAL_UNIT.PARENT_ID.isNotNull())
+                .limit(1)
+                .fetchOne(ORGANISATIONAL_UNIT.ID);
+
+        if (orgUnitId != null) {
+            EntityReference ref = mkRef(EntityKind.ORG_UNIT, orgUnitId);
+            int incrementalCount = FunctionUtilities.time(
+                    "incremental rebuild",
+                    () -> svc.buildForMovedNode(ref));
+
+            System.out.printf("Incremental rebuild for %s touched %d rows\n", ref, incrementalCount);
+        }
     }
 }
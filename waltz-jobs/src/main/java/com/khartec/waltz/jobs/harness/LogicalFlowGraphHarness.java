@@ -0,0 +1,155 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.jobs.harness;
+
+import com.khartec.waltz.common.FunctionUtilities;
+import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphStatistics;
+import com.khartec.waltz.service.DIConfiguration;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.Collections.singletonList;
+
+
+/**
+ * Compares lineage queries answered by the in-memory flow graph with the
+ * existing sql based approach, then benchmarks the graph against a synthetic
+ * data set shaped like the output of the LogicalFlowStressGenerator (a few
+ * hub applications with very many flows) but scaled up.
+ */
+public class LogicalFlowGraphHarness {
+
+    private static final long APP_ID = 655L;
+    private static final int SYNTHETIC_APPS = 50_000;
+    private static final int SYNTHETIC_FLOWS = 500_000;
+    private static final int HUBS = 20;
+    private static final int DATA_TYPES = 200;
+    private static final int QUERIES = 1_000;
+
+
+    public static void main(String[] args) {
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
+        LogicalFlowGraphService graphService = ctx.getBean(LogicalFlowGraphService.class);
+        LogicalFlowDao logicalFlowDao = ctx.getBean(LogicalFlowDao.class);
+
+        EntityReference app = mkRef(EntityKind.APPLICATION, APP_ID);
+
+        LogicalFlowGraphStatistics stats = FunctionUtilities.time("graph load", () -> graphService.rebuild());
+        System.out.println(stats);
+
+        int sqlCount = FunctionUtilities.time(
+                "sql upstream",
+                () -> logicalFlowDao.findUpstreamFlowsForEntityReferences(singletonList(app)).size());
+        int graphCount = FunctionUtilities.time(
+                "graph upstream",
+                () -> graphService.findUpstream(app, Optional.empty(), Collections.emptySet()).size());
+
+        System.out.printf("Upstream flows for %s, sql: %d, graph: %d\n", app, sqlCount, graphCount);
+
+        benchmarkSynthetic();
+    }
+
+
+    private static void benchmarkSynthetic() {
+        Random rnd = new Random(42);
+        List<LogicalFlowGraphEdge> edges = new ArrayList<>(SYNTHETIC_FLOWS);
+        for (long flowId = 1; flowId <= SYNTHETIC_FLOWS; flowId++) {
+            // half the flows touch a hub, mimicking the stress generator
+            long source = rnd.nextBoolean() ? rnd.nextInt(HUBS) : rnd.nextInt(SYNTHETIC_APPS);
+            long target = rnd.nextInt(SYNTHETIC_APPS);
+            if (source == target) {
+                continue;
+            }
+            edges.add(ImmutableLogicalFlowGraphEdge.builder()
+                    .flowId(flowId)
+                    .source(mkRef(EntityKind.APPLICATION, source))
+                    .target(mkRef(EntityKind.APPLICATION, target))
+                    .dataTypeIds(asSet((long) rnd.nextInt(DATA_TYPES), (long) rnd.nextInt(DATA_TYPES)))
+                    .build());
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        LogicalFlowGraph graph = FunctionUtilities.time("synthetic build", () -> new LogicalFlowGraph(edges));
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        System.out.printf(
+                "Synthetic graph: %d nodes, %d edges, ~%dMB\n",
+                graph.nodeCount(),
+                graph.edgeCount(),
+                (heapAfter - heapBefore) / (1024 * 1024));
+
+        time("2 hop neighbourhood", () -> graph.traverse(
+                randomApp(rnd),
+                LogicalFlowGraph.Direction.BOTH,
+                2,
+                Collections.emptySet()).size());
+
+        time("upstream closure (single data type)", () -> graph.traverse(
+                randomApp(rnd),
+                LogicalFlowGraph.Direction.UPSTREAM,
+                Integer.MAX_VALUE,
+                asSet((long) rnd.nextInt(DATA_TYPES))).size());
+
+        time("shortest path", () -> graph.findShortestPath(
+                randomApp(rnd),
+                randomApp(rnd),
+                Collections.emptySet()).size());
+    }
+
+
+    private static EntityReference randomApp(Random rnd) {
+        return mkRef(EntityKind.APPLICATION, rnd.nextInt(SYNTHETIC_APPS));
+    }
+
+
+    private static void time(String name, IntSupplier query) {
+        long total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            total += query.getAsInt();
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+        System.out.printf(
+                "%s: %d queries, avg %.2fms, avg result size %d\n",
+                name,
+                QUERIES,
+                elapsedMicros / 1000.0 / QUERIES,
+                total / QUERIES);
+    }
+
+}
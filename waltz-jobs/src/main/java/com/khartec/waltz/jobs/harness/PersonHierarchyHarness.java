@@ -0,0 +1,146 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.jobs.harness;
+
+import com.khartec.waltz.common.ListUtilities;
+import com.khartec.waltz.common.hierarchy.FlatNode;
+import com.khartec.waltz.common.hierarchy.Forest;
+import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
+import com.khartec.waltz.common.hierarchy.Node;
+import com.khartec.waltz.schema.tables.records.PersonHierarchyRecord;
+import com.khartec.waltz.service.person_hierarchy.PersonHierarchyBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+
+/**
+ * Compares the time taken, and bytes allocated, deriving the person
+ * hierarchy records for a synthetic organisation using the original
+ * <code>Forest</code> based approach and <code>PersonHierarchyBuilder</code>.
+ *
+ * The forest approach materialises its records as a list (as it did before
+ * they were stored), the builder streams its records to a counter (as they
+ * would be streamed into inserts).  No database is required.
+ */
+public class PersonHierarchyHarness {
+
+    private static final int PEOPLE = 300_000;
+    private static final int SPAN_OF_CONTROL = 8;
+    private static final int WARM_UP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+
+    public static void main(String[] args) {
+        List<FlatNode<String, String>> people = mkPeople(PEOPLE, SPAN_OF_CONTROL);
+
+        System.out.println("people, approach, avgMs, avgAllocatedMb, records");
+        measure("forest", () -> deriveUsingForest(people));
+        measure("builder", () -> deriveUsingBuilder(people));
+    }
+
+
+    private static void measure(String approach, LongSupplier derivation) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            derivation.getAsLong();
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long records = 0;
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long st = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            records = derivation.getAsLong();
+        }
+        long durNanos = System.nanoTime() - st;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf(
+                "%d, %s, %.1f, %.1f, %d\n",
+                PEOPLE,
+                approach,
+                durNanos / 1_000_000.0 / MEASURED_RUNS,
+                allocated / (1024.0 * 1024.0) / MEASURED_RUNS,
+                records);
+    }
+
+
+    /**
+     * Everybody, other than the first person, reports to one of the people
+     * added before them, each manager having up to <code>span</code>
+     * reports.  People are then shuffled, as a HR feed is in no particular
+     * order.
+     */
+    private static List<FlatNode<String, String>> mkPeople(int count, int span) {
+        List<FlatNode<String, String>> people = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String employeeId = "E" + i;
+            String managerId = i == 0
+                    ? null
+                    : "E" + ((i - 1) / span);
+            people.add(new FlatNode<>(employeeId, Optional.ofNullable(managerId), employeeId));
+        }
+        Collections.shuffle(people, new Random(42));
+        return people;
+    }
+
+
+    /**
+     * The original derivation, retained here for comparison.
+     */
+    private static long deriveUsingForest(List<FlatNode<String, String>> people) {
+        Forest<String, String> forest = HierarchyUtilities.toForest(people);
+
+        List<PersonHierarchyRecord> records = new LinkedList<>();
+        for (Node<String, String> node : forest.getAllNodes().values()) {
+            List<String> ancestors = ListUtilities.reverse(
+                    HierarchyUtilities.parents(node)
+                            .stream()
+                            .map(Node::getData)
+                            .collect(Collectors.toList()));
+
+            for (int i = 0; i < ancestors.size(); i++) {
+                records.add(new PersonHierarchyRecord(ancestors.get(i), node.getData(), i + 1));
+            }
+        }
+        return records.size();
+    }
+
+
+    private static long deriveUsingBuilder(List<FlatNode<String, String>> people) {
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(people.size());
+        people.forEach(p -> builder.add(p.getId(), p.getParentId().orElse(null)));
+        builder.build();
+
+        AtomicLong records = new AtomicLong();
+        builder.forEachRecord((managerId, employeeId, level) -> records.incrementAndGet());
+        return records.get();
+    }
+
+}
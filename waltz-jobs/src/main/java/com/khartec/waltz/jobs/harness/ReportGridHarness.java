@@ -23,25 +23,39 @@ import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.report_grid.ReportGridDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.IdSelectionOptions;
+import com.khartec.waltz.model.report_grid.ReportGridColumnData;
+import com.khartec.waltz.model.report_grid.ReportGridColumnar;
 import com.khartec.waltz.model.report_grid.ReportGridRatingCell;
-import com.khartec.waltz.service.DIBaseConfiguration;
+import com.khartec.waltz.service.DIConfiguration;
+import com.khartec.waltz.service.report_grid.ReportGridService;
 import org.jooq.Record1;
 import org.jooq.Select;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.util.Set;
 
-import static com.khartec.waltz.common.CollectionUtilities.first;
 import static com.khartec.waltz.model.EntityReference.mkRef;
 import static com.khartec.waltz.model.IdSelectionOptions.mkOpts;
 
 
+/**
+ * Benchmarks grid evaluation, comparing the original (cell per object)
+ * dao query against the columnar evaluation used by the service.  The first
+ * columnar run loads (and caches) the grid definition, subsequent runs
+ * reuse it.
+ */
 public class ReportGridHarness {
 
+    private static final long GRID_ID = 5;
+    private static final int RUNS = 4;
+
+
     public static void main(String[] args) {
 
-        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIBaseConfiguration.class);
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
         ReportGridDao dao = ctx.getBean(ReportGridDao.class);
+        ReportGridService service = ctx.getBean(ReportGridService.class);
 
         System.out.println("Starting....");
 
@@ -52,19 +66,35 @@ public class ReportGridHarness {
         EntityReference flowDiagram = mkRef(EntityKind.FLOW_DIAGRAM, 1);
         EntityReference mgr = mkRef(EntityKind.PERSON, 1);
 
-        Select<Record1<Long>> selector = new ApplicationIdSelectorFactory().apply(mkOpts(mgr));
+        IdSelectionOptions opts = mkOpts(orgUnit);
+        Select<Record1<Long>> selector = new ApplicationIdSelectorFactory().apply(opts);
 
         System.out.println("Made selector");
 
-        Set<ReportGridRatingCell> a = FunctionUtilities.time("getCellData", () -> dao.findCellDataByGridId(5, selector));
-        Set<ReportGridRatingCell> b = FunctionUtilities.time("getCellData", () -> dao.findCellDataByGridId(5, selector));
-        Set<ReportGridRatingCell> c = FunctionUtilities.time("getCellData", () -> dao.findCellDataByGridId(5, selector));
-        Set<ReportGridRatingCell> data = FunctionUtilities.time("getCellData", () -> dao.findCellDataByGridId(5, selector));
-        System.out.println(data.size());
-        System.out.println(first(data));
+        Set<ReportGridRatingCell> cells = null;
+        for (int i = 0; i < RUNS; i++) {
+            cells = FunctionUtilities.time("dao.findCellDataByGridId", () -> dao.findCellDataByGridId(GRID_ID, selector));
+        }
+
+        ReportGridColumnar grid = null;
+        for (int i = 0; i < RUNS; i++) {
+            grid = FunctionUtilities.time("service.getColumnarByIdAndSelectionOptions", () -> service.getColumnarByIdAndSelectionOptions(GRID_ID, opts));
+        }
+
+        System.out.printf(
+                "Cells: %d, Rows: %d, Columnar cells: %d%n",
+                cells.size(),
+                grid.instance().applications().size(),
+                grid.instance().columns().stream().mapToInt(c -> c.rows().length).sum());
+
+        for (ReportGridColumnData column : grid.instance().columns()) {
+            System.out.printf(
+                    "%s/%d: %d cells, %d distinct ratings%n",
+                    column.columnEntityKind(),
+                    column.columnEntityId(),
+                    column.rows().length,
+                    column.ratingIds().length);
+        }
     }
 
-
-
-
 }
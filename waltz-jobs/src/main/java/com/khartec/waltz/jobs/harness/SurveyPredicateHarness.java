@@ -0,0 +1,88 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.jobs.harness;
+
+import com.khartec.waltz.data.survey.SurveyInstanceDao;
+import com.khartec.waltz.model.survey.SurveyInstance;
+import com.khartec.waltz.model.survey.SurveyQuestion;
+import com.khartec.waltz.service.DIConfiguration;
+import com.khartec.waltz.service.survey.inclusion_evaluator.QuestionPredicateEvaluator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Compares the latency of determining active survey questions one instance
+ * at a time (as when opening a survey) against evaluating a whole survey run
+ * in one batch.  The first per-instance pass includes compiling predicates,
+ * later passes reuse the compiled predicates.
+ */
+public class SurveyPredicateHarness {
+
+    private static final long SURVEY_RUN_ID = 14L;
+
+
+    public static void main(String[] args) {
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
+        QuestionPredicateEvaluator evaluator = ctx.getBean(QuestionPredicateEvaluator.class);
+        SurveyInstanceDao instanceDao = ctx.getBean(SurveyInstanceDao.class);
+
+        List<SurveyInstance> instances = instanceDao.findForSurveyRun(SURVEY_RUN_ID);
+        System.out.printf("Survey run %d has %d instances\n", SURVEY_RUN_ID, instances.size());
+
+        if (instances.isEmpty()) {
+            return;
+        }
+
+        perInstance("per instance (cold)", evaluator, instances);
+        perInstance("per instance (warm)", evaluator, instances);
+
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            Map<Long, List<SurveyQuestion>> result = evaluator.determineActiveQuestionsForSurveyRun(SURVEY_RUN_ID);
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            System.out.printf(
+                    "batch: %d instances, avg %.2fms per instance\n",
+                    result.size(),
+                    elapsedMicros / 1000.0 / result.size());
+        }
+    }
+
+
+    private static void perInstance(String name,
+                                    QuestionPredicateEvaluator evaluator,
+                                    List<SurveyInstance> instances) {
+        int activeQuestions = 0;
+        long start = System.nanoTime();
+        for (SurveyInstance instance : instances) {
+            activeQuestions += evaluator.determineActiveQuestions(instance.id().get()).size();
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+        System.out.printf(
+                "%s: %d instances, avg %.2fms per instance, avg %d active questions\n",
+                name,
+                instances.size(),
+                elapsedMicros / 1000.0 / instances.size(),
+                activeQuestions / instances.size());
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.jobs.harness;
+
+import com.khartec.waltz.common.SvgUtilities;
+import org.jooq.lambda.Unchecked;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.khartec.waltz.common.XmlUtilities.*;
+
+
+/**
+ * Compares the time taken, and bytes allocated, converting synthetic visio
+ * diagrams of increasing size using the original DOM/XPath based
+ * conversion and the StAX based conversion in <code>SvgUtilities</code>.
+ *
+ * No database is required.
+ */
+public class SvgConversionHarness {
+
+    private static final String KEY = "appId";
+    private static final int[] SHAPE_COUNTS = {1_000, 10_000, 50_000};
+    private static final int WARM_UP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+    private static final Pattern DATA_ATTRIBUTE = Pattern.compile("data-" + KEY + "=");
+
+
+    public static void main(String[] args) {
+        System.out.println("shapes, svgKb, approach, avgMs, avgAllocatedMb, dataAttributes");
+
+        for (int shapeCount : SHAPE_COUNTS) {
+            String svg = mkVisioSvg(shapeCount);
+            measure(shapeCount, svg, "dom", Unchecked.supplier(() -> convertUsingDom(KEY, svg)));
+            measure(shapeCount, svg, "stax", Unchecked.supplier(() -> SvgUtilities.convertVisioSvg(KEY, svg)));
+        }
+    }
+
+
+    private static void measure(int shapeCount,
+                                String svg,
+                                String approach,
+                                Supplier<String> conversion) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            conversion.get();
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        String result = null;
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long st = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            result = conversion.get();
+        }
+        long durNanos = System.nanoTime() - st;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf(
+                "%d, %d, %s, %.1f, %.1f, %d\n",
+                shapeCount,
+                svg.length() / 1024,
+                approach,
+                durNanos / 1_000_000.0 / MEASURED_RUNS,
+                allocated / (1024.0 * 1024.0) / MEASURED_RUNS,
+                countDataAttributes(result));
+    }
+
+
+    private static String mkVisioSvg(int shapeCount) {
+        StringBuilder sb = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:v=\"http://schemas.microsoft.com/visio/2003/SVGExtensions/\">\n");
+
+        for (int i = 0; i < shapeCount; i++) {
+            sb.append("<g id=\"shape").append(i).append("\" transform=\"translate(").append(i % 100).append(",").append(i / 100).append(")\">")
+                    .append("<title>Shape ").append(i).append("</title>")
+                    .append("<v:custProps>")
+                    .append("<v:cp v:nameU=\"Owner\" v:lbl=\"Owner\" v:type=\"0\" v:val=\"VT4(Team ").append(i % 7).append(")\"/>")
+                    .append("<v:cp v:nameU=\"appId\" v:lbl=\"appId\" v:type=\"0\" v:val=\"VT4(").append(i).append(")\"/>")
+                    .append("</v:custProps>")
+                    .append("<rect x=\"0\" y=\"0\" width=\"90\" height=\"40\" class=\"st1\"/>")
+                    .append("<text x=\"4\" y=\"20\" class=\"st2\">Application ").append(i).append("</text>")
+                    .append("</g>\n");
+        }
+        return sb.append("</svg>").toString();
+    }
+
+
+    private static int countDataAttributes(String svg) {
+        Matcher matcher = DATA_ATTRIBUTE.matcher(svg);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * The original conversion, retained here for comparison.
+     */
+    private static String convertUsingDom(String key, String svgStr) throws Exception {
+        DocumentBuilder builder = createNonValidatingDocumentBuilderFactory().newDocumentBuilder();
+        InputSource svgSource = new InputSource(new ByteArrayInputStream(svgStr.getBytes()));
+        Document svg = builder.parse(svgSource);
+
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        NodeList nodes = (NodeList) xpath.evaluate("//*", svg, XPathConstants.NODESET);
+
+        stream(nodes)
+                .forEach(n -> stream(n.getChildNodes())
+                        .filter(c -> c.getNodeName().contains("custProps"))
+                        .forEach(c -> stream(c.getChildNodes())
+                                .filter(cp -> cp.getNodeName().contains("cp"))
+                                .map(cp -> (Element) cp)
+                                .filter(cp -> key.equals(cp.getAttribute("v:lbl")))
+                                .map(cp -> cp.getAttribute("v:val"))
+                                .map(v -> v.replaceAll("^.*\\((.*)\\)$", "$1"))
+                                .forEach(v -> ((Element) n).setAttribute("data-" + key, v))
+                        )
+                );
+
+        return printDocument(svg, false);
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.model.authoritativesource;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import org.immutables.value.Value;
+
+
+/**
+ * A change in the rating of a single logical flow decorator, as calculated
+ * by a recalculation of authoritative source ratings.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableAuthoritativeRatingChange.class)
+@JsonDeserialize(as = ImmutableAuthoritativeRatingChange.class)
+public abstract class AuthoritativeRatingChange {
+
+    public abstract long decoratorId();
+    public abstract long logicalFlowId();
+    public abstract long dataTypeId();
+    public abstract AuthoritativenessRating currentRating();
+    public abstract AuthoritativenessRating newRating();
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.model.authoritativesource;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+
+/**
+ * Outcome of recalculating all logical flow decorator ratings.  When
+ * <code>dryRun</code> is set, the changes were calculated but not written.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableAuthoritativeRatingRecalculation.class)
+@JsonDeserialize(as = ImmutableAuthoritativeRatingRecalculation.class)
+public abstract class AuthoritativeRatingRecalculation {
+
+    public abstract boolean dryRun();
+    public abstract int decoratorsEvaluated();
+    public abstract int decoratorsUpdated();
+    public abstract long durationMillis();
+    public abstract List<AuthoritativeRatingChange> changes();
+
+}
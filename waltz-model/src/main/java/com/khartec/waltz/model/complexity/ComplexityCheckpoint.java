@@ -0,0 +1,40 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.model.complexity;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.Map;
+
+
+/**
+ * How far the incremental complexity recalculation has got: the last change
+ * log entry considered and the baselines the stored scores are relative to.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableComplexityCheckpoint.class)
+@JsonDeserialize(as = ImmutableComplexityCheckpoint.class)
+public abstract class ComplexityCheckpoint {
+
+    public abstract long changeLogId();
+    public abstract Map<ComplexityKind, Double> baselines();
+
+}
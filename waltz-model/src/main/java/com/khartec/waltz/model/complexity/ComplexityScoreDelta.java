@@ -0,0 +1,47 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.complexity;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+
+/**
+ * The set of (application) complexity scores which need to be inserted,
+ * updated (score changes only) or deleted to bring the stored scores up to date.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableComplexityScoreDelta.class)
+@JsonDeserialize(as = ImmutableComplexityScoreDelta.class)
+public abstract class ComplexityScoreDelta {
+
+    public abstract List<ComplexityScore> inserts();
+    public abstract List<ComplexityScore> updates();
+    public abstract List<ComplexityScore> deletes();
+
+
+    public int size() {
+        return inserts().size() + updates().size() + deletes().size();
+    }
+
+}
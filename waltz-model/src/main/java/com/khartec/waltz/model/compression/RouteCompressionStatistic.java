@@ -0,0 +1,51 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.compression;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+
+/**
+ * Response size statistics for a single route.  Uncompressed bytes are
+ * the size of the rendered (json) body, compressed bytes are the number of
+ * bytes actually sent.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableRouteCompressionStatistic.class)
+@JsonDeserialize(as = ImmutableRouteCompressionStatistic.class)
+public abstract class RouteCompressionStatistic {
+
+    public abstract String route();
+    public abstract long requestCount();
+    public abstract long compressedCount();
+    public abstract long uncompressedBytes();
+    public abstract long compressedBytes();
+
+
+    @Value.Derived
+    public double compressionRatio() {
+        return uncompressedBytes() == 0
+                ? 1.0
+                : (double) compressedBytes() / uncompressedBytes();
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.entity_hierarchy;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+
+/**
+ * The set of hierarchy rows which need to be inserted, updated (level
+ * changes only) or deleted to bring part of a hierarchy up to date.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableEntityHierarchyDelta.class)
+@JsonDeserialize(as = ImmutableEntityHierarchyDelta.class)
+public abstract class EntityHierarchyDelta {
+
+    public abstract List<EntityHierarchyItem> inserts();
+    public abstract List<EntityHierarchyItem> updates();
+    public abstract List<EntityHierarchyItem> deletes();
+
+
+    public int size() {
+        return inserts().size() + updates().size() + deletes().size();
+    }
+
+}
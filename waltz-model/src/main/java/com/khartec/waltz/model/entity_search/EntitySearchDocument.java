@@ -0,0 +1,46 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.model.entity_search;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.EntityReference;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+
+/**
+ * The searchable representation of an entity, as held by the in-memory search index.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableEntitySearchDocument.class)
+@JsonDeserialize(as = ImmutableEntitySearchDocument.class)
+public abstract class EntitySearchDocument {
+
+    public abstract EntityReference entityReference();
+
+    /**
+     * Identifying codes (e.g. asset codes, external ids, emails), these are matched by prefix
+     */
+    public abstract List<String> codes();
+
+    public abstract List<String> aliases();
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.model.issuance;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.system.job_log.JobStatus;
+import org.immutables.value.Value;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+
+/**
+ * Snapshot of the progress of issuing the instances and recipients
+ * of an attestation or survey run.  Counts are of rows present for the
+ * run, so a retried job picks up from where the previous attempt stopped.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableIssuanceJob.class)
+@JsonDeserialize(as = ImmutableIssuanceJob.class)
+public abstract class IssuanceJob {
+
+    public abstract EntityReference run();
+    public abstract String submittedBy();
+    public abstract LocalDateTime submittedAt();
+    public abstract JobStatus status();
+
+
+    @Value.Default
+    public int attempts() {
+        return 0;
+    }
+
+
+    @Value.Default
+    public int instanceCount() {
+        return 0;
+    }
+
+
+    @Value.Default
+    public int instancesIssued() {
+        return 0;
+    }
+
+
+    @Value.Default
+    public int recipientCount() {
+        return 0;
+    }
+
+
+    @Value.Default
+    public int recipientsIssued() {
+        return 0;
+    }
+
+
+    public abstract Optional<LocalDateTime> completedAt();
+    public abstract Optional<String> error();
+
+}
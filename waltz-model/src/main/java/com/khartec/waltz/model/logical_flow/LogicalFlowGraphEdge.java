@@ -0,0 +1,45 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.logical_flow;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.EntityReference;
+import org.immutables.value.Value;
+
+import java.util.Set;
+
+
+/**
+ * Lightweight representation of an active logical flow, as held by the
+ * in-memory flow graph.  Source and target references carry only their
+ * kind and id.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableLogicalFlowGraphEdge.class)
+@JsonDeserialize(as = ImmutableLogicalFlowGraphEdge.class)
+public abstract class LogicalFlowGraphEdge {
+
+    public abstract long flowId();
+    public abstract EntityReference source();
+    public abstract EntityReference target();
+    public abstract Set<Long> dataTypeIds();
+
+}
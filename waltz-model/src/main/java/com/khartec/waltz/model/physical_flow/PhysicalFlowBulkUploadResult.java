@@ -0,0 +1,65 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.physical_flow;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Outcome of writing a batch of parsed physical flows, including the
+ * supporting logical flows, specifications and data type decorations.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutablePhysicalFlowBulkUploadResult.class)
+@JsonDeserialize(as = ImmutablePhysicalFlowBulkUploadResult.class)
+public abstract class PhysicalFlowBulkUploadResult {
+
+    /**
+     * Physical flow ids (either matched or created), in the same order as the uploaded flows
+     */
+    public abstract List<Long> physicalFlowIds();
+
+    /**
+     * All logical flows which the uploaded flows belong to
+     */
+    public abstract Set<Long> logicalFlowIds();
+
+    /**
+     * Data type ids newly associated with logical flows, keyed by logical flow id
+     */
+    public abstract Map<Long, Set<Long>> addedLogicalFlowDataTypes();
+
+    /**
+     * Data type ids newly associated with specifications, keyed by specification id
+     */
+    public abstract Map<Long, Set<Long>> addedSpecificationDataTypes();
+
+    public abstract int logicalFlowsCreated();
+    public abstract int logicalFlowsRestored();
+    public abstract int specificationsCreated();
+    public abstract int physicalFlowsCreated();
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.physical_flow;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.system.job_log.JobStatus;
+import org.immutables.value.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Snapshot of the progress of an asynchronous physical flow upload.
+ * Responses are only populated once the job has completed successfully,
+ * or has failed validation.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutablePhysicalFlowUploadJob.class)
+@JsonDeserialize(as = ImmutablePhysicalFlowUploadJob.class)
+public abstract class PhysicalFlowUploadJob {
+
+    public abstract String jobId();
+    public abstract String submittedBy();
+    public abstract LocalDateTime submittedAt();
+    public abstract JobStatus status();
+    public abstract PhysicalFlowUploadStage stage();
+    public abstract int rowCount();
+    public abstract Optional<LocalDateTime> completedAt();
+    public abstract Optional<String> error();
+
+    /**
+     * Set if the flows were created but the follow up work (ratings, usages,
+     * change logs etc.) failed, the job is still considered successful.
+     */
+    public abstract Optional<String> warning();
+    public abstract List<PhysicalFlowUploadCommandResponse> responses();
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.model.query_stats;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+
+/**
+ * Snapshot of the database connection pool, along with statistics on how
+ * long callers have waited to acquire a connection.  Times are in milliseconds.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableConnectionPoolStatistics.class)
+@JsonDeserialize(as = ImmutableConnectionPoolStatistics.class)
+public abstract class ConnectionPoolStatistics {
+
+    public abstract int totalConnections();
+
+    public abstract int activeConnections();
+
+    public abstract int idleConnections();
+
+    public abstract int pendingThreads();
+
+    public abstract int maxConnections();
+
+    public abstract long acquireCount();
+
+    public abstract double acquireP50Millis();
+
+    public abstract double acquireP99Millis();
+
+    public abstract double acquireMaxMillis();
+
+    public abstract long timeoutCount();
+
+}
@@ -0,0 +1,30 @@
+package com.khartec.waltz.model.report_grid;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.EntityKind;
+import org.immutables.value.Value;
+
+
+/**
+ * Compact, columnar, representation of the cells in a single report grid column.
+ *
+ * Rating ids are dictionary encoded: <code>ratingIds</code> holds the distinct
+ * ratings used in this column and each cell stores an index into it.  Only rated
+ * cells are held; <code>rows[i]</code> is the index (into the instance's
+ * application list) of the i'th rated cell and <code>ratings[i]</code> is the
+ * index of its rating in <code>ratingIds</code>.  Rows are in ascending order.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableReportGridColumnData.class)
+@JsonDeserialize(as = ImmutableReportGridColumnData.class)
+public abstract class ReportGridColumnData {
+
+    public abstract EntityKind columnEntityKind();
+    public abstract long columnEntityId();
+
+    public abstract long[] ratingIds();  // dictionary
+    public abstract int[] rows();
+    public abstract int[] ratings();  // index into dictionary, aligned with rows
+
+}
@@ -0,0 +1,16 @@
+package com.khartec.waltz.model.report_grid;
+
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+@Value.Immutable
+@JsonSerialize(as = ImmutableReportGridColumnar.class)
+@JsonDeserialize(as = ImmutableReportGridColumnar.class)
+public abstract class ReportGridColumnar {
+
+    public abstract ReportGridDefinition definition();
+    public abstract ReportGridColumnarInstance instance();
+
+}
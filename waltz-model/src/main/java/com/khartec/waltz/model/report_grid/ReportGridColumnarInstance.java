@@ -0,0 +1,25 @@
+package com.khartec.waltz.model.report_grid;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.rating.RagName;
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Columnar alternative to {@link ReportGridInstance}.  Columns are in the
+ * same order as the definition's column definitions and refer to rows by
+ * their index in <code>applications</code>.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableReportGridColumnarInstance.class)
+@JsonDeserialize(as = ImmutableReportGridColumnarInstance.class)
+public abstract class ReportGridColumnarInstance {
+    public abstract List<Application> applications();  // rows, ordered by name
+    public abstract Set<RagName> ratingSchemeItems();  // color scheme
+    public abstract List<ReportGridColumnData> columns();  // cell data, per column
+}
@@ -0,0 +1,53 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.model.scheduled_job;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+
+/**
+ * Snapshot of a scheduled job, its declared prerequisites and recent timings.
+ * Durations are in milliseconds, most recent first.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableScheduledJobStatus.class)
+@JsonDeserialize(as = ImmutableScheduledJobStatus.class)
+public abstract class ScheduledJobStatus {
+
+    public abstract JobKey jobKey();
+
+    public abstract Set<JobKey> dependsOn();
+
+    public abstract JobExecutionState executionState();
+
+    public abstract Optional<JobLifecycleStatus> lifecycleStatus();
+
+    public abstract Optional<LocalDateTime> lastStarted();
+
+    public abstract List<Long> recentDurations();
+
+}
@@ -62,7 +62,10 @@ const initialState = {
         'MEASURABLE': [exactScope, childrenScope]
     },
     displaySummary: false,
-    loadingSummary: false
+    loadingSummary: false,
+    issuing: false,
+    issuanceJob: null,
+    issuanceError: null
 };
 
 
@@ -90,7 +93,9 @@ function mkCreateCommand(attestationRun){
 }
 
 
-function controller($state,
+function controller($interval,
+                    $q,
+                    $state,
                     notification,
                     serviceBroker,
                     involvementKindStore) {
@@ -133,18 +138,50 @@ function controller($state,
             });
     };
 
+    const awaitIssuance = (runId) => serviceBroker
+        .execute(CORE_API.AttestationRunStore.getIssuanceJob, [runId])
+        .then(r => {
+            const job = r.data;
+            vm.issuanceJob = job;
+            if (job && job.status === 'IN_PROGRESS') {
+                return $interval(_.noop, 1000, 1)
+                    .then(() => awaitIssuance(runId));
+            }
+            if (!job || job.status !== 'SUCCESS') {
+                throw new Error(_.get(job, ['error'], 'Attestation issuance did not complete'));
+            }
+            return job;
+        });
+
+    const issue = (runId, submission) => {
+        vm.issuing = true;
+        vm.issuanceError = null;
+        vm.runId = runId;
+
+        return submission
+            .then(() => awaitIssuance(runId))
+            .then(() => {
+                notification.success('Attestation run created successfully');
+                serviceBroker.loadAppData(CORE_API.NotificationStore.findAll, [], { force: true });
+                $state.go('main.attestation.run.view', {id: runId});
+            })
+            .catch(e => vm.issuanceError = _.get(e, ['data', 'message'], e.message));
+    };
+
     vm.create = () => {
         const command = mkCreateCommand(vm.attestationRun);
 
         serviceBroker
             .execute(CORE_API.AttestationRunStore.create, [command])
-            .then(res => {
-                notification.success('Attestation run created successfully');
-                serviceBroker.loadAppData(CORE_API.NotificationStore.findAll, [], { force: true });
-                $state.go('main.attestation.run.view', {id: res.data.id});
-            }, () => notification.error('Failed to create attestation run'))
+            .then(
+                res => issue(res.data.id, $q.resolve()),
+                () => notification.error('Failed to create attestation run'));
     };
 
+    vm.resubmitIssuance = () => issue(
+        vm.runId,
+        serviceBroker.execute(CORE_API.AttestationRunStore.resubmitIssuance, [vm.runId]));
+
     vm.cancel = () => {
         vm.displaySummary = false;
         vm.summary = null;
@@ -153,6 +190,8 @@ function controller($state,
 
 
 controller.$inject = [
+    '$interval',
+    '$q',
     '$state',
     'Notification',
     'ServiceBroker',
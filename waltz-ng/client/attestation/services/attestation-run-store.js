@@ -40,6 +40,18 @@ function store($http, baseApiUrl) {
             .then(r => r.data);
     };
 
+    const getIssuanceJob = (id) => {
+        return $http
+            .get(`${base}/id/${id}/issuance`)
+            .then(r => r.data);
+    };
+
+    const resubmitIssuance = (id) => {
+        return $http
+            .post(`${base}/id/${id}/issuance/resubmit`)
+            .then(r => r.data);
+    };
+
     const findAll = () => {
         return $http
             .get(`${base}`)
@@ -74,6 +86,8 @@ function store($http, baseApiUrl) {
         getCreateSummary,
         create,
         getById,
+        getIssuanceJob,
+        resubmitIssuance,
         findAll,
         findByRecipient,
         findResponseSummaries,
@@ -108,6 +122,16 @@ export const AttestationRunStore_API = {
         serviceFnName: 'getById',
         description: 'attestation run by id'
     },
+    getIssuanceJob: {
+        serviceName,
+        serviceFnName: 'getIssuanceJob',
+        description: 'progress of issuing the instances of an attestation run'
+    },
+    resubmitIssuance: {
+        serviceName,
+        serviceFnName: 'resubmitIssuance',
+        description: 'issue the missing instances of an attestation run again'
+    },
     findAll: {
         serviceName,
         serviceFnName: 'findAll',
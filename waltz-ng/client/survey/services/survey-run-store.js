@@ -112,9 +112,16 @@ function store($http, baseApiUrl) {
             .get(`${base}/${id}/recipients`)
     };
 
-    const createSurveyRunInstancesAndRecipients = (id, excludedRecipients) => {
+    const createSurveyRunInstancesAndRecipients = (id, excludedRecipients, owningRole) => {
         return $http
-            .post(`${base}/${id}/recipients`, excludedRecipients);
+            .post(`${base}/${id}/recipients`, excludedRecipients, { params: { owningRole } })
+            .then(r => r.data);
+    };
+
+    const getIssuanceJob = (id) => {
+        return $http
+            .get(`${base}/${id}/issuance`)
+            .then(r => r.data);
     };
 
     const getCompletionRate = (id) => {
@@ -143,6 +150,7 @@ function store($http, baseApiUrl) {
         updateDueDate,
         generateSurveyRunRecipients,
         createSurveyRunInstancesAndRecipients,
+        getIssuanceJob,
         getCompletionRate,
         createSurveyInstances,
         updateOwningRole
@@ -225,6 +233,11 @@ export const SurveyRunStore_API = {
         serviceFnName: 'createSurveyRunInstancesAndRecipients',
         description: 'create a survey run, instances and recipients'
     },
+    getIssuanceJob: {
+        serviceName,
+        serviceFnName: 'getIssuanceJob',
+        description: 'get the state of the job issuing instances and recipients for a given survey run id'
+    },
     getCompletionRate: {
         serviceName,
         serviceFnName: 'getCompletionRate',
@@ -120,19 +120,37 @@ function controller($document,
         }
     };
 
+    const awaitIssuance = (surveyRunId) => surveyRunStore
+        .getIssuanceJob(surveyRunId)
+        .then(job => {
+            vm.issuanceJob = job;
+            if (job && job.status === "IN_PROGRESS") {
+                return $interval(_.noop, 1000, 1)
+                    .then(() => awaitIssuance(surveyRunId));
+            }
+            if (!job || job.status !== "SUCCESS") {
+                throw new Error(_.get(job, ["error"], "Survey issuance did not complete"));
+            }
+            return job;
+        });
+
     vm.onSaveRecipient = (surveyRun, includedRecipients, excludedRecipients) => {
-        surveyRunStore.createSurveyRunInstancesAndRecipients(surveyRun.id, excludedRecipients)
-            .then(() => serviceBroker.execute(CORE_API.SurveyRunStore.updateOwningRole, [surveyRun.id, {owningRole: surveyRun.owningRole}]))
+        vm.step = "ISSUING";
+        vm.issuanceError = null;
+        surveyRunStore.createSurveyRunInstancesAndRecipients(surveyRun.id, excludedRecipients, surveyRun.owningRole)
+            .then(() => awaitIssuance(surveyRun.id))
             .then(() => surveyRunStore.updateStatus(surveyRun.id, {newStatus: "ISSUED"})
                 .then(() => {
                     vm.step = "COMPLETED";
                     generateEmailLink(surveyRun, includedRecipients);
                 })
-            );
+            )
+            .catch(e => vm.issuanceError = _.get(e, ["data", "message"], e.message));
     };
 
     vm.goBack = () => {
         if (vm.step === "RECIPIENT") vm.step = "GENERAL";
+        if (vm.step === "ISSUING") vm.step = "RECIPIENT";
     };
 }
 
@@ -19,6 +19,11 @@
 
 export function store($http, base) {
 
+    const getById = (id) =>
+        $http
+            .get(`${base}/svg-diagram/id/${id}`)
+            .then(r => r.data);
+
     const findByGroups = (groups = []) =>
         $http
             .get(`${base}/svg-diagram/group`, { params : { group: groups } })
@@ -27,6 +32,7 @@ export function store($http, base) {
     const findByGroup = (group) => findByGroups([group]);
 
     return {
+        getById,
         findByGroup,
         findByGroups
     };
@@ -43,6 +49,11 @@ export const serviceName = 'SvgDiagramStore';
 
 
 export const SvgDiagramStore_API = {
+    getById: {
+        serviceName,
+        serviceFnName: 'getById',
+        description: 'executes getById'
+    },
     findByGroup: {
         serviceName,
         serviceFnName: 'findByGroup',
@@ -19,8 +19,10 @@
 package com.khartec.waltz.service;
 
 
-import com.khartec.waltz.data.DBExecutorPool;
-import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.BoundedDBExecutorPool;
+import com.khartec.waltz.service.query_stats.QueryStatsListener;
+import com.khartec.waltz.service.query_stats.QueryStatsMetricsTrackerFactory;
+import com.khartec.waltz.service.query_stats.QueryStatsRegistry;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.jooq.DSLContext;
@@ -36,6 +38,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 
 @Configuration
 @PropertySource(value = "classpath:waltz.properties", ignoreResourceNotFound = true)
@@ -72,8 +75,22 @@ public class DIBaseConfiguration {
     @Value("${database.performance.query.slow.threshold:10}")
     private int databasePerformanceQuerySlowThreshold;
 
+    @Value("${database.performance.query.stats.caller:false}")
+    private boolean databasePerformanceQueryStatsCaller;
+
+    @Value("${database.executor.deadline.seconds:60}")
+    private int dbExecutorDeadlineSeconds;
+
+
+    @Bean
+    public QueryStatsRegistry queryStatsRegistry() {
+        return new QueryStatsRegistry();
+    }
+
+
     @Bean
-    public DataSource dataSource() {
+    @Autowired
+    public DataSource dataSource(QueryStatsRegistry queryStatsRegistry) {
 
         HikariConfig dsConfig = new HikariConfig();
         dsConfig.setJdbcUrl(dbUrl);
@@ -82,19 +99,24 @@ public class DIBaseConfiguration {
         dsConfig.setDriverClassName(dbDriver);
         dsConfig.setMaximumPoolSize(dbPoolMax);
         dsConfig.setMinimumIdle(dbPoolMin);
+        dsConfig.setMetricsTrackerFactory(new QueryStatsMetricsTrackerFactory(queryStatsRegistry));
         return new HikariDataSource(dsConfig);
     }
 
 
     @Bean
-    public DBExecutorPoolInterface dbExecutorPool() {
-        return new DBExecutorPool(dbPoolMin, dbPoolMax);
+    public BoundedDBExecutorPool dbExecutorPool() {
+        // leave at least half the connections for request threads
+        return new BoundedDBExecutorPool(
+                Integer.max(dbPoolMax / 2, 1),
+                Duration.ofSeconds(dbExecutorDeadlineSeconds));
     }
 
 
     @Bean
     @Autowired
-    public DSLContext dsl(DataSource dataSource) {
+    public DSLContext dsl(DataSource dataSource,
+                          QueryStatsRegistry queryStatsRegistry) {
         try {
             SQLDialect.valueOf(dialect);
         } catch (IllegalArgumentException iae) {
@@ -116,7 +138,10 @@ public class DIBaseConfiguration {
                 .set(dataSource)
                 .set(SQLDialect.valueOf(dialect))
                 .set(dslSettings)
-                .set(new SlowQueryListener(databasePerformanceQuerySlowThreshold));
+                .set(new QueryStatsListener(
+                        queryStatsRegistry,
+                        databasePerformanceQuerySlowThreshold,
+                        databasePerformanceQueryStatsCaller));
 
         return DSL.using(configuration);
     }
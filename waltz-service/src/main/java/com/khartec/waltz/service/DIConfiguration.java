@@ -22,9 +22,25 @@ import com.khartec.waltz.model.ImmutableWaltzVersionInfo;
 import com.khartec.waltz.model.WaltzVersionInfo;
 import com.khartec.waltz.model.settings.ImmutableSetting;
 import com.khartec.waltz.model.settings.Setting;
+import com.khartec.waltz.data.BoundedDBExecutorPool;
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
+import com.khartec.waltz.service.changelog.ChangeLogService;
 import com.khartec.waltz.service.email.DummyJavaMailSender;
+import com.khartec.waltz.service.entity_reference.EntityNameDictionaryService;
+import com.khartec.waltz.service.jmx.ApplicationIdSelectorCacheMaintenance;
+import com.khartec.waltz.service.jmx.ChangeLogMaintenance;
+import com.khartec.waltz.service.jmx.DBExecutorPoolMaintenance;
+import com.khartec.waltz.service.jmx.DataTypeUsageMaintenance;
+import com.khartec.waltz.service.jmx.EntityNameDictionaryMaintenance;
 import com.khartec.waltz.service.jmx.PersonMaintenance;
+import com.khartec.waltz.service.jmx.QueryStatsMaintenance;
+import com.khartec.waltz.service.jmx.ScheduledJobMaintenance;
+import com.khartec.waltz.service.jmx.UserRoleCacheMaintenance;
 import com.khartec.waltz.service.person_hierarchy.PersonHierarchyService;
+import com.khartec.waltz.service.query_stats.QueryStatsService;
+import com.khartec.waltz.service.scheduled_job.ScheduledJobService;
+import com.khartec.waltz.service.usage_info.DataTypeUsageService;
+import com.khartec.waltz.service.user.UserRoleService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
@@ -74,6 +90,9 @@ public class DIConfiguration implements SchedulingConfigurer {
     @Value("${settings.override:#{null}}")
     private String settingsOverrideStr;
 
+    @Value("${waltz.scheduler.threads:4}")
+    private int schedulerThreads;
+
     @Bean
     public WaltzVersionInfo waltzBuildInfo() {
         return ImmutableWaltzVersionInfo.builder()
@@ -119,6 +138,62 @@ public class DIConfiguration implements SchedulingConfigurer {
     }
 
 
+    @Bean
+    @Autowired
+    public ApplicationIdSelectorCacheMaintenance applicationIdSelectorCacheMaintenance(ApplicationIdSelectorCacheService applicationIdSelectorCacheService) {
+        return new ApplicationIdSelectorCacheMaintenance(applicationIdSelectorCacheService);
+    }
+
+
+    @Bean
+    @Autowired
+    public QueryStatsMaintenance queryStatsMaintenance(QueryStatsService queryStatsService) {
+        return new QueryStatsMaintenance(queryStatsService);
+    }
+
+
+    @Bean
+    @Autowired
+    public DBExecutorPoolMaintenance dbExecutorPoolMaintenance(BoundedDBExecutorPool dbExecutorPool) {
+        return new DBExecutorPoolMaintenance(dbExecutorPool);
+    }
+
+
+    @Bean
+    @Autowired
+    public DataTypeUsageMaintenance dataTypeUsageMaintenance(DataTypeUsageService dataTypeUsageService) {
+        return new DataTypeUsageMaintenance(dataTypeUsageService);
+    }
+
+
+    @Bean
+    @Autowired
+    public ChangeLogMaintenance changeLogMaintenance(ChangeLogService changeLogService) {
+        return new ChangeLogMaintenance(changeLogService);
+    }
+
+
+    @Bean
+    @Autowired
+    public EntityNameDictionaryMaintenance entityNameDictionaryMaintenance(EntityNameDictionaryService entityNameDictionaryService) {
+        return new EntityNameDictionaryMaintenance(entityNameDictionaryService);
+    }
+
+
+    @Bean
+    @Autowired
+    public ScheduledJobMaintenance scheduledJobMaintenance(ScheduledJobService scheduledJobService) {
+        return new ScheduledJobMaintenance(scheduledJobService);
+    }
+
+
+    @Bean
+    @Autowired
+    public UserRoleCacheMaintenance userRoleCacheMaintenance(UserRoleService userRoleService) {
+        return new UserRoleCacheMaintenance(userRoleService);
+    }
+
+
     @Bean
     public JavaMailSender mailSender() {
         if (smtpHost == null) {
@@ -135,6 +210,8 @@ public class DIConfiguration implements SchedulingConfigurer {
     @Bean
     public TaskScheduler taskScheduler() {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulerThreads);
+        scheduler.setThreadNamePrefix("waltz-scheduler-");
         scheduler.setDaemon(true);
         return scheduler;
     }
@@ -18,12 +18,18 @@
 
 package com.khartec.waltz.service.access_log;
 
+import com.khartec.waltz.common.WriteBehindQueue;
 import com.khartec.waltz.data.access_log.AccessLogDao;
 import com.khartec.waltz.model.accesslog.AccessLog;
 import com.khartec.waltz.model.accesslog.AccessTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -34,19 +40,83 @@ import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 
 
+/**
+ * Access log entries are recorded on every client side navigation.  They
+ * may optionally be queued and written in batches by a background thread
+ * (see {@link WriteBehindQueue}), at the risk of losing queued entries if
+ * the server stops abruptly.
+ *
+ * The most recent access of each user may also, optionally, be kept in
+ * memory for <code>waltz.access_log.active_users.window.minutes</code> so
+ * 'active users' queries within that window do not need to scan the table.
+ * Accesses served by other nodes are merged in from the table every
+ * <code>waltz.access_log.active_users.refresh.millis</code>.
+ */
 @Service
 public class AccessLogService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogService.class);
+    private static final int WRITE_BEHIND_MAX_ATTEMPTS = 3;
+    private static final long WRITE_BEHIND_SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
     private final AccessLogDao accessLogDao;
 
+    /**
+     * Optional in-memory window, null if active users are always read from the table
+     */
+    private final ActiveUserWindow activeUsers;
+    private final long activeUserRefreshMillis;
+
+    /**
+     * Optional write-behind queue, null if entries are written synchronously
+     */
+    private final WriteBehindQueue<AccessLog> writeBehindQueue;
+
+
     @Autowired
-    public AccessLogService(AccessLogDao accessLogDao) {
+    public AccessLogService(AccessLogDao accessLogDao,
+                            @Value("${waltz.access_log.write_behind.enabled:false}") boolean writeBehindEnabled,
+                            @Value("${waltz.access_log.write_behind.capacity:10000}") int writeBehindCapacity,
+                            @Value("${waltz.access_log.write_behind.batch.size:200}") int writeBehindBatchSize,
+                            @Value("${waltz.access_log.write_behind.flush.millis:2000}") long writeBehindFlushMillis,
+                            @Value("${waltz.access_log.active_users.window.minutes:0}") long activeUserWindowMinutes,
+                            @Value("${waltz.access_log.active_users.refresh.millis:60000}") long activeUserRefreshMillis) {
+        checkNotNull(accessLogDao, "accessLogDao cannot be null");
+
         this.accessLogDao = accessLogDao;
+        this.activeUserRefreshMillis = activeUserRefreshMillis;
+        this.activeUsers = activeUserWindowMinutes > 0
+                ? new ActiveUserWindow(Duration.ofMinutes(activeUserWindowMinutes))
+                : null;
+
+        if (writeBehindEnabled) {
+            this.writeBehindQueue = new WriteBehindQueue<>(
+                    "AccessLog",
+                    accessLogDao::write,
+                    writeBehindCapacity,
+                    writeBehindBatchSize,
+                    writeBehindFlushMillis,
+                    WRITE_BEHIND_MAX_ATTEMPTS);
+            this.writeBehindQueue.start();
+        } else {
+            this.writeBehindQueue = null;
+        }
     }
 
 
+    /**
+     * @return 1 if the entry was queued (or written immediately)
+     */
     public int write(AccessLog logEntry) {
         checkNotNull(logEntry, "logEntry must not be null");
+
+        if (activeUsers != null) {
+            activeUsers.record(logEntry.userId(), logEntry.createdAt());
+        }
+
+        if (writeBehindQueue != null && writeBehindQueue.offer(logEntry)) {
+            return 1;
+        }
         return accessLogDao.write(logEntry);
     }
 
@@ -59,8 +129,58 @@ public class AccessLogService {
 
 
     public List<AccessTime> findActiveUsersSince(Duration duration) {
-        LocalDateTime sinceTime = nowUtc().minus(duration);
-        return accessLogDao.findActiveUsersSince(sinceTime);
+        LocalDateTime now = nowUtc();
+        LocalDateTime sinceTime = now.minus(duration);
+
+        if (activeUsers == null || duration.compareTo(activeUsers.getWindow()) > 0) {
+            return accessLogDao.findActiveUsersSince(sinceTime);
+        }
+
+        if (! activeUsers.isSeeded()) {
+            seedActiveUsers(now);
+        }
+        return activeUsers.findActiveUsersSince(now, sinceTime);
+    }
+
+
+    /**
+     * Merges accesses recorded by other nodes into the in-memory window.  The
+     * lookback is twice the refresh period, so rows written late (e.g. by
+     * another node's write-behind queue) are still picked up.
+     *
+     * @return number of users read from the access log
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.access_log.active_users.refresh.millis:60000}",
+            fixedDelayString = "${waltz.access_log.active_users.refresh.millis:60000}")
+    public int refreshActiveUsers() {
+        if (activeUsers == null || ! activeUsers.isSeeded()) {
+            return 0;
+        }
+        LocalDateTime since = nowUtc().minus(Duration.ofMillis(activeUserRefreshMillis * 2));
+        List<AccessTime> accessTimes = accessLogDao.findActiveUsersSince(since);
+        activeUsers.merge(accessTimes);
+        return accessTimes.size();
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.shutdown(WRITE_BEHIND_SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    private synchronized void seedActiveUsers(LocalDateTime now) {
+        if (activeUsers.isSeeded()) {
+            return;
+        }
+        List<AccessTime> accessTimes = accessLogDao.findActiveUsersSince(now.minus(activeUsers.getWindow()));
+        activeUsers.seed(accessTimes);
+        LOG.info("Seeded active users window ({}) with {} users", activeUsers.getWindow(), accessTimes.size());
     }
 
 }
@@ -0,0 +1,123 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.access_log;
+
+import com.khartec.waltz.model.accesslog.AccessTime;
+import com.khartec.waltz.model.accesslog.ImmutableAccessTime;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Tracks the most recent access time of each user over a sliding window
+ * (e.g. the last day) so 'who is active' questions within that window can
+ * be answered without scanning the access log table.
+ *
+ * The window must be seeded (from the table) before it is complete, after
+ * that every access recorded keeps it up to date.  Accesses recorded
+ * elsewhere (e.g. by other nodes) must be merged in periodically.  Users who
+ * have not been seen within the window are pruned as part of each query.
+ */
+class ActiveUserWindow {
+
+    private final Duration window;
+    private final ConcurrentMap<String, LocalDateTime> lastAccessByUser = new ConcurrentHashMap<>();
+    private volatile boolean seeded = false;
+
+
+    ActiveUserWindow(Duration window) {
+        checkNotNull(window, "window cannot be null");
+        checkTrue(! window.isNegative() && ! window.isZero(), "window must be positive");
+        this.window = window;
+    }
+
+
+    Duration getWindow() {
+        return window;
+    }
+
+
+    boolean isSeeded() {
+        return seeded;
+    }
+
+
+    /**
+     * @param accessTimes  latest access of each user, covering (at least) the window
+     */
+    void seed(Collection<AccessTime> accessTimes) {
+        merge(accessTimes);
+        seeded = true;
+    }
+
+
+    /**
+     * @param accessTimes  latest access of each user, possibly older than those already held
+     */
+    void merge(Collection<AccessTime> accessTimes) {
+        accessTimes.forEach(at -> record(at.userId(), at.createdAt()));
+    }
+
+
+    void record(String userId, LocalDateTime accessedAt) {
+        lastAccessByUser.merge(
+                userId,
+                accessedAt,
+                (existing, candidate) -> candidate.isAfter(existing) ? candidate : existing);
+    }
+
+
+    /**
+     * @return users active at or after <code>since</code>, most recent first
+     */
+    List<AccessTime> findActiveUsersSince(LocalDateTime now, LocalDateTime since) {
+        LocalDateTime windowStart = now.minus(window);
+        lastAccessByUser.values().removeIf(t -> t.isBefore(windowStart));
+
+        return lastAccessByUser
+                .entrySet()
+                .stream()
+                .filter(e -> ! e.getValue().isBefore(since))
+                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                .map(e -> ImmutableAccessTime
+                        .builder()
+                        .userId(e.getKey())
+                        .createdAt(e.getValue())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+
+    int size() {
+        return lastAccessByUser.size();
+    }
+
+}
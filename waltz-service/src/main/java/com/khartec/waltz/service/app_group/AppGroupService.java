@@ -38,6 +38,7 @@ import com.khartec.waltz.model.entity_relationship.ImmutableEntityRelationship;
 import com.khartec.waltz.model.entity_relationship.RelationshipKind;
 import com.khartec.waltz.model.entity_search.EntitySearchOptions;
 import com.khartec.waltz.model.orgunit.OrganisationalUnit;
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
 import com.khartec.waltz.service.change_initiative.ChangeInitiativeService;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -68,6 +69,7 @@ public class AppGroupService {
     private final EntityRelationshipDao entityRelationshipDao;
     private final ChangeInitiativeService changeInitiativeService;
     private final ChangeLogService changeLogService;
+    private final ApplicationIdSelectorCacheService applicationIdSelectorCacheService;
 
 
     @Autowired
@@ -79,7 +81,8 @@ public class AppGroupService {
                            OrganisationalUnitDao organisationalUnitDao,
                            EntityRelationshipDao entityRelationshipDao,
                            ChangeInitiativeService changeInitiativeService,
-                           ChangeLogService changeLogService) {
+                           ChangeLogService changeLogService,
+                           ApplicationIdSelectorCacheService applicationIdSelectorCacheService) {
         checkNotNull(appGroupDao, "appGroupDao cannot be null");
         checkNotNull(appGroupEntryDao, "appGroupEntryDao cannot be null");
         checkNotNull(appGroupEntryDao, "appGroupEntryDao cannot be null");
@@ -89,6 +92,7 @@ public class AppGroupService {
         checkNotNull(entityRelationshipDao, "entityRelationshipDao cannot be null");
         checkNotNull(changeInitiativeService, "changeInitiativeService cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
+        checkNotNull(applicationIdSelectorCacheService, "applicationIdSelectorCacheService cannot be null");
 
         this.appGroupDao = appGroupDao;
         this.appGroupMemberDao = appGroupMemberDao;
@@ -99,6 +103,7 @@ public class AppGroupService {
         this.entityRelationshipDao = entityRelationshipDao;
         this.changeInitiativeService = changeInitiativeService;
         this.changeLogService = changeLogService;
+        this.applicationIdSelectorCacheService = applicationIdSelectorCacheService;
     }
 
 
@@ -179,6 +184,7 @@ public class AppGroupService {
     public List<AppGroupSubscription> deleteGroup(String userId, long groupId) throws InsufficientPrivelegeException {
         verifyUserCanUpdateGroup(userId, groupId);
         appGroupDao.deleteGroup(groupId);
+        invalidateCachedSelectors(groupId);
         entityRelationshipDao.removeAnyInvolving(mkRef(EntityKind.APP_GROUP, groupId));
         audit(groupId, userId, format("Removed group %d", groupId), null, Operation.REMOVE);
         return findGroupSubscriptionsForUser(userId);
@@ -192,6 +198,7 @@ public class AppGroupService {
         Application app = applicationDao.getById(applicationId);
         if (app != null) {
             appGroupEntryDao.addApplication(groupId, applicationId);
+            invalidateCachedSelectors(groupId);
             audit(groupId, userId, format("Added application %s to group", app.name()), EntityKind.APPLICATION, Operation.ADD);
         }
 
@@ -206,6 +213,7 @@ public class AppGroupService {
         verifyUserCanUpdateGroup(userId, groupId);
 
         appGroupEntryDao.addApplications(groupId, applicationIds);
+        invalidateCachedSelectors(groupId);
 
         EntityReference entityReference = mkRef(EntityKind.APP_GROUP, groupId);
         List<Application> apps = applicationDao.findByIds(applicationIds);
@@ -241,6 +249,7 @@ public class AppGroupService {
     public List<AppGroupEntry> removeApplication(String userId, long groupId, long applicationId) throws InsufficientPrivelegeException {
         verifyUserCanUpdateGroup(userId, groupId);
         appGroupEntryDao.removeApplication(groupId, applicationId);
+        invalidateCachedSelectors(groupId);
         Application app = applicationDao.getById(applicationId);
         audit(groupId, userId, format(
                     "Removed application %s from group",
@@ -258,6 +267,7 @@ public class AppGroupService {
         OrganisationalUnit orgUnit = organisationalUnitDao.getById(orgUnitId);
         if (orgUnit != null) {
             appGroupOrganisationalUnitDao.addOrgUnit(groupId, orgUnitId);
+            invalidateCachedSelectors(groupId);
             audit(groupId, userId, format("Added application %s to group", orgUnit.name()), EntityKind.ORG_UNIT, Operation.ADD);
         }
         return appGroupOrganisationalUnitDao.getEntriesForGroup(groupId);
@@ -266,6 +276,7 @@ public class AppGroupService {
     public List<AppGroupEntry> removeOrganisationalUnit(String userId, long groupId, long orgUnitId) throws InsufficientPrivelegeException {
         verifyUserCanUpdateGroup(userId, groupId);
         appGroupOrganisationalUnitDao.removeOrgUnit(groupId, orgUnitId);
+        invalidateCachedSelectors(groupId);
         OrganisationalUnit ou = organisationalUnitDao.getById(orgUnitId);
         audit(groupId, userId, format("Removed application %s from group", ou != null ? ou.name() : orgUnitId), EntityKind.ORG_UNIT, Operation.REMOVE);
         return appGroupOrganisationalUnitDao.getEntriesForGroup(groupId);
@@ -274,6 +285,7 @@ public class AppGroupService {
         verifyUserCanUpdateGroup(userId, groupId);
 
         appGroupEntryDao.removeApplications(groupId, applicationIds);
+        invalidateCachedSelectors(groupId);
 
         List<Application> apps = applicationDao.findByIds(applicationIds);
         List<ChangeLog> changeLogs = apps
@@ -414,6 +426,11 @@ public class AppGroupService {
     }
 
 
+    private void invalidateCachedSelectors(long groupId) {
+        applicationIdSelectorCacheService.invalidate(mkRef(EntityKind.APP_GROUP, groupId));
+    }
+
+
     private void audit(long groupId, String userId, String message, EntityKind childKind, Operation operation) {
         changeLogService.write(ImmutableChangeLog.builder()
                 .message(message)
@@ -0,0 +1,192 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.application;
+
+import com.khartec.waltz.common.ExpiringCache;
+import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.IdSelectionOptions;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * Materialises application id selectors into a compact, sorted, array of
+ * application ids and caches the result per <code>IdSelectionOptions</code>.
+ *
+ * A typical page load will resolve the same selector many times (once per
+ * summary endpoint), each time re-executing the hierarchy joins.  Callers
+ * can use <code>mkSelector</code> as a drop-in replacement for
+ * <code>ApplicationIdSelectorFactory.apply</code> to benefit from the cache.
+ *
+ * Entries expire after a short ttl and are invalidated when hierarchies are
+ * (fully or partially) rebuilt or app group membership changes.
+ */
+@Service
+public class ApplicationIdSelectorCacheService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApplicationIdSelectorCacheService.class);
+
+    /**
+     * Selectors resolving to more ids than this are not given as a single
+     * <code>IN</code> list of bind params, as some databases limit the number
+     * of bind params (or the length of an <code>IN</code> list).  Instead
+     * the ids are given as literals, in <code>IN</code> lists of at most this
+     * many ids.
+     */
+    static final int MAX_INLINE_IDS = 1000;
+
+    private final ApplicationIdSelectorFactory applicationIdSelectorFactory = new ApplicationIdSelectorFactory();
+    private final DSLContext dsl;
+    private final ExpiringCache<IdSelectionOptions, long[]> cache;
+
+
+    @Autowired
+    public ApplicationIdSelectorCacheService(DSLContext dsl,
+                                             @Value("${waltz.selector.cache.maxEntries:500}") int maxEntries,
+                                             @Value("${waltz.selector.cache.ttlSeconds:60}") int ttlSeconds) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+        this.cache = new ExpiringCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * Resolves the selector described by the given options to a sorted
+     * array of distinct application ids.  The returned array is shared
+     * and must not be modified.
+     *
+     * @param options  selection options
+     * @return  sorted application ids
+     */
+    public long[] resolve(IdSelectionOptions options) {
+        checkNotNull(options, "options cannot be null");
+        return cache.get(options, this::load);
+    }
+
+
+    /**
+     * Provides an application id selector for the given options, built
+     * from the cached ids so the selector's hierarchy joins are not run
+     * again when it is used.
+     *
+     * @param options  selection options
+     * @return  selector suitable for use wherever an application id selector is expected
+     */
+    public Select<Record1<Long>> mkSelector(IdSelectionOptions options) {
+        return mkSelector(resolve(options));
+    }
+
+
+    public int invalidate(EntityReference ref) {
+        checkNotNull(ref, "ref cannot be null");
+        return cache.invalidateIf(opts -> opts.entityReference().equals(ref));
+    }
+
+
+    public int invalidate(EntityKind kind) {
+        checkNotNull(kind, "kind cannot be null");
+        return cache.invalidateIf(opts -> opts.entityReference().kind() == kind);
+    }
+
+
+    public void invalidateAll() {
+        LOG.debug("Invalidating all cached application id selectors");
+        cache.invalidateAll();
+    }
+
+
+    public int getSize() {
+        return cache.size();
+    }
+
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+
+    // -- HELPERS ---
+
+    static Select<Record1<Long>> mkSelector(long[] ids) {
+        if (ids.length <= MAX_INLINE_IDS) {
+            return DSL
+                    .select(APPLICATION.ID)
+                    .from(APPLICATION)
+                    .where(APPLICATION.ID.in(Arrays
+                            .stream(ids)
+                            .boxed()
+                            .toArray(Long[]::new)));
+        }
+
+        List<Condition> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.length; i += MAX_INLINE_IDS) {
+            chunks.add(APPLICATION.ID.in(Arrays
+                    .stream(ids, i, Math.min(i + MAX_INLINE_IDS, ids.length))
+                    .boxed()
+                    .map(DSL::inline)
+                    .collect(toList())));
+        }
+
+        return DSL
+                .select(APPLICATION.ID)
+                .from(APPLICATION)
+                .where(DSL.or(chunks));
+    }
+
+
+    private long[] load(IdSelectionOptions options) {
+        return dsl
+                .fetch(applicationIdSelectorFactory.apply(options))
+                .stream()
+                .mapToLong(Record1::value1)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+}
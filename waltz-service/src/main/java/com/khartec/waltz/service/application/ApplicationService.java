@@ -19,7 +19,6 @@
 package com.khartec.waltz.service.application;
 
 import com.khartec.waltz.data.application.ApplicationDao;
-import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.application.search.ApplicationSearchDao;
 import com.khartec.waltz.data.entity_alias.EntityAliasDao;
 import com.khartec.waltz.model.EntityKind;
@@ -60,23 +59,26 @@ public class ApplicationService {
     private final TagService tagService;
     private final EntityAliasDao entityAliasDao;
     private final ApplicationSearchDao appSearchDao;
-    private final ApplicationIdSelectorFactory appIdSelectorFactory = new ApplicationIdSelectorFactory();
+    private final ApplicationIdSelectorCacheService appIdSelectorCacheService;
 
 
     @Autowired
     public ApplicationService(ApplicationDao appDao,
                               TagService tagService,
                               EntityAliasDao entityAliasDao,
-                              ApplicationSearchDao appSearchDao) {
+                              ApplicationSearchDao appSearchDao,
+                              ApplicationIdSelectorCacheService appIdSelectorCacheService) {
         checkNotNull(appDao, "appDao must not be null");
         checkNotNull(tagService, "tagService must not be null");
         checkNotNull(entityAliasDao, "entityAliasDao must not be null");
         checkNotNull(appSearchDao, "appSearchDao must not be null");
+        checkNotNull(appIdSelectorCacheService, "appIdSelectorCacheService must not be null");
 
         this.applicationDao = appDao;
         this.tagService = tagService;
         this.entityAliasDao = entityAliasDao;
         this.appSearchDao = appSearchDao;
+        this.appIdSelectorCacheService = appIdSelectorCacheService;
     }
 
 
@@ -112,7 +114,7 @@ public class ApplicationService {
 
 
     public List<Application> findByAppIdSelector(IdSelectionOptions options) {
-        Select<Record1<Long>> selector = appIdSelectorFactory.apply(options);
+        Select<Record1<Long>> selector = appIdSelectorCacheService.mkSelector(options);
         return applicationDao.findByAppIdSelector(selector);
     }
 
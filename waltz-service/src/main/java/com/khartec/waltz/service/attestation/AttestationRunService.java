@@ -26,11 +26,16 @@ import com.khartec.waltz.data.attestation.AttestationInstanceRecipientDao;
 import com.khartec.waltz.data.attestation.AttestationRunDao;
 import com.khartec.waltz.data.involvement.InvolvementDao;
 import com.khartec.waltz.model.*;
+import com.khartec.waltz.common.BatchProcessingCollector;
 import com.khartec.waltz.model.attestation.*;
+import com.khartec.waltz.model.issuance.IssuanceJob;
 import com.khartec.waltz.model.person.Person;
 import com.khartec.waltz.service.email.EmailService;
+import com.khartec.waltz.service.issuance.IssuanceJobService;
+import com.khartec.waltz.service.issuance.IssuanceProgress;
 import org.jooq.Record1;
 import org.jooq.Select;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -38,7 +43,9 @@ import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.asList;
@@ -46,8 +53,8 @@ import static com.khartec.waltz.common.SetUtilities.asSet;
 import static com.khartec.waltz.model.EntityReference.mkRef;
 import static com.khartec.waltz.model.IdSelectionOptions.mkOpts;
 import static java.util.Optional.empty;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.*;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Service
 public class AttestationRunService {
@@ -58,24 +65,28 @@ public class AttestationRunService {
     private final EmailService emailService;
     private final GenericSelectorFactory genericSelectorFactory = new GenericSelectorFactory();
     private final InvolvementDao involvementDao;
+    private final IssuanceJobService issuanceJobService;
 
     @Autowired
     public AttestationRunService(AttestationInstanceDao attestationInstanceDao,
                                  AttestationInstanceRecipientDao attestationInstanceRecipientDao,
                                  AttestationRunDao attestationRunDao,
                                  EmailService emailService,
-                                 InvolvementDao involvementDao) {
+                                 InvolvementDao involvementDao,
+                                 IssuanceJobService issuanceJobService) {
         checkNotNull(attestationInstanceRecipientDao, "attestationInstanceRecipientDao cannot be null");
         checkNotNull(attestationInstanceDao, "attestationInstanceDao cannot be null");
         checkNotNull(attestationRunDao, "attestationRunDao cannot be null");
         checkNotNull(emailService, "emailService cannot be null");
         checkNotNull(involvementDao, "involvementDao cannot be null");
+        checkNotNull(issuanceJobService, "issuanceJobService cannot be null");
 
         this.attestationInstanceDao = attestationInstanceDao;
         this.attestationInstanceRecipientDao = attestationInstanceRecipientDao;
         this.attestationRunDao = attestationRunDao;
         this.emailService = emailService;
         this.involvementDao = involvementDao;
+        this.issuanceJobService = issuanceJobService;
     }
 
 
@@ -137,23 +148,17 @@ public class AttestationRunService {
 
     }
 
-    
+
+    /**
+     * Creates the run and then issues its instances and recipients in the
+     * background, progress may be followed via {@link #findIssuanceJob(long)}.
+     * Email notifications, if requested, are sent once issuance completes.
+     */
     public IdCommandResponse create(String userId, AttestationRunCreateCommand command) {
         // create run
         Long runId = attestationRunDao.create(userId, command);
 
-        // generate instances and recipients
-        List<AttestationInstanceRecipient> instanceRecipients = generateAttestationInstanceRecipients(
-                runId,
-                command.attestedEntityKind(),
-                userId);
-
-        // store
-        createAttestationInstancesAndRecipients(instanceRecipients);
-
-        if (command.sendEmailNotifications()){
-            emailService.sendEmailNotification(mkRef(EntityKind.ATTESTATION_RUN, runId));
-        }
+        submitIssuance(runId, command.attestedEntityKind(), userId, userId, command.sendEmailNotifications());
 
         return ImmutableIdCommandResponse.builder()
                 .id(runId)
@@ -161,6 +166,49 @@ public class AttestationRunService {
     }
 
 
+    /**
+     * Issues an existing run again, e.g. after its job exhausted its retries
+     * or was lost when the server restarted.  Only the instances and
+     * recipients missing from the run are written.  No email notifications
+     * are sent as recipients may already have been notified.  Runs without
+     * involvement kinds are still issued to their original issuer.
+     *
+     * @throws IllegalStateException if the run is already being issued
+     */
+    public IssuanceJob resubmitIssuance(String userId, long attestationRunId) {
+        checkNotNull(userId, "userId cannot be null");
+
+        AttestationRun run = attestationRunDao.getById(attestationRunId);
+        checkNotNull(run, "attestationRun " + attestationRunId + " not found");
+
+        return submitIssuance(attestationRunId, run.attestedEntityKind(), run.issuedBy(), userId, false);
+    }
+
+
+    public Optional<IssuanceJob> findIssuanceJob(long attestationRunId) {
+        return issuanceJobService.findJob(mkRef(EntityKind.ATTESTATION_RUN, attestationRunId));
+    }
+
+
+    private IssuanceJob submitIssuance(long runId,
+                                       EntityKind attestedEntityKind,
+                                       String issuedBy,
+                                       String submittedBy,
+                                       boolean sendEmailNotifications) {
+        EntityReference runRef = mkRef(EntityKind.ATTESTATION_RUN, runId);
+
+        return issuanceJobService.submit(
+                runRef,
+                submittedBy,
+                progress -> issueAttestationInstancesAndRecipients(runId, attestedEntityKind, issuedBy, progress),
+                () -> {
+                    if (sendEmailNotifications) {
+                        emailService.sendEmailNotification(runRef);
+                    }
+                });
+    }
+
+
     private List<AttestationInstanceRecipient> generateAttestationInstanceRecipients(long attestationRunId,
                                                                                      EntityKind attestedEntityKind,
                                                                                      String userId) {
@@ -225,30 +273,102 @@ public class AttestationRunService {
     }
 
 
-    private void createAttestationInstancesAndRecipients(List<AttestationInstanceRecipient> instanceRecipients) {
-        Map<AttestationInstance, List<AttestationInstanceRecipient>> instancesAndRecipientsToSave = instanceRecipients
+    /**
+     * Writes the instances and recipients of the run using chunked multi-row
+     * inserts.  Rows already present for the run are skipped, therefore this
+     * may safely be re-run after a partial failure.
+     */
+    private void issueAttestationInstancesAndRecipients(long runId,
+                                                        EntityKind attestedEntityKind,
+                                                        String userId,
+                                                        IssuanceProgress progress) {
+        // generate instances and recipients
+        Map<Tuple2<EntityReference, EntityKind>, Set<String>> userIdsByInstance = generateAttestationInstanceRecipients(
+                    runId,
+                    attestedEntityKind,
+                    userId)
                 .stream()
                 .collect(groupingBy(
-                        AttestationInstanceRecipient::attestationInstance,
-                        toList()
-                ));
+                        r -> toInstanceKey(r.attestationInstance()),
+                        mapping(AttestationInstanceRecipient::userId, toSet())));
 
+        int chunkSize = issuanceJobService.getChunkSize();
 
-        // insert new instances and recipients
-        instancesAndRecipientsToSave.forEach(
-                (k, v) -> {
-                    // create instance
-                    long instanceId = attestationInstanceDao.create(k);
+        // store instances which do not yet exist
+        Map<Tuple2<EntityReference, EntityKind>, Long> existingInstanceIds = attestationInstanceDao.findIdsByRunId(runId);
 
-                    // create recipients for the instance
-                    v.forEach(r -> attestationInstanceRecipientDao.create(instanceId, r.userId()));
-                }
-        );
+        List<AttestationInstance> instancesToCreate = userIdsByInstance
+                .keySet()
+                .stream()
+                .filter(k -> ! existingInstanceIds.containsKey(k))
+                .map(k -> ImmutableAttestationInstance.builder()
+                        .attestationRunId(runId)
+                        .parentEntity(k.v1)
+                        .attestedEntityKind(k.v2)
+                        .build())
+                .collect(toList());
+
+        int instanceCount = userIdsByInstance.size();
+        AtomicInteger instancesIssued = new AtomicInteger(instanceCount - instancesToCreate.size());
+        progress.instances(instancesIssued.get(), instanceCount);
+
+        instancesToCreate
+                .stream()
+                .collect(new BatchProcessingCollector<>(
+                        chunkSize,
+                        chunk -> progress.instances(
+                                instancesIssued.addAndGet(attestationInstanceDao.createAll(chunk)),
+                                instanceCount)));
+
+        // store recipients which do not yet exist, against the (now generated) instance ids
+        Map<Tuple2<EntityReference, EntityKind>, Long> instanceIds = attestationInstanceDao.findIdsByRunId(runId);
+        Set<Tuple2<Long, String>> existingRecipients = attestationInstanceRecipientDao.findInstanceIdAndUserIdsByRunId(runId);
+
+        List<Tuple2<Long, String>> recipients = userIdsByInstance
+                .entrySet()
+                .stream()
+                .flatMap(e -> e.getValue()
+                        .stream()
+                        .map(u -> tuple(instanceIds.get(e.getKey()), u)))
+                .collect(toList());
+
+        List<Tuple2<Long, String>> recipientsToCreate = recipients
+                .stream()
+                .filter(r -> ! existingRecipients.contains(r))
+                .collect(toList());
+
+        int recipientCount = recipients.size();
+        AtomicInteger recipientsIssued = new AtomicInteger(recipientCount - recipientsToCreate.size());
+        progress.recipients(recipientsIssued.get(), recipientCount);
+
+        recipientsToCreate
+                .stream()
+                .collect(new BatchProcessingCollector<>(
+                        chunkSize,
+                        chunk -> progress.recipients(
+                                recipientsIssued.addAndGet(attestationInstanceRecipientDao.createAll(chunk)),
+                                recipientCount)));
     }
 
 
+    /**
+     * Single entity runs are small enough to be issued whilst the caller waits,
+     * and callers go on to use the instance straight away.
+     */
     public IdCommandResponse createRunForEntity(String username, AttestEntityCommand entityRunCreateCommand) {
-        return create(username, mkCreateCommand(entityRunCreateCommand));
+        AttestationRunCreateCommand command = mkCreateCommand(entityRunCreateCommand);
+
+        Long runId = attestationRunDao.create(username, command);
+
+        issueAttestationInstancesAndRecipients(
+                runId,
+                command.attestedEntityKind(),
+                username,
+                IssuanceProgress.NONE);
+
+        return ImmutableIdCommandResponse.builder()
+                .id(runId)
+                .build();
     }
 
 
@@ -257,6 +377,13 @@ public class AttestationRunService {
         return attestationRunDao.findByIdSelector(selector);
     }
 
+
+    private static Tuple2<EntityReference, EntityKind> toInstanceKey(AttestationInstance instance) {
+        EntityReference parent = instance.parentEntity();
+        return tuple(mkRef(parent.kind(), parent.id()), instance.attestedEntityKind());
+    }
+
+
     private ImmutableAttestationRunCreateCommand mkCreateCommand(AttestEntityCommand createCommand) {
         //Note: Changing the name of this AttestationRunCreateCommand will cause the attestation-run-list to break see #5159
         return ImmutableAttestationRunCreateCommand.builder()
@@ -0,0 +1,217 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.authoritative_source;
+
+import com.khartec.waltz.data.application.ApplicationDao;
+import com.khartec.waltz.data.authoritative_source.AuthoritativeSourceDao;
+import com.khartec.waltz.data.data_type.DataTypeDao;
+import com.khartec.waltz.data.datatype_decorator.LogicalFlowDecoratorDao;
+import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingChange;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingRecalculation;
+import com.khartec.waltz.model.authoritativesource.ImmutableAuthoritativeRatingChange;
+import com.khartec.waltz.model.authoritativesource.ImmutableAuthoritativeRatingRecalculation;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.datatype.DataTypeDecorator;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.model.utils.IdUtilities.indexById;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+
+/**
+ * Recalculates the authoritativeness rating of every logical flow decorator.
+ *
+ * Flows, decorators, applications and vantage points are each loaded once,
+ * ratings are resolved in memory via an {@link AuthoritativeSourceResolver}
+ * and only those decorators whose rating has changed are written back (in
+ * batches).  Decorators belonging to flows which are not app-to-app are
+ * rated as <code>NO_OPINION</code>.  Decorators of inactive flows are left
+ * untouched.
+ */
+@Service
+public class AuthSourceRatingRecalculator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthSourceRatingRecalculator.class);
+
+    private final ApplicationDao applicationDao;
+    private final AuthoritativeSourceDao authoritativeSourceDao;
+    private final DataTypeDao dataTypeDao;
+    private final LogicalFlowDao logicalFlowDao;
+    private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
+
+
+    @Autowired
+    public AuthSourceRatingRecalculator(ApplicationDao applicationDao,
+                                        AuthoritativeSourceDao authoritativeSourceDao,
+                                        DataTypeDao dataTypeDao,
+                                        LogicalFlowDao logicalFlowDao,
+                                        LogicalFlowDecoratorDao logicalFlowDecoratorDao) {
+        checkNotNull(applicationDao, "applicationDao cannot be null");
+        checkNotNull(authoritativeSourceDao, "authoritativeSourceDao cannot be null");
+        checkNotNull(dataTypeDao, "dataTypeDao cannot be null");
+        checkNotNull(logicalFlowDao, "logicalFlowDao cannot be null");
+        checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
+
+        this.applicationDao = applicationDao;
+        this.authoritativeSourceDao = authoritativeSourceDao;
+        this.dataTypeDao = dataTypeDao;
+        this.logicalFlowDao = logicalFlowDao;
+        this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
+    }
+
+
+    /**
+     * @param dryRun  if true the changes are calculated and returned but not written
+     */
+    public AuthoritativeRatingRecalculation recalculateAll(boolean dryRun) {
+        long start = System.currentTimeMillis();
+
+        Map<Long, LogicalFlow> flowsById = indexById(logicalFlowDao.findAllActive());
+        Map<Long, Application> appsById = indexById(applicationDao.findAll());
+        Map<Long, DataType> dataTypesById = indexById(dataTypeDao.findAll());
+        List<DataTypeDecorator> decorators = logicalFlowDecoratorDao.findAll();
+
+        Set<Long> vantageOrgUnitIds = flowsById
+                .values()
+                .stream()
+                .filter(AuthSourceRatingRecalculator::isAppToAppFlow)
+                .map(f -> appsById.get(f.target().id()))
+                .filter(Objects::nonNull)
+                .map(Application::organisationalUnitId)
+                .collect(toSet());
+
+        AuthoritativeSourceResolver resolver = new AuthoritativeSourceResolver(
+                authoritativeSourceDao.findExpandedAuthoritativeRatingVantagePoints(vantageOrgUnitIds));
+
+        LOG.info("Loaded {} decorators, {} flows and {} apps in {}ms",
+                decorators.size(),
+                flowsById.size(),
+                appsById.size(),
+                System.currentTimeMillis() - start);
+
+        List<AuthoritativeRatingChange> changes = calculateChanges(
+                decorators,
+                flowsById,
+                appsById,
+                dataTypesById,
+                resolver);
+
+        int updateCount = 0;
+        if (! dryRun && ! changes.isEmpty()) {
+            Map<Long, AuthoritativenessRating> newRatings = changes
+                    .stream()
+                    .collect(toMap(
+                            AuthoritativeRatingChange::decoratorId,
+                            AuthoritativeRatingChange::newRating));
+            updateCount = logicalFlowDecoratorDao.updateRatingsByIds(newRatings);
+        }
+
+        long duration = System.currentTimeMillis() - start;
+
+        LOG.info("Recalculated ratings for {} decorators, {} changed, {} updated (dry run: {}) in {}ms",
+                decorators.size(),
+                changes.size(),
+                updateCount,
+                dryRun,
+                duration);
+
+        return ImmutableAuthoritativeRatingRecalculation.builder()
+                .dryRun(dryRun)
+                .decoratorsEvaluated(decorators.size())
+                .decoratorsUpdated(updateCount)
+                .durationMillis(duration)
+                .changes(changes)
+                .build();
+    }
+
+
+    static List<AuthoritativeRatingChange> calculateChanges(Collection<DataTypeDecorator> decorators,
+                                                            Map<Long, LogicalFlow> flowsById,
+                                                            Map<Long, Application> appsById,
+                                                            Map<Long, DataType> dataTypesById,
+                                                            AuthoritativeSourceResolver resolver) {
+        List<AuthoritativeRatingChange> changes = new ArrayList<>();
+
+        for (DataTypeDecorator decorator : decorators) {
+            LogicalFlow flow = flowsById.get(decorator.dataFlowId());
+
+            if (flow == null
+                    || ! decorator.id().isPresent()
+                    || decorator.decoratorEntity().kind() != EntityKind.DATA_TYPE) {
+                continue;
+            }
+
+            AuthoritativenessRating currentRating = decorator.rating().orElse(AuthoritativenessRating.NO_OPINION);
+            AuthoritativenessRating newRating = resolveRating(
+                    flow,
+                    appsById.get(flow.target().id()),
+                    dataTypesById.get(decorator.dataTypeId()),
+                    resolver);
+
+            if (newRating != currentRating) {
+                changes.add(ImmutableAuthoritativeRatingChange.builder()
+                        .decoratorId(decorator.id().get())
+                        .logicalFlowId(flow.id().get())
+                        .dataTypeId(decorator.dataTypeId())
+                        .currentRating(currentRating)
+                        .newRating(newRating)
+                        .build());
+            }
+        }
+
+        return changes;
+    }
+
+
+    // -- HELPERS ---
+
+    private static AuthoritativenessRating resolveRating(LogicalFlow flow,
+                                                         Application targetApp,
+                                                         DataType dataType,
+                                                         AuthoritativeSourceResolver resolver) {
+        if (! isAppToAppFlow(flow) || targetApp == null || dataType == null) {
+            return AuthoritativenessRating.NO_OPINION;
+        }
+
+        return resolver.resolve(
+                mkRef(EntityKind.ORG_UNIT, targetApp.organisationalUnitId()),
+                flow.source(),
+                dataType.code());
+    }
+
+
+    private static boolean isAppToAppFlow(LogicalFlow flow) {
+        return flow.source().kind() == EntityKind.APPLICATION
+                && flow.target().kind() == EntityKind.APPLICATION;
+    }
+
+}
@@ -68,6 +68,7 @@ public class AuthoritativeSourceService {
     private final OrganisationalUnitDao organisationalUnitDao;
     private final ApplicationDao applicationDao;
     private final AuthSourceRatingCalculator ratingCalculator;
+    private final AuthSourceRatingRecalculator ratingRecalculator;
     private final ChangeLogService changeLogService;
     private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
     private final DataTypeIdSelectorFactory dataTypeIdSelectorFactory = new DataTypeIdSelectorFactory();
@@ -81,6 +82,7 @@ public class AuthoritativeSourceService {
                                       OrganisationalUnitDao organisationalUnitDao,
                                       ApplicationDao applicationDao,
                                       AuthSourceRatingCalculator ratingCalculator,
+                                      AuthSourceRatingRecalculator ratingRecalculator,
                                       ChangeLogService changeLogService,
                                       LogicalFlowDecoratorDao logicalFlowDecoratorDao) {
         checkNotNull(authoritativeSourceDao, "authoritativeSourceDao must not be null");
@@ -88,6 +90,7 @@ public class AuthoritativeSourceService {
         checkNotNull(organisationalUnitDao, "organisationalUnitDao cannot be null");
         checkNotNull(applicationDao, "applicationDao cannot be null");
         checkNotNull(ratingCalculator, "ratingCalculator cannot be null");
+        checkNotNull(ratingRecalculator, "ratingRecalculator cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
         checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
 
@@ -96,6 +99,7 @@ public class AuthoritativeSourceService {
         this.organisationalUnitDao = organisationalUnitDao;
         this.applicationDao = applicationDao;
         this.ratingCalculator = ratingCalculator;
+        this.ratingRecalculator = ratingRecalculator;
         this.changeLogService = changeLogService;
         this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
     }
@@ -168,17 +172,21 @@ public class AuthoritativeSourceService {
 
 
     public boolean fastRecalculateAllFlowRatings() {
-        logicalFlowDecoratorDao.updateRatingsByCondition(AuthoritativenessRating.NO_OPINION, DSL.trueCondition());
-        List<AuthoritativeRatingVantagePoint> authoritativeRatingVantagePoints = authoritativeSourceDao.findAuthoritativeRatingVantagePoints();
-        authoritativeRatingVantagePoints.forEach(a -> {
-            LOG.info("Updating decorators for: {}", a);
-            int updateCount = logicalFlowDecoratorDao.updateDecoratorsForAuthSource(a);
-            LOG.info("Updated {} decorators for: {}", updateCount, a);
-        });
+        ratingRecalculator.recalculateAll(false);
         return true;
     }
 
 
+    /**
+     * Recalculates all flow ratings, writing only those which have changed.
+     *
+     * @param dryRun  if true the changes are returned but not written
+     */
+    public AuthoritativeRatingRecalculation recalculateAllFlowRatings(boolean dryRun) {
+        return ratingRecalculator.recalculateAll(dryRun);
+    }
+
+
     public Map<EntityReference, Collection<EntityReference>> calculateConsumersForDataTypeIdSelector(
             IdSelectionOptions options) {
         Select<Record1<Long>> selector = dataTypeIdSelectorFactory.apply(options);
@@ -19,7 +19,9 @@
 package com.khartec.waltz.service.changelog;
 
 import com.khartec.waltz.common.CollectionUtilities;
+import com.khartec.waltz.common.WriteBehindQueue;
 import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.data.EntityReferenceNameResolver;
 import com.khartec.waltz.data.GenericSelector;
 import com.khartec.waltz.data.GenericSelectorFactory;
@@ -40,15 +42,16 @@ import com.khartec.waltz.model.measurable_rating_replacement.MeasurableRatingRep
 import com.khartec.waltz.model.physical_flow.PhysicalFlow;
 import com.khartec.waltz.model.physical_specification.PhysicalSpecification;
 import com.khartec.waltz.model.tally.DateTally;
-import org.jooq.lambda.Unchecked;
 import org.jooq.lambda.tuple.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.*;
 import static com.khartec.waltz.common.SetUtilities.*;
@@ -63,6 +66,9 @@ import static org.jooq.lambda.tuple.Tuple.tuple;
 public class ChangeLogService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ChangeLogService.class);
+    private static final int WRITE_BEHIND_MAX_ATTEMPTS = 3;
+    private static final long WRITE_BEHIND_SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
     private final ChangeLogDao changeLogDao;
     private final ChangeLogSummariesDao changeLogSummariesDao;
     private final DBExecutorPoolInterface dbExecutorPool;
@@ -74,6 +80,11 @@ public class ChangeLogService {
     private final MeasurableRatingPlannedDecommissionDao measurableRatingPlannedDecommissionDao;
     private final EntityReferenceNameResolver nameResolver;
 
+    /**
+     * Optional write-behind queue, null if change log entries are written synchronously
+     */
+    private final WriteBehindQueue<ChangeLog> writeBehindQueue;
+
 
     @Autowired
     public ChangeLogService(ChangeLogDao changeLogDao,
@@ -85,7 +96,11 @@ public class ChangeLogService {
                             ApplicationDao applicationDao,
                             MeasurableRatingReplacementDao measurableRatingReplacementDao,
                             MeasurableRatingPlannedDecommissionDao measurableRatingPlannedDecommissionDao,
-                            EntityReferenceNameResolver nameResolver) {
+                            EntityReferenceNameResolver nameResolver,
+                            @Value("${waltz.changelog.write_behind.enabled:false}") boolean writeBehindEnabled,
+                            @Value("${waltz.changelog.write_behind.capacity:10000}") int writeBehindCapacity,
+                            @Value("${waltz.changelog.write_behind.batch.size:500}") int writeBehindBatchSize,
+                            @Value("${waltz.changelog.write_behind.flush.millis:1000}") long writeBehindFlushMillis) {
         checkNotNull(changeLogDao, "changeLogDao must not be null");
         checkNotNull(changeLogSummariesDao, "changeLogSummariesDao must not be null");
         checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
@@ -106,6 +121,23 @@ public class ChangeLogService {
         this.measurableRatingReplacementdao = measurableRatingReplacementDao;
         this.measurableRatingPlannedDecommissionDao = measurableRatingPlannedDecommissionDao;
         this.nameResolver = nameResolver;
+
+        if (writeBehindEnabled) {
+            this.writeBehindQueue = new WriteBehindQueue<>(
+                    "ChangeLog",
+                    this::writeAndEvictNames,
+                    writeBehindCapacity,
+                    writeBehindBatchSize,
+                    writeBehindFlushMillis,
+                    WRITE_BEHIND_MAX_ATTEMPTS);
+            this.writeBehindQueue.start();
+            LOG.info("Change log write-behind enabled, capacity: {}, batch size: {}, flush interval: {}ms",
+                    writeBehindCapacity,
+                    writeBehindBatchSize,
+                    writeBehindFlushMillis);
+        } else {
+            this.writeBehindQueue = null;
+        }
     }
 
 
@@ -135,13 +167,110 @@ public class ChangeLogService {
     }
 
 
+    /**
+     * Writes the entry, if write-behind is enabled the entry is queued and
+     * will be persisted shortly (it is written immediately if the queue is full).
+     *
+     * @return 1 if queued, otherwise the number of rows inserted
+     */
     public int write(ChangeLog changeLog) {
-        return changeLogDao.write(changeLog);
+        if (writeBehindQueue != null && writeBehindQueue.offer(changeLog)) {
+            return 1;
+        }
+        int result = changeLogDao.write(changeLog);
+        evictName(changeLog);
+        return result;
     }
 
 
+    /**
+     * Writes the entries, see {@link #write(ChangeLog)}.  When write-behind is
+     * enabled the results for queued entries (1 each) precede the results of
+     * any entries which had to be written immediately.
+     */
     public int[] write(Collection<ChangeLog> changeLogs) {
-        return changeLogDao.write(changeLogs);
+        if (writeBehindQueue == null) {
+            return writeAndEvictNames(changeLogs);
+        }
+
+        List<ChangeLog> rejected = writeBehindQueue.offerAll(changeLogs);
+        int[] written = rejected.isEmpty()
+                ? new int[0]
+                : writeAndEvictNames(rejected);
+
+        int queuedCount = changeLogs.size() - rejected.size();
+        int[] result = new int[queuedCount + written.length];
+        Arrays.fill(result, 0, queuedCount, 1);
+        System.arraycopy(written, 0, result, queuedCount, written.length);
+        return result;
+    }
+
+
+    /**
+     * Writes any queued entries now, returns the number written (0 if write-behind is disabled)
+     */
+    public int flushQueuedWrites() {
+        return writeBehindQueue == null
+                ? 0
+                : writeBehindQueue.flush();
+    }
+
+
+    public boolean isWriteBehindEnabled() {
+        return writeBehindQueue != null;
+    }
+
+
+    public int getWriteBehindQueueDepth() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getQueueDepth();
+    }
+
+
+    public long getWriteBehindFlushCount() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getFlushCount();
+    }
+
+
+    public long getWriteBehindWrittenCount() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getWrittenCount();
+    }
+
+
+    public long getWriteBehindOverflowCount() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getOverflowCount();
+    }
+
+
+    public long getWriteBehindRequeuedCount() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getRequeuedCount();
+    }
+
+
+    public long getWriteBehindDroppedCount() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getDroppedCount();
+    }
+
+
+    public long getWriteBehindFailedAttemptCount() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getFailedAttemptCount();
+    }
+
+
+    public long getWriteBehindLastFlushMillis() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getLastFlushMillis();
+    }
+
+
+    public long getWriteBehindMaxFlushMillis() {
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getMaxFlushMillis();
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.shutdown(WRITE_BEHIND_SHUTDOWN_TIMEOUT_MILLIS);
+        }
     }
 
 
@@ -228,27 +357,53 @@ public class ChangeLogService {
 
         ////////////////////// PRIVATE HELPERS //////////////////////////////////////////
 
+    private int[] writeAndEvictNames(Collection<ChangeLog> changeLogs) {
+        int[] result = changeLogDao.write(changeLogs);
+        changeLogs.forEach(this::evictName);
+        return result;
+    }
+
+
+    /**
+     * Entries describing a change to the entity itself (rather than to one
+     * of its children) may have renamed, added or removed it, so the name
+     * held for that entity is marked as stale.  Called once the entry has
+     * been written, by which point the change it describes has been made.
+     */
+    private void evictName(ChangeLog changeLog) {
+        EntityKind parentKind = changeLog.parentReference().kind();
+        boolean changesParent = changeLog
+                .childKind()
+                .map(k -> k == parentKind)
+                .orElse(true);
+
+        if (changesParent && changeLog.operation() != Operation.ATTEST) {
+            nameResolver.evict(changeLog.parentReference());
+        }
+    }
+
+
     private List<ChangeLog> findByParentReferenceForPhysicalFlow(EntityReference ref,
                                                                  Optional<Date> date,
                                                                  Optional<Integer> limit) {
         checkNotNull(ref, "ref must not be null");
         checkTrue(ref.kind() == EntityKind.PHYSICAL_FLOW, "ref should refer to a Physical Flow");
 
-        Future<List<ChangeLog>> flowLogsFuture = dbExecutorPool.submit(() -> changeLogDao.findByParentReference(ref, date, limit));
+        DBFanOut fanOut = dbExecutorPool.fanOut();
 
-        Future<List<ChangeLog>> specLogsFuture = dbExecutorPool.submit(() -> {
+        Supplier<List<ChangeLog>> flowLogs = fanOut.fork(() -> changeLogDao.findByParentReference(ref, date, limit));
+
+        Supplier<List<ChangeLog>> specLogs = fanOut.fork(() -> {
             PhysicalFlow flow = physicalFlowDao.getById(ref.id());
             return changeLogDao.findByParentReference(mkRef(EntityKind.PHYSICAL_SPECIFICATION, flow.specificationId()), date, limit);
         });
 
-        return Unchecked.supplier(() -> {
-            List<ChangeLog> flowLogs = flowLogsFuture.get();
-            List<ChangeLog> specLogs = specLogsFuture.get();
-            List<ChangeLog> all = new ArrayList<>();
-            all.addAll(flowLogs);
-            all.addAll(specLogs);
-            return (List<ChangeLog>) CollectionUtilities.sort(all, Comparator.comparing(ChangeLog::createdAt).reversed());
-        }).get();
+        fanOut.join();
+
+        List<ChangeLog> all = new ArrayList<>();
+        all.addAll(flowLogs.get());
+        all.addAll(specLogs.get());
+        return (List<ChangeLog>) CollectionUtilities.sort(all, Comparator.comparing(ChangeLog::createdAt).reversed());
     }
 
 
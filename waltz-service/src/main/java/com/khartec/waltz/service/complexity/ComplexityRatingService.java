@@ -17,41 +17,79 @@
  */
 package com.khartec.waltz.service.complexity;
 
-import com.khartec.waltz.common.ListUtilities;
+import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
+import com.khartec.waltz.data.changelog.ChangeLogDao;
 import com.khartec.waltz.data.complexity.ComplexityScoreDao;
+import com.khartec.waltz.data.complexity.ConnectionComplexityDao;
+import com.khartec.waltz.data.complexity.MeasurableComplexityDao;
+import com.khartec.waltz.data.complexity.ServerComplexityDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.IdSelectionOptions;
-import com.khartec.waltz.model.complexity.ComplexityKind;
-import com.khartec.waltz.model.complexity.ComplexityRating;
-import com.khartec.waltz.model.complexity.ComplexityScore;
-import com.khartec.waltz.schema.tables.records.ComplexityScoreRecord;
+import com.khartec.waltz.model.complexity.*;
 import org.jooq.Record1;
 import org.jooq.Select;
-import org.jooq.SelectJoinStep;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.util.List;
+import java.util.*;
+import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
-import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.common.ListUtilities.concat;
+import static com.khartec.waltz.data.complexity.ComplexityScoreDao.toScoreValue;
 import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static java.util.stream.Collectors.toMap;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 
+/**
+ * Maintains the precalculated application complexity scores.
+ *
+ * Scores are kept up to date by diffing freshly calculated scores against
+ * the stored ones and applying only the changes, in a single transaction.
+ * A full rebuild considers every application, an incremental recalculation
+ * considers only the applications with flow, server or rating changes (as
+ * recorded in the change log) since the given checkpoint.  The incremental
+ * recalculation is run as a scheduled job, which persists the checkpoint
+ * between runs.
+ *
+ * Scores are relative to a per-kind baseline (the most complex app in the
+ * estate), if any baseline has moved since the checkpoint every score may
+ * have changed, therefore the incremental path falls back to a full rebuild.
+ */
 @Service
 public class ComplexityRatingService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ComplexityRatingService.class);
 
+    /**
+     * Change log child kinds which may affect an application's complexity
+     */
+    private static final Set<EntityKind> RELEVANT_CHANGE_KINDS = EnumSet.of(
+            EntityKind.LOGICAL_DATA_FLOW,
+            EntityKind.SERVER,
+            EntityKind.MEASURABLE,
+            EntityKind.MEASURABLE_RATING);
+
+    private static final int APP_BATCH_SIZE = 1000;
+
     private final ComplexityScoreDao complexityScoreDao;
     private final MeasurableComplexityService measurableComplexityService;
     private final ConnectionComplexityService connectionComplexityService;
     private final ServerComplexityService serverComplexityService;
+    private final ConnectionComplexityDao connectionComplexityDao;
+    private final ServerComplexityDao serverComplexityDao;
+    private final MeasurableComplexityDao measurableComplexityDao;
+    private final ChangeLogDao changeLogDao;
+    private final DBExecutorPoolInterface dbExecutorPool;
+    private final boolean incrementalEnabled;
 
     private final ApplicationIdSelectorFactory appIdSelectorFactory = new ApplicationIdSelectorFactory();
 
@@ -60,17 +98,34 @@ public class ComplexityRatingService {
     public ComplexityRatingService(ComplexityScoreDao complexityScoreDao,
                                    MeasurableComplexityService measurableComplexityService,
                                    ConnectionComplexityService connectionComplexityService,
-                                   ServerComplexityService serverComplexityService) {
+                                   ServerComplexityService serverComplexityService,
+                                   ConnectionComplexityDao connectionComplexityDao,
+                                   ServerComplexityDao serverComplexityDao,
+                                   MeasurableComplexityDao measurableComplexityDao,
+                                   ChangeLogDao changeLogDao,
+                                   DBExecutorPoolInterface dbExecutorPool,
+                                   @Value("${waltz.complexity.incremental.enabled:true}") boolean incrementalEnabled) {
 
         checkNotNull(complexityScoreDao, "complexityScoreDao cannot be null");
         checkNotNull(measurableComplexityService, "measurableComplexityService cannot be null");
         checkNotNull(connectionComplexityService, "connectionComplexityService cannot be null");
         checkNotNull(serverComplexityService, "serverComplexityService cannot be null");
+        checkNotNull(connectionComplexityDao, "connectionComplexityDao cannot be null");
+        checkNotNull(serverComplexityDao, "serverComplexityDao cannot be null");
+        checkNotNull(measurableComplexityDao, "measurableComplexityDao cannot be null");
+        checkNotNull(changeLogDao, "changeLogDao cannot be null");
+        checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
 
         this.complexityScoreDao = complexityScoreDao;
         this.measurableComplexityService = measurableComplexityService;
         this.connectionComplexityService = connectionComplexityService;
         this.serverComplexityService = serverComplexityService;
+        this.connectionComplexityDao = connectionComplexityDao;
+        this.serverComplexityDao = serverComplexityDao;
+        this.measurableComplexityDao = measurableComplexityDao;
+        this.changeLogDao = changeLogDao;
+        this.dbExecutorPool = dbExecutorPool;
+        this.incrementalEnabled = incrementalEnabled;
     }
 
 
@@ -94,37 +149,181 @@ public class ComplexityRatingService {
     }
 
 
-    public int rebuild() {
+    /**
+     * Recalculates scores for every application and applies the differences
+     * to the complexity score table.
+     *
+     * @return number of score rows inserted, updated or deleted
+     */
+    public synchronized int rebuild() {
+        return rebuild(calculateBaselines());
+    }
+
+
+    /**
+     * Recalculates scores only for applications which have relevant change
+     * log entries since the given checkpoint.  A full rebuild is performed if
+     * there is no checkpoint or if any of the baselines have changed.
+     *
+     * @param previous  checkpoint returned by the previous recalculation, if any
+     * @return checkpoint to pass to the next recalculation
+     */
+    public synchronized ComplexityCheckpoint recalculateChanged(Optional<ComplexityCheckpoint> previous) {
+        checkNotNull(previous, "previous cannot be null");
+
+        // taken first so changes made whilst recalculating are picked up next time
+        long upToChangeLogId = changeLogDao.getMaxId();
+        Map<ComplexityKind, Double> baselines = calculateBaselines();
+
+        ComplexityCheckpoint checkpoint = ImmutableComplexityCheckpoint
+                .builder()
+                .changeLogId(upToChangeLogId)
+                .baselines(baselines)
+                .build();
+
+        if (! previous.isPresent()) {
+            LOG.info("No previous complexity calculation, performing full rebuild");
+            rebuild(baselines);
+            return checkpoint;
+        }
+
+        if (! baselines.equals(previous.get().baselines())) {
+            LOG.info("Complexity baselines have changed from {} to {}, performing full rebuild", previous.get().baselines(), baselines);
+            rebuild(baselines);
+            return checkpoint;
+        }
+
+        List<Long> changedAppIds = new ArrayList<>(changeLogDao.findParentIdsChangedBetween(
+                EntityKind.APPLICATION,
+                RELEVANT_CHANGE_KINDS,
+                previous.get().changeLogId(),
+                upToChangeLogId));
+
+        LOG.debug("Recalculating complexity scores for {} changed applications", changedAppIds.size());
+
+        for (int i = 0; i < changedAppIds.size(); i += APP_BATCH_SIZE) {
+            List<Long> batch = changedAppIds.subList(i, Math.min(i + APP_BATCH_SIZE, changedAppIds.size()));
+
+            DBFanOut fanOut = dbExecutorPool.fanOut();
+            Supplier<List<ComplexityScore>> required = forkScoreCalculation(
+                    fanOut,
+                    DSL.select(APPLICATION.ID).from(APPLICATION).where(APPLICATION.ID.in(batch)),
+                    baselines);
+            Supplier<List<ComplexityScore>> existing = fanOut.fork(() -> complexityScoreDao.findScoresForAppIds(batch));
+            fanOut.join();
+
+            applyDelta(calculateDelta(existing.get(), required.get()));
+        }
+
+        return checkpoint;
+    }
 
+
+    public boolean isIncrementalEnabled() {
+        return incrementalEnabled;
+    }
+
+
+    /**
+     * Determines the inserts, updates and deletes needed to turn the
+     * existing scores into the required scores.  Scores are compared at
+     * the precision they are stored with.
+     */
+    static ComplexityScoreDelta calculateDelta(Collection<ComplexityScore> existing,
+                                               Collection<ComplexityScore> required) {
+        Map<Tuple2<Long, ComplexityKind>, ComplexityScore> existingByKey = indexByKey(existing);
+        Map<Tuple2<Long, ComplexityKind>, ComplexityScore> requiredByKey = indexByKey(required);
+
+        ImmutableComplexityScoreDelta.Builder delta = ImmutableComplexityScoreDelta.builder();
+
+        requiredByKey.forEach((key, score) -> {
+            ComplexityScore current = existingByKey.get(key);
+            if (current == null) {
+                delta.addInserts(score);
+            } else if (toScoreValue(current).compareTo(toScoreValue(score)) != 0) {
+                delta.addUpdates(score);
+            }
+        });
+
+        existingByKey.forEach((key, score) -> {
+            if (! requiredByKey.containsKey(key)) {
+                delta.addDeletes(score);
+            }
+        });
+
+        return delta.build();
+    }
+
+
+    // -- HELPERS ---
+
+    private int rebuild(Map<ComplexityKind, Double> baselines) {
         LOG.info("Rebuild complexity score table");
-        SelectJoinStep<Record1<Long>> appIdSelector = DSL.select(APPLICATION.ID).from(APPLICATION);
 
-        List<ComplexityScore> connectionScores = connectionComplexityService.findByAppIdSelector(appIdSelector);
-        List<ComplexityScore> serverScores = serverComplexityService.findByAppIdSelector(appIdSelector);
-        List<ComplexityScore> measurableScores = measurableComplexityService.findByAppIdSelector(appIdSelector);
+        DBFanOut fanOut = dbExecutorPool.fanOut();
+        Supplier<List<ComplexityScore>> required = forkScoreCalculation(
+                fanOut,
+                DSL.select(APPLICATION.ID).from(APPLICATION),
+                baselines);
+        Supplier<List<ComplexityScore>> existing = fanOut.fork(complexityScoreDao::findAllScores);
+        fanOut.join();
+
+        return applyDelta(calculateDelta(existing.get(), required.get()));
+    }
+
+
+    private Map<ComplexityKind, Double> calculateBaselines() {
+        DBFanOut fanOut = dbExecutorPool.fanOut();
+        Supplier<Integer> connectionBaseline = fanOut.fork(connectionComplexityDao::calculateBaseline);
+        Supplier<Integer> serverBaseline = fanOut.fork(serverComplexityDao::calculateBaseline);
+        Supplier<Double> measurableBaseline = fanOut.fork(measurableComplexityDao::calculateBaseline);
+        fanOut.join();
 
-        List<ComplexityScoreRecord> records = ListUtilities.concat(
-                map(serverScores, r -> buildComplexityScoreRecord(r, ComplexityKind.SERVER)),
-                map(connectionScores, r -> buildComplexityScoreRecord(r, ComplexityKind.CONNECTION)),
-                map(measurableScores, r -> buildComplexityScoreRecord(r, ComplexityKind.MEASURABLE)));
+        Map<ComplexityKind, Double> baselines = new EnumMap<>(ComplexityKind.class);
+        baselines.put(ComplexityKind.CONNECTION, connectionBaseline.get().doubleValue());
+        baselines.put(ComplexityKind.SERVER, serverBaseline.get().doubleValue());
+        baselines.put(ComplexityKind.MEASURABLE, measurableBaseline.get());
+        return baselines;
+    }
+
+
+    /**
+     * Forks the calculation of each kind of score, the returned supplier
+     * combines them once the fan-out has been joined.
+     */
+    private Supplier<List<ComplexityScore>> forkScoreCalculation(DBFanOut fanOut,
+                                                                 Select<Record1<Long>> appIdSelector,
+                                                                 Map<ComplexityKind, Double> baselines) {
+        Supplier<List<ComplexityScore>> connectionScores = fanOut.fork(() -> connectionComplexityService.findByAppIdSelector(
+                appIdSelector,
+                baselines.get(ComplexityKind.CONNECTION).intValue()));
+        Supplier<List<ComplexityScore>> serverScores = fanOut.fork(() -> serverComplexityService.findByAppIdSelector(
+                appIdSelector,
+                baselines.get(ComplexityKind.SERVER).intValue()));
+        Supplier<List<ComplexityScore>> measurableScores = fanOut.fork(() -> measurableComplexityService.findByAppIdSelector(
+                appIdSelector,
+                baselines.get(ComplexityKind.MEASURABLE)));
 
-        LOG.info("Scrubbing existing complexity score table");
-        complexityScoreDao.deleteAll();
+        return () -> concat(
+                serverScores.get(),
+                connectionScores.get(),
+                measurableScores.get());
+    }
 
-        LOG.info("Inserting {} new records into complexity score table", records.size());
-        int[] results = complexityScoreDao.bulkInsert(records);
 
-        LOG.info("Completed insertion of new records, results: {}", results.length);
-        return results.length;
+    private int applyDelta(ComplexityScoreDelta delta) {
+        return delta.size() == 0
+                ? 0
+                : complexityScoreDao.applyDelta(delta);
     }
 
 
-    private static ComplexityScoreRecord buildComplexityScoreRecord(ComplexityScore r, ComplexityKind kind) {
-        ComplexityScoreRecord record = new ComplexityScoreRecord();
-        record.setEntityKind(EntityKind.APPLICATION.name());
-        record.setEntityId(r.id());
-        record.setComplexityKind(kind.name());
-        record.setScore(BigDecimal.valueOf(r.score()));
-        return record;
+    private static Map<Tuple2<Long, ComplexityKind>, ComplexityScore> indexByKey(Collection<ComplexityScore> scores) {
+        return scores
+                .stream()
+                .collect(toMap(
+                        s -> tuple(s.id(), s.kind()),
+                        s -> s,
+                        (a, b) -> b));
     }
 }
@@ -39,6 +39,7 @@ import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowMeasures;
 import com.khartec.waltz.model.logical_flow.LogicalFlow;
 import com.khartec.waltz.model.rating.AuthoritativenessRating;
 import com.khartec.waltz.service.changelog.ChangeLogService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
 import com.khartec.waltz.service.logical_flow.LogicalFlowService;
 import com.khartec.waltz.service.usage_info.DataTypeUsageService;
 import org.jooq.Record1;
@@ -77,6 +78,7 @@ public class LogicalFlowDecoratorService {
     private final DataTypeDao dataTypeDao;
     private final LogicalFlowDao logicalFlowDao;
     private final ChangeLogService changeLogService;
+    private final LogicalFlowGraphService logicalFlowGraphService;
 
 
     @Autowired
@@ -88,7 +90,8 @@ public class LogicalFlowDecoratorService {
                                        LogicalFlowDao logicalFlowDao,
                                        LogicalFlowService logicalFlowService,
                                        LogicalFlowStatsDao logicalFlowStatsDao,
-                                       ChangeLogService changeLogService) {
+                                       ChangeLogService changeLogService,
+                                       LogicalFlowGraphService logicalFlowGraphService) {
 
         checkNotNull(logicalFlowDecoratorSummaryDao, "logicalFlowDecoratorDao cannot be null");
         checkNotNull(ratingsCalculator, "ratingsCalculator cannot be null");
@@ -98,6 +101,7 @@ public class LogicalFlowDecoratorService {
         checkNotNull(logicalFlowService, "logicalFlowService cannot be null");
         checkNotNull(logicalFlowStatsDao, "logicalFlowStatsDao cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
 
         this.logicalFlowDecoratorSummaryDao = logicalFlowDecoratorSummaryDao;
         this.ratingsCalculator = ratingsCalculator;
@@ -106,6 +110,7 @@ public class LogicalFlowDecoratorService {
         this.logicalFlowDao = logicalFlowDao;
         this.changeLogService = changeLogService;
         this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
+        this.logicalFlowGraphService = logicalFlowGraphService;
     }
 
 
@@ -142,7 +147,8 @@ public class LogicalFlowDecoratorService {
                 .flatMap(f -> Stream.of(f.source(), f.target()))
                 .collect(Collectors.toList());
 
-        dataTypeUsageService.recalculateForApplications(effectedEntities);
+        dataTypeUsageService.queueRecalculation(effectedEntities);
+        logicalFlowGraphService.refreshFlows(map(actions, UpdateDataFlowDecoratorsAction::flowId));
         bulkAudit(actions, username, effectedFlows);
 
         return added;
@@ -36,6 +36,7 @@ import com.khartec.waltz.model.rating.AuthoritativenessRating;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorRatingsCalculator;
 import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
 import com.khartec.waltz.service.logical_flow.LogicalFlowService;
 import com.khartec.waltz.service.physical_flow.PhysicalFlowService;
 import com.khartec.waltz.service.usage_info.DataTypeUsageService;
@@ -66,6 +67,7 @@ public class DataTypeDecoratorService {
     private final DataTypeDecoratorDaoSelectorFactory dataTypeDecoratorDaoSelectorFactory;
     private final LogicalFlowDao logicalFlowDao;
     private final LogicalFlowService logicalFlowService;
+    private final LogicalFlowGraphService logicalFlowGraphService;
     private final LogicalFlowDecoratorRatingsCalculator ratingsCalculator;
     private final DataTypeUsageService dataTypeUsageService;
     private final DataTypeService dataTypeService;
@@ -80,6 +82,7 @@ public class DataTypeDecoratorService {
                                     DataTypeDecoratorDaoSelectorFactory dataTypeDecoratorDaoSelectorFactory,
                                     LogicalFlowDao logicalFlowDao,
                                     LogicalFlowService logicalFlowService,
+                                    LogicalFlowGraphService logicalFlowGraphService,
                                     LogicalFlowDecoratorRatingsCalculator ratingsCalculator,
                                     DataTypeUsageService dataTypeUsageService,
                                     DataTypeService dataTypeService,
@@ -87,11 +90,13 @@ public class DataTypeDecoratorService {
         checkNotNull(changeLogService, "changeLogService cannot be null");
         checkNotNull(logicalFlowDecoratorService, "logicalFlowDecoratorService cannot be null");
         checkNotNull(physicalFlowService, "physicalFlowService cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
 
         this.changeLogService = changeLogService;
         this.physicalFlowService = physicalFlowService;
         this.logicalFlowDao = logicalFlowDao;
         this.logicalFlowService = logicalFlowService;
+        this.logicalFlowGraphService = logicalFlowGraphService;
         this.ratingsCalculator = ratingsCalculator;
         this.dataTypeUsageService = dataTypeUsageService;
         this.dataTypeService = dataTypeService;
@@ -168,6 +173,7 @@ public class DataTypeDecoratorService {
                 entityReference, userName);
 
         recalculateDataTypeUsageForApplications(entityReference);
+        refreshFlowGraph(entityReference);
         // now update logical flow data types
         // find all physicals with this spec id, for each physical update it's logical decorators
         if (PHYSICAL_SPECIFICATION.equals(entityReference.kind())) {
@@ -201,6 +207,7 @@ public class DataTypeDecoratorService {
         audit(String.format("Removed data types: %s", dataTypeIds.toString()),
                 entityReference, userName);
         recalculateDataTypeUsageForApplications(entityReference);
+        refreshFlowGraph(entityReference);
 
         return result;
     }
@@ -209,7 +216,14 @@ public class DataTypeDecoratorService {
     private void recalculateDataTypeUsageForApplications(EntityReference associatedEntityReference) {
         if(LOGICAL_DATA_FLOW.equals(associatedEntityReference.kind())) {
             LogicalFlow flow = logicalFlowDao.getByFlowId(associatedEntityReference.id());
-            dataTypeUsageService.recalculateForApplications(newArrayList(flow.source(), flow.target()));
+            dataTypeUsageService.queueRecalculation(newArrayList(flow.source(), flow.target()));
+        }
+    }
+
+
+    private void refreshFlowGraph(EntityReference associatedEntityReference) {
+        if (LOGICAL_DATA_FLOW.equals(associatedEntityReference.kind())) {
+            logicalFlowGraphService.refreshFlows(newArrayList(associatedEntityReference.id()));
         }
     }
 
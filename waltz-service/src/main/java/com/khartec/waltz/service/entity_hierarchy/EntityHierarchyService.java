@@ -19,6 +19,7 @@
 package com.khartec.waltz.service.entity_hierarchy;
 
 import com.khartec.waltz.common.ListUtilities;
+import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.common.hierarchy.FlatNode;
 import com.khartec.waltz.common.hierarchy.Forest;
 import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
@@ -32,14 +33,20 @@ import com.khartec.waltz.data.measurable.MeasurableDao;
 import com.khartec.waltz.data.orgunit.OrganisationalUnitDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyDelta;
 import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
+import com.khartec.waltz.model.entity_hierarchy.ImmutableEntityHierarchyDelta;
 import com.khartec.waltz.model.entity_hierarchy.ImmutableEntityHierarchyItem;
 import com.khartec.waltz.model.tally.ImmutableTally;
 import com.khartec.waltz.model.tally.Tally;
 import com.khartec.waltz.schema.Tables;
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
 import com.khartec.waltz.service.person_hierarchy.PersonHierarchyService;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -52,11 +59,17 @@ import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.model.EntityKind.PERSON;
 import static com.khartec.waltz.schema.Tables.ENTITY_HIERARCHY;
 import static com.khartec.waltz.schema.Tables.MEASURABLE;
+import static java.util.stream.Collectors.toMap;
 import static org.jooq.impl.DSL.select;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Service
 public class EntityHierarchyService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(EntityHierarchyService.class);
+
+    private static final int FETCH_BATCH_SIZE = 1000;
+
     private final DSLContext dsl;
     private final ChangeInitiativeDao changeInitiativeDao;
     private final DataTypeDao dataTypeDao;
@@ -66,6 +79,7 @@ public class EntityHierarchyService {
     private final MeasurableDao measurableDao;
     private final OrganisationalUnitDao organisationalUnitDao;
     private final PersonHierarchyService personHierarchyService;
+    private final ApplicationIdSelectorCacheService applicationIdSelectorCacheService;
 
     @Autowired
     public EntityHierarchyService(DSLContext dsl,
@@ -75,7 +89,8 @@ public class EntityHierarchyService {
                                   EntityStatisticDao entityStatisticDao,
                                   MeasurableDao measurableDao, 
                                   OrganisationalUnitDao organisationalUnitDao,
-                                  PersonHierarchyService personHierarchyService) {
+                                  PersonHierarchyService personHierarchyService,
+                                  ApplicationIdSelectorCacheService applicationIdSelectorCacheService) {
 
         checkNotNull(dsl, "dsl cannot be null");
         checkNotNull(changeInitiativeDao, "changeInitiativeDao cannot be null");
@@ -85,6 +100,7 @@ public class EntityHierarchyService {
         checkNotNull(measurableDao, "measurableDao cannot be null");
         checkNotNull(organisationalUnitDao, "organisationalUnitDao cannot be null");
         checkNotNull(personHierarchyService, "personHierarchyService cannot be null");
+        checkNotNull(applicationIdSelectorCacheService, "applicationIdSelectorCacheService cannot be null");
 
         this.dsl = dsl;
         this.changeInitiativeDao = changeInitiativeDao;
@@ -94,6 +110,7 @@ public class EntityHierarchyService {
         this.measurableDao = measurableDao;
         this.organisationalUnitDao = organisationalUnitDao;
         this.personHierarchyService = personHierarchyService;
+        this.applicationIdSelectorCacheService = applicationIdSelectorCacheService;
     }
 
 
@@ -139,24 +156,149 @@ public class EntityHierarchyService {
     }
 
 
+    /*
+     * Every build path invalidates the cached application id selectors once
+     * the rebuilt hierarchy has been written, as they may have been resolved
+     * against the old hierarchy.
+     */
+
     public int buildFor(EntityKind kind) {
+        int result;
         if (kind == PERSON) {
-            int[] rc = personHierarchyService.build();
-            return rc.length;
+            result = personHierarchyService.build();
         } else {
             Table table = determineTableToRebuild(kind);
-            return buildFor(table, kind, DSL.trueCondition(), DSL.trueCondition());
+            result = buildFor(table, kind, DSL.trueCondition(), DSL.trueCondition());
         }
+        applicationIdSelectorCacheService.invalidateAll();
+        return result;
     }
 
 
     public int buildForMeasurableByCategory(long categoryId) {
-        return buildFor(MEASURABLE,
-                        EntityKind.MEASURABLE,
-                        MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId),
-                        ENTITY_HIERARCHY.ID.in(select(MEASURABLE.ID)
-                                                .from(MEASURABLE)
-                                                .where(MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId))));
+        int result = buildFor(MEASURABLE,
+                              EntityKind.MEASURABLE,
+                              MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId),
+                              ENTITY_HIERARCHY.ID.in(select(MEASURABLE.ID)
+                                                      .from(MEASURABLE)
+                                                      .where(MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId))));
+        applicationIdSelectorCacheService.invalidateAll();
+        return result;
+    }
+
+
+    /**
+     * Incrementally maintains the hierarchy after the given node has been
+     * moved (i.e. re-parented).  Only the hierarchy rows belonging to the
+     * node and its descendants are recalculated, the difference to the
+     * existing rows is then applied using batched statements.
+     *
+     * If a cycle is detected (or the node cannot be found) this falls back
+     * to a full rebuild of the hierarchy for the node's kind.
+     *
+     * @param ref  the node which has been moved
+     * @return number of hierarchy rows inserted, updated or deleted
+     */
+    public int buildForMovedNode(EntityReference ref) {
+        checkNotNull(ref, "ref cannot be null");
+
+        EntityKind kind = ref.kind();
+        if (kind == PERSON) {
+            return buildFor(kind);
+        }
+
+        Table table = determineTableToRebuild(kind);
+        Optional<List<Long>> ancestorIds = fetchAncestorIds(table, ref.id());
+        Optional<Map<Long, Long>> subtree = ancestorIds
+                .flatMap(ancestors -> fetchSubtree(table, ref.id(), ancestors));
+
+        if (! subtree.isPresent()) {
+            LOG.warn("Cannot incrementally rebuild hierarchy for: {}, cycle detected or node missing, performing a full rebuild", ref);
+            return buildFor(kind);
+        }
+
+        List<EntityHierarchyItem> required = mkSubtreeItems(
+                kind,
+                ancestorIds.get(),
+                subtree.get());
+
+        List<EntityHierarchyItem> existing = entityHierarchyDao.findByIds(
+                kind,
+                subtree.get().keySet());
+
+        EntityHierarchyDelta delta = calculateDelta(existing, required);
+        if (delta.size() == 0) {
+            return 0;
+        }
+
+        int result = entityHierarchyDao.applyDelta(kind, delta);
+        applicationIdSelectorCacheService.invalidateAll();
+        return result;
+    }
+
+
+    /**
+     * Creates the complete set of hierarchy items (including self references)
+     * for every node in a subtree.
+     *
+     * @param ancestorIds  ancestors of the subtree root, immediate parent first
+     * @param parentIdsById  map of node id to parent id for every node in the
+     *                       subtree, the root maps to <code>null</code>
+     */
+    static List<EntityHierarchyItem> mkSubtreeItems(EntityKind kind,
+                                                    List<Long> ancestorIds,
+                                                    Map<Long, Long> parentIdsById) {
+        List<EntityHierarchyItem> items = new ArrayList<>();
+
+        for (Long nodeId : parentIdsById.keySet()) {
+            List<Long> lineage = new ArrayList<>();
+            Long current = nodeId;
+            while (current != null) {
+                lineage.add(current);
+                current = parentIdsById.get(current);
+            }
+            lineage.addAll(ancestorIds);
+
+            // lineage runs from the node up to the root of the hierarchy (level 1)
+            int nodeLevel = lineage.size();
+
+            for (int i = 0; i < lineage.size(); i++) {
+                items.add(ImmutableEntityHierarchyItem.builder()
+                        .id(nodeId)
+                        .parentId(lineage.get(i))
+                        .level(nodeLevel - i)
+                        .kind(kind)
+                        .build());
+            }
+        }
+
+        return items;
+    }
+
+
+    static EntityHierarchyDelta calculateDelta(Collection<EntityHierarchyItem> existing,
+                                               Collection<EntityHierarchyItem> required) {
+        Map<Tuple2<Long, Long>, EntityHierarchyItem> existingByKey = indexByKey(existing);
+        Map<Tuple2<Long, Long>, EntityHierarchyItem> requiredByKey = indexByKey(required);
+
+        ImmutableEntityHierarchyDelta.Builder delta = ImmutableEntityHierarchyDelta.builder();
+
+        requiredByKey.forEach((key, item) -> {
+            EntityHierarchyItem current = existingByKey.get(key);
+            if (current == null) {
+                delta.addInserts(item);
+            } else if (current.level() != item.level()) {
+                delta.addUpdates(item);
+            }
+        });
+
+        existingByKey.forEach((key, item) -> {
+            if (! requiredByKey.containsKey(key)) {
+                delta.addDeletes(item);
+            }
+        });
+
+        return delta.build();
     }
 
 
@@ -171,6 +313,89 @@ public class EntityHierarchyService {
     }
 
 
+    /**
+     * Walks up the hierarchy from the given node.
+     * @return ancestor ids, immediate parent first, or empty if the node is
+     * missing or a cycle is detected
+     */
+    private Optional<List<Long>> fetchAncestorIds(Table table, long id) {
+        Field<Long> idField = table.field("id", Long.class);
+        Field<Long> parentIdField = table.field("parent_id", Long.class);
+
+        List<Long> ancestorIds = new ArrayList<>();
+        Set<Long> seen = SetUtilities.asSet(id);
+        long current = id;
+
+        while (true) {
+            Optional<Record1<Long>> row = dsl
+                    .select(parentIdField)
+                    .from(table)
+                    .where(idField.eq(current))
+                    .fetchOptional();
+
+            if (! row.isPresent()) {
+                return Optional.empty();
+            }
+
+            Long parentId = row.get().value1();
+            if (parentId == null || parentId.equals(current)) {
+                break;
+            }
+
+            if (! seen.add(parentId)) {
+                return Optional.empty();
+            }
+
+            ancestorIds.add(parentId);
+            current = parentId;
+        }
+
+        return Optional.of(ancestorIds);
+    }
+
+
+    /**
+     * Walks down the hierarchy, a level at a time, from the given node.
+     * @return map of node id to parent id for the node and all of its
+     * descendants (the root maps to null), or empty if a cycle is detected
+     */
+    private Optional<Map<Long, Long>> fetchSubtree(Table table, long rootId, List<Long> ancestorIds) {
+        Field<Long> idField = table.field("id", Long.class);
+        Field<Long> parentIdField = table.field("parent_id", Long.class);
+
+        Map<Long, Long> parentIdsById = new HashMap<>();
+        parentIdsById.put(rootId, null);
+
+        List<Long> frontier = ListUtilities.newArrayList(rootId);
+
+        while (! frontier.isEmpty()) {
+            List<Long> nextFrontier = new ArrayList<>();
+
+            for (int i = 0; i < frontier.size(); i += FETCH_BATCH_SIZE) {
+                List<Long> chunk = frontier.subList(i, Math.min(i + FETCH_BATCH_SIZE, frontier.size()));
+                List<Tuple2<Long, Long>> children = dsl
+                        .select(idField, parentIdField)
+                        .from(table)
+                        .where(parentIdField.in(chunk))
+                        .and(idField.ne(parentIdField))
+                        .fetch(r -> tuple(r.value1(), r.value2()));
+
+                for (Tuple2<Long, Long> child : children) {
+                    if (parentIdsById.containsKey(child.v1) || ancestorIds.contains(child.v1)) {
+                        return Optional.empty();
+                    }
+                    parentIdsById.put(child.v1, child.v2);
+                    nextFrontier.add(child.v1);
+                }
+            }
+
+            frontier = nextFrontier;
+        }
+
+        return Optional.of(parentIdsById);
+    }
+
+
     private List<FlatNode<Long, Long>> fetchFlatNodes(Table table, Condition selectFilter) {
         Field<Long> idField = table.field("id", Long.class);
         Field<Long> parentIdField = table.field("parent_id", Long.class);
@@ -233,6 +458,16 @@ public class EntityHierarchyService {
     }
 
 
+    private static Map<Tuple2<Long, Long>, EntityHierarchyItem> indexByKey(Collection<EntityHierarchyItem> items) {
+        return items
+                .stream()
+                .collect(toMap(
+                        item -> tuple(item.id().get(), item.parentId().get()),
+                        item -> item,
+                        (a, b) -> a));
+    }
+
+
     private Table determineTableToRebuild(EntityKind kind) {
         switch (kind) {
             case CHANGE_INITIATIVE:
@@ -0,0 +1,125 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.entity_reference;
+
+import com.khartec.waltz.data.EntityNameDictionary;
+import com.khartec.waltz.data.EntityReferenceNameResolver;
+import com.khartec.waltz.model.EntityKind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * Keeps the in-memory entity name dictionary (used by the
+ * {@link EntityReferenceNameResolver}) fresh.
+ *
+ * Entities are evicted as change log entries are written against them
+ * and their kinds reloaded on the next periodic refresh, which also
+ * recalculates the checksums of all loaded kinds to catch changes made
+ * outside of Waltz (e.g. by loaders).
+ */
+@Service
+public class EntityNameDictionaryService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityNameDictionaryService.class);
+
+    private final EntityNameDictionary dictionary;
+
+
+    @Autowired
+    public EntityNameDictionaryService(EntityReferenceNameResolver nameResolver) {
+        checkNotNull(nameResolver, "nameResolver cannot be null");
+        this.dictionary = nameResolver.getDictionary();
+    }
+
+
+    /**
+     * @return number of kinds reloaded
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.entity_name_dictionary.refresh.millis:300000}",
+            fixedDelayString = "${waltz.entity_name_dictionary.refresh.millis:300000}")
+    public int refresh() {
+        int reloaded = dictionary.refresh();
+        if (reloaded > 0) {
+            LOG.info("Reloaded {} kind/s in the entity name dictionary following refresh", reloaded);
+        }
+        return reloaded;
+    }
+
+
+    public void invalidate(EntityKind kind) {
+        checkNotNull(kind, "kind cannot be null");
+        dictionary.invalidate(kind);
+    }
+
+
+    public void invalidateAll() {
+        LOG.debug("Invalidating entity name dictionary");
+        dictionary.invalidateAll();
+    }
+
+
+    public Set<EntityKind> getLoadedKinds() {
+        return dictionary.getLoadedKinds();
+    }
+
+
+    public int getEntryCount() {
+        return dictionary.getEntryCount();
+    }
+
+
+    public int getEvictedCount() {
+        return dictionary.getEvictedCount();
+    }
+
+
+    public long getEstimatedMemoryBytes() {
+        return dictionary.getEstimatedMemoryBytes();
+    }
+
+
+    public long getHitCount() {
+        return dictionary.getHitCount();
+    }
+
+
+    public long getMissCount() {
+        return dictionary.getMissCount();
+    }
+
+
+    public long getLoadCount() {
+        return dictionary.getLoadCount();
+    }
+
+
+    public double getHitRate() {
+        return dictionary.getHitRate();
+    }
+
+}
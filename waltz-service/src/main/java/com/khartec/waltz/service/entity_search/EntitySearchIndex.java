@@ -0,0 +1,334 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.entity_search;
+
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.EntitySearchOptions;
+import org.jooq.lambda.tuple.Tuple2;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.data.SearchUtilities.mkRelevancyComparator;
+import static com.khartec.waltz.data.SearchUtilities.mkTerms;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * An in-memory, trigram based, search index over the documents of a single entity kind.
+ *
+ * The bulk of the documents are held in an immutable snapshot with a posting
+ * list (of document offsets) per trigram.  Incremental updates are recorded in
+ * a small overlay which is scanned on each search and, once it grows beyond
+ * a threshold, is folded into a new snapshot.  Readers never block, writers
+ * are serialised.
+ *
+ * Matches are ranked in tiers, mirroring the order of the database searches:
+ * <ol>
+ *     <li>every term is a prefix of one of the codes (e.g. asset code)</li>
+ *     <li>every term appears in the name</li>
+ *     <li>every term appears in the name, a code or an alias</li>
+ * </ol>
+ * Within a tier results are ordered by {@link com.khartec.waltz.data.SearchUtilities#mkRelevancyComparator}
+ * using the first search term against the name.
+ */
+public class EntitySearchIndex {
+
+    private static final int NGRAM_LENGTH = 3;
+    private static final int MAX_OVERLAY_SIZE = 500;
+    private static final int NO_MATCH = -1;
+
+
+    private static class Entry {
+        private final EntitySearchDocument document;
+        private final long id;
+        private final String name;
+        private final List<String> codes;
+        private final List<String> aliases;
+
+        private Entry(EntitySearchDocument document) {
+            this.document = document;
+            this.id = document.entityReference().id();
+            this.name = document.entityReference().name().orElse("").toLowerCase();
+            this.codes = toLowerCase(document.codes());
+            this.aliases = toLowerCase(document.aliases());
+        }
+
+        private Set<String> ngrams() {
+            Set<String> ngrams = new HashSet<>();
+            addNgrams(ngrams, name);
+            codes.forEach(c -> addNgrams(ngrams, c));
+            aliases.forEach(a -> addNgrams(ngrams, a));
+            return ngrams;
+        }
+    }
+
+
+    private static class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new Entry[0], Collections.emptyMap());
+
+        private final Entry[] entries;
+        private final Map<String, int[]> postings;
+
+        private Snapshot(Entry[] entries, Map<String, int[]> postings) {
+            this.entries = entries;
+            this.postings = postings;
+        }
+
+        private static Snapshot build(Collection<Entry> entryCollection) {
+            Entry[] entries = entryCollection.toArray(new Entry[0]);
+
+            List<Set<String>> ngramsByOffset = new ArrayList<>(entries.length);
+            Map<String, int[]> counts = new HashMap<>();
+            for (Entry entry : entries) {
+                Set<String> ngrams = entry.ngrams();
+                ngramsByOffset.add(ngrams);
+                ngrams.forEach(ng -> counts.computeIfAbsent(ng, k -> new int[1])[0]++);
+            }
+
+            Map<String, int[]> postings = new HashMap<>(counts.size() * 2);
+            counts.forEach((ng, count) -> postings.put(ng, new int[count[0]]));
+            counts.values().forEach(c -> c[0] = 0);
+
+            // offsets are added in ascending order, so every posting list is sorted
+            for (int offset = 0; offset < entries.length; offset++) {
+                for (String ng : ngramsByOffset.get(offset)) {
+                    postings.get(ng)[counts.get(ng)[0]++] = offset;
+                }
+            }
+
+            return new Snapshot(entries, postings);
+        }
+
+        private Stream<Entry> candidates(String probe) {
+            if (probe == null) {
+                return Arrays.stream(entries);
+            }
+
+            List<int[]> lists = new ArrayList<>();
+            for (String ng : ngrams(probe)) {
+                int[] posting = postings.get(ng);
+                if (posting == null) {
+                    return Stream.empty();
+                }
+                lists.add(posting);
+            }
+            lists.sort(Comparator.comparingInt(l -> l.length));
+
+            int[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, lists.get(i));
+            }
+
+            return Arrays.stream(result).mapToObj(offset -> entries[offset]);
+        }
+    }
+
+
+    private static class State {
+        private final Snapshot snapshot;
+        private final Map<Long, Entry> overlay; // null values mark removed documents
+
+        private State(Snapshot snapshot, Map<Long, Entry> overlay) {
+            this.snapshot = snapshot;
+            this.overlay = overlay;
+        }
+    }
+
+
+    private volatile State state = new State(Snapshot.EMPTY, Collections.emptyMap());
+
+
+    /**
+     * Replaces the entire contents of the index
+     */
+    public synchronized void replaceAll(Collection<EntitySearchDocument> documents) {
+        checkNotNull(documents, "documents cannot be null");
+        List<Entry> entries = documents
+                .stream()
+                .map(Entry::new)
+                .collect(toList());
+        state = new State(Snapshot.build(entries), Collections.emptyMap());
+    }
+
+
+    /**
+     * Adds or replaces the given documents and removes the documents with the given ids
+     */
+    public synchronized void update(Collection<EntitySearchDocument> upserts,
+                                    Collection<Long> removedIds) {
+        checkNotNull(upserts, "upserts cannot be null");
+        checkNotNull(removedIds, "removedIds cannot be null");
+
+        State current = state;
+        Map<Long, Entry> overlay = new HashMap<>(current.overlay);
+        removedIds.forEach(id -> overlay.put(id, null));
+        upserts.forEach(d -> overlay.put(d.entityReference().id(), new Entry(d)));
+
+        state = overlay.size() > MAX_OVERLAY_SIZE
+                ? new State(Snapshot.build(merge(current.snapshot, overlay)), Collections.emptyMap())
+                : new State(current.snapshot, overlay);
+    }
+
+
+    public List<EntityReference> search(EntitySearchOptions options) {
+        checkNotNull(options, "options cannot be null");
+
+        List<String> terms = mkTerms(options.searchQuery().toLowerCase());
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        String probe = terms
+                .stream()
+                .filter(t -> t.length() >= NGRAM_LENGTH)
+                .max(Comparator.comparingInt(String::length))
+                .orElse(null);
+
+        Set<EntityLifecycleStatus> statuses = EnumSet.noneOf(EntityLifecycleStatus.class);
+        statuses.addAll(options.entityLifecycleStatuses());
+        Predicate<Entry> statusFilter = e -> statuses.contains(e.document.entityReference().entityLifecycleStatus());
+
+        State current = state;
+        Stream<Entry> fromSnapshot = current.snapshot
+                .candidates(probe)
+                .filter(e -> ! current.overlay.containsKey(e.id));
+        Stream<Entry> fromOverlay = current.overlay
+                .values()
+                .stream()
+                .filter(Objects::nonNull);
+
+        Comparator<Tuple2<Entry, Integer>> byRelevance = Comparator
+                .<Tuple2<Entry, Integer>>comparingInt(t -> t.v2)
+                .thenComparing(mkRelevancyComparator(t -> t.v1.name, terms.get(0)));
+
+        return Stream
+                .concat(fromSnapshot, fromOverlay)
+                .filter(statusFilter)
+                .map(e -> tuple(e, determineTier(e, terms)))
+                .filter(t -> t.v2 != NO_MATCH)
+                .sorted(byRelevance)
+                .limit(options.limit())
+                .map(t -> t.v1.document.entityReference())
+                .collect(toList());
+    }
+
+
+    public int size() {
+        State current = state;
+        long overlayAdditions = current.overlay
+                .entrySet()
+                .stream()
+                .filter(e -> e.getValue() != null)
+                .count();
+        long snapshotSurvivors = Arrays
+                .stream(current.snapshot.entries)
+                .filter(e -> ! current.overlay.containsKey(e.id))
+                .count();
+        return (int) (snapshotSurvivors + overlayAdditions);
+    }
+
+
+    // -- HELPERS ---
+
+    private static int determineTier(Entry e, List<String> terms) {
+        if (allMatch(terms, t -> anyMatch(e.codes, c -> c.startsWith(t)))) {
+            return 0;
+        } else if (allMatch(terms, e.name::contains)) {
+            return 1;
+        } else if (allMatch(terms, t -> e.name.contains(t)
+                || anyMatch(e.codes, c -> c.contains(t))
+                || anyMatch(e.aliases, a -> a.contains(t)))) {
+            return 2;
+        } else {
+            return NO_MATCH;
+        }
+    }
+
+
+    private static List<Entry> merge(Snapshot snapshot, Map<Long, Entry> overlay) {
+        List<Entry> merged = new ArrayList<>(snapshot.entries.length + overlay.size());
+        for (Entry entry : snapshot.entries) {
+            if (! overlay.containsKey(entry.id)) {
+                merged.add(entry);
+            }
+        }
+        overlay.values()
+                .stream()
+                .filter(Objects::nonNull)
+                .forEach(merged::add);
+        return merged;
+    }
+
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+
+    private static Set<String> ngrams(String s) {
+        Set<String> ngrams = new HashSet<>();
+        addNgrams(ngrams, s);
+        return ngrams;
+    }
+
+
+    private static void addNgrams(Set<String> acc, String s) {
+        for (int i = 0; i + NGRAM_LENGTH <= s.length(); i++) {
+            acc.add(s.substring(i, i + NGRAM_LENGTH));
+        }
+    }
+
+
+    private static List<String> toLowerCase(List<String> strs) {
+        return strs
+                .stream()
+                .map(String::toLowerCase)
+                .collect(toList());
+    }
+
+
+    private static <T> boolean allMatch(List<T> xs, Predicate<T> pred) {
+        return xs.stream().allMatch(pred);
+    }
+
+
+    private static <T> boolean anyMatch(List<T> xs, Predicate<T> pred) {
+        return xs.stream().anyMatch(pred);
+    }
+
+}
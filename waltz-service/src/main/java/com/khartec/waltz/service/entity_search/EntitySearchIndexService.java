@@ -0,0 +1,160 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.entity_search;
+
+import com.khartec.waltz.data.entity_search.EntitySearchIndexDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.EntitySearchOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.SetUtilities.minus;
+import static java.util.stream.Collectors.toSet;
+
+
+/**
+ * Maintains in-memory search indexes for the entity kinds supported by
+ * {@link EntitySearchIndexDao}, allowing type-ahead searches to be served
+ * without querying the database.
+ *
+ * Indexes are fully rebuilt on startup and then periodically.  Between full
+ * rebuilds, entities with new change log entries are reloaded and applied
+ * incrementally.  Changes which do not write to the change log (e.g. bulk
+ * loads) are picked up by the next full rebuild.  Until the first build
+ * completes {@link #isAvailable(EntityKind)} returns false and callers
+ * should fall back to database searches.
+ */
+@Service
+public class EntitySearchIndexService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntitySearchIndexService.class);
+
+    private final EntitySearchIndexDao entitySearchIndexDao;
+    private final boolean enabled;
+    private final long rebuildIntervalMillis;
+    private final Map<EntityKind, EntitySearchIndex> indexes = new EnumMap<>(EntityKind.class);
+
+    private volatile boolean ready = false;
+    private volatile long changeLogWatermark = 0;
+    private volatile long lastRebuiltAt = 0;
+
+
+    @Autowired
+    public EntitySearchIndexService(EntitySearchIndexDao entitySearchIndexDao,
+                                    @Value("${waltz.search.index.enabled:true}") boolean enabled,
+                                    @Value("${waltz.search.index.rebuild.minutes:60}") int rebuildMinutes) {
+        checkNotNull(entitySearchIndexDao, "entitySearchIndexDao cannot be null");
+        checkTrue(rebuildMinutes > 0, "rebuildMinutes must be positive");
+
+        this.entitySearchIndexDao = entitySearchIndexDao;
+        this.enabled = enabled;
+        this.rebuildIntervalMillis = TimeUnit.MINUTES.toMillis(rebuildMinutes);
+
+        EntitySearchIndexDao
+                .getSupportedKinds()
+                .forEach(k -> indexes.put(k, new EntitySearchIndex()));
+    }
+
+
+    public boolean isAvailable(EntityKind kind) {
+        return enabled && ready && indexes.containsKey(kind);
+    }
+
+
+    public List<EntityReference> search(EntityKind kind, EntitySearchOptions options) {
+        checkTrue(isAvailable(kind), "Search index is not available for kind: %s", kind);
+        return indexes.get(kind).search(options);
+    }
+
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${waltz.search.index.refresh.millis:30000}")
+    public void refresh() {
+        if (! enabled) {
+            return;
+        }
+
+        if (! ready || System.currentTimeMillis() - lastRebuiltAt > rebuildIntervalMillis) {
+            rebuild();
+        } else {
+            applyChanges();
+        }
+    }
+
+
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+
+        // take the watermark first, so changes made during the rebuild are re-applied afterwards
+        long watermark = entitySearchIndexDao.getMaxChangeLogId();
+
+        indexes.forEach((kind, index) -> index.replaceAll(entitySearchIndexDao.findAll(kind)));
+
+        changeLogWatermark = watermark;
+        lastRebuiltAt = System.currentTimeMillis();
+        ready = true;
+
+        LOG.info(
+                "Rebuilt entity search index ({} documents) in {}ms",
+                indexes.values().stream().mapToInt(EntitySearchIndex::size).sum(),
+                lastRebuiltAt - start);
+    }
+
+
+    public synchronized void applyChanges() {
+        long uptoId = entitySearchIndexDao.getMaxChangeLogId();
+        if (uptoId <= changeLogWatermark) {
+            return;
+        }
+
+        Map<EntityKind, Set<Long>> changed = entitySearchIndexDao.findChangedEntityIds(changeLogWatermark, uptoId);
+
+        changed.forEach((kind, ids) -> {
+            EntitySearchIndex index = indexes.get(kind);
+            if (index == null) {
+                return;
+            }
+
+            List<EntitySearchDocument> documents = entitySearchIndexDao.findByIds(kind, ids);
+            Set<Long> found = documents
+                    .stream()
+                    .map(d -> d.entityReference().id())
+                    .collect(toSet());
+
+            index.update(documents, minus(ids, found));
+            LOG.debug("Applied {} search index change/s for kind: {}", ids.size(), kind);
+        });
+
+        changeLogWatermark = uptoId;
+    }
+
+}
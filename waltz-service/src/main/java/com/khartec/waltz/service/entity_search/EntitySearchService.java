@@ -20,6 +20,7 @@ package com.khartec.waltz.service.entity_search;
 
 import com.khartec.waltz.common.StringUtilities;
 import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.data.SearchUtilities;
 import com.khartec.waltz.model.*;
 import com.khartec.waltz.model.entity_search.EntitySearchOptions;
@@ -43,16 +44,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static java.util.stream.Collectors.toList;
-import static org.jooq.lambda.Unchecked.supplier;
 
 @Service
 public class EntitySearchService {
 
     private final DBExecutorPoolInterface dbExecutorPool;
+    private final EntitySearchIndexService entitySearchIndexService;
     private final ActorService actorService;
     private final ApplicationService applicationService;
     private final AppGroupService appGroupService;
@@ -70,6 +71,7 @@ public class EntitySearchService {
 
     @Autowired
     public EntitySearchService(DBExecutorPoolInterface dbExecutorPool,
+                               EntitySearchIndexService entitySearchIndexService,
                                ActorService actorService,
                                ApplicationService applicationService,
                                AppGroupService appGroupService,
@@ -84,6 +86,7 @@ public class EntitySearchService {
                                ServerInformationService serverInformationService,
                                SoftwareCatalogService softwareCatalogService) {
         checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
+        checkNotNull(entitySearchIndexService, "entitySearchIndexService cannot be null");
         checkNotNull(actorService, "actorService cannot be null");
         checkNotNull(applicationService, "applicationService cannot be null");
         checkNotNull(appGroupService, "appGroupService cannot be null");
@@ -100,6 +103,7 @@ public class EntitySearchService {
 
         this.actorService = actorService;
         this.dbExecutorPool = dbExecutorPool;
+        this.entitySearchIndexService = entitySearchIndexService;
         this.applicationService = applicationService;
         this.appGroupService = appGroupService;
         this.changeInitiativeService = changeInitiativeService;
@@ -123,20 +127,44 @@ public class EntitySearchService {
             return Collections.emptyList();
         }
 
-        List<Future<Collection<? extends WaltzEntity>>> futures = options
+        DBFanOut fanOut = dbExecutorPool.fanOut();
+
+        List<Supplier<List<EntityReference>>> results = options
                 .entityKinds()
                 .stream()
-                .map(ek -> dbExecutorPool.submit(mkCallable(ek, options)))
+                .map(ek -> mkSearch(ek, options, fanOut))
                 .collect(toList());
 
-        return futures
+        fanOut.join();
+
+        return results
                 .stream()
-                .flatMap(f -> supplier(f::get).get().stream())
-                .map(WaltzEntity::entityReference)
+                .flatMap(r -> r.get().stream())
                 .collect(toList());
     }
 
 
+    /**
+     * Searches the in-memory index where one is available for the kind,
+     * otherwise forks a database search.
+     */
+    private Supplier<List<EntityReference>> mkSearch(EntityKind entityKind,
+                                                     EntitySearchOptions options,
+                                                     DBFanOut fanOut) {
+        if (entitySearchIndexService.isAvailable(entityKind)) {
+            List<EntityReference> results = entitySearchIndexService.search(entityKind, options);
+            return () -> results;
+        } else {
+            Supplier<Collection<? extends WaltzEntity>> entities = fanOut.fork(mkCallable(entityKind, options));
+            return () -> entities
+                    .get()
+                    .stream()
+                    .map(WaltzEntity::entityReference)
+                    .collect(toList());
+        }
+    }
+
+
     private Callable<Collection<? extends WaltzEntity>> mkCallable(EntityKind entityKind,
                                                                    EntitySearchOptions options) {
         switch (entityKind) {
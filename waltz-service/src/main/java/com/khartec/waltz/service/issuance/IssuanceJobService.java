@@ -0,0 +1,269 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.issuance;
+
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.issuance.ImmutableIssuanceJob;
+import com.khartec.waltz.model.issuance.IssuanceJob;
+import com.khartec.waltz.model.system.job_log.JobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+
+
+/**
+ * Issues the instances and recipients of attestation and survey runs in
+ * the background, so that large runs do not hold a request open.
+ *
+ * Issuance tasks must be idempotent, writing only the rows which are not yet
+ * present for the run, as a failed attempt is retried (up to a configurable
+ * number of times) and simply resumes where the previous attempt stopped.
+ * At most one job per run is active at a time.  Finished jobs are discarded
+ * after a configurable period.
+ */
+@Service
+public class IssuanceJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IssuanceJobService.class);
+
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final long retentionMinutes;
+    private final Map<EntityReference, IssuanceJob> jobs = new ConcurrentHashMap<>();
+
+
+    @Autowired
+    public IssuanceJobService(@Value("${waltz.issuance.threads:1}") int threads,
+                              @Value("${waltz.issuance.chunk.size:1000}") int chunkSize,
+                              @Value("${waltz.issuance.max.attempts:3}") int maxAttempts,
+                              @Value("${waltz.issuance.retry.delay.millis:5000}") long retryDelayMillis,
+                              @Value("${waltz.issuance.job.retention.minutes:60}") long retentionMinutes) {
+        this.chunkSize = Integer.max(chunkSize, 1);
+        this.maxAttempts = Integer.max(maxAttempts, 1);
+        this.retryDelayMillis = Long.max(retryDelayMillis, 0);
+        this.retentionMinutes = retentionMinutes;
+        this.executor = Executors.newFixedThreadPool(
+                Integer.max(threads, 1),
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "Issuance");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+
+    /**
+     * Queues the given task to issue the instances and recipients of a run.
+     *
+     * @see #submit(EntityReference, String, Consumer, Runnable)
+     */
+    public IssuanceJob submit(EntityReference run,
+                              String username,
+                              Consumer<IssuanceProgress> task) {
+        return submit(run, username, task, () -> {});
+    }
+
+
+    /**
+     * Queues the given task to issue the instances and recipients of a run.
+     * A run may only have one active job, submitting another whilst it is
+     * in progress is rejected.
+     *
+     * @param run  attestation or survey run being issued
+     * @param username  user requesting the issuance
+     * @param task  idempotent task which writes the rows, reporting progress as it goes
+     * @param onSuccess  invoked once, after the task succeeds, it is never retried
+     * @return the state of the new job issuing the run
+     * @throws IllegalStateException if the run is already being issued
+     */
+    public IssuanceJob submit(EntityReference run,
+                              String username,
+                              Consumer<IssuanceProgress> task,
+                              Runnable onSuccess) {
+        checkNotNull(run, "run cannot be null");
+        checkNotNull(username, "username cannot be null");
+        checkNotNull(task, "task cannot be null");
+        checkNotNull(onSuccess, "onSuccess cannot be null");
+
+        EntityReference key = toKey(run);
+
+        IssuanceJob job = ImmutableIssuanceJob.builder()
+                .run(key)
+                .submittedBy(username)
+                .submittedAt(nowUtc())
+                .status(JobStatus.IN_PROGRESS)
+                .build();
+
+        jobs.compute(
+                key,
+                (k, existing) -> {
+                    if (existing != null && existing.status() == JobStatus.IN_PROGRESS) {
+                        throw new IllegalStateException(String.format(
+                                "%s is already being issued (submitted by %s at %s)",
+                                k,
+                                existing.submittedBy(),
+                                existing.submittedAt()));
+                    }
+                    return job;
+                });
+
+        executor.submit(() -> run(key, task, onSuccess));
+
+        return job;
+    }
+
+
+    public Optional<IssuanceJob> findJob(EntityReference run) {
+        checkNotNull(run, "run cannot be null");
+        return Optional.ofNullable(jobs.get(toKey(run)));
+    }
+
+
+    /**
+     * @return maximum number of rows an issuance task should write per insert statement
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+
+    @Scheduled(fixedDelay = 60_000)
+    public void pruneFinishedJobs() {
+        LocalDateTime cutoff = nowUtc().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(j -> j
+                .completedAt()
+                .map(at -> at.isBefore(cutoff))
+                .orElse(false));
+    }
+
+
+    // -- HELPERS ---
+
+    private void run(EntityReference run,
+                     Consumer<IssuanceProgress> task,
+                     Runnable onSuccess) {
+        IssuanceProgress progress = mkProgress(run);
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            int attemptNumber = attempt;
+            update(run, j -> ImmutableIssuanceJob.copyOf(j).withAttempts(attemptNumber));
+
+            try {
+                task.accept(progress);
+            } catch (Exception e) {
+                String error = Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName());
+                update(run, j -> ImmutableIssuanceJob.copyOf(j).withError(error));
+
+                if (attempt == maxAttempts) {
+                    LOG.error("Issuance of {} failed after {} attempt(s)", run, attempt, e);
+                    finish(run, j -> ImmutableIssuanceJob.copyOf(j).withStatus(JobStatus.FAILURE));
+                    return;
+                }
+
+                LOG.warn("Issuance of {} failed on attempt {} of {}, will retry: {}", run, attempt, maxAttempts, error);
+                if (! pauseBeforeRetry(attempt)) {
+                    finish(run, j -> ImmutableIssuanceJob.copyOf(j).withStatus(JobStatus.FAILURE));
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                onSuccess.run();
+            } catch (Exception e) {
+                // the rows are all written, a failing follow up must not cause a retry
+                LOG.warn("Post issuance action for {} failed", run, e);
+            }
+
+            finish(run, j -> ImmutableIssuanceJob
+                    .copyOf(j)
+                    .withStatus(JobStatus.SUCCESS)
+                    .withError(Optional.empty()));
+            return;
+        }
+    }
+
+
+    private boolean pauseBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(retryDelayMillis * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    private IssuanceProgress mkProgress(EntityReference run) {
+        return new IssuanceProgress() {
+            @Override
+            public void instances(int issued, int total) {
+                update(run, j -> ImmutableIssuanceJob
+                        .copyOf(j)
+                        .withInstancesIssued(issued)
+                        .withInstanceCount(total));
+            }
+
+            @Override
+            public void recipients(int issued, int total) {
+                update(run, j -> ImmutableIssuanceJob
+                        .copyOf(j)
+                        .withRecipientsIssued(issued)
+                        .withRecipientCount(total));
+            }
+        };
+    }
+
+
+    private void update(EntityReference run, UnaryOperator<IssuanceJob> updater) {
+        jobs.computeIfPresent(run, (k, j) -> updater.apply(j));
+    }
+
+
+    private void finish(EntityReference run, UnaryOperator<IssuanceJob> completer) {
+        update(run, j -> ImmutableIssuanceJob
+                .copyOf(completer.apply(j))
+                .withCompletedAt(nowUtc()));
+    }
+
+
+    private static EntityReference toKey(EntityReference run) {
+        return mkRef(run.kind(), run.id());
+    }
+
+}
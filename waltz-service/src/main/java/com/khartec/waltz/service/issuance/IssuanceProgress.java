@@ -0,0 +1,44 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.issuance;
+
+
+/**
+ * Receives progress updates from an issuance as it writes the instances,
+ * and then the recipients, of a run.  Counts are of rows present for the
+ * run, not just those written by the current attempt.
+ */
+public interface IssuanceProgress {
+
+    IssuanceProgress NONE = new IssuanceProgress() {
+        @Override
+        public void instances(int issued, int total) {
+        }
+
+        @Override
+        public void recipients(int issued, int total) {
+        }
+    };
+
+
+    void instances(int issued, int total);
+
+    void recipients(int issued, int total);
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Statistics and maintenance functions for the application id selector cache")
+public class ApplicationIdSelectorCacheMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApplicationIdSelectorCacheMaintenance.class);
+
+    private final ApplicationIdSelectorCacheService applicationIdSelectorCacheService;
+
+    @Autowired
+    public ApplicationIdSelectorCacheMaintenance(ApplicationIdSelectorCacheService applicationIdSelectorCacheService) {
+        this.applicationIdSelectorCacheService = applicationIdSelectorCacheService;
+    }
+
+
+    @ManagedOperation(description = "Remove all entries from the application id selector cache")
+    public void invalidateAll() {
+        LOG.warn("Invalidate application id selector cache (via jmx)");
+        applicationIdSelectorCacheService.invalidateAll();
+    }
+
+
+    @ManagedAttribute
+    public int getSize() {
+        return applicationIdSelectorCacheService.getSize();
+    }
+
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return applicationIdSelectorCacheService.getHitCount();
+    }
+
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return applicationIdSelectorCacheService.getMissCount();
+    }
+
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return applicationIdSelectorCacheService.getEvictionCount();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.changelog.ChangeLogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Queue depth and statistics for write-behind of change log entries")
+public class ChangeLogMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeLogMaintenance.class);
+
+    private final ChangeLogService changeLogService;
+
+    @Autowired
+    public ChangeLogMaintenance(ChangeLogService changeLogService) {
+        this.changeLogService = changeLogService;
+    }
+
+
+    @ManagedOperation(description = "Write all queued change log entries now, returns the number written")
+    public int flush() {
+        LOG.warn("Flushing queued change log entries (via jmx)");
+        return changeLogService.flushQueuedWrites();
+    }
+
+
+    @ManagedAttribute
+    public boolean isWriteBehindEnabled() {
+        return changeLogService.isWriteBehindEnabled();
+    }
+
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return changeLogService.getWriteBehindQueueDepth();
+    }
+
+
+    @ManagedAttribute
+    public long getFlushCount() {
+        return changeLogService.getWriteBehindFlushCount();
+    }
+
+
+    @ManagedAttribute
+    public long getWrittenCount() {
+        return changeLogService.getWriteBehindWrittenCount();
+    }
+
+
+    @ManagedAttribute(description = "Entries written synchronously as the queue was full")
+    public long getOverflowCount() {
+        return changeLogService.getWriteBehindOverflowCount();
+    }
+
+
+    @ManagedAttribute(description = "Entries put back on the queue after all write attempts failed")
+    public long getRequeuedCount() {
+        return changeLogService.getWriteBehindRequeuedCount();
+    }
+
+
+    @ManagedAttribute(description = "Entries discarded (and logged) once all write attempts and requeues failed")
+    public long getDroppedCount() {
+        return changeLogService.getWriteBehindDroppedCount();
+    }
+
+
+    @ManagedAttribute
+    public long getFailedAttemptCount() {
+        return changeLogService.getWriteBehindFailedAttemptCount();
+    }
+
+
+    @ManagedAttribute
+    public long getLastFlushMillis() {
+        return changeLogService.getWriteBehindLastFlushMillis();
+    }
+
+
+    @ManagedAttribute
+    public long getMaxFlushMillis() {
+        return changeLogService.getWriteBehindMaxFlushMillis();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.data.BoundedDBExecutorPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Concurrency, queue depth and wait times for the database fan-out executor")
+public class DBExecutorPoolMaintenance {
+
+    private final BoundedDBExecutorPool dbExecutorPool;
+
+    @Autowired
+    public DBExecutorPoolMaintenance(BoundedDBExecutorPool dbExecutorPool) {
+        this.dbExecutorPool = dbExecutorPool;
+    }
+
+
+    @ManagedAttribute
+    public int getMaxConcurrency() {
+        return dbExecutorPool.getMaxConcurrency();
+    }
+
+
+    @ManagedAttribute
+    public boolean isUsingVirtualThreads() {
+        return dbExecutorPool.isUsingVirtualThreads();
+    }
+
+
+    @ManagedAttribute(description = "Tasks waiting to start")
+    public int getQueueDepth() {
+        return dbExecutorPool.getQueueDepth();
+    }
+
+
+    @ManagedAttribute
+    public int getActiveCount() {
+        return dbExecutorPool.getActiveCount();
+    }
+
+
+    @ManagedAttribute
+    public long getCompletedCount() {
+        return dbExecutorPool.getCompletedCount();
+    }
+
+
+    @ManagedAttribute(description = "Nested tasks run directly on the submitting thread")
+    public long getInlineCount() {
+        return dbExecutorPool.getInlineCount();
+    }
+
+
+    @ManagedAttribute
+    public double getMeanWaitMillis() {
+        return dbExecutorPool.getMeanWaitMillis();
+    }
+
+
+    @ManagedAttribute
+    public double getMaxWaitMillis() {
+        return dbExecutorPool.getMaxWaitMillis();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.usage_info.DataTypeUsageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Queue depth and statistics for incremental data type usage recalculation")
+public class DataTypeUsageMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataTypeUsageMaintenance.class);
+
+    private final DataTypeUsageService dataTypeUsageService;
+
+    @Autowired
+    public DataTypeUsageMaintenance(DataTypeUsageService dataTypeUsageService) {
+        this.dataTypeUsageService = dataTypeUsageService;
+    }
+
+
+    @ManagedOperation(description = "Recalculate all queued applications/actors now, returns the number of usage rows changed")
+    public int processQueue() {
+        LOG.warn("Processing queued data type usage recalculations (via jmx)");
+        return dataTypeUsageService.processQueuedRecalculations();
+    }
+
+
+    @ManagedOperation(description = "Recalculate data type usages for all applications and actors")
+    public boolean recalculateAll() {
+        LOG.warn("Recalculating all data type usages (via jmx)");
+        return dataTypeUsageService.recalculateForAllApplications();
+    }
+
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return dataTypeUsageService.getQueueDepth();
+    }
+
+
+    @ManagedAttribute
+    public long getCycleCount() {
+        return dataTypeUsageService.getCycleCount();
+    }
+
+
+    @ManagedAttribute
+    public long getLastCycleEntityCount() {
+        return dataTypeUsageService.getLastCycleEntityCount();
+    }
+
+
+    @ManagedAttribute
+    public long getLastCycleRowsChanged() {
+        return dataTypeUsageService.getLastCycleRowsChanged();
+    }
+
+
+    @ManagedAttribute
+    public long getTotalRowsChanged() {
+        return dataTypeUsageService.getTotalRowsChanged();
+    }
+
+
+    @ManagedAttribute
+    public long getFailedBatchCount() {
+        return dataTypeUsageService.getFailedBatchCount();
+    }
+
+
+    @ManagedAttribute(description = "Apps/actors left for reconciliation once their retries were exhausted")
+    public long getDroppedEntityCount() {
+        return dataTypeUsageService.getDroppedEntityCount();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.entity_reference.EntityNameDictionaryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Statistics and maintenance functions for the entity name dictionary")
+public class EntityNameDictionaryMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityNameDictionaryMaintenance.class);
+
+    private final EntityNameDictionaryService entityNameDictionaryService;
+
+    @Autowired
+    public EntityNameDictionaryMaintenance(EntityNameDictionaryService entityNameDictionaryService) {
+        this.entityNameDictionaryService = entityNameDictionaryService;
+    }
+
+
+    @ManagedOperation(description = "Remove all names from the dictionary, they will be reloaded on demand")
+    public void invalidateAll() {
+        LOG.warn("Invalidate entity name dictionary (via jmx)");
+        entityNameDictionaryService.invalidateAll();
+    }
+
+
+    @ManagedOperation(description = "Recalculate checksums and reload any changed kinds")
+    public int refresh() {
+        LOG.warn("Refresh entity name dictionary (via jmx)");
+        return entityNameDictionaryService.refresh();
+    }
+
+
+    @ManagedAttribute
+    public String getLoadedKinds() {
+        return entityNameDictionaryService.getLoadedKinds().toString();
+    }
+
+
+    @ManagedAttribute
+    public int getEntryCount() {
+        return entityNameDictionaryService.getEntryCount();
+    }
+
+
+    @ManagedAttribute
+    public int getEvictedCount() {
+        return entityNameDictionaryService.getEvictedCount();
+    }
+
+
+    @ManagedAttribute
+    public long getEstimatedMemoryBytes() {
+        return entityNameDictionaryService.getEstimatedMemoryBytes();
+    }
+
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return entityNameDictionaryService.getHitCount();
+    }
+
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return entityNameDictionaryService.getMissCount();
+    }
+
+
+    @ManagedAttribute
+    public long getLoadCount() {
+        return entityNameDictionaryService.getLoadCount();
+    }
+
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return entityNameDictionaryService.getHitRate();
+    }
+
+}
@@ -42,7 +42,14 @@ public class PersonMaintenance {
     @ManagedOperation(description = "Rebuild the person hierarchy table")
     public int rebuildHierarchyTable() {
         LOG.warn("Rebuild person hierarchy (via jmx)");
-        return personHierarchyService.build().length;
+        return personHierarchyService.build();
+    }
+
+
+    @ManagedOperation(description = "Update the person hierarchy table, rewriting only people whose manager has changed (and those beneath them)")
+    public int updateHierarchyTable() {
+        LOG.warn("Update person hierarchy (via jmx)");
+        return personHierarchyService.update();
     }
 
 
@@ -0,0 +1,99 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.model.query_stats.ConnectionPoolStatistics;
+import com.khartec.waltz.service.query_stats.QueryStatsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import static java.util.stream.Collectors.joining;
+
+@ManagedResource(description = "Per query execution statistics and connection pool metrics")
+public class QueryStatsMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryStatsMaintenance.class);
+
+    private final QueryStatsService queryStatsService;
+
+    @Autowired
+    public QueryStatsMaintenance(QueryStatsService queryStatsService) {
+        this.queryStatsService = queryStatsService;
+    }
+
+
+    @ManagedOperation(description = "Lists the queries which have consumed the most database time")
+    public String topQueries(int limit) {
+        return queryStatsService
+                .getSummary(limit)
+                .queries()
+                .stream()
+                .map(q -> String.format(
+                        "%s [count: %d, total: %.1fms, p50: %.1fms, p99: %.1fms, rows: %d] %s",
+                        q.caller(),
+                        q.executionCount(),
+                        q.totalMillis(),
+                        q.p50Millis(),
+                        q.p99Millis(),
+                        q.rowCount(),
+                        q.fingerprint()))
+                .collect(joining("\n"));
+    }
+
+
+    @ManagedOperation(description = "Clears all collected query statistics")
+    public void reset() {
+        LOG.warn("Reset query statistics (via jmx)");
+        queryStatsService.reset();
+    }
+
+
+    @ManagedAttribute
+    public int getPendingThreads() {
+        return getPoolStatistics().pendingThreads();
+    }
+
+
+    @ManagedAttribute
+    public int getActiveConnections() {
+        return getPoolStatistics().activeConnections();
+    }
+
+
+    @ManagedAttribute
+    public double getConnectionAcquireP99Millis() {
+        return getPoolStatistics().acquireP99Millis();
+    }
+
+
+    @ManagedAttribute
+    public long getConnectionTimeoutCount() {
+        return getPoolStatistics().timeoutCount();
+    }
+
+
+    private ConnectionPoolStatistics getPoolStatistics() {
+        return queryStatsService.getSummary(1).connectionPool();
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.model.scheduled_job.JobExecutionState;
+import com.khartec.waltz.model.scheduled_job.JobKey;
+import com.khartec.waltz.model.scheduled_job.ScheduledJobStatus;
+import com.khartec.waltz.service.scheduled_job.ScheduledJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Running/queued state and timings of the scheduled jobs")
+public class ScheduledJobMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduledJobMaintenance.class);
+
+    private final ScheduledJobService scheduledJobService;
+
+    @Autowired
+    public ScheduledJobMaintenance(ScheduledJobService scheduledJobService) {
+        this.scheduledJobService = scheduledJobService;
+    }
+
+
+    @ManagedOperation(description = "Run a cycle of all runnable jobs now (blocks until complete), returns false if a cycle is already in progress")
+    public boolean runCycle() {
+        LOG.warn("Running scheduled jobs (via jmx)");
+        return scheduledJobService.runCycle();
+    }
+
+
+    @ManagedOperation(description = "Recent durations (millis, most recent first) for each job")
+    public String[] jobTimings() {
+        return scheduledJobService
+                .findAllStatuses()
+                .stream()
+                .map(s -> String.format(
+                        "%s [%s]: %s",
+                        s.jobKey(),
+                        s.executionState(),
+                        s.recentDurations()))
+                .toArray(String[]::new);
+    }
+
+
+    @ManagedAttribute
+    public String[] getRunningJobs() {
+        return toNames(JobExecutionState.RUNNING);
+    }
+
+
+    @ManagedAttribute
+    public String[] getQueuedJobs() {
+        return toNames(JobExecutionState.QUEUED);
+    }
+
+
+    @ManagedAttribute
+    public boolean isCycleInProgress() {
+        return scheduledJobService.isCycleInProgress();
+    }
+
+
+    @ManagedAttribute
+    public long getLastCycleDurationMillis() {
+        return scheduledJobService.getLastCycleDurationMillis();
+    }
+
+
+    private String[] toNames(JobExecutionState state) {
+        return scheduledJobService
+                .findJobsIn(state)
+                .stream()
+                .map(JobKey::name)
+                .toArray(String[]::new);
+    }
+
+}
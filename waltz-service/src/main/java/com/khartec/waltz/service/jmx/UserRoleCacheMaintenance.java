@@ -0,0 +1,74 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.user.UserRoleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "Statistics and maintenance functions for the user role cache")
+public class UserRoleCacheMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserRoleCacheMaintenance.class);
+
+    private final UserRoleService userRoleService;
+
+    @Autowired
+    public UserRoleCacheMaintenance(UserRoleService userRoleService) {
+        this.userRoleService = userRoleService;
+    }
+
+
+    @ManagedOperation(description = "Remove all entries from the user role cache")
+    public void invalidateAll() {
+        LOG.warn("Invalidate user role cache (via jmx)");
+        userRoleService.invalidateRoleCache();
+    }
+
+
+    @ManagedOperation(description = "Remove a single user from the user role cache, forcing their roles to be reloaded")
+    public void invalidate(String userName) {
+        LOG.warn("Invalidate user role cache for: {} (via jmx)", userName);
+        userRoleService.invalidateRoleCache(userName);
+    }
+
+
+    @ManagedAttribute
+    public int getSize() {
+        return userRoleService.getRoleCacheSize();
+    }
+
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return userRoleService.getRoleCacheHitCount();
+    }
+
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return userRoleService.getRoleCacheMissCount();
+    }
+
+}
@@ -0,0 +1,540 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowStatistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+
+
+/**
+ * Compact, in-memory, directed graph of logical flows.
+ *
+ * Nodes (flow sources and targets) are assigned a dense integer index, edges
+ * (flows) are held in parallel primitive arrays and each node keeps arrays of
+ * the indexes of its inbound and outbound edges.  Each edge is labelled with
+ * the (sorted) ids of the data types it carries, allowing traversals to be
+ * restricted to a set of data types.
+ *
+ * The graph may be updated in place as flows are added, changed or removed.
+ * Slots for removed edges are reused, nodes are never removed (a node whose
+ * flows have all been removed simply has no edges) until the graph is rebuilt.
+ * Reads and updates are guarded by a read/write lock.
+ */
+public class LogicalFlowGraph {
+
+    public enum Direction {
+        UPSTREAM,
+        DOWNSTREAM,
+        BOTH
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long[] NO_DATA_TYPES = new long[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // -- nodes
+    private final Map<EntityReference, Integer> nodeIndexByRef = new HashMap<>();
+    private EntityReference[] nodes = new EntityReference[INITIAL_CAPACITY];
+    private int[][] outEdges = new int[INITIAL_CAPACITY][];
+    private int[] outCounts = new int[INITIAL_CAPACITY];
+    private int[][] inEdges = new int[INITIAL_CAPACITY][];
+    private int[] inCounts = new int[INITIAL_CAPACITY];
+    private int nodeCount = 0;
+
+    // -- edges
+    private final Map<Long, Integer> edgeIndexByFlowId = new HashMap<>();
+    private long[] edgeFlowIds = new long[INITIAL_CAPACITY];
+    private int[] edgeSources = new int[INITIAL_CAPACITY];
+    private int[] edgeTargets = new int[INITIAL_CAPACITY];
+    private long[][] edgeDataTypes = new long[INITIAL_CAPACITY][];
+    private int edgeSlots = 0;
+    private int[] freeEdgeSlots = new int[INITIAL_CAPACITY];
+    private int freeEdgeSlotCount = 0;
+
+    // incremented on every update, allows callers to tell if derived results are stale
+    private volatile long version = 0;
+
+
+    public LogicalFlowGraph(Collection<LogicalFlowGraphEdge> edges) {
+        checkNotNull(edges, "edges cannot be null");
+        edges.forEach(this::upsert);
+    }
+
+
+    /**
+     * Brings the given flows up to date.
+     *
+     * @param flowIds  ids of the flows which have changed, any of these not in
+     *                 <code>activeEdges</code> are removed from the graph
+     * @param activeEdges  current state of those flows which are still active
+     * @return the previous state of those of the given flows which were in the graph,
+     *         allowing callers to maintain results derived from the graph
+     */
+    public List<LogicalFlowGraphEdge> update(Collection<Long> flowIds,
+                                             Collection<LogicalFlowGraphEdge> activeEdges) {
+        checkNotNull(flowIds, "flowIds cannot be null");
+        checkNotNull(activeEdges, "activeEdges cannot be null");
+
+        lock.writeLock().lock();
+        try {
+            Set<Long> changedIds = new HashSet<>(flowIds);
+            activeEdges.forEach(e -> changedIds.add(e.flowId()));
+
+            List<LogicalFlowGraphEdge> previous = new ArrayList<>();
+            changedIds.forEach(id -> {
+                Integer idx = edgeIndexByFlowId.get(id);
+                if (idx != null) {
+                    previous.add(toEdge(idx));
+                }
+            });
+
+            Set<Long> activeIds = new HashSet<>();
+            activeEdges.forEach(e -> activeIds.add(e.flowId()));
+
+            flowIds.stream()
+                    .filter(id -> ! activeIds.contains(id))
+                    .forEach(this::remove);
+
+            activeEdges.forEach(this::upsert);
+            version++;
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    public long version() {
+        return version;
+    }
+
+
+    public int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    public int edgeCount() {
+        lock.readLock().lock();
+        try {
+            return edgeIndexByFlowId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Breadth first traversal from the starting node, collecting every edge
+     * followed.
+     *
+     * @param start  node to start from, if not in the graph an empty list is returned
+     * @param direction  whether to follow inbound edges (upstream), outbound edges (downstream) or both
+     * @param maxHops  maximum distance from the start node, use <code>Integer.MAX_VALUE</code> for the full closure
+     * @param dataTypeIds  if not empty, only edges carrying at least one of these data types are followed
+     * @return the edges followed, in breadth first order
+     */
+    public List<LogicalFlowGraphEdge> traverse(EntityReference start,
+                                               Direction direction,
+                                               int maxHops,
+                                               Set<Long> dataTypeIds) {
+        checkNotNull(start, "start cannot be null");
+        checkNotNull(direction, "direction cannot be null");
+        checkTrue(maxHops >= 0, "maxHops cannot be negative");
+
+        long[] dataTypeFilter = toSortedArray(dataTypeIds);
+        boolean upstream = direction != Direction.DOWNSTREAM;
+        boolean downstream = direction != Direction.UPSTREAM;
+
+        lock.readLock().lock();
+        try {
+            Integer startIdx = nodeIndexByRef.get(normalise(start));
+            if (startIdx == null) {
+                return Collections.emptyList();
+            }
+
+            int[] depths = new int[nodeCount];
+            Arrays.fill(depths, -1);
+            int[] queue = new int[nodeCount];
+            int head = 0;
+            int tail = 0;
+
+            BitSet seenEdges = new BitSet(edgeSlots);
+            List<LogicalFlowGraphEdge> result = new ArrayList<>();
+
+            depths[startIdx] = 0;
+            queue[tail++] = startIdx;
+
+            while (head < tail) {
+                int node = queue[head++];
+                int depth = depths[node];
+                if (depth >= maxHops) {
+                    continue;
+                }
+
+                if (upstream) {
+                    for (int i = 0; i < inCounts[node]; i++) {
+                        int edge = inEdges[node][i];
+                        if (seenEdges.get(edge) || ! carries(edge, dataTypeFilter)) {
+                            continue;
+                        }
+                        seenEdges.set(edge);
+                        result.add(toEdge(edge));
+                        tail = enqueue(edgeSources[edge], depth + 1, depths, queue, tail);
+                    }
+                }
+
+                if (downstream) {
+                    for (int i = 0; i < outCounts[node]; i++) {
+                        int edge = outEdges[node][i];
+                        if (seenEdges.get(edge) || ! carries(edge, dataTypeFilter)) {
+                            continue;
+                        }
+                        seenEdges.set(edge);
+                        result.add(toEdge(edge));
+                        tail = enqueue(edgeTargets[edge], depth + 1, depths, queue, tail);
+                    }
+                }
+            }
+
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds a path, with the fewest hops, following flows downstream from
+     * <code>from</code> to <code>to</code>.
+     *
+     * @param dataTypeIds  if not empty, only edges carrying at least one of these data types are followed
+     * @return the edges making up the path, in order, or an empty list if there is no such path
+     */
+    public List<LogicalFlowGraphEdge> findShortestPath(EntityReference from,
+                                                       EntityReference to,
+                                                       Set<Long> dataTypeIds) {
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        long[] dataTypeFilter = toSortedArray(dataTypeIds);
+
+        lock.readLock().lock();
+        try {
+            Integer fromIdx = nodeIndexByRef.get(normalise(from));
+            Integer toIdx = nodeIndexByRef.get(normalise(to));
+            if (fromIdx == null || toIdx == null || fromIdx.equals(toIdx)) {
+                return Collections.emptyList();
+            }
+
+            // edge used to reach each node, -1 if not yet reached
+            int[] via = new int[nodeCount];
+            Arrays.fill(via, -1);
+            int[] queue = new int[nodeCount];
+            int head = 0;
+            int tail = 0;
+
+            queue[tail++] = fromIdx;
+
+            while (head < tail && via[toIdx] == -1) {
+                int node = queue[head++];
+                for (int i = 0; i < outCounts[node]; i++) {
+                    int edge = outEdges[node][i];
+                    int target = edgeTargets[edge];
+                    if (target == fromIdx || via[target] != -1 || ! carries(edge, dataTypeFilter)) {
+                        continue;
+                    }
+                    via[target] = edge;
+                    queue[tail++] = target;
+                }
+            }
+
+            if (via[toIdx] == -1) {
+                return Collections.emptyList();
+            }
+
+            LinkedList<LogicalFlowGraphEdge> path = new LinkedList<>();
+            for (int node = toIdx; node != fromIdx; node = edgeSources[via[node]]) {
+                path.addFirst(toEdge(via[node]));
+            }
+            return path;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Calculates flow statistics for a set of applications, equivalent to the
+     * (app to app) statistics computed by <code>LogicalFlowStatsDao</code>.
+     * Only the flows touching the given applications are visited.
+     *
+     * @param appIds  sorted, distinct, application ids
+     * @return  data type tallies, distinct app counts and flow counts by
+     *          direction (inbound, outbound and intra) relative to the given apps
+     */
+    public LogicalFlowStatistics calculateStatistics(long[] appIds) {
+        return rollUp(appIds).toStatistics();
+    }
+
+
+    /**
+     * As {@link #calculateStatistics(long[])} but returns the rollup, which
+     * may then be maintained as flows change.
+     */
+    LogicalFlowStatisticsRollup rollUp(long[] appIds) {
+        checkNotNull(appIds, "appIds cannot be null");
+
+        LogicalFlowStatisticsRollup rollup = new LogicalFlowStatisticsRollup(appIds);
+
+        lock.readLock().lock();
+        try {
+            for (long appId : appIds) {
+                Integer node = nodeIndexByRef.get(mkRef(EntityKind.APPLICATION, appId));
+                if (node == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < outCounts[node]; i++) {
+                    int edge = outEdges[node][i];
+                    rollup.add(nodes[edgeSources[edge]], nodes[edgeTargets[edge]], edgeDataTypes[edge]);
+                }
+
+                for (int i = 0; i < inCounts[node]; i++) {
+                    int edge = inEdges[node][i];
+                    EntityReference source = nodes[edgeSources[edge]];
+                    // flows from within the set have already been counted from their source
+                    if (source.kind() == EntityKind.APPLICATION && Arrays.binarySearch(appIds, source.id()) >= 0) {
+                        continue;
+                    }
+                    rollup.add(source, nodes[edgeTargets[edge]], edgeDataTypes[edge]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return rollup;
+    }
+
+
+    // -- HELPERS ---
+
+    private static EntityReference normalise(EntityReference ref) {
+        return mkRef(ref.kind(), ref.id());
+    }
+
+
+    private static long[] toSortedArray(Collection<Long> values) {
+        if (values == null || values.isEmpty()) {
+            return NO_DATA_TYPES;
+        }
+        long[] arr = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(arr);
+        return arr;
+    }
+
+
+    private static int enqueue(int node, int depth, int[] depths, int[] queue, int tail) {
+        if (depths[node] == -1) {
+            depths[node] = depth;
+            queue[tail++] = node;
+        }
+        return tail;
+    }
+
+
+    /**
+     * Merge based intersection test of the (sorted) data types of the edge
+     * against the (sorted) filter.  An empty filter matches every edge.
+     */
+    private boolean carries(int edge, long[] dataTypeFilter) {
+        if (dataTypeFilter.length == 0) {
+            return true;
+        }
+        long[] dataTypes = edgeDataTypes[edge];
+        int i = 0;
+        int j = 0;
+        while (i < dataTypes.length && j < dataTypeFilter.length) {
+            if (dataTypes[i] == dataTypeFilter[j]) {
+                return true;
+            } else if (dataTypes[i] < dataTypeFilter[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+
+    private LogicalFlowGraphEdge toEdge(int edge) {
+        long[] dataTypes = edgeDataTypes[edge];
+        List<Long> dataTypeIds = new ArrayList<>(dataTypes.length);
+        for (long dataType : dataTypes) {
+            dataTypeIds.add(dataType);
+        }
+
+        return ImmutableLogicalFlowGraphEdge.builder()
+                .flowId(edgeFlowIds[edge])
+                .source(nodes[edgeSources[edge]])
+                .target(nodes[edgeTargets[edge]])
+                .dataTypeIds(dataTypeIds)
+                .build();
+    }
+
+
+    private void upsert(LogicalFlowGraphEdge edge) {
+        int source = nodeIndex(edge.source());
+        int target = nodeIndex(edge.target());
+        long[] dataTypes = toSortedArray(edge.dataTypeIds());
+
+        Integer existing = edgeIndexByFlowId.get(edge.flowId());
+        if (existing != null) {
+            if (edgeSources[existing] == source && edgeTargets[existing] == target) {
+                edgeDataTypes[existing] = dataTypes;
+                return;
+            }
+            remove(edge.flowId());
+        }
+
+        int idx = allocateEdgeSlot();
+        edgeFlowIds[idx] = edge.flowId();
+        edgeSources[idx] = source;
+        edgeTargets[idx] = target;
+        edgeDataTypes[idx] = dataTypes;
+        edgeIndexByFlowId.put(edge.flowId(), idx);
+
+        outEdges[source] = append(outEdges[source], outCounts[source]++, idx);
+        inEdges[target] = append(inEdges[target], inCounts[target]++, idx);
+    }
+
+
+    private void remove(long flowId) {
+        Integer idx = edgeIndexByFlowId.remove(flowId);
+        if (idx == null) {
+            return;
+        }
+
+        int source = edgeSources[idx];
+        int target = edgeTargets[idx];
+        outCounts[source] = removeFrom(outEdges[source], outCounts[source], idx);
+        inCounts[target] = removeFrom(inEdges[target], inCounts[target], idx);
+        edgeDataTypes[idx] = NO_DATA_TYPES;
+
+        if (freeEdgeSlotCount == freeEdgeSlots.length) {
+            freeEdgeSlots = Arrays.copyOf(freeEdgeSlots, freeEdgeSlots.length * 2);
+        }
+        freeEdgeSlots[freeEdgeSlotCount++] = idx;
+    }
+
+
+    private int nodeIndex(EntityReference ref) {
+        EntityReference key = normalise(ref);
+        Integer existing = nodeIndexByRef.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (nodeCount == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            outEdges = Arrays.copyOf(outEdges, capacity);
+            outCounts = Arrays.copyOf(outCounts, capacity);
+            inEdges = Arrays.copyOf(inEdges, capacity);
+            inCounts = Arrays.copyOf(inCounts, capacity);
+        }
+
+        int idx = nodeCount++;
+        nodes[idx] = key;
+        nodeIndexByRef.put(key, idx);
+        return idx;
+    }
+
+
+    private int allocateEdgeSlot() {
+        if (freeEdgeSlotCount > 0) {
+            return freeEdgeSlots[--freeEdgeSlotCount];
+        }
+
+        if (edgeSlots == edgeFlowIds.length) {
+            int capacity = edgeFlowIds.length * 2;
+            edgeFlowIds = Arrays.copyOf(edgeFlowIds, capacity);
+            edgeSources = Arrays.copyOf(edgeSources, capacity);
+            edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+            edgeDataTypes = Arrays.copyOf(edgeDataTypes, capacity);
+        }
+        return edgeSlots++;
+    }
+
+
+    private static int[] append(int[] arr, int count, int value) {
+        if (arr == null) {
+            arr = new int[2];
+        } else if (count == arr.length) {
+            arr = Arrays.copyOf(arr, count * 2);
+        }
+        arr[count] = value;
+        return arr;
+    }
+
+
+    /**
+     * Removes the value by swapping in the last element.
+     * @return the new count
+     */
+    private static int removeFrom(int[] arr, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (arr[i] == value) {
+                arr[i] = arr[count - 1];
+                return count - 1;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,436 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.data.logical_flow.LogicalFlowGraphDao;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.IdSelectionOptions;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphStatistics;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphStatistics;
+import com.khartec.waltz.model.logical_flow.LogicalFlowStatistics;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.Direction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.CollectionUtilities.isEmpty;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+
+
+/**
+ * Answers lineage questions (upstream/downstream closure, neighbourhoods and
+ * shortest paths) from a resident {@link LogicalFlowGraph}.
+ *
+ * The graph is loaded in the background on startup and then fully rebuilt
+ * periodically.  Until the first load completes {@link #isReady()} returns
+ * false, lineage questions are answered by loading the relevant part of the
+ * graph a hop at a time, and callers should calculate flow statistics
+ * against the database.  Between rebuilds {@link LogicalFlowService}, the
+ * data type decorator service and the flow maintenance jobs notify this
+ * service of flows they have changed via {@link #refreshFlows(Collection)}
+ * (or request a rebuild).  Changes made by other routes (e.g. bulk loaders
+ * writing directly to the database) are picked up by the next rebuild.
+ *
+ * Flow statistics for hierarchy nodes (org units, measurables) are also
+ * rolled up from the graph.  Each node's rollup is kept and updated in place
+ * from the flows changed by {@link #refreshFlows(Collection)}, it is only
+ * recalculated if the node's set of applications changes or the graph is
+ * rebuilt.
+ */
+@Service
+public class LogicalFlowGraphService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogicalFlowGraphService.class);
+    private static final int STATISTICS_ROLLUP_CACHE_SIZE = 500;
+    private static final int MAX_REFRESH_ATTEMPTS = 3;
+
+    private final LogicalFlowGraphDao logicalFlowGraphDao;
+    private final boolean enabled;
+
+    // guards graph updates, the statistics rollups and the pending flow ids collected whilst rebuilding
+    private final Object updateLock = new Object();
+    private final Set<Long> pendingFlowIds = new HashSet<>();
+    private boolean rebuilding = false;
+
+    // least recently used rollups are discarded once the cache is full
+    private final Map<IdSelectionOptions, LogicalFlowStatisticsRollup> statisticsRollups =
+            new LinkedHashMap<IdSelectionOptions, LogicalFlowStatisticsRollup>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<IdSelectionOptions, LogicalFlowStatisticsRollup> eldest) {
+                    return size() > STATISTICS_ROLLUP_CACHE_SIZE;
+                }
+            };
+
+    private final AtomicLong statisticsRollupHitCount = new AtomicLong();
+    private final AtomicLong statisticsRollupMissCount = new AtomicLong();
+
+    private volatile LogicalFlowGraph graph = null;
+    private volatile LocalDateTime lastRebuiltAt = null;
+    private volatile long lastRebuildDurationMillis = 0;
+
+
+    @Autowired
+    public LogicalFlowGraphService(LogicalFlowGraphDao logicalFlowGraphDao,
+                                   @Value("${waltz.flow.graph.enabled:true}") boolean enabled) {
+        checkNotNull(logicalFlowGraphDao, "logicalFlowGraphDao cannot be null");
+        this.logicalFlowGraphDao = logicalFlowGraphDao;
+        this.enabled = enabled;
+    }
+
+
+    public List<LogicalFlowGraphEdge> findUpstream(EntityReference ref,
+                                                   Optional<Integer> maxHops,
+                                                   Set<Long> dataTypeIds) {
+        return traverse(ref, Direction.UPSTREAM, maxHops.orElse(Integer.MAX_VALUE), dataTypeIds);
+    }
+
+
+    public List<LogicalFlowGraphEdge> findDownstream(EntityReference ref,
+                                                     Optional<Integer> maxHops,
+                                                     Set<Long> dataTypeIds) {
+        return traverse(ref, Direction.DOWNSTREAM, maxHops.orElse(Integer.MAX_VALUE), dataTypeIds);
+    }
+
+
+    public List<LogicalFlowGraphEdge> findNeighbourhood(EntityReference ref,
+                                                        int hops,
+                                                        Set<Long> dataTypeIds) {
+        return traverse(ref, Direction.BOTH, hops, dataTypeIds);
+    }
+
+
+    public List<LogicalFlowGraphEdge> findShortestPath(EntityReference from,
+                                                       EntityReference to,
+                                                       Set<Long> dataTypeIds) {
+        LogicalFlowGraph current = graph;
+        return current == null
+                ? loadPartialGraph(from, Direction.DOWNSTREAM, Integer.MAX_VALUE, dataTypeIds, Optional.of(to))
+                    .findShortestPath(from, to, dataTypeIds)
+                : current.findShortestPath(from, to, dataTypeIds);
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * @return true once the graph has been loaded, until then flow
+     *   statistics should be calculated against the database
+     */
+    public boolean isReady() {
+        return enabled && graph != null;
+    }
+
+
+    /**
+     * Flow statistics for the given applications, calculated from the graph.
+     * The rollup is kept per selection options and maintained as flows
+     * change, it is recalculated if the options resolve to a different set
+     * of applications.
+     *
+     * @param options  identifies the rollup (e.g. an org unit and its children)
+     * @param appIds  the sorted application ids the options currently resolve to
+     */
+    public LogicalFlowStatistics calculateStatistics(IdSelectionOptions options, long[] appIds) {
+        checkNotNull(options, "options cannot be null");
+        checkNotNull(appIds, "appIds cannot be null");
+        checkTrue(isReady(), "Logical flow graph is not ready");
+
+        LogicalFlowGraph current;
+        long version;
+        synchronized (updateLock) {
+            LogicalFlowStatisticsRollup existing = statisticsRollups.get(options);
+            if (existing != null && existing.isFor(appIds)) {
+                statisticsRollupHitCount.incrementAndGet();
+                return existing.toStatistics();
+            }
+            current = graph;
+            version = current.version();
+        }
+
+        statisticsRollupMissCount.incrementAndGet();
+        LogicalFlowStatisticsRollup rollup = current.rollUp(appIds);
+
+        synchronized (updateLock) {
+            // if flows changed whilst rolling up the rollup may not reflect them, use it once but don't keep it
+            if (graph == current && current.version() == version) {
+                statisticsRollups.put(options, rollup);
+            }
+            return rollup.toStatistics();
+        }
+    }
+
+
+    public LogicalFlowGraphStatistics getStatistics() {
+        LogicalFlowGraph current = graph;
+        return ImmutableLogicalFlowGraphStatistics.builder()
+                .loaded(current != null)
+                .nodeCount(current == null ? 0 : current.nodeCount())
+                .edgeCount(current == null ? 0 : current.edgeCount())
+                .lastRebuiltAt(Optional.ofNullable(lastRebuiltAt))
+                .lastRebuildDurationMillis(lastRebuildDurationMillis)
+                .build();
+    }
+
+
+    public long getStatisticsRollupHitCount() {
+        return statisticsRollupHitCount.get();
+    }
+
+
+    public long getStatisticsRollupMissCount() {
+        return statisticsRollupMissCount.get();
+    }
+
+
+    /**
+     * Reloads the given flows and applies them to the graph and to the kept
+     * statistics rollups.  Flows which are no longer active are removed.
+     * Does nothing if the graph has not yet been loaded.  Failures are
+     * logged rather than propagated, the graph will be corrected by the next
+     * rebuild.
+     *
+     * The flows are loaded without holding the update lock, so rollups can
+     * still be read (and other flows refreshed) whilst the query runs.  If
+     * the graph changes in the meantime the loaded flows may be stale, so
+     * they are loaded again.
+     */
+    public void refreshFlows(Collection<Long> flowIds) {
+        if (isEmpty(flowIds)) {
+            return;
+        }
+
+        try {
+            for (int attempt = 1; ; attempt++) {
+                LogicalFlowGraph current;
+                long version;
+                synchronized (updateLock) {
+                    if (rebuilding) {
+                        pendingFlowIds.addAll(flowIds);
+                    }
+                    current = graph;
+                    if (current == null) {
+                        return;
+                    }
+                    version = current.version();
+                }
+
+                List<LogicalFlowGraphEdge> activeEdges = logicalFlowGraphDao.findActiveByFlowIds(flowIds);
+
+                synchronized (updateLock) {
+                    if (graph == current && current.version() == version) {
+                        applyChanges(current, flowIds, activeEdges);
+                        return;
+                    }
+                    if (attempt == MAX_REFRESH_ATTEMPTS) {
+                        // persistently racing with other changes, load and apply whilst holding the lock
+                        applyChanges(graph, flowIds, logicalFlowGraphDao.findActiveByFlowIds(flowIds));
+                        return;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to refresh flow graph for flows: {}, will be corrected on next rebuild", flowIds, e);
+            // rollups may have been partially updated
+            synchronized (updateLock) {
+                statisticsRollups.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Loads the graph on startup (on the scheduler thread, so requests are
+     * not held up) and then periodically rebuilds it.
+     */
+    @Scheduled(
+            initialDelay = 0,
+            fixedDelayString = "${waltz.flow.graph.rebuild.millis:3600000}")
+    public void scheduledRebuild() {
+        if (! enabled) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to rebuild logical flow graph, will retry on next scheduled rebuild", e);
+        }
+    }
+
+
+    /**
+     * Rebuilds the graph, unless it has not been loaded yet (in which case
+     * the startup load will pick up all changes).  Used by jobs which change
+     * flows in bulk.
+     */
+    public void rebuildIfReady() {
+        if (isReady()) {
+            rebuild();
+        }
+    }
+
+
+    public synchronized LogicalFlowGraphStatistics rebuild() {
+        checkTrue(enabled, "Logical flow graph is disabled");
+
+        long start = System.currentTimeMillis();
+
+        synchronized (updateLock) {
+            rebuilding = true;
+            pendingFlowIds.clear();
+        }
+
+        try {
+            LogicalFlowGraph rebuilt = new LogicalFlowGraph(logicalFlowGraphDao.findAllActive());
+
+            synchronized (updateLock) {
+                // flows changed whilst loading may not be reflected in the rebuilt graph
+                if (! pendingFlowIds.isEmpty()) {
+                    Set<Long> flowIds = new HashSet<>(pendingFlowIds);
+                    applyChanges(rebuilt, flowIds, logicalFlowGraphDao.findActiveByFlowIds(flowIds));
+                }
+                graph = rebuilt;
+                // rollups are recalculated against the rebuilt graph as they are next requested
+                statisticsRollups.clear();
+            }
+        } finally {
+            synchronized (updateLock) {
+                rebuilding = false;
+                pendingFlowIds.clear();
+            }
+        }
+
+        lastRebuiltAt = nowUtc();
+        lastRebuildDurationMillis = System.currentTimeMillis() - start;
+
+        LogicalFlowGraphStatistics stats = getStatistics();
+        LOG.info(
+                "Rebuilt logical flow graph ({} nodes, {} edges) in {}ms",
+                stats.nodeCount(),
+                stats.edgeCount(),
+                lastRebuildDurationMillis);
+        return stats;
+    }
+
+
+    // -- HELPERS ---
+
+    private List<LogicalFlowGraphEdge> traverse(EntityReference ref,
+                                                Direction direction,
+                                                int maxHops,
+                                                Set<Long> dataTypeIds) {
+        LogicalFlowGraph current = graph;
+        LogicalFlowGraph target = current == null
+                ? loadPartialGraph(ref, direction, maxHops, dataTypeIds, Optional.empty())
+                : current;
+        return target.traverse(ref, direction, maxHops, dataTypeIds);
+    }
+
+
+    /**
+     * Used until the full graph has been loaded, queries the flows around the
+     * start node a hop at a time (following only flows carrying the given data
+     * types) to build just the part of the graph needed for the traversal.
+     *
+     * @param stopAt  if given, loading stops once this node has been reached
+     */
+    private LogicalFlowGraph loadPartialGraph(EntityReference start,
+                                              Direction direction,
+                                              int maxHops,
+                                              Set<Long> dataTypeIds,
+                                              Optional<EntityReference> stopAt) {
+        boolean inbound = direction != Direction.DOWNSTREAM;
+        boolean outbound = direction != Direction.UPSTREAM;
+
+        Map<Long, LogicalFlowGraphEdge> edges = new HashMap<>();
+        Set<EntityReference> seen = new HashSet<>();
+        Set<EntityReference> frontier = Collections.singleton(normalise(start));
+        seen.addAll(frontier);
+
+        for (int hop = 0; hop < maxHops && ! frontier.isEmpty(); hop++) {
+            Set<EntityReference> next = new HashSet<>();
+            for (LogicalFlowGraphEdge edge : logicalFlowGraphDao.findActiveByEndpoints(frontier, inbound, outbound)) {
+                if (! isEmpty(dataTypeIds) && Collections.disjoint(dataTypeIds, edge.dataTypeIds())) {
+                    continue;
+                }
+                edges.put(edge.flowId(), edge);
+                addIfUnseen(next, seen, edge.source());
+                addIfUnseen(next, seen, edge.target());
+            }
+            if (stopAt.isPresent() && seen.contains(normalise(stopAt.get()))) {
+                break;
+            }
+            frontier = next;
+        }
+
+        return new LogicalFlowGraph(edges.values());
+    }
+
+
+    private static void addIfUnseen(Set<EntityReference> next, Set<EntityReference> seen, EntityReference ref) {
+        EntityReference normalised = normalise(ref);
+        if (seen.add(normalised)) {
+            next.add(normalised);
+        }
+    }
+
+
+    private static EntityReference normalise(EntityReference ref) {
+        return EntityReference.mkRef(ref.kind(), ref.id());
+    }
+
+
+    /**
+     * Must be called whilst holding the update lock.
+     */
+    private void applyChanges(LogicalFlowGraph target,
+                              Collection<Long> flowIds,
+                              List<LogicalFlowGraphEdge> activeEdges) {
+        List<LogicalFlowGraphEdge> previousEdges = target.update(flowIds, activeEdges);
+
+        if (target == graph) {
+            statisticsRollups.values().forEach(rollup -> {
+                previousEdges.forEach(rollup::remove);
+                activeEdges.forEach(rollup::add);
+            });
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ package com.khartec.waltz.service.logical_flow;
 import com.khartec.waltz.common.FunctionUtilities;
 import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.data_type.DataTypeIdSelectorFactory;
 import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
@@ -34,12 +35,12 @@ import com.khartec.waltz.model.datatype.ImmutableDataTypeDecorator;
 import com.khartec.waltz.model.logical_flow.*;
 import com.khartec.waltz.model.rating.AuthoritativenessRating;
 import com.khartec.waltz.model.tally.TallyPack;
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import com.khartec.waltz.service.data_type.DataTypeService;
 import com.khartec.waltz.service.usage_info.DataTypeUsageService;
 import org.jooq.Record1;
 import org.jooq.Select;
-import org.jooq.lambda.Unchecked;
 import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -49,7 +50,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -69,6 +70,7 @@ import static org.jooq.lambda.tuple.Tuple.tuple;
 @Service
 public class LogicalFlowService {
 
+    private final ApplicationIdSelectorCacheService applicationIdSelectorCacheService;
     private final ChangeLogService changeLogService;
     private final DataTypeService dataTypeService;
     private final DataTypeUsageService dataTypeUsageService;
@@ -76,6 +78,7 @@ public class LogicalFlowService {
     private final LogicalFlowDao logicalFlowDao;
     private final LogicalFlowStatsDao logicalFlowStatsDao;
     private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
+    private final LogicalFlowGraphService logicalFlowGraphService;
 
     private final ApplicationIdSelectorFactory appIdSelectorFactory = new ApplicationIdSelectorFactory();
     private final LogicalFlowIdSelectorFactory logicalFlowIdSelectorFactory = new LogicalFlowIdSelectorFactory();
@@ -83,13 +86,16 @@ public class LogicalFlowService {
 
 
     @Autowired
-    public LogicalFlowService(ChangeLogService changeLogService,
+    public LogicalFlowService(ApplicationIdSelectorCacheService applicationIdSelectorCacheService,
+                              ChangeLogService changeLogService,
                               DataTypeService dataTypeService,
                               DataTypeUsageService dataTypeUsageService,
                               DBExecutorPoolInterface dbExecutorPool,
                               LogicalFlowDao logicalFlowDao,
                               LogicalFlowStatsDao logicalFlowStatsDao,
-                              LogicalFlowDecoratorDao logicalFlowDecoratorDao) {
+                              LogicalFlowDecoratorDao logicalFlowDecoratorDao,
+                              LogicalFlowGraphService logicalFlowGraphService) {
+        checkNotNull(applicationIdSelectorCacheService, "applicationIdSelectorCacheService cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
         checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
         checkNotNull(dataTypeService, "dataTypeService cannot be null");
@@ -97,7 +103,9 @@ public class LogicalFlowService {
         checkNotNull(logicalFlowDao, "logicalFlowDao must not be null");
         checkNotNull(logicalFlowDecoratorDao, "logicalFlowDataTypeDecoratorDao cannot be null");
         checkNotNull(logicalFlowStatsDao, "logicalFlowStatsDao cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
 
+        this.applicationIdSelectorCacheService = applicationIdSelectorCacheService;
         this.changeLogService = changeLogService;
         this.dataTypeService = dataTypeService;
         this.dataTypeUsageService = dataTypeUsageService;
@@ -105,6 +113,7 @@ public class LogicalFlowService {
         this.logicalFlowDao = logicalFlowDao;
         this.logicalFlowStatsDao = logicalFlowStatsDao;
         this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
+        this.logicalFlowGraphService = logicalFlowGraphService;
     }
 
 
@@ -148,6 +157,15 @@ public class LogicalFlowService {
     }
 
 
+    /**
+     * Lazy version of {@link #findBySelector(IdSelectionOptions)}, the
+     * stream is only valid whilst the consumer runs
+     */
+    public void streamBySelector(IdSelectionOptions options, Consumer<Stream<LogicalFlow>> consumer) {
+        logicalFlowDao.streamBySelector(logicalFlowIdSelectorFactory.apply(options), consumer);
+    }
+
+
     /**
      * Creates a logical flow and creates a default, 'UNKNOWN' data type decoration
      * if possible.
@@ -173,6 +191,7 @@ public class LogicalFlowService {
 
         LogicalFlow logicalFlow = logicalFlowDao.addFlow(flowToAdd);
         attemptToAddUnknownDecoration(logicalFlow, username);
+        logicalFlow.id().ifPresent(id -> logicalFlowGraphService.refreshFlows(newArrayList(id)));
 
         changeLogService.writeChangeLogEntries(logicalFlow, username, "Added", Operation.ADD);
 
@@ -219,7 +238,14 @@ public class LogicalFlowService {
                         .build())
                 .collect(toList());
 
-        return logicalFlowDao.addFlows(flowsToAdd, username);
+        List<LogicalFlow> addedFlows = logicalFlowDao.addFlows(flowsToAdd, username);
+
+        logicalFlowGraphService.refreshFlows(addedFlows
+                .stream()
+                .map(f -> f.id().get())
+                .collect(toList()));
+
+        return addedFlows;
     }
 
 
@@ -247,10 +273,11 @@ public class LogicalFlowService {
         LogicalFlow logicalFlow = logicalFlowDao.getByFlowId(flowId);
 
         int deleted = logicalFlowDao.removeFlow(flowId, username);
+        logicalFlowGraphService.refreshFlows(newArrayList(flowId));
 
         Set<EntityReference> affectedEntityRefs = SetUtilities.fromArray(logicalFlow.source(), logicalFlow.target());
 
-        dataTypeUsageService.recalculateForApplications(affectedEntityRefs);
+        dataTypeUsageService.queueRecalculation(affectedEntityRefs);
 
         changeLogService.writeChangeLogEntries(logicalFlow, username,
                 "Removed : datatypes [" + getAssociatedDatatypeNamesAsCsv(flowId) + "]",
@@ -261,16 +288,22 @@ public class LogicalFlowService {
 
 
     /**
-     * Calculate Stats by selector
+     * Calculate Stats by selector.  Org unit and measurable stats are rolled up
+     * from the in-memory flow graph (once it has loaded), other selectors are
+     * calculated directly against the database.
+     *
      * @param options determines which flows are in-scope for this calculation
      * @return statistics about the in-scope flows
      */
     public LogicalFlowStatistics calculateStats(IdSelectionOptions options) {
         switch (options.entityReference().kind()) {
-            case APP_GROUP:
-            case CHANGE_INITIATIVE:
             case MEASURABLE:
             case ORG_UNIT:
+                return logicalFlowGraphService.isReady()
+                        ? logicalFlowGraphService.calculateStatistics(options, applicationIdSelectorCacheService.resolve(options))
+                        : calculateStatsForAppIdSelector(options);
+            case APP_GROUP:
+            case CHANGE_INITIATIVE:
             case PERSON:
             case SCENARIO:
             case DATA_TYPE:
@@ -286,31 +319,34 @@ public class LogicalFlowService {
 
         Select<Record1<Long>> appIdSelector = appIdSelectorFactory.apply(options);
 
-        Future<List<TallyPack<String>>> dataTypeCounts = dbExecutorPool.submit(() ->
+        DBFanOut fanOut = dbExecutorPool.fanOut();
+
+        Supplier<List<TallyPack<String>>> dataTypeCounts = fanOut.fork(() ->
                 FunctionUtilities.time("DFS.dataTypes",
                     () -> logicalFlowStatsDao.tallyDataTypesByAppIdSelector(appIdSelector)));
 
-        Future<LogicalFlowMeasures> appCounts = dbExecutorPool.submit(() ->
+        Supplier<LogicalFlowMeasures> appCounts = fanOut.fork(() ->
                 FunctionUtilities.time("DFS.appCounts",
                     () -> logicalFlowStatsDao.countDistinctAppInvolvementByAppIdSelector(appIdSelector)));
 
-        Future<LogicalFlowMeasures> flowCounts = dbExecutorPool.submit(() ->
+        Supplier<LogicalFlowMeasures> flowCounts = fanOut.fork(() ->
                 FunctionUtilities.time("DFS.flowCounts",
                     () -> logicalFlowStatsDao.countDistinctFlowInvolvementByAppIdSelector(appIdSelector)));
 
-        Supplier<ImmutableLogicalFlowStatistics> statSupplier = Unchecked.supplier(() -> ImmutableLogicalFlowStatistics.builder()
+        fanOut.join();
+
+        return ImmutableLogicalFlowStatistics.builder()
                 .dataTypeCounts(dataTypeCounts.get())
                 .appCounts(appCounts.get())
                 .flowCounts(flowCounts.get())
-                .build());
-
-        return statSupplier.get();
+                .build();
     }
 
 
     public boolean restoreFlow(long logicalFlowId, String username) {
         boolean result = logicalFlowDao.restoreFlow(logicalFlowId, username);
         if (result) {
+            logicalFlowGraphService.refreshFlows(newArrayList(logicalFlowId));
             changeLogService.writeChangeLogEntries(mkRef(LOGICAL_DATA_FLOW, logicalFlowId), username, "Restored", Operation.ADD);
         }
         return result;
@@ -0,0 +1,209 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowMeasures;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowStatistics;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowStatistics;
+import com.khartec.waltz.model.tally.ImmutableTally;
+import com.khartec.waltz.model.tally.ImmutableTallyPack;
+import com.khartec.waltz.model.tally.Tally;
+import com.khartec.waltz.model.tally.TallyPack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+
+
+/**
+ * Flow statistics (as computed by <code>LogicalFlowStatsDao</code>) for a
+ * fixed set of applications, maintained incrementally as flows are added
+ * and removed.  Only app to app flows with at least one end in the set
+ * contribute.
+ *
+ * Distinct inbound/outbound app counts are kept as per-app flow counts so
+ * an app drops out of the count once its last flow is removed.
+ *
+ * Not thread safe, callers must guard updates and reads.
+ */
+class LogicalFlowStatisticsRollup {
+
+    // flow types used when tallying data types, indexes into the per data type counts
+    private static final String[] FLOW_TYPES = {"INTRA", "OUTBOUND", "INBOUND"};
+    private static final int INTRA = 0;
+    private static final int OUTBOUND = 1;
+    private static final int INBOUND = 2;
+
+    private final long[] appIds;
+    private final int[] flowCounts = new int[FLOW_TYPES.length];
+    private final Map<Long, int[]> flowCountsByDataType = new HashMap<>();
+    private final Map<Long, Integer> inboundFlowCountsByApp = new HashMap<>();
+    private final Map<Long, Integer> outboundFlowCountsByApp = new HashMap<>();
+
+    // reset whenever the counts change
+    private LogicalFlowStatistics statistics = null;
+
+
+    /**
+     * @param appIds  sorted, distinct, application ids
+     */
+    LogicalFlowStatisticsRollup(long[] appIds) {
+        checkNotNull(appIds, "appIds cannot be null");
+        this.appIds = appIds;
+    }
+
+
+    long[] appIds() {
+        return appIds;
+    }
+
+
+    boolean isFor(long[] otherAppIds) {
+        return appIds == otherAppIds || Arrays.equals(appIds, otherAppIds);
+    }
+
+
+    /**
+     * @param dataTypeIds  data types carried by the flow
+     * @return true if the flow contributes to these statistics
+     */
+    boolean add(EntityReference source, EntityReference target, long[] dataTypeIds) {
+        return apply(source, target, dataTypeIds, 1);
+    }
+
+
+    boolean add(LogicalFlowGraphEdge edge) {
+        return add(edge.source(), edge.target(), toArray(edge));
+    }
+
+
+    boolean remove(LogicalFlowGraphEdge edge) {
+        return apply(edge.source(), edge.target(), toArray(edge), -1);
+    }
+
+
+    LogicalFlowStatistics toStatistics() {
+        if (statistics == null) {
+            statistics = mkStatistics();
+        }
+        return statistics;
+    }
+
+
+    // -- HELPERS ---
+
+    private boolean apply(EntityReference source,
+                          EntityReference target,
+                          long[] dataTypeIds,
+                          int delta) {
+        if (source.kind() != EntityKind.APPLICATION || target.kind() != EntityKind.APPLICATION) {
+            return false;
+        }
+
+        boolean sourceIncluded = contains(source.id());
+        boolean targetIncluded = contains(target.id());
+
+        int flowType;
+        if (sourceIncluded && targetIncluded) {
+            flowType = INTRA;
+        } else if (sourceIncluded) {
+            flowType = OUTBOUND;
+            adjust(outboundFlowCountsByApp, target.id(), delta);
+        } else if (targetIncluded) {
+            flowType = INBOUND;
+            adjust(inboundFlowCountsByApp, source.id(), delta);
+        } else {
+            return false;
+        }
+
+        flowCounts[flowType] += delta;
+        for (long dataTypeId : dataTypeIds) {
+            int[] counts = flowCountsByDataType.computeIfAbsent(dataTypeId, k -> new int[FLOW_TYPES.length]);
+            counts[flowType] += delta;
+            if (counts[INTRA] == 0 && counts[OUTBOUND] == 0 && counts[INBOUND] == 0) {
+                flowCountsByDataType.remove(dataTypeId);
+            }
+        }
+
+        statistics = null;
+        return true;
+    }
+
+
+    private boolean contains(long appId) {
+        return Arrays.binarySearch(appIds, appId) >= 0;
+    }
+
+
+    private static void adjust(Map<Long, Integer> flowCountsByApp, long appId, int delta) {
+        flowCountsByApp.merge(appId, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+
+    private static long[] toArray(LogicalFlowGraphEdge edge) {
+        return edge.dataTypeIds()
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+
+    private LogicalFlowStatistics mkStatistics() {
+        List<TallyPack<String>> dataTypeCounts = new ArrayList<>(flowCountsByDataType.size());
+        flowCountsByDataType.forEach((dataTypeId, counts) -> {
+            List<Tally<String>> tallies = new ArrayList<>(FLOW_TYPES.length);
+            for (int flowType = 0; flowType < FLOW_TYPES.length; flowType++) {
+                if (counts[flowType] > 0) {
+                    tallies.add(ImmutableTally.<String>builder()
+                            .id(FLOW_TYPES[flowType])
+                            .count(counts[flowType])
+                            .build());
+                }
+            }
+            dataTypeCounts.add(ImmutableTallyPack.<String>builder()
+                    .entityReference(mkRef(EntityKind.DATA_TYPE, dataTypeId))
+                    .tallies(tallies)
+                    .build());
+        });
+
+        return ImmutableLogicalFlowStatistics.builder()
+                .appCounts(ImmutableLogicalFlowMeasures.builder()
+                        .inbound(inboundFlowCountsByApp.size())
+                        .outbound(outboundFlowCountsByApp.size())
+                        .intra(appIds.length)
+                        .build())
+                .flowCounts(ImmutableLogicalFlowMeasures.builder()
+                        .inbound(flowCounts[INBOUND])
+                        .outbound(flowCounts[OUTBOUND])
+                        .intra(flowCounts[INTRA])
+                        .build())
+                .dataTypeCounts(dataTypeCounts)
+                .build();
+    }
+
+}
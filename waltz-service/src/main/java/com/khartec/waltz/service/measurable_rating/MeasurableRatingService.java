@@ -45,6 +45,8 @@ import org.springframework.stereotype.Service;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.*;
 import static java.lang.String.format;
@@ -247,6 +249,14 @@ public class MeasurableRatingService {
     }
 
 
+    /**
+     * Lazy version of {@link #findByCategory(long)}, the stream is only valid whilst the consumer runs
+     */
+    public void streamByCategory(long id, Consumer<Stream<MeasurableRating>> consumer) {
+        measurableRatingDao.streamByCategory(id, consumer);
+    }
+
+
     public int deleteByMeasurableIdSelector(IdSelectionOptions selectionOptions) {
         Select<Record1<Long>> selector = measurableIdSelectorFactory
                 .apply(selectionOptions);
@@ -0,0 +1,347 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.person_hierarchy;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Builds the person hierarchy using parallel arrays rather than a generic
+ * {@link com.khartec.waltz.common.hierarchy.Forest}.
+ *
+ * Employee ids are interned to ints as people are added.  Calling
+ * {@link #build()} resolves each person's manager to a parent index and then
+ * assigns depths in a single pass, each person being visited once.  Records
+ * are produced by walking parent indexes, so no per-person ancestor lists
+ * are allocated.
+ *
+ * As with the forest based approach, a manager which is blank, the person
+ * themselves or not a known person is treated as no manager, and if an
+ * employee id is added more than once the first occurrence wins.  People in,
+ * or beneath, a management cycle are excluded (they produce no records).
+ */
+public class PersonHierarchyBuilder {
+
+    private static final int NO_PARENT = -1;
+
+    private static final int UNRESOLVED = -1;
+    private static final int VISITING = -2;
+    private static final int EXCLUDED = -3;
+
+    private final Map<String, Integer> indexByEmployeeId;
+    private String[] employeeIds;
+    private String[] managerEmployeeIds;
+    private int size = 0;
+
+    private boolean built = false;
+    private int[] parents;
+    private int[] depths;
+    private int[] childOffsets;
+    private int[] children;
+
+
+    /**
+     * Receives the records of the hierarchy, one per person per ancestor
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+
+        /**
+         * @param managerId  employee id of the ancestor
+         * @param employeeId  employee id of the person
+         * @param level  depth of the ancestor, top level managers are level 1
+         */
+        void accept(String managerId, String employeeId, int level);
+    }
+
+
+    public PersonHierarchyBuilder(int expectedSize) {
+        int capacity = Integer.max(expectedSize, 16);
+        this.indexByEmployeeId = new HashMap<>(capacity * 4 / 3 + 1);
+        this.employeeIds = new String[capacity];
+        this.managerEmployeeIds = new String[capacity];
+    }
+
+
+    public PersonHierarchyBuilder add(String employeeId, String managerEmployeeId) {
+        checkTrue(! built, "Cannot add people once the hierarchy has been built");
+        checkNotNull(employeeId, "employeeId cannot be null");
+
+        if (indexByEmployeeId.putIfAbsent(employeeId, size) != null) {
+            return this;
+        }
+
+        if (size == employeeIds.length) {
+            employeeIds = Arrays.copyOf(employeeIds, size * 2);
+            managerEmployeeIds = Arrays.copyOf(managerEmployeeIds, size * 2);
+        }
+
+        employeeIds[size] = employeeId;
+        managerEmployeeIds[size] = managerEmployeeId;
+        size++;
+
+        return this;
+    }
+
+
+    public PersonHierarchyBuilder build() {
+        checkTrue(! built, "Hierarchy has already been built");
+
+        resolveParents();
+        assignDepths();
+        indexChildren();
+
+        managerEmployeeIds = null;  // no longer needed
+        built = true;
+        return this;
+    }
+
+
+    int size() {
+        return size;
+    }
+
+
+    boolean contains(String employeeId) {
+        return indexByEmployeeId.containsKey(employeeId);
+    }
+
+
+    /**
+     * @return number of people excluded because they are in, or beneath, a management cycle
+     */
+    public int excludedCount() {
+        ensureBuilt();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (depths[i] == EXCLUDED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * @return number of records {@link #forEachRecord(RecordConsumer)} will produce
+     */
+    public long recordCount() {
+        ensureBuilt();
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            if (depths[i] != EXCLUDED) {
+                count += depths[i];
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * @return the effective (i.e. resolved and not excluded) manager of the person, or null
+     */
+    String getManagerEmployeeId(String employeeId) {
+        ensureBuilt();
+        Integer idx = indexByEmployeeId.get(employeeId);
+        if (idx == null || depths[idx] == EXCLUDED || parents[idx] == NO_PARENT) {
+            return null;
+        }
+        return employeeIds[parents[idx]];
+    }
+
+
+    /**
+     * @param previousManagerEmployeeIds  the direct manager of each person, as previously recorded
+     * @return people whose effective manager differs from that previously recorded
+     */
+    Set<String> findEmployeeIdsWithChangedManager(Map<String, String> previousManagerEmployeeIds) {
+        checkNotNull(previousManagerEmployeeIds, "previousManagerEmployeeIds cannot be null");
+        ensureBuilt();
+
+        Set<String> changed = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            String current = depths[i] == EXCLUDED || parents[i] == NO_PARENT
+                    ? null
+                    : employeeIds[parents[i]];
+            if (! Objects.equals(current, previousManagerEmployeeIds.get(employeeIds[i]))) {
+                changed.add(employeeIds[i]);
+            }
+        }
+        return changed;
+    }
+
+
+    /**
+     * @param employeeIds  people at the top of the subtrees, unknown people are ignored
+     * @return the given people and everybody beneath them
+     */
+    Set<String> findSubtreeEmployeeIds(Collection<String> employeeIds) {
+        checkNotNull(employeeIds, "employeeIds cannot be null");
+        ensureBuilt();
+
+        boolean[] visited = new boolean[size];
+        int[] stack = new int[size];
+        int sp = 0;
+
+        Set<String> result = new HashSet<>();
+        for (String employeeId : employeeIds) {
+            Integer idx = indexByEmployeeId.get(employeeId);
+            if (idx != null && ! visited[idx]) {
+                visited[idx] = true;
+                stack[sp++] = idx;
+            }
+        }
+
+        while (sp > 0) {
+            int node = stack[--sp];
+            result.add(this.employeeIds[node]);
+            for (int c = childOffsets[node]; c < childOffsets[node + 1]; c++) {
+                int child = children[c];
+                if (! visited[child]) {
+                    visited[child] = true;
+                    stack[sp++] = child;
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    public void forEachRecord(RecordConsumer consumer) {
+        checkNotNull(consumer, "consumer cannot be null");
+        ensureBuilt();
+
+        for (int i = 0; i < size; i++) {
+            emitRecords(i, consumer);
+        }
+    }
+
+
+    /**
+     * Emits the records for the given people only, unknown people are ignored
+     */
+    void forEachRecord(Collection<String> employeeIds, RecordConsumer consumer) {
+        checkNotNull(employeeIds, "employeeIds cannot be null");
+        checkNotNull(consumer, "consumer cannot be null");
+        ensureBuilt();
+
+        for (String employeeId : employeeIds) {
+            Integer idx = indexByEmployeeId.get(employeeId);
+            if (idx != null) {
+                emitRecords(idx, consumer);
+            }
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    private void emitRecords(int node, RecordConsumer consumer) {
+        if (depths[node] == EXCLUDED) {
+            return;
+        }
+        String employeeId = employeeIds[node];
+        for (int ancestor = parents[node]; ancestor != NO_PARENT; ancestor = parents[ancestor]) {
+            consumer.accept(employeeIds[ancestor], employeeId, depths[ancestor] + 1);
+        }
+    }
+
+
+    private void resolveParents() {
+        parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            Integer parent = managerEmployeeIds[i] == null
+                    ? null
+                    : indexByEmployeeId.get(managerEmployeeIds[i]);
+            parents[i] = parent == null || parent == i
+                    ? NO_PARENT
+                    : parent;
+        }
+    }
+
+
+    /**
+     * Walks up from each unresolved person until reaching a root or a person
+     * whose depth is known, then unwinds the path assigning depths.  Meeting
+     * a person already on the current path indicates a cycle.
+     */
+    private void assignDepths() {
+        depths = new int[size];
+        Arrays.fill(depths, UNRESOLVED);
+
+        int[] path = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            int length = 0;
+            int node = i;
+            while (node != NO_PARENT && depths[node] == UNRESOLVED) {
+                depths[node] = VISITING;
+                path[length++] = node;
+                node = parents[node];
+            }
+
+            int depth = node == NO_PARENT
+                    ? -1
+                    : depths[node];
+            boolean excluded = depth == VISITING || depth == EXCLUDED;
+
+            while (length > 0) {
+                int current = path[--length];
+                depths[current] = excluded
+                        ? EXCLUDED
+                        : ++depth;
+            }
+        }
+    }
+
+
+    /**
+     * Children are held in a single array, grouped by parent, with
+     * <code>childOffsets</code> marking where each parent's group starts.
+     */
+    private void indexChildren() {
+        childOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_PARENT) {
+                childOffsets[parents[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+
+        children = new int[childOffsets[size]];
+        int[] next = Arrays.copyOf(childOffsets, size);
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_PARENT) {
+                children[next[parents[i]]++] = i;
+            }
+        }
+    }
+
+
+    private void ensureBuilt() {
+        checkTrue(built, "Hierarchy has not been built");
+    }
+
+}
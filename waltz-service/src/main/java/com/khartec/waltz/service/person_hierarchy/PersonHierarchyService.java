@@ -18,90 +18,118 @@
 
 package com.khartec.waltz.service.person_hierarchy;
 
-import com.khartec.waltz.common.ListUtilities;
-import com.khartec.waltz.common.hierarchy.FlatNode;
-import com.khartec.waltz.common.hierarchy.Forest;
-import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
-import com.khartec.waltz.common.hierarchy.Node;
-import com.khartec.waltz.data.person.PersonDao;
-import com.khartec.waltz.model.person.Person;
+import com.khartec.waltz.common.BatchProcessingCollector;
 import com.khartec.waltz.schema.tables.records.PersonHierarchyRecord;
-import org.jooq.DSLContext;
-import org.jooq.Record1;
-import org.jooq.SelectConditionStep;
+import org.jooq.*;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.schema.tables.Person.PERSON;
 import static com.khartec.waltz.schema.tables.PersonHierarchy.PERSON_HIERARCHY;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 @Service
 public class PersonHierarchyService {
 
     private static final Logger LOG = LoggerFactory.getLogger(PersonHierarchyService.class);
 
-    private final PersonDao personDao;
+    private static final int FETCH_SIZE = 10_000;
+
     private final DSLContext dsl;
+    private final int chunkSize;
 
 
     @Autowired
-    public PersonHierarchyService(PersonDao personDao, DSLContext dsl) {
-        this.personDao = personDao;
+    public PersonHierarchyService(DSLContext dsl,
+                                  @Value("${waltz.person_hierarchy.chunk.size:1000}") int chunkSize) {
+        checkNotNull(dsl, "dsl cannot be null");
         this.dsl = dsl;
+        this.chunkSize = Integer.max(chunkSize, 1);
     }
 
 
-    public int[] build() {
+    /**
+     * Replaces the entire person hierarchy.
+     *
+     * @return number of hierarchy records written
+     */
+    public int build() {
         LOG.warn("Building person hierarchy");
-        List<Person> all = personDao.all();
-
-        Forest<Person, String> forest = toForest(all);
-
-        List<PersonHierarchyRecord> records = toHierarchyRecords(forest);
+        PersonHierarchyBuilder builder = loadBuilder();
 
         return dsl.transactionResult(configuration -> {
             DSLContext txDsl = DSL.using(configuration);
             txDsl.deleteFrom(PERSON_HIERARCHY).execute();
-            return txDsl.batchStore(records).execute();
+
+            ChunkedInserter inserter = new ChunkedInserter(txDsl, chunkSize);
+            builder.forEachRecord(inserter);
+            return inserter.flush();
         });
     }
 
 
-    private List<PersonHierarchyRecord> toHierarchyRecords(Forest<Person, String> forest) {
-        List<PersonHierarchyRecord> records = new LinkedList<>();
+    /**
+     * Brings the person hierarchy up to date after a change to the people
+     * (e.g. a new HR feed).  Only the records of people whose manager has
+     * changed, and of everybody beneath them, are rewritten.  Changes are
+     * detected by comparing each person's manager with their direct manager
+     * in the existing hierarchy, which is the ancestor with the highest level.
+     * If there is no existing hierarchy this is equivalent to {@link #build()}.
+     *
+     * @return number of hierarchy records written
+     */
+    public int update() {
+        Map<String, String> previousManagers = loadDirectManagersFromHierarchy();
+        if (previousManagers.isEmpty()) {
+            return build();
+        }
 
-        for (Node<Person, String> node : forest.getAllNodes().values()) {
-            List<Person> ancestors =
-                    ListUtilities.reverse(
-                            HierarchyUtilities.parents(node)
-                                    .stream()
-                                    .map(Node::getData)
-                                    .collect(Collectors.toList()));
+        PersonHierarchyBuilder builder = loadBuilder();
 
-            for (int i = 0; i < ancestors.size(); i++) {
-                String ancestorId = ancestors.get(i).employeeId();
-                String selfId = node.getData().employeeId();
-                PersonHierarchyRecord record = new PersonHierarchyRecord(ancestorId, selfId, i + 1);
-                records.add(record);
-            }
-        }
-        return records;
-    }
+        Set<String> changed = builder.findEmployeeIdsWithChangedManager(previousManagers);
+        Set<String> affected = builder.findSubtreeEmployeeIds(changed);
+
+        Set<String> toDelete = new HashSet<>(affected);
+        previousManagers
+                .keySet()
+                .stream()
+                .filter(employeeId -> ! builder.contains(employeeId))
+                .forEach(toDelete::add);
+
+        LOG.info(
+                "Updating person hierarchy, {} people have a new manager, rewriting {} people and removing {} people",
+                changed.size(),
+                affected.size(),
+                toDelete.size() - affected.size());
 
+        if (toDelete.isEmpty()) {
+            return 0;
+        }
 
-    private Forest<Person, String> toForest(List<Person> all) {
-        List<FlatNode<Person, String>> allFlatNodes = all.stream()
-                .map(p -> new FlatNode<>(p.employeeId(), p.managerEmployeeId(), p))
-                .collect(toList());
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
 
-        return HierarchyUtilities.toForest(allFlatNodes);
+            toDelete.stream()
+                    .collect(new BatchProcessingCollector<>(
+                            chunkSize,
+                            chunk -> txDsl
+                                    .deleteFrom(PERSON_HIERARCHY)
+                                    .where(PERSON_HIERARCHY.EMPLOYEE_ID.in(chunk))
+                                    .execute()));
+
+            ChunkedInserter inserter = new ChunkedInserter(txDsl, chunkSize);
+            builder.forEachRecord(affected, inserter);
+            return inserter.flush();
+        });
     }
 
 
@@ -118,4 +146,104 @@ public class PersonHierarchyService {
 
         return dsl.fetchCount(rootSelector);
     }
+
+
+    // -- HELPERS ---
+
+    private PersonHierarchyBuilder loadBuilder() {
+        Condition isActive = PERSON.IS_REMOVED.eq(false);
+
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(dsl.fetchCount(PERSON, isActive));
+
+        dsl.select(PERSON.EMPLOYEE_ID, PERSON.MANAGER_EMPLOYEE_ID)
+                .from(PERSON)
+                .where(isActive)
+                .fetchSize(FETCH_SIZE)
+                .fetch()
+                .forEach(r -> builder.add(r.value1(), r.value2()));
+
+        builder.build();
+
+        int excluded = builder.excludedCount();
+        if (excluded > 0) {
+            LOG.warn("{} people are in, or beneath, a management cycle and will be excluded from the person hierarchy", excluded);
+        }
+
+        return builder;
+    }
+
+
+    private Map<String, String> loadDirectManagersFromHierarchy() {
+        Field<Integer> maxLevel = DSL.max(PERSON_HIERARCHY.LEVEL).as("max_level");
+
+        Table<Record2<String, Integer>> maxLevels = DSL
+                .select(PERSON_HIERARCHY.EMPLOYEE_ID, maxLevel)
+                .from(PERSON_HIERARCHY)
+                .groupBy(PERSON_HIERARCHY.EMPLOYEE_ID)
+                .asTable("max_levels");
+
+        return dsl
+                .select(PERSON_HIERARCHY.EMPLOYEE_ID, PERSON_HIERARCHY.MANAGER_ID)
+                .from(PERSON_HIERARCHY)
+                .innerJoin(maxLevels)
+                .on(maxLevels.field(PERSON_HIERARCHY.EMPLOYEE_ID.getName(), String.class).eq(PERSON_HIERARCHY.EMPLOYEE_ID))
+                .and(maxLevels.field(maxLevel.getName(), Integer.class).eq(PERSON_HIERARCHY.LEVEL))
+                .fetchSize(FETCH_SIZE)
+                .fetch()
+                .stream()
+                .collect(toMap(
+                        Record2::value1,
+                        Record2::value2,
+                        (m1, m2) -> m1));
+    }
+
+
+    /**
+     * Writes hierarchy records, as they are produced, using multi-row inserts
+     * of up to <code>chunkSize</code> rows.
+     */
+    private static class ChunkedInserter implements PersonHierarchyBuilder.RecordConsumer {
+
+        private final DSLContext dsl;
+        private final int chunkSize;
+
+        private InsertValuesStep3<PersonHierarchyRecord, String, String, Integer> insert;
+        private int pending = 0;
+        private int written = 0;
+
+
+        private ChunkedInserter(DSLContext dsl, int chunkSize) {
+            this.dsl = dsl;
+            this.chunkSize = chunkSize;
+        }
+
+
+        @Override
+        public void accept(String managerId, String employeeId, int level) {
+            if (insert == null) {
+                insert = dsl
+                        .insertInto(PERSON_HIERARCHY)
+                        .columns(PERSON_HIERARCHY.MANAGER_ID,
+                                PERSON_HIERARCHY.EMPLOYEE_ID,
+                                PERSON_HIERARCHY.LEVEL);
+            }
+
+            insert.values(managerId, employeeId, level);
+
+            if (++pending == chunkSize) {
+                flush();
+            }
+        }
+
+
+        private int flush() {
+            if (pending > 0) {
+                written += insert.execute();
+            }
+            insert = null;
+            pending = 0;
+            return written;
+        }
+    }
+
 }
@@ -0,0 +1,174 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.physical_flow;
+
+import com.khartec.waltz.model.command.CommandOutcome;
+import com.khartec.waltz.model.physical_flow.ImmutablePhysicalFlowUploadJob;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowUploadCommand;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowUploadCommandResponse;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowUploadJob;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowUploadStage;
+import com.khartec.waltz.model.system.job_log.JobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+
+
+/**
+ * Runs physical flow uploads in the background so that large files do not
+ * hold a request open (and time out the browser).  Callers receive a job id
+ * which can be polled to follow progress and, eventually, collect the
+ * responses.  Finished jobs are discarded after a configurable period.
+ */
+@Service
+public class PhysicalFlowUploadJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhysicalFlowUploadJobService.class);
+
+    private final PhysicalFlowUploadService physicalFlowUploadService;
+    private final ExecutorService executor;
+    private final long retentionMinutes;
+    private final Map<String, PhysicalFlowUploadJob> jobs = new ConcurrentHashMap<>();
+
+
+    @Autowired
+    public PhysicalFlowUploadJobService(PhysicalFlowUploadService physicalFlowUploadService,
+                                        @Value("${waltz.physical_flow.upload.threads:2}") int threads,
+                                        @Value("${waltz.physical_flow.upload.job.retention.minutes:60}") long retentionMinutes) {
+        checkNotNull(physicalFlowUploadService, "physicalFlowUploadService cannot be null");
+        this.physicalFlowUploadService = physicalFlowUploadService;
+        this.retentionMinutes = retentionMinutes;
+        this.executor = Executors.newFixedThreadPool(
+                Integer.max(threads, 1),
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "Physical Flow Upload");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+
+    /**
+     * Queues the given commands for validation and, if they are all valid, upload.
+     * @return the initial state of the job, including the job id
+     */
+    public PhysicalFlowUploadJob submit(String username,
+                                        List<PhysicalFlowUploadCommand> cmds) {
+        checkNotNull(username, "username cannot be null");
+        checkNotNull(cmds, "cmds cannot be null");
+
+        PhysicalFlowUploadJob job = ImmutablePhysicalFlowUploadJob.builder()
+                .jobId(UUID.randomUUID().toString())
+                .submittedBy(username)
+                .submittedAt(nowUtc())
+                .status(JobStatus.IN_PROGRESS)
+                .stage(PhysicalFlowUploadStage.QUEUED)
+                .rowCount(cmds.size())
+                .build();
+
+        jobs.put(job.jobId(), job);
+        executor.submit(() -> run(job.jobId(), username, cmds));
+        return job;
+    }
+
+
+    public Optional<PhysicalFlowUploadJob> findJob(String jobId) {
+        checkNotNull(jobId, "jobId cannot be null");
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+
+    @Scheduled(fixedDelay = 60_000)
+    public void pruneFinishedJobs() {
+        LocalDateTime cutoff = nowUtc().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(j -> j
+                .completedAt()
+                .map(at -> at.isBefore(cutoff))
+                .orElse(false));
+    }
+
+
+    // -- HELPERS ---
+
+    private void run(String jobId,
+                     String username,
+                     List<PhysicalFlowUploadCommand> cmds) {
+        try {
+            moveToStage(jobId, PhysicalFlowUploadStage.VALIDATING);
+            List<PhysicalFlowUploadCommandResponse> validated = physicalFlowUploadService.validate(cmds);
+
+            if (validated.stream().anyMatch(v -> v.outcome() == CommandOutcome.FAILURE)) {
+                finish(jobId, j -> ImmutablePhysicalFlowUploadJob
+                        .copyOf(j)
+                        .withStatus(JobStatus.FAILURE)
+                        .withError("Cannot upload flows which contain parse errors, please validate")
+                        .withResponses(validated));
+                return;
+            }
+
+            List<PhysicalFlowUploadCommandResponse> created = physicalFlowUploadService.uploadValidated(
+                    username,
+                    validated,
+                    stage -> moveToStage(jobId, stage),
+                    warning -> jobs.computeIfPresent(jobId, (id, j) -> ImmutablePhysicalFlowUploadJob.copyOf(j).withWarning(warning)));
+
+            finish(jobId, j -> ImmutablePhysicalFlowUploadJob
+                    .copyOf(j)
+                    .withStatus(JobStatus.SUCCESS)
+                    .withStage(PhysicalFlowUploadStage.COMPLETE)
+                    .withResponses(created));
+        } catch (Exception e) {
+            LOG.error("Physical flow upload job {} failed", jobId, e);
+            finish(jobId, j -> ImmutablePhysicalFlowUploadJob
+                    .copyOf(j)
+                    .withStatus(JobStatus.FAILURE)
+                    .withError(Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName())));
+        }
+    }
+
+
+    private void moveToStage(String jobId, PhysicalFlowUploadStage stage) {
+        jobs.computeIfPresent(jobId, (id, j) -> ImmutablePhysicalFlowUploadJob.copyOf(j).withStage(stage));
+    }
+
+
+    private void finish(String jobId, UnaryOperator<PhysicalFlowUploadJob> completer) {
+        jobs.computeIfPresent(jobId, (id, j) -> ImmutablePhysicalFlowUploadJob
+                .copyOf(completer.apply(j))
+                .withCompletedAt(nowUtc()));
+    }
+
+}
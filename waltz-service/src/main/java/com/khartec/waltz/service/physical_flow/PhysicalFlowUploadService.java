@@ -23,58 +23,80 @@ import com.khartec.waltz.common.MapUtilities;
 import com.khartec.waltz.data.actor.ActorDao;
 import com.khartec.waltz.data.application.ApplicationDao;
 import com.khartec.waltz.data.data_type.DataTypeDao;
+import com.khartec.waltz.data.datatype_decorator.LogicalFlowDecoratorDao;
 import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
-import com.khartec.waltz.data.physical_flow.PhysicalFlowDao;
-import com.khartec.waltz.data.physical_specification.PhysicalSpecificationDao;
+import com.khartec.waltz.data.physical_flow.PhysicalFlowUploadDao;
 import com.khartec.waltz.model.Criticality;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
-import com.khartec.waltz.model.UserTimestamp;
+import com.khartec.waltz.model.Operation;
+import com.khartec.waltz.model.Severity;
 import com.khartec.waltz.model.actor.Actor;
 import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.changelog.ChangeLog;
+import com.khartec.waltz.model.changelog.ImmutableChangeLog;
 import com.khartec.waltz.model.command.CommandOutcome;
 import com.khartec.waltz.model.datatype.DataType;
 import com.khartec.waltz.model.datatype.DataTypeDecorator;
 import com.khartec.waltz.model.enum_value.EnumValueKind;
-import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlow;
 import com.khartec.waltz.model.logical_flow.LogicalFlow;
 import com.khartec.waltz.model.physical_flow.*;
 import com.khartec.waltz.model.physical_specification.DataFormatKind;
-import com.khartec.waltz.model.physical_specification.ImmutablePhysicalSpecification;
-import com.khartec.waltz.model.physical_specification.PhysicalSpecification;
-import com.khartec.waltz.service.data_type.DataTypeDecoratorService;
+import com.khartec.waltz.service.changelog.ChangeLogService;
+import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorRatingsCalculator;
 import com.khartec.waltz.service.enum_value.EnumValueAliasService;
-import com.khartec.waltz.service.physical_specification_data_type.PhysicalSpecDataTypeService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
+import com.khartec.waltz.service.usage_info.DataTypeUsageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
-import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
-import static com.khartec.waltz.common.SetUtilities.fromArray;
+import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.common.StringUtilities.isEmpty;
 import static com.khartec.waltz.common.StringUtilities.lower;
+import static com.khartec.waltz.model.EntityKind.LOGICAL_DATA_FLOW;
+import static com.khartec.waltz.model.EntityKind.PHYSICAL_SPECIFICATION;
+import static com.khartec.waltz.model.EntityReference.mkRef;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 
 @Service
 public class PhysicalFlowUploadService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PhysicalFlowUploadService.class);
+
+    /**
+     * Uploads with more rows than this are parsed in parallel
+     */
+    private static final int PARALLEL_VALIDATION_THRESHOLD = 2000;
+
     private final ActorDao actorDao;
     private final ApplicationDao applicationDao;
     private final DataTypeDao dataTypeDao;
     private final LogicalFlowDao logicalFlowDao;
-    private final DataTypeDecoratorService dataTypeDecoratorService;
-    private final PhysicalFlowDao physicalFlowDao;
-    private final PhysicalSpecificationDao physicalSpecificationDao;
+    private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
+    private final PhysicalFlowUploadDao physicalFlowUploadDao;
     private final EnumValueAliasService enumValueAliasService;
+    private final LogicalFlowDecoratorRatingsCalculator ratingsCalculator;
+    private final DataTypeUsageService dataTypeUsageService;
+    private final LogicalFlowGraphService logicalFlowGraphService;
+    private final ChangeLogService changeLogService;
 
     private final Pattern basisOffsetRegex = Pattern.compile("T?(?<offset>[\\+\\-]?\\d+)");
 
@@ -83,26 +105,35 @@ public class PhysicalFlowUploadService {
                                      ApplicationDao applicationDao,
                                      DataTypeDao dataTypeDao,
                                      LogicalFlowDao logicalFlowDao,
-                                     DataTypeDecoratorService dataTypeDecoratorService,
-                                     PhysicalFlowDao physicalFlowDao,
-                                     PhysicalSpecificationDao physicalSpecificationDao,
-                                     EnumValueAliasService enumValueAliasService) {
+                                     LogicalFlowDecoratorDao logicalFlowDecoratorDao,
+                                     PhysicalFlowUploadDao physicalFlowUploadDao,
+                                     EnumValueAliasService enumValueAliasService,
+                                     LogicalFlowDecoratorRatingsCalculator ratingsCalculator,
+                                     DataTypeUsageService dataTypeUsageService,
+                                     LogicalFlowGraphService logicalFlowGraphService,
+                                     ChangeLogService changeLogService) {
         checkNotNull(actorDao, "actorDao cannot be null");
         checkNotNull(applicationDao, "applicationDao cannot be null");
         checkNotNull(dataTypeDao, "dataTypeDao cannot be null");
-        checkNotNull(dataTypeDecoratorService, "dataTypeDecoratorService cannot be null");
         checkNotNull(logicalFlowDao, "logicalFlowDao cannot be null");
-        checkNotNull(physicalFlowDao, "physicalFlowDao cannot be null");
-        checkNotNull(physicalSpecificationDao, "physicalSpecificationDao cannot be null");
+        checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
+        checkNotNull(physicalFlowUploadDao, "physicalFlowUploadDao cannot be null");
         checkNotNull(enumValueAliasService, "enumValueAliasService cannot be null");
+        checkNotNull(ratingsCalculator, "ratingsCalculator cannot be null");
+        checkNotNull(dataTypeUsageService, "dataTypeUsageService cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
+        checkNotNull(changeLogService, "changeLogService cannot be null");
         this.actorDao = actorDao;
         this.applicationDao = applicationDao;
         this.dataTypeDao = dataTypeDao;
         this.logicalFlowDao = logicalFlowDao;
-        this.physicalFlowDao = physicalFlowDao;
-        this.physicalSpecificationDao = physicalSpecificationDao;
+        this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
+        this.physicalFlowUploadDao = physicalFlowUploadDao;
         this.enumValueAliasService = enumValueAliasService;
-        this.dataTypeDecoratorService = dataTypeDecoratorService;
+        this.ratingsCalculator = ratingsCalculator;
+        this.dataTypeUsageService = dataTypeUsageService;
+        this.logicalFlowGraphService = logicalFlowGraphService;
+        this.changeLogService = changeLogService;
     }
 
 
@@ -112,8 +143,11 @@ public class PhysicalFlowUploadService {
      * resolve enums - format, frequency, transport, criticality
      * check for nulls or duplicates in other fields
      * check for duplicates, circular refs
+     *
+     * Large uploads are parsed in parallel, existing flows are then located
+     * using a small number of set based queries.
      * @param cmds
-     * @return
+     * @return responses, in the same order as the commands
      */
     public List<PhysicalFlowUploadCommandResponse> validate(List<PhysicalFlowUploadCommand> cmds) {
         checkNotNull(cmds, "cmds cannot be empty");
@@ -124,8 +158,12 @@ public class PhysicalFlowUploadService {
         Map<String, DataType> dataTypesByNameOrCodeMap = loadDataTypesByNameOrCode();
         Aliases<String> transportAliases = loadTransportAliases();
 
-        // parse flows and resolve strings into entities or enums
-        List<PhysicalFlowUploadCommandResponse> parsedFlows = cmds.stream()
+        // parse flows and resolve strings into entities or enums, lookups are read only so may be shared across threads
+        Stream<PhysicalFlowUploadCommand> cmdStream = cmds.size() > PARALLEL_VALIDATION_THRESHOLD
+                ? cmds.parallelStream()
+                : cmds.stream();
+
+        List<PhysicalFlowUploadCommandResponse> parsedFlows = cmdStream
                 .map(cmd -> validateCommand(actorsByNameMap, applicationsByAssetCode, dataTypesByNameOrCodeMap, transportAliases, cmd))
                 .collect(toList());
 
@@ -135,15 +173,16 @@ public class PhysicalFlowUploadService {
         }
 
         // no parse errors - check for duplicates
-        List<PhysicalFlowUploadCommandResponse> responses = parsedFlows.stream()
-                .map(f -> Optional.ofNullable(physicalFlowDao.getByParsedFlow(f.parsedFlow()))
-                    .map(m -> (PhysicalFlowUploadCommandResponse) ImmutablePhysicalFlowUploadCommandResponse
+        Map<PhysicalFlowParsed, Long> existingIds = physicalFlowUploadDao.findExistingPhysicalFlowIds(
+                map(parsedFlows, PhysicalFlowUploadCommandResponse::parsedFlow));
+
+        return parsedFlows.stream()
+                .map(f -> Optional.ofNullable(existingIds.get(f.parsedFlow()))
+                    .map(id -> (PhysicalFlowUploadCommandResponse) ImmutablePhysicalFlowUploadCommandResponse
                             .copyOf(f)
-                            .withEntityReference(m.entityReference()))
+                            .withEntityReference(mkRef(EntityKind.PHYSICAL_FLOW, id)))
                     .orElse(f))
                 .collect(toList());
-
-        return responses;
     }
 
     
@@ -153,6 +192,31 @@ public class PhysicalFlowUploadService {
 
         // load application and actor maps
         List<PhysicalFlowUploadCommandResponse> validated = validate(cmds);
+        return uploadValidated(username, validated, stage -> {}, warning -> {});
+    }
+
+
+    /**
+     * Writes previously validated flows.  All logical flows, specifications,
+     * data types and physical flows are created in a single transaction,
+     * ratings, usage, change log entries etc. are updated once that has
+     * committed.  As the flows have been created by then, a failure whilst
+     * updating those is logged and reported as a warning rather than thrown.
+     *
+     * @param username  who is performing the upload
+     * @param validated  output of {@link #validate(List)}
+     * @param stageListener  notified as the upload moves into each stage
+     * @param warningListener  notified if the flows were created but the follow up work failed
+     * @return responses for the newly created flows
+     */
+    public List<PhysicalFlowUploadCommandResponse> uploadValidated(String username,
+                                                                   List<PhysicalFlowUploadCommandResponse> validated,
+                                                                   Consumer<PhysicalFlowUploadStage> stageListener,
+                                                                   Consumer<String> warningListener) {
+        checkNotNull(username, "username cannot be null");
+        checkNotNull(validated, "validated cannot be null");
+        checkNotNull(stageListener, "stageListener cannot be null");
+        checkNotNull(warningListener, "warningListener cannot be null");
 
         if(validated.stream().anyMatch(v -> v.outcome() == CommandOutcome.FAILURE)) {
             throw new IllegalArgumentException("Cannot upload flows which contain parse errors, please validate");
@@ -162,36 +226,39 @@ public class PhysicalFlowUploadService {
                 .filter(v -> v.outcome() == CommandOutcome.SUCCESS && v.entityReference() == null)
                 .collect(toList());
 
-        // create physical flow with ids from the above two
-        List<PhysicalFlowUploadCommandResponse> created = newFlowCmds.stream()
-                .map(v -> {
-                    if (!(v.outcome() == CommandOutcome.SUCCESS && v.entityReference() == null)) {
-                        return v;
-                    }
-
-                    PhysicalFlowParsed flow = v.parsedFlow();
-                    LogicalFlow logicalFlow = getOrCreateLogicalFlow(flow.source(), flow.target(), flow.dataType(), username);
-                    PhysicalSpecification specification = getOrCreatePhysicalSpec(flow, username);
-
-                    PhysicalFlow newFlow = ImmutablePhysicalFlow.builder()
-                            .logicalFlowId(logicalFlow.id().get())
-                            .specificationId(specification.id().get())
-                            .basisOffset(flow.basisOffset())
-                            .frequency(flow.frequency())
-                            .transport(flow.transport())
-                            .criticality(flow.criticality())
-                            .description(flow.description())
-                            .externalId(Optional.ofNullable(flow.externalId()))
-                            .lastUpdatedBy(username)
-                            .lastUpdatedAt(nowUtc())
-                            .build();
-
-                    long id = getOrCreatePhysicalFlow(newFlow);
-
-                    return ImmutablePhysicalFlowUploadCommandResponse.copyOf(v)
-                            .withEntityReference(EntityReference.mkRef(EntityKind.PHYSICAL_FLOW, id));
-                })
-                .collect(toList());
+        if (newFlowCmds.isEmpty()) {
+            return newFlowCmds;
+        }
+
+        stageListener.accept(PhysicalFlowUploadStage.WRITING);
+        PhysicalFlowBulkUploadResult result = physicalFlowUploadDao.upload(
+                map(newFlowCmds, PhysicalFlowUploadCommandResponse::parsedFlow),
+                username);
+
+        LOG.info("Physical flow upload by {}: {} rows, created {} logical flows (restored {}), {} specifications, {} physical flows",
+                username,
+                newFlowCmds.size(),
+                result.logicalFlowsCreated(),
+                result.logicalFlowsRestored(),
+                result.specificationsCreated(),
+                result.physicalFlowsCreated());
+
+        stageListener.accept(PhysicalFlowUploadStage.POST_PROCESSING);
+        try {
+            postProcess(username, result);
+        } catch (Exception e) {
+            LOG.error("Physical flow upload by {} created its flows but failed to update ratings, usages and change logs", username, e);
+            warningListener.accept(String.format(
+                    "Flows were created but ratings, usages and change logs may not have been updated: %s",
+                    Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName())));
+        }
+
+        List<PhysicalFlowUploadCommandResponse> created = new ArrayList<>(newFlowCmds.size());
+        for (int i = 0; i < newFlowCmds.size(); i++) {
+            created.add(ImmutablePhysicalFlowUploadCommandResponse
+                    .copyOf(newFlowCmds.get(i))
+                    .withEntityReference(mkRef(EntityKind.PHYSICAL_FLOW, result.physicalFlowIds().get(i))));
+        }
 
         return created;
     }
@@ -200,6 +267,61 @@ public class PhysicalFlowUploadService {
     ////////////////////// PRIVATE //////////////////////
     /////////////////////////////////////////////////////
 
+    /**
+     * Performs, in bulk, the follow up work normally carried out by the data
+     * type decorator service when decorators are added one entity at a time.
+     */
+    private void postProcess(String username, PhysicalFlowBulkUploadResult result) {
+        Set<Long> affectedFlowIds = result.addedLogicalFlowDataTypes().keySet();
+
+        if (! affectedFlowIds.isEmpty()) {
+            Collection<DataTypeDecorator> addedDecorators = logicalFlowDecoratorDao
+                    .findByFlowIds(affectedFlowIds)
+                    .stream()
+                    .filter(d -> result
+                            .addedLogicalFlowDataTypes()
+                            .getOrDefault(d.dataFlowId(), new HashSet<>())
+                            .contains(d.decoratorEntity().id()))
+                    .collect(toList());
+
+            Collection<DataTypeDecorator> rated = ratingsCalculator.calculate(addedDecorators);
+            if (! rated.isEmpty()) {
+                logicalFlowDecoratorDao.updateDecorators(new HashSet<>(rated));
+            }
+
+            Set<EntityReference> apps = logicalFlowDao
+                    .findActiveByFlowIds(affectedFlowIds)
+                    .stream()
+                    .flatMap(f -> Stream.of(f.source(), f.target()))
+                    .collect(toSet());
+            dataTypeUsageService.queueRecalculation(apps);
+        }
+
+        logicalFlowGraphService.refreshFlows(result.logicalFlowIds());
+
+        List<ChangeLog> changeLogs = new ArrayList<>();
+        result.addedSpecificationDataTypes().forEach((specId, dataTypeIds) ->
+                changeLogs.add(mkDataTypeChangeLog(username, mkRef(PHYSICAL_SPECIFICATION, specId), dataTypeIds)));
+        result.addedLogicalFlowDataTypes().forEach((flowId, dataTypeIds) ->
+                changeLogs.add(mkDataTypeChangeLog(username, mkRef(LOGICAL_DATA_FLOW, flowId), dataTypeIds)));
+        changeLogService.write(changeLogs);
+    }
+
+
+    private ChangeLog mkDataTypeChangeLog(String username,
+                                          EntityReference ref,
+                                          Set<Long> dataTypeIds) {
+        return ImmutableChangeLog.builder()
+                .parentReference(ref)
+                .userId(username)
+                .severity(Severity.INFORMATION)
+                .message(String.format("Added data types: %s", dataTypeIds.toString()))
+                .childKind(EntityKind.DATA_TYPE)
+                .operation(Operation.UPDATE)
+                .build();
+    }
+
+
     private PhysicalFlowUploadCommandResponse validateCommand(Map<String, Actor> actorsByName,
                                                               Map<String, Application> applicationsByAssetCode,
                                                               Map<String, DataType> dataTypeMap,
@@ -362,96 +484,8 @@ public class PhysicalFlowUploadService {
     }
 
 
-    private LogicalFlow getOrCreateLogicalFlow(EntityReference source,
-                                               EntityReference target,
-                                               EntityReference dataType,
-                                               String username) {
-
-        LogicalFlow flow = logicalFlowDao.getBySourceAndTarget(source, target);
-
-        if (flow == null) {
-            LocalDateTime now = nowUtc();
-
-            LogicalFlow flowToAdd = ImmutableLogicalFlow.builder()
-                    .source(source)
-                    .target(target)
-                    .lastUpdatedBy(username)
-                    .lastUpdatedAt(now)
-                    .provenance("waltz")
-                    .created(UserTimestamp.mkForUser(username, now))
-                    .build();
-
-            flow = logicalFlowDao.addFlow(flowToAdd);
-        }
-
-
-        EntityReference logicalFlowEntityRef = EntityReference.mkRef(EntityKind.LOGICAL_DATA_FLOW, flow.id().get());
-        DataTypeDecorator existingDecorator = dataTypeDecoratorService.getByEntityRefAndDataTypeId(
-                logicalFlowEntityRef,
-                dataType.id());
-
-        if(existingDecorator == null) {
-            dataTypeDecoratorService
-                    .addDecorators(username, logicalFlowEntityRef, fromArray(dataType.id()));
-        }
-        return flow;
-    }
-
-
-    private PhysicalSpecification getOrCreatePhysicalSpec(PhysicalFlowParsed flow,
-                                                          String username) {
-        EntityReference owner = flow.owner();
-        DataFormatKind format = flow.format();
-        String name = flow.name();
-
-
-        // check database
-        PhysicalSpecification spec = physicalSpecificationDao.getByParsedFlow(flow);
-        if (spec == null) {
-
-            // create
-            LocalDateTime now = nowUtc();
-            PhysicalSpecification specToAdd = ImmutablePhysicalSpecification.builder()
-                    .owningEntity(owner)
-                    .format(format)
-                    .name(name)
-                    .externalId(Optional.ofNullable(flow.specExternalId()).orElse(""))
-                    .description(Optional.ofNullable(flow.specDescription()).orElse(""))
-                    .lastUpdatedBy(username)
-                    .lastUpdatedAt(now)
-                    .provenance("waltz")
-                    .created(UserTimestamp.mkForUser(username, now))
-                    .build();
-
-            Long id = physicalSpecificationDao.create(specToAdd);
-            spec = ImmutablePhysicalSpecification
-                    .copyOf(specToAdd)
-                    .withId(id);
-        }
-
-        long dataTypeId = flow.dataType().id();
-        EntityReference specificationEntityRef = EntityReference.mkRef(EntityKind.PHYSICAL_SPECIFICATION, spec.id().get());
-
-        DataTypeDecorator existingDataType = dataTypeDecoratorService.getByEntityRefAndDataTypeId(specificationEntityRef, dataTypeId);
-        if(existingDataType == null) {
-            dataTypeDecoratorService.addDecorators(username, specificationEntityRef, fromArray(dataTypeId));
-        }
-        return spec;
-    }
-
-
-    private long getOrCreatePhysicalFlow(PhysicalFlow newFlow) {
-        PhysicalFlow existing = physicalFlowDao.matchPhysicalFlow(newFlow);
-        if (existing != null) {
-            return existing.id().get();
-        } else {
-            return physicalFlowDao.create(newFlow);
-        }
-    }
-
     private Aliases<String> loadTransportAliases() {
         return enumValueAliasService.mkAliases(EnumValueKind.TRANSPORT_KIND);
     }
 
-
 }
@@ -0,0 +1,132 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.query_stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * A lock-free, fixed memory, latency histogram in the style of HdrHistogram.
+ *
+ * Values are bucketed by their most significant bit and then split into
+ * eight linear sub-buckets, giving a worst case precision of ~12.5% across
+ * the entire range of positive longs in under 500 buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexFor(v));
+        totalCount.increment();
+        totalValue.add(v);
+        maxValue.accumulateAndGet(v, Math::max);
+    }
+
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+
+    public long getTotal() {
+        return totalValue.sum();
+    }
+
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0
+                ? 0
+                : (double) getTotal() / count;
+    }
+
+
+    /**
+     * Returns the (highest equivalent) value at the given percentile.
+     *
+     * @param percentile  between 0 and 100
+     * @return  the upper bound of the bucket containing the percentile, capped at the max recorded value
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkTrue(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int subBucket = (int) ((value >> shift) & (SUB_BUCKET_COUNT - 1));
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << shift;
+    }
+
+
+    static long upperBound(int index) {
+        return index == BUCKET_COUNT - 1
+                ? Long.MAX_VALUE
+                : lowerBound(index + 1) - 1;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.query_stats;
+
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * Records timings, row counts and connection wait times for every query into
+ * the <code>QueryStatsRegistry</code>, and logs any query which takes longer
+ * than the slow query threshold.
+ *
+ * jOOQ shares a single listener instance across all executions, therefore all
+ * per-execution state is held in the <code>ExecuteContext</code>.
+ */
+public class QueryStatsListener extends DefaultExecuteListener {
+
+    private static final String PERFORMANCE_APPENDER = "WALTZ.PERFORMANCE";
+    private static final Logger LOG = LoggerFactory.getLogger(PERFORMANCE_APPENDER);
+
+    private static final String DATA_PACKAGE_PREFIX = "com.khartec.waltz.data.";
+    private static final String UNKNOWN_CALLER = "<unknown>";
+
+    private static final String CALLER_KEY = "waltz.query-stats.caller";
+    private static final String START_KEY = "waltz.query-stats.start";
+    private static final String EXECUTE_START_KEY = "waltz.query-stats.execute-start";
+    private static final String EXECUTE_DURATION_KEY = "waltz.query-stats.execute-duration";
+    private static final String ACQUIRE_KEY = "waltz.query-stats.acquire";
+    private static final String ROWS_KEY = "waltz.query-stats.rows";
+
+    private final QueryStatsRegistry registry;
+    private final long slowQueryThresholdInNanos;
+    private final boolean captureCaller;
+
+
+    public class SQLPerformanceWarning
+            extends Exception {
+
+        public SQLPerformanceWarning(String message) {
+            super(message);
+        }
+    }
+
+
+    public QueryStatsListener(QueryStatsRegistry registry,
+                              int slowQueryThresholdSeconds,
+                              boolean captureCaller) {
+        checkNotNull(registry, "registry cannot be null");
+        LOG.info("Initialising with {} second slow query threshold, capture caller: {}", slowQueryThresholdSeconds, captureCaller);
+        this.registry = registry;
+        this.slowQueryThresholdInNanos = TimeUnit.SECONDS.toNanos(slowQueryThresholdSeconds);
+        this.captureCaller = captureCaller;
+    }
+
+
+    @Override
+    public void start(ExecuteContext ctx) {
+        ctx.data(START_KEY, System.nanoTime());
+        ctx.data(CALLER_KEY, captureCaller ? findCaller() : UNKNOWN_CALLER);
+        ctx.data(ROWS_KEY, new long[]{0});
+        // discard any acquisition time not attributable to this query
+        registry.takeConnectionAcquireNanos();
+    }
+
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        ctx.data(ACQUIRE_KEY, registry.takeConnectionAcquireNanos());
+        ctx.data(EXECUTE_START_KEY, System.nanoTime());
+    }
+
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        Long executeStart = (Long) ctx.data(EXECUTE_START_KEY);
+        if (executeStart == null) {
+            return;
+        }
+
+        long duration = System.nanoTime() - executeStart;
+        ctx.data(EXECUTE_DURATION_KEY, duration);
+
+        if (duration > slowQueryThresholdInNanos) {
+            DSLContext context = DSL.using(ctx.dialect(),
+                    // ... and the flag for pretty-printing
+                    new Settings().withRenderFormatted(true));
+
+            LOG.warn(String.format("Slow SQL executed in %d seconds", TimeUnit.NANOSECONDS.toSeconds(duration)), new SQLPerformanceWarning(context.renderInlined(ctx.query())));
+        }
+    }
+
+
+    @Override
+    public void recordEnd(ExecuteContext ctx) {
+        long[] rows = (long[]) ctx.data(ROWS_KEY);
+        if (rows != null) {
+            rows[0]++;
+        }
+    }
+
+
+    @Override
+    public void end(ExecuteContext ctx) {
+        Long start = (Long) ctx.data(START_KEY);
+        if (start == null) {
+            return;
+        }
+
+        long[] fetchedRows = (long[]) ctx.data(ROWS_KEY);
+        long rows = fetchedRows != null && fetchedRows[0] > 0
+                ? fetchedRows[0]
+                : Math.max(ctx.rows(), 0);
+
+        Long acquire = (Long) ctx.data(ACQUIRE_KEY);
+
+        registry.recordExecution(
+                ctx.sql(),
+                (String) ctx.data(CALLER_KEY),
+                System.nanoTime() - start,
+                rows,
+                acquire == null ? 0 : acquire);
+    }
+
+
+    /**
+     * Walks the stack to find the first frame within the data access layer,
+     * giving us the DAO (or selector factory) method which issued the query.
+     * This captures the entire stack (StackWalker is unavailable on JDK 8)
+     * hence caller capture is off unless explicitly enabled.
+     */
+    private static String findCaller() {
+        for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+            if (frame.getClassName().startsWith(DATA_PACKAGE_PREFIX)) {
+                String className = frame.getClassName();
+                String simpleName = className.substring(className.lastIndexOf('.') + 1);
+                return simpleName + "." + frame.getMethodName();
+            }
+        }
+        return UNKNOWN_CALLER;
+    }
+
+}
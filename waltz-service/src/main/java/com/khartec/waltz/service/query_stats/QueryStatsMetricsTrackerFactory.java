@@ -0,0 +1,60 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.query_stats;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * Hikari metrics hook which forwards connection acquisition timings and
+ * pool statistics to the <code>QueryStatsRegistry</code>.
+ */
+public class QueryStatsMetricsTrackerFactory implements MetricsTrackerFactory {
+
+    private final QueryStatsRegistry registry;
+
+
+    public QueryStatsMetricsTrackerFactory(QueryStatsRegistry registry) {
+        checkNotNull(registry, "registry cannot be null");
+        this.registry = registry;
+    }
+
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        registry.registerPoolStats(poolStats);
+
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                registry.recordConnectionAcquired(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                registry.recordConnectionTimeout();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.query_stats;
+
+import com.khartec.waltz.model.query_stats.ConnectionPoolStatistics;
+import com.khartec.waltz.model.query_stats.ImmutableConnectionPoolStatistics;
+import com.khartec.waltz.model.query_stats.ImmutableQueryStatistic;
+import com.khartec.waltz.model.query_stats.ImmutableQueryStatsSummary;
+import com.khartec.waltz.model.query_stats.QueryStatistic;
+import com.khartec.waltz.model.query_stats.QueryStatsSummary;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.jooq.lambda.tuple.Tuple2;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Collects per-query execution statistics (keyed by normalised sql and
+ * calling method) along with connection pool acquisition times.
+ *
+ * Populated by the <code>QueryStatsListener</code> (jOOQ) and the
+ * <code>QueryStatsMetricsTrackerFactory</code> (Hikari).
+ */
+public class QueryStatsRegistry {
+
+    static final String OVERFLOW_FINGERPRINT = "<other>";
+
+    private static final int MAX_TRACKED_QUERIES = 1000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+    private static final Pattern PARAM_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static class QueryAccumulator {
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+        private final LongAdder rowCount = new LongAdder();
+        private final LongAdder connectionAcquireNanos = new LongAdder();
+    }
+
+    private final ConcurrentHashMap<Tuple2<String, String>, QueryAccumulator> queries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> lastConnectionAcquireNanos = ThreadLocal.withInitial(() -> 0L);
+
+    private volatile LatencyHistogram connectionAcquireMicros = new LatencyHistogram();
+    private volatile LongAdder connectionTimeouts = new LongAdder();
+    private volatile LocalDateTime collectingSince = nowUtc();
+    private volatile PoolStats poolStats;
+
+
+    public void recordExecution(String sql,
+                                String caller,
+                                long elapsedNanos,
+                                long rows,
+                                long connectionAcquireNanos) {
+        QueryAccumulator accumulator = getAccumulator(tuple(fingerprint(sql), caller));
+        accumulator.latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        accumulator.rowCount.add(rows);
+        accumulator.connectionAcquireNanos.add(connectionAcquireNanos);
+    }
+
+
+    public void recordConnectionAcquired(long elapsedNanos) {
+        connectionAcquireMicros.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        lastConnectionAcquireNanos.set(elapsedNanos);
+    }
+
+
+    public void recordConnectionTimeout() {
+        connectionTimeouts.increment();
+    }
+
+
+    /**
+     * Returns, and clears, the time the current thread last spent waiting
+     * for a connection.  Used to attribute acquisition time to the query
+     * which triggered it.
+     */
+    public long takeConnectionAcquireNanos() {
+        long nanos = lastConnectionAcquireNanos.get();
+        lastConnectionAcquireNanos.set(0L);
+        return nanos;
+    }
+
+
+    public void registerPoolStats(PoolStats poolStats) {
+        this.poolStats = poolStats;
+    }
+
+
+    public QueryStatsSummary getSummary(int limit) {
+        return ImmutableQueryStatsSummary.builder()
+                .collectingSince(collectingSince)
+                .connectionPool(getConnectionPoolStatistics())
+                .queries(getQueryStatistics(limit))
+                .build();
+    }
+
+
+    public List<QueryStatistic> getQueryStatistics(int limit) {
+        return queries
+                .entrySet()
+                .stream()
+                .map(e -> mkQueryStatistic(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparingDouble(QueryStatistic::totalMillis).reversed())
+                .limit(limit)
+                .collect(toList());
+    }
+
+
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        Optional<PoolStats> pool = Optional.ofNullable(poolStats);
+        LatencyHistogram acquire = connectionAcquireMicros;
+        return ImmutableConnectionPoolStatistics.builder()
+                .totalConnections(pool.map(PoolStats::getTotalConnections).orElse(0))
+                .activeConnections(pool.map(PoolStats::getActiveConnections).orElse(0))
+                .idleConnections(pool.map(PoolStats::getIdleConnections).orElse(0))
+                .pendingThreads(pool.map(PoolStats::getPendingThreads).orElse(0))
+                .maxConnections(pool.map(PoolStats::getMaxConnections).orElse(0))
+                .acquireCount(acquire.getCount())
+                .acquireP50Millis(toMillis(acquire.getValueAtPercentile(50)))
+                .acquireP99Millis(toMillis(acquire.getValueAtPercentile(99)))
+                .acquireMaxMillis(toMillis(acquire.getMax()))
+                .timeoutCount(connectionTimeouts.sum())
+                .build();
+    }
+
+
+    public int getTrackedQueryCount() {
+        return queries.size();
+    }
+
+
+    public void reset() {
+        queries.clear();
+        connectionAcquireMicros = new LatencyHistogram();
+        connectionTimeouts = new LongAdder();
+        collectingSince = nowUtc();
+    }
+
+
+    /**
+     * Normalises sql so that statements differing only by literal values,
+     * whitespace or the length of <code>IN</code> lists share a fingerprint.
+     */
+    public static String fingerprint(String sql) {
+        if (sql == null) {
+            return "<batch>";
+        }
+        String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+        s = NUMERIC_LITERAL.matcher(s).replaceAll("?");
+        s = PARAM_LIST.matcher(s).replaceAll("?");
+        return WHITESPACE.matcher(s).replaceAll(" ").trim();
+    }
+
+
+    // -- HELPERS ---
+
+    private QueryAccumulator getAccumulator(Tuple2<String, String> key) {
+        QueryAccumulator existing = queries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        Tuple2<String, String> effectiveKey = queries.size() >= MAX_TRACKED_QUERIES
+                ? tuple(OVERFLOW_FINGERPRINT, OVERFLOW_FINGERPRINT)
+                : key;
+        return queries.computeIfAbsent(effectiveKey, k -> new QueryAccumulator());
+    }
+
+
+    private static QueryStatistic mkQueryStatistic(Tuple2<String, String> key,
+                                                   QueryAccumulator accumulator) {
+        LatencyHistogram latency = accumulator.latencyMicros;
+        return ImmutableQueryStatistic.builder()
+                .fingerprint(key.v1)
+                .caller(key.v2)
+                .executionCount(latency.getCount())
+                .totalMillis(toMillis(latency.getTotal()))
+                .meanMillis(latency.getMean() / 1000)
+                .p50Millis(toMillis(latency.getValueAtPercentile(50)))
+                .p95Millis(toMillis(latency.getValueAtPercentile(95)))
+                .p99Millis(toMillis(latency.getValueAtPercentile(99)))
+                .maxMillis(toMillis(latency.getMax()))
+                .rowCount(accumulator.rowCount.sum())
+                .connectionAcquireMillis(accumulator.connectionAcquireNanos.sum() / 1_000_000D)
+                .build();
+    }
+
+
+    private static double toMillis(long micros) {
+        return micros / 1000D;
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.query_stats;
+
+import com.khartec.waltz.model.query_stats.QueryStatsSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+@Service
+public class QueryStatsService {
+
+    private final QueryStatsRegistry queryStatsRegistry;
+
+
+    @Autowired
+    public QueryStatsService(QueryStatsRegistry queryStatsRegistry) {
+        checkNotNull(queryStatsRegistry, "queryStatsRegistry cannot be null");
+        this.queryStatsRegistry = queryStatsRegistry;
+    }
+
+
+    public QueryStatsSummary getSummary(int limit) {
+        checkTrue(limit > 0, "limit must be greater than zero");
+        return queryStatsRegistry.getSummary(limit);
+    }
+
+
+    public void reset() {
+        queryStatsRegistry.reset();
+    }
+
+}
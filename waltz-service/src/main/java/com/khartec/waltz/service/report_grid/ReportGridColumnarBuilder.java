@@ -0,0 +1,160 @@
+package com.khartec.waltz.service.report_grid;
+
+import com.khartec.waltz.data.report_grid.ReportGridCellConsumer;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.report_grid.ImmutableReportGridColumnData;
+import com.khartec.waltz.model.report_grid.ReportGridColumnData;
+import com.khartec.waltz.model.report_grid.ReportGridColumnDefinition;
+import org.jooq.lambda.tuple.Tuple2;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.ListUtilities.map;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Accumulates report grid cells, as streamed from the dao, into primitive
+ * per-column arrays and then encodes them as {@link ReportGridColumnData}.
+ *
+ * Cells may be accepted concurrently (the dao runs its queries in parallel),
+ * each column guards its own arrays so writers to different columns do not
+ * contend.  Cells for columns which are not part of the definition are ignored.
+ */
+class ReportGridColumnarBuilder implements ReportGridCellConsumer {
+
+    private final List<ColumnAccumulator> columns;
+    private final Map<Tuple2<EntityKind, Long>, ColumnAccumulator> columnsByRef = new HashMap<>();
+
+
+    ReportGridColumnarBuilder(List<ReportGridColumnDefinition> columnDefinitions) {
+        checkNotNull(columnDefinitions, "columnDefinitions cannot be null");
+        this.columns = map(
+                columnDefinitions,
+                cd -> columnsByRef.computeIfAbsent(
+                        tuple(cd.columnEntityReference().kind(), cd.columnEntityReference().id()),
+                        k -> new ColumnAccumulator(k.v1, k.v2)));
+    }
+
+
+    @Override
+    public void accept(EntityKind columnEntityKind,
+                       long columnEntityId,
+                       long applicationId,
+                       long ratingId) {
+        ColumnAccumulator column = columnsByRef.get(tuple(columnEntityKind, columnEntityId));
+        if (column != null) {
+            column.add(applicationId, ratingId);
+        }
+    }
+
+
+    /**
+     * @return all distinct rating ids seen so far, across all columns
+     */
+    Set<Long> ratingIds() {
+        Set<Long> ratingIds = new HashSet<>();
+        columnsByRef.values().forEach(c -> c.addRatingIdsTo(ratingIds));
+        return ratingIds;
+    }
+
+
+    /**
+     * Encodes the accumulated cells against the given rows.  Cells for
+     * applications which are not in <code>rows</code> are dropped.
+     *
+     * @param rows  applications, in the order they will be presented
+     * @return  column data, one per column definition, in definition order
+     */
+    List<ReportGridColumnData> build(List<Application> rows) {
+        checkNotNull(rows, "rows cannot be null");
+
+        Map<Long, Integer> rowIndexByAppId = new HashMap<>(rows.size() * 2);
+        for (int i = 0; i < rows.size(); i++) {
+            rowIndexByAppId.put(rows.get(i).entityReference().id(), i);
+        }
+
+        return map(columns, c -> c.build(rowIndexByAppId));
+    }
+
+
+    // --- HELPER ---
+
+    private static class ColumnAccumulator {
+
+        private final EntityKind columnEntityKind;
+        private final long columnEntityId;
+
+        private final Map<Long, Integer> codesByRatingId = new LinkedHashMap<>();
+        private long[] appIds = new long[16];
+        private int[] codes = new int[16];
+        private int size = 0;
+
+
+        private ColumnAccumulator(EntityKind columnEntityKind, long columnEntityId) {
+            this.columnEntityKind = columnEntityKind;
+            this.columnEntityId = columnEntityId;
+        }
+
+
+        private synchronized void add(long appId, long ratingId) {
+            if (size == appIds.length) {
+                appIds = Arrays.copyOf(appIds, size * 2);
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            appIds[size] = appId;
+            codes[size] = codesByRatingId.computeIfAbsent(ratingId, k -> codesByRatingId.size());
+            size++;
+        }
+
+
+        private synchronized void addRatingIdsTo(Set<Long> ratingIds) {
+            ratingIds.addAll(codesByRatingId.keySet());
+        }
+
+
+        private synchronized ReportGridColumnData build(Map<Long, Integer> rowIndexByAppId) {
+            // pack (row, code) into a single long so the cells can be sorted by row without boxing
+            long[] packed = new long[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                Integer row = rowIndexByAppId.get(appIds[i]);
+                if (row != null) {
+                    packed[count++] = ((long) row << 32) | codes[i];
+                }
+            }
+            Arrays.sort(packed, 0, count);
+
+            int[] rows = new int[count];
+            int[] ratings = new int[count];
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                int row = (int) (packed[i] >>> 32);
+                if (distinct > 0 && rows[distinct - 1] == row) {
+                    continue;  // should not happen, but only one rating per cell is allowed
+                }
+                rows[distinct] = row;
+                ratings[distinct] = (int) packed[i];
+                distinct++;
+            }
+
+            long[] ratingIds = codesByRatingId
+                    .keySet()
+                    .stream()
+                    .mapToLong(Long::longValue)
+                    .toArray();
+
+            return ImmutableReportGridColumnData
+                    .builder()
+                    .columnEntityKind(columnEntityKind)
+                    .columnEntityId(columnEntityId)
+                    .ratingIds(ratingIds)
+                    .rows(Arrays.copyOf(rows, distinct))
+                    .ratings(Arrays.copyOf(ratings, distinct))
+                    .build();
+        }
+    }
+
+}
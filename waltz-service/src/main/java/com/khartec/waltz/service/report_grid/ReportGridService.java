@@ -18,8 +18,10 @@
 
 package com.khartec.waltz.service.report_grid;
 
+import com.khartec.waltz.common.ExpiringCache;
+import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.DBFanOut;
 import com.khartec.waltz.data.application.ApplicationDao;
-import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.report_grid.ReportGridDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.HierarchyQueryScope;
@@ -28,39 +30,63 @@ import com.khartec.waltz.model.ImmutableIdSelectionOptions;
 import com.khartec.waltz.model.application.Application;
 import com.khartec.waltz.model.rating.RagName;
 import com.khartec.waltz.model.report_grid.*;
+import com.khartec.waltz.service.application.ApplicationIdSelectorCacheService;
 import com.khartec.waltz.service.rating_scheme.RatingSchemeService;
 import org.jooq.Record1;
 import org.jooq.Select;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
-import static com.khartec.waltz.common.SetUtilities.map;
+import static java.util.Comparator.comparing;
 
+
+/**
+ * Evaluates report grids for a set of applications.
+ *
+ * Grid definitions (including their column definitions) are cached for a
+ * short period, as they rarely change but were previously reloaded for
+ * every evaluation.  Cell data is streamed from the dao straight into a
+ * columnar, dictionary encoded, form (see {@link ReportGridColumnarInstance})
+ * whilst the applications are loaded concurrently.
+ */
 @Service
 public class ReportGridService {
 
+    private static final int MAX_CACHED_DEFINITIONS = 200;
+
     private final RatingSchemeService ratingSchemeService;
     private final ApplicationDao applicationDao;
     private final ReportGridDao reportGridDao;
-
-    private final ApplicationIdSelectorFactory applicationIdSelectorFactory = new ApplicationIdSelectorFactory();
+    private final ApplicationIdSelectorCacheService applicationIdSelectorCacheService;
+    private final DBExecutorPoolInterface dbExecutorPool;
+    private final ExpiringCache<Long, ReportGridDefinition> definitionCache;
 
 
     @Autowired
     public ReportGridService(ReportGridDao reportGridDao,
                              ApplicationDao applicationDao,
-                             RatingSchemeService ratingSchemeService) {
+                             RatingSchemeService ratingSchemeService,
+                             ApplicationIdSelectorCacheService applicationIdSelectorCacheService,
+                             DBExecutorPoolInterface dbExecutorPool,
+                             @Value("${waltz.report_grid.definition.cache.ttl.seconds:300}") int definitionCacheTtlSeconds) {
         checkNotNull(reportGridDao, "reportGridDao cannot be null");
         checkNotNull(applicationDao, "applicationDao cannot be null");
         checkNotNull(ratingSchemeService, "ratingSchemeService cannot be null");
+        checkNotNull(applicationIdSelectorCacheService, "applicationIdSelectorCacheService cannot be null");
+        checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
 
         this.reportGridDao = reportGridDao;
         this.applicationDao = applicationDao;
         this.ratingSchemeService = ratingSchemeService;
+        this.applicationIdSelectorCacheService = applicationIdSelectorCacheService;
+        this.dbExecutorPool = dbExecutorPool;
+        this.definitionCache = new ExpiringCache<>(MAX_CACHED_DEFINITIONS, definitionCacheTtlSeconds, TimeUnit.SECONDS);
     }
 
 
@@ -69,10 +95,37 @@ public class ReportGridService {
     }
 
 
+    public ReportGridDefinition getDefinitionById(long id) {
+        return checkNotNull(
+                definitionCache.get(id, reportGridDao::getGridDefinitionById),
+                "Cannot find report grid with id: %d",
+                id);
+    }
+
+
+    /**
+     * Evaluates the grid and returns it in the original, cell per object, form.
+     * Prefer {@link #getColumnarByIdAndSelectionOptions(long, IdSelectionOptions)}
+     * for large grids.
+     */
     public ReportGrid getByIdAndSelectionOptions(
             long id,
             IdSelectionOptions idSelectionOptions) {
 
+        ReportGridColumnar grid = getColumnarByIdAndSelectionOptions(id, idSelectionOptions);
+
+        return ImmutableReportGrid
+                .builder()
+                .definition(grid.definition())
+                .instance(toInstance(grid.instance()))
+                .build();
+    }
+
+
+    public ReportGridColumnar getColumnarByIdAndSelectionOptions(
+            long id,
+            IdSelectionOptions idSelectionOptions) {
+
         // WARNING:  The grid computation is very slow if given a large person tree.
         //    Therefore we restrict it to EXACT only behaviour.
         //    If you are changing this please ensure you have tested with realistic test data.
@@ -83,34 +136,68 @@ public class ReportGridService {
                     .withScope(HierarchyQueryScope.EXACT)
                 : idSelectionOptions;
 
-        ReportGridInstance instance = mkInstance(id, opts);
-        ReportGridDefinition definition = reportGridDao.getGridDefinitionById(id);
+        ReportGridDefinition definition = getDefinitionById(id);
 
-        return ImmutableReportGrid
+        return ImmutableReportGridColumnar
                 .builder()
                 .definition(definition)
-                .instance(instance)
+                .instance(mkColumnarInstance(definition, opts))
                 .build();
     }
 
 
-    private ReportGridInstance mkInstance(long id, IdSelectionOptions idSelectionOptions) {
-        Select<Record1<Long>> appSelector = applicationIdSelectorFactory.apply(idSelectionOptions);
-        Set<ReportGridRatingCell> cellData = reportGridDao.findCellDataByGridId(id, appSelector);
-        List<Application> apps = applicationDao.findByAppIdSelector(appSelector);
+    // --- HELPERS ---
+
+    private ReportGridColumnarInstance mkColumnarInstance(ReportGridDefinition definition,
+                                                          IdSelectionOptions idSelectionOptions) {
+        Select<Record1<Long>> appSelector = applicationIdSelectorCacheService.mkSelector(idSelectionOptions);
+        ReportGridColumnarBuilder builder = new ReportGridColumnarBuilder(definition.columnDefinitions());
+
+        // the dao fans out the cell queries itself, so only the app lookup is forked here
+        DBFanOut fanOut = dbExecutorPool.fanOut();
+        Supplier<List<Application>> apps = fanOut.fork(() -> applicationDao.findByAppIdSelector(appSelector));
+        reportGridDao.fetchCellData(definition, appSelector, builder);
+        fanOut.join();
 
-        Set<RagName> ratingSchemeItems = ratingSchemeService.findRatingSchemeItemsByIds(map(
-                cellData,
-                ReportGridRatingCell::ratingId));
+        List<Application> rows = new ArrayList<>(apps.get());
+        rows.sort(comparing(Application::name));
 
-        ReportGridInstance instance= ImmutableReportGridInstance
+        Set<RagName> ratingSchemeItems = ratingSchemeService.findRatingSchemeItemsByIds(builder.ratingIds());
+
+        return ImmutableReportGridColumnarInstance
                 .builder()
-                .applications(apps)
-                .cellData(cellData)
+                .applications(rows)
+                .columns(builder.build(rows))
                 .ratingSchemeItems(ratingSchemeItems)
                 .build();
-        return instance;
     }
 
 
+    private ReportGridInstance toInstance(ReportGridColumnarInstance columnar) {
+        List<Application> rows = columnar.applications();
+        Set<ReportGridRatingCell> cellData = new HashSet<>();
+
+        for (ReportGridColumnData column : columnar.columns()) {
+            long[] ratingIds = column.ratingIds();
+            int[] cellRows = column.rows();
+            int[] cellRatings = column.ratings();
+            for (int i = 0; i < cellRows.length; i++) {
+                cellData.add(ImmutableReportGridRatingCell
+                        .builder()
+                        .columnEntityKind(column.columnEntityKind())
+                        .columnEntityId(column.columnEntityId())
+                        .applicationId(rows.get(cellRows[i]).entityReference().id())
+                        .ratingId(ratingIds[cellRatings[i]])
+                        .build());
+            }
+        }
+
+        return ImmutableReportGridInstance
+                .builder()
+                .applications(rows)
+                .cellData(cellData)
+                .ratingSchemeItems(columnar.ratingSchemeItems())
+                .build();
+    }
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.scheduled_job;
+
+import com.khartec.waltz.model.scheduled_job.JobKey;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Declares which jobs must complete before others may start and runs a set
+ * of jobs accordingly.
+ *
+ * Jobs without outstanding prerequisites are submitted to the given executor
+ * straight away, so independent jobs run concurrently (bounded by the
+ * executor).  A job is started once all of its prerequisites have finished,
+ * regardless of whether they succeeded, were skipped or failed - this
+ * mirrors the previous (sequential) behaviour where a failing job did not
+ * prevent later jobs from running.
+ */
+class JobDependencyGraph {
+
+    private final Map<JobKey, Set<JobKey>> prerequisitesByJob = new EnumMap<>(JobKey.class);
+
+
+    JobDependencyGraph() {
+        for (JobKey jobKey : JobKey.values()) {
+            prerequisitesByJob.put(jobKey, EnumSet.noneOf(JobKey.class));
+        }
+    }
+
+
+    /**
+     * Declares that <code>jobKey</code> may only start once all of the
+     * <code>prerequisites</code> have finished.
+     *
+     * @throws IllegalArgumentException if the dependency would introduce a cycle
+     */
+    JobDependencyGraph declare(JobKey jobKey, JobKey... prerequisites) {
+        checkNotNull(jobKey, "jobKey cannot be null");
+        for (JobKey prerequisite : prerequisites) {
+            checkTrue(
+                    !dependsOn(prerequisite, jobKey),
+                    "Cannot make %s depend on %s as it would introduce a cycle",
+                    jobKey,
+                    prerequisite);
+            prerequisitesByJob.get(jobKey).add(prerequisite);
+        }
+        return this;
+    }
+
+
+    Set<JobKey> prerequisitesOf(JobKey jobKey) {
+        return Collections.unmodifiableSet(prerequisitesByJob.get(jobKey));
+    }
+
+
+    /**
+     * Runs the given jobs on the executor, respecting declared dependencies.
+     * Prerequisites which are not part of <code>jobs</code> are ignored.
+     *
+     * @param jobs  jobs to run, keyed by their job key
+     * @param onQueued  notified, on the calling thread, as each job is queued
+     * @param executor  used to run the jobs
+     * @return a future which completes once every job has finished
+     */
+    CompletableFuture<Void> execute(Map<JobKey, Runnable> jobs,
+                                    Consumer<JobKey> onQueued,
+                                    Executor executor) {
+        checkNotNull(jobs, "jobs cannot be null");
+        checkNotNull(onQueued, "onQueued cannot be null");
+        checkNotNull(executor, "executor cannot be null");
+
+        Map<JobKey, CompletableFuture<Void>> futures = new EnumMap<>(JobKey.class);
+        jobs.keySet().forEach(jk -> schedule(jk, jobs, onQueued, executor, futures));
+
+        return CompletableFuture.allOf(futures
+                .values()
+                .toArray(new CompletableFuture[0]));
+    }
+
+
+    // -- HELPERS ---
+
+    private CompletableFuture<Void> schedule(JobKey jobKey,
+                                             Map<JobKey, Runnable> jobs,
+                                             Consumer<JobKey> onQueued,
+                                             Executor executor,
+                                             Map<JobKey, CompletableFuture<Void>> futures) {
+        CompletableFuture<Void> existing = futures.get(jobKey);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<?>[] prerequisites = prerequisitesByJob
+                .get(jobKey)
+                .stream()
+                .filter(jobs::containsKey)
+                .map(p -> schedule(p, jobs, onQueued, executor, futures))
+                // failures are the job's own concern, they must not block dependents
+                .map(f -> f.handle((r, e) -> null))
+                .toArray(CompletableFuture[]::new);
+
+        onQueued.accept(jobKey);
+
+        CompletableFuture<Void> future = CompletableFuture
+                .allOf(prerequisites)
+                .thenRunAsync(jobs.get(jobKey), executor);
+
+        futures.put(jobKey, future);
+        return future;
+    }
+
+
+    private boolean dependsOn(JobKey jobKey, JobKey candidate) {
+        if (jobKey == candidate) {
+            return true;
+        }
+        return prerequisitesByJob
+                .get(jobKey)
+                .stream()
+                .anyMatch(p -> dependsOn(p, candidate));
+    }
+
+}
@@ -19,115 +19,456 @@
 package com.khartec.waltz.service.scheduled_job;
 
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.khartec.waltz.data.scheduled_job.ScheduledJobDao;
 import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.complexity.ComplexityCheckpoint;
+import com.khartec.waltz.model.scheduled_job.ImmutableScheduledJobStatus;
+import com.khartec.waltz.model.scheduled_job.JobExecutionState;
 import com.khartec.waltz.model.scheduled_job.JobKey;
 import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
+import com.khartec.waltz.model.scheduled_job.ScheduledJobStatus;
 import com.khartec.waltz.service.authoritative_source.AuthoritativeSourceService;
 import com.khartec.waltz.service.complexity.ComplexityRatingService;
 import com.khartec.waltz.service.entity_hierarchy.EntityHierarchyService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
 import com.khartec.waltz.service.logical_flow.LogicalFlowService;
 import com.khartec.waltz.service.physical_specification_data_type.PhysicalSpecDataTypeService;
 import com.khartec.waltz.service.usage_info.DataTypeUsageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 
+/**
+ * Periodically runs the (database flag controlled) maintenance jobs.
+ *
+ * Jobs declare their prerequisites (see {@link #mkDependencies()}), jobs
+ * which do not depend on one another run concurrently on a small, bounded
+ * pool (<code>waltz.scheduled_job.threads</code>).  Each cycle waits for all
+ * of its jobs to finish before the next cycle may start.
+ */
 @Service
 public class ScheduledJobService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ScheduledJobService.class);
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
 
     private final AuthoritativeSourceService authoritativeSourceService;
     private final ComplexityRatingService complexityRatingService;
     private final DataTypeUsageService dataTypeUsageService;
     private final EntityHierarchyService entityHierarchyService;
+    private final LogicalFlowGraphService logicalFlowGraphService;
     private final LogicalFlowService logicalFlowService;
     private final PhysicalSpecDataTypeService physicalSpecDataTypeService;
     private final ScheduledJobDao scheduledJobDao;
 
+    private final JobDependencyGraph dependencies = mkDependencies();
+    private final Map<JobKey, Runnable> jobs = new EnumMap<>(JobKey.class);
+    private final ExecutorService executor;
+
+    private final AtomicBoolean cycleInProgress = new AtomicBoolean(false);
+    private final AtomicBoolean flowsChanged = new AtomicBoolean(false);
+    private final Map<JobKey, JobExecutionState> executionStates = new ConcurrentHashMap<>();
+    private final Map<JobKey, LocalDateTime> lastStarted = new ConcurrentHashMap<>();
+    private volatile long lastCycleDurationMillis = 0;
+
 
     @Autowired
     public ScheduledJobService(AuthoritativeSourceService authoritativeSourceService,
                                ComplexityRatingService complexityRatingService,
                                DataTypeUsageService dataTypeUsageService,
                                EntityHierarchyService entityHierarchyService,
+                               LogicalFlowGraphService logicalFlowGraphService,
                                LogicalFlowService logicalFlowService,
                                PhysicalSpecDataTypeService physicalSpecDataTypeService,
-                               ScheduledJobDao scheduledJobDao) {
+                               ScheduledJobDao scheduledJobDao,
+                               @Value("${waltz.scheduled_job.threads:4}") int threadCount) {
         checkNotNull(authoritativeSourceService, "authoritativeSourceService cannot be null");
         checkNotNull(complexityRatingService, "complexityRatingService cannot be null");
         checkNotNull(dataTypeUsageService, "dataTypeUsageService cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
         checkNotNull(logicalFlowService, "logicalFlowService cannot be null");
         checkNotNull(physicalSpecDataTypeService, "physicalSpecDataTypeService cannot be null");
         checkNotNull(scheduledJobDao, "scheduledJobDao cannot be null");
+        checkTrue(threadCount > 0, "threadCount must be positive");
 
         this.authoritativeSourceService = authoritativeSourceService;
         this.complexityRatingService = complexityRatingService;
         this.dataTypeUsageService = dataTypeUsageService;
         this.entityHierarchyService = entityHierarchyService;
+        this.logicalFlowGraphService = logicalFlowGraphService;
         this.logicalFlowService = logicalFlowService;
         this.physicalSpecDataTypeService = physicalSpecDataTypeService;
         this.scheduledJobDao = scheduledJobDao;
+        this.executor = mkExecutor(threadCount);
+
+        registerJobs();
     }
 
 
     @Scheduled(fixedRate = 300_000)
     public void run() {
-        Thread.currentThread().setName("WaltzScheduledJobService");
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_CHANGE_INITIATIVE,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.CHANGE_INITIATIVE));
+        runCycle();
+    }
+
+
+    /**
+     * Periodically requests the full data type usage recalculation to
+     * reconcile anything the incremental recalculation missed.  The cron
+     * expression is evaluated by every node, but the request only flags the
+     * job, which is then run once by whichever node claims it.
+     */
+    @Scheduled(cron = "${waltz.data_type_usage.reconcile.cron:0 0 2 * * *}")
+    public void requestDataTypeUsageReconciliation() {
+        if (dataTypeUsageService.isIncrementalEnabled()) {
+            requestRun(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION);
+        }
+    }
+
+
+    /**
+     * Periodically requests the incremental complexity recalculation, as
+     * above the job is run by whichever node claims it.
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.complexity.incremental.millis:300000}",
+            fixedDelayString = "${waltz.complexity.incremental.millis:300000}")
+    public void requestChangedComplexityRecalculation() {
+        if (complexityRatingService.isIncrementalEnabled()) {
+            requestRun(JobKey.COMPLEXITY_RECALC_CHANGED);
+        }
+    }
+
+
+    /**
+     * Flags a job to run in the next cycle.
+     *
+     * @return false if the job was not flagged, e.g. it is already pending
+     */
+    public boolean requestRun(JobKey jobKey) {
+        checkNotNull(jobKey, "jobKey cannot be null");
+        boolean requested = scheduledJobDao.markJobAsRunnable(jobKey);
+        LOG.info("Requested run of job: {}, flagged: {}", jobKey, requested);
+        return requested;
+    }
+
+
+    /**
+     * Runs a single cycle of all jobs, blocking until they have finished.
+     *
+     * @return false if a cycle was already in progress (in which case nothing is done)
+     */
+    public boolean runCycle() {
+        if (! cycleInProgress.compareAndSet(false, true)) {
+            LOG.info("Scheduled job cycle already in progress, skipping");
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            dependencies
+                    .execute(
+                            findFlaggedJobs(),
+                            jk -> executionStates.put(jk, JobExecutionState.QUEUED),
+                            executor)
+                    .join();
+        } catch (Exception e) {
+            LOG.error("Scheduled job cycle failed", e);
+        } finally {
+            lastCycleDurationMillis = System.currentTimeMillis() - start;
+            cycleInProgress.set(false);
+        }
+
+        if (flowsChanged.getAndSet(false)) {
+            rebuildFlowGraph();
+        }
+        return true;
+    }
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_DATA_TYPE,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.DATA_TYPE));
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_ENTITY_STATISTICS,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.ENTITY_STATISTIC));
+    public List<ScheduledJobStatus> findAllStatuses() {
+        Map<JobKey, JobLifecycleStatus> lifecycleStatuses = scheduledJobDao.findAllJobStatuses();
+        Map<JobKey, List<Long>> durations = scheduledJobDao.findAllDurationHistories();
+
+        List<ScheduledJobStatus> statuses = new ArrayList<>(jobs.size());
+        for (JobKey jobKey : jobs.keySet()) {
+            statuses.add(ImmutableScheduledJobStatus
+                    .builder()
+                    .jobKey(jobKey)
+                    .dependsOn(dependencies.prerequisitesOf(jobKey))
+                    .executionState(executionStates.getOrDefault(jobKey, JobExecutionState.IDLE))
+                    .lifecycleStatus(Optional.ofNullable(lifecycleStatuses.get(jobKey)))
+                    .lastStarted(Optional.ofNullable(lastStarted.get(jobKey)))
+                    .recentDurations(durations.getOrDefault(jobKey, Collections.emptyList()))
+                    .build());
+        }
+        return statuses;
+    }
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_MEASURABLE,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.MEASURABLE));
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_ORG_UNIT,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.ORG_UNIT));
+    public Set<JobKey> findJobsIn(JobExecutionState state) {
+        Set<JobKey> result = EnumSet.noneOf(JobKey.class);
+        executionStates.forEach((jk, s) -> {
+            if (s == state) {
+                result.add(jk);
+            }
+        });
+        return result;
+    }
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_PERSON,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.PERSON));
 
-        runIfNeeded(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
-                (jk) -> physicalSpecDataTypeService.rippleDataTypesToLogicalFlows());
+    public boolean isCycleInProgress() {
+        return cycleInProgress.get();
+    }
 
-        runIfNeeded(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION,
-                (jk) -> dataTypeUsageService.recalculateForAllApplications());
 
-        runIfNeeded(JobKey.COMPLEXITY_REBUILD,
-                (jk) -> complexityRatingService.rebuild());
+    public long getLastCycleDurationMillis() {
+        return lastCycleDurationMillis;
+    }
 
-        runIfNeeded(JobKey.AUTH_SOURCE_RECALC_FLOW_RATINGS,
-                (jk) -> authoritativeSourceService.fastRecalculateAllFlowRatings());
 
-        runIfNeeded(JobKey.LOGICAL_FLOW_CLEANUP_ORPHANS,
-                (jk) -> logicalFlowService.cleanupOrphans());
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
     }
 
 
-    private void runIfNeeded(JobKey jobKey, Consumer<JobKey> jobExecutor) {
+    // -- HELPERS ---
+
+    private void registerJobs() {
+        jobs.put(JobKey.HIERARCHY_REBUILD_CHANGE_INITIATIVE,
+                () -> entityHierarchyService.buildFor(EntityKind.CHANGE_INITIATIVE));
+
+        jobs.put(JobKey.HIERARCHY_REBUILD_DATA_TYPE,
+                () -> entityHierarchyService.buildFor(EntityKind.DATA_TYPE));
+
+        jobs.put(JobKey.HIERARCHY_REBUILD_ENTITY_STATISTICS,
+                () -> entityHierarchyService.buildFor(EntityKind.ENTITY_STATISTIC));
+
+        jobs.put(JobKey.HIERARCHY_REBUILD_MEASURABLE,
+                () -> entityHierarchyService.buildFor(EntityKind.MEASURABLE));
+
+        jobs.put(JobKey.HIERARCHY_REBUILD_ORG_UNIT,
+                () -> entityHierarchyService.buildFor(EntityKind.ORG_UNIT));
+
+        jobs.put(JobKey.HIERARCHY_REBUILD_PERSON,
+                () -> entityHierarchyService.buildFor(EntityKind.PERSON));
+
+        jobs.put(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
+                changesFlows(physicalSpecDataTypeService::rippleDataTypesToLogicalFlows));
+
+        jobs.put(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION,
+                dataTypeUsageService::recalculateForAllApplications);
+
+        jobs.put(JobKey.COMPLEXITY_REBUILD,
+                complexityRatingService::rebuild);
+
+        jobs.put(JobKey.COMPLEXITY_RECALC_CHANGED,
+                this::recalculateChangedComplexity);
+
+        jobs.put(JobKey.AUTH_SOURCE_RECALC_FLOW_RATINGS,
+                changesFlows(authoritativeSourceService::fastRecalculateAllFlowRatings));
+
+        jobs.put(JobKey.LOGICAL_FLOW_CLEANUP_ORPHANS,
+                changesFlows(logicalFlowService::cleanupOrphans));
+
+        jobs.replaceAll((jk, job) -> () -> runIfNeeded(jk, job));
+    }
+
+
+    /**
+     * Only jobs flagged as runnable are queued, so execution states only
+     * report work which is actually pending.  Each job still claims its flag
+     * before running (see {@link #runIfNeeded(JobKey, Runnable)}) as another
+     * node may claim it first.  Jobs flagged whilst the cycle is running are
+     * picked up by the next cycle.
+     */
+    private Map<JobKey, Runnable> findFlaggedJobs() {
+        Map<JobKey, JobLifecycleStatus> lifecycleStatuses = scheduledJobDao.findAllJobStatuses();
+
+        Map<JobKey, Runnable> flagged = new EnumMap<>(JobKey.class);
+        jobs.forEach((jobKey, job) -> {
+            if (lifecycleStatuses.get(jobKey) == JobLifecycleStatus.RUNNABLE) {
+                flagged.put(jobKey, job);
+            }
+        });
+        return flagged;
+    }
+
+
+    /**
+     * The entity hierarchy rebuilds (all but the person hierarchy, which has
+     * its own table) each delete and re-insert a kind's rows in the
+     * <code>entity_hierarchy</code> table, they are chained (in their
+     * original order) so they never hold locks on that table concurrently.
+     * The data type jobs need the data type hierarchy, auth source ratings
+     * are also scoped by org unit.  Jobs which update logical flow decorators
+     * run in the same relative order as before so they never write
+     * concurrently.
+     */
+    static JobDependencyGraph mkDependencies() {
+        return new JobDependencyGraph()
+                .declare(JobKey.HIERARCHY_REBUILD_DATA_TYPE,
+                        JobKey.HIERARCHY_REBUILD_CHANGE_INITIATIVE)
+                .declare(JobKey.HIERARCHY_REBUILD_ENTITY_STATISTICS,
+                        JobKey.HIERARCHY_REBUILD_DATA_TYPE)
+                .declare(JobKey.HIERARCHY_REBUILD_MEASURABLE,
+                        JobKey.HIERARCHY_REBUILD_ENTITY_STATISTICS)
+                .declare(JobKey.HIERARCHY_REBUILD_ORG_UNIT,
+                        JobKey.HIERARCHY_REBUILD_MEASURABLE)
+                .declare(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
+                        JobKey.HIERARCHY_REBUILD_DATA_TYPE)
+                .declare(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION,
+                        JobKey.HIERARCHY_REBUILD_DATA_TYPE,
+                        JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL)
+                .declare(JobKey.AUTH_SOURCE_RECALC_FLOW_RATINGS,
+                        JobKey.HIERARCHY_REBUILD_DATA_TYPE,
+                        JobKey.HIERARCHY_REBUILD_ORG_UNIT,
+                        JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL)
+                .declare(JobKey.COMPLEXITY_RECALC_CHANGED,
+                        JobKey.COMPLEXITY_REBUILD)
+                .declare(JobKey.LOGICAL_FLOW_CLEANUP_ORPHANS,
+                        JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION,
+                        JobKey.AUTH_SOURCE_RECALC_FLOW_RATINGS);
+    }
+
+
+    /**
+     * Jobs which change flows (or their decorators) in bulk, rather than via
+     * {@link LogicalFlowService}, flag that the flow graph should be rebuilt
+     * once the cycle has finished.  The flag is set even if the job fails as
+     * it may have made some changes.
+     */
+    private Runnable changesFlows(Runnable job) {
+        return () -> {
+            try {
+                job.run();
+            } finally {
+                flowsChanged.set(true);
+            }
+        };
+    }
+
+
+    private void rebuildFlowGraph() {
+        try {
+            logicalFlowGraphService.rebuildIfReady();
+        } catch (Exception e) {
+            LOG.warn("Failed to rebuild logical flow graph after flow changing jobs, will be corrected on next scheduled rebuild", e);
+        }
+    }
+
+
+    /**
+     * The checkpoint is kept with the job, rather than in memory, as the
+     * next run may be on a different node.  The run is skipped whilst a full
+     * rebuild is pending (possibly on another node) as both write the same
+     * scores.
+     */
+    private void recalculateChangedComplexity() {
+        JobLifecycleStatus rebuildStatus = scheduledJobDao
+                .findAllJobStatuses()
+                .get(JobKey.COMPLEXITY_REBUILD);
+
+        if (rebuildStatus == JobLifecycleStatus.RUNNABLE || rebuildStatus == JobLifecycleStatus.RUNNING) {
+            LOG.info("Complexity rebuild pending, skipping incremental recalculation");
+            return;
+        }
+
+        Optional<ComplexityCheckpoint> previous = scheduledJobDao
+                .findJobState(JobKey.COMPLEXITY_RECALC_CHANGED)
+                .map(ScheduledJobService::readCheckpoint);
+
+        ComplexityCheckpoint checkpoint = complexityRatingService.recalculateChanged(previous);
+
+        scheduledJobDao.saveJobState(
+                JobKey.COMPLEXITY_RECALC_CHANGED,
+                writeCheckpoint(checkpoint));
+    }
+
+
+    private void runIfNeeded(JobKey jobKey, Runnable job) {
         try {
             if (scheduledJobDao.isJobRunnable(jobKey)
                     && scheduledJobDao.markJobAsRunning(jobKey)) {
-                jobExecutor
-                        .andThen((jk) -> scheduledJobDao.updateJobStatus(jk, JobLifecycleStatus.COMPLETED))
-                        .accept(jobKey);
+                executionStates.put(jobKey, JobExecutionState.RUNNING);
+                lastStarted.put(jobKey, nowUtc());
+                long start = System.currentTimeMillis();
+                try {
+                    job.run();
+                    scheduledJobDao.updateJobStatus(jobKey, JobLifecycleStatus.COMPLETED);
+                } finally {
+                    long duration = System.currentTimeMillis() - start;
+                    LOG.info("Job: {} took {}ms", jobKey, duration);
+                    recordDuration(jobKey, duration);
+                }
             }
         } catch (Exception e) {
             LOG.error("Failed to run job: " + jobKey, e);
             scheduledJobDao.updateJobStatus(jobKey, JobLifecycleStatus.ERRORED);
+        } finally {
+            executionStates.put(jobKey, JobExecutionState.IDLE);
+        }
+    }
+
+
+    private void recordDuration(JobKey jobKey, long duration) {
+        try {
+            scheduledJobDao.recordDuration(jobKey, duration);
+        } catch (Exception e) {
+            // timings are informational, failing to store them should not fail the job
+            LOG.warn("Could not record duration of job: " + jobKey, e);
         }
     }
 
+
+    private static ComplexityCheckpoint readCheckpoint(String json) {
+        try {
+            return JSON_MAPPER.readValue(json, ComplexityCheckpoint.class);
+        } catch (IOException e) {
+            LOG.warn("Could not read complexity checkpoint, a full rebuild will be performed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+
+    private static String writeCheckpoint(ComplexityCheckpoint checkpoint) {
+        try {
+            return JSON_MAPPER.writeValueAsString(checkpoint);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private static ExecutorService mkExecutor(int threadCount) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                threadCount,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzScheduledJob-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
 }
@@ -0,0 +1,193 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.survey;
+
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.survey.SurveyIssuanceKind;
+import org.jooq.lambda.tuple.Tuple2;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.*;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Works out which survey instances and recipients still need to be written
+ * for a run, given those wanted and those already present.
+ *
+ * Group issuance has a single instance per entity, shared by all recipients.
+ * Individual issuance has one instance per recipient, however instances for
+ * the same entity are indistinguishable until a recipient is attached.  An
+ * instance without a recipient (e.g. left behind by a failed attempt) is
+ * therefore reused for any recipient of its entity, this is what allows
+ * issuance to be retried without creating duplicates.
+ *
+ * Entities are visited in a stable order (kind, then id) so that the same
+ * inputs always produce the same plan.
+ */
+class SurveyIssuancePlan {
+
+    private static final Comparator<EntityReference> ENTITY_ORDER = Comparator
+            .comparing((EntityReference ref) -> ref.kind().name())
+            .thenComparingLong(EntityReference::id);
+
+    private final SurveyIssuanceKind issuanceKind;
+    private final Map<EntityReference, Set<Long>> personIdsByEntity;
+
+
+    /**
+     * @param issuanceKind  group or individual issuance
+     * @param personIdsByEntity  recipients wanted for each entity (entity refs should not carry names)
+     */
+    SurveyIssuancePlan(SurveyIssuanceKind issuanceKind,
+                       Map<EntityReference, Set<Long>> personIdsByEntity) {
+        checkNotNull(issuanceKind, "issuanceKind cannot be null");
+        checkNotNull(personIdsByEntity, "personIdsByEntity cannot be null");
+        this.issuanceKind = issuanceKind;
+        this.personIdsByEntity = new TreeMap<>(ENTITY_ORDER);
+        this.personIdsByEntity.putAll(personIdsByEntity);
+    }
+
+
+    /**
+     * @return number of instances the run should have
+     */
+    int instanceCount() {
+        return issuanceKind == SurveyIssuanceKind.GROUP
+                ? personIdsByEntity.size()
+                : recipientCount();
+    }
+
+
+    /**
+     * @return number of recipients the run should have
+     */
+    int recipientCount() {
+        return personIdsByEntity
+                .values()
+                .stream()
+                .mapToInt(Set::size)
+                .sum();
+    }
+
+
+    /**
+     * @param entitiesByInstanceId  entity of each instance already present for the run
+     * @param personIdsByInstanceId  recipients already attached to each instance
+     * @return entities to create instances for, an entity appears once per instance needed
+     */
+    List<EntityReference> determineInstancesToCreate(Map<Long, EntityReference> entitiesByInstanceId,
+                                                     Map<Long, Set<Long>> personIdsByInstanceId) {
+        Map<EntityReference, List<Long>> instanceIdsByEntity = groupInstanceIdsByEntity(entitiesByInstanceId);
+
+        List<EntityReference> toCreate = new ArrayList<>();
+        personIdsByEntity.forEach((entity, personIds) -> {
+            List<Long> instanceIds = instanceIdsByEntity.getOrDefault(entity, Collections.emptyList());
+            int needed = issuanceKind == SurveyIssuanceKind.GROUP
+                    ? (instanceIds.isEmpty() ? 1 : 0)
+                    : missingPersonIds(personIds, instanceIds, personIdsByInstanceId).size()
+                        - unassignedInstanceIds(instanceIds, personIdsByInstanceId).size();
+            for (int i = 0; i < needed; i++) {
+                toCreate.add(entity);
+            }
+        });
+        return toCreate;
+    }
+
+
+    /**
+     * Expects the instances returned by {@link #determineInstancesToCreate(Map, Map)}
+     * to have been created.
+     *
+     * @param entitiesByInstanceId  entity of each instance present for the run
+     * @param personIdsByInstanceId  recipients already attached to each instance
+     * @return pairs of instance id and person id for the recipients to create
+     */
+    List<Tuple2<Long, Long>> determineRecipientsToCreate(Map<Long, EntityReference> entitiesByInstanceId,
+                                                         Map<Long, Set<Long>> personIdsByInstanceId) {
+        Map<EntityReference, List<Long>> instanceIdsByEntity = groupInstanceIdsByEntity(entitiesByInstanceId);
+
+        List<Tuple2<Long, Long>> toCreate = new ArrayList<>();
+        personIdsByEntity.forEach((entity, personIds) -> {
+            List<Long> instanceIds = instanceIdsByEntity.getOrDefault(entity, Collections.emptyList());
+            if (instanceIds.isEmpty()) {
+                return;
+            }
+
+            if (issuanceKind == SurveyIssuanceKind.GROUP) {
+                Long instanceId = instanceIds.get(0);
+                Set<Long> existing = personIdsByInstanceId.getOrDefault(instanceId, emptySet());
+                personIds
+                        .stream()
+                        .filter(p -> ! existing.contains(p))
+                        .sorted()
+                        .forEach(p -> toCreate.add(tuple(instanceId, p)));
+            } else {
+                Iterator<Long> unassigned = unassignedInstanceIds(instanceIds, personIdsByInstanceId).iterator();
+                Iterator<Long> missing = missingPersonIds(personIds, instanceIds, personIdsByInstanceId).iterator();
+                while (unassigned.hasNext() && missing.hasNext()) {
+                    toCreate.add(tuple(unassigned.next(), missing.next()));
+                }
+            }
+        });
+        return toCreate;
+    }
+
+
+    // -- HELPERS ---
+
+    private static Map<EntityReference, List<Long>> groupInstanceIdsByEntity(Map<Long, EntityReference> entitiesByInstanceId) {
+        return entitiesByInstanceId
+                .entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .collect(groupingBy(
+                        Map.Entry::getValue,
+                        mapping(Map.Entry::getKey, toList())));
+    }
+
+
+    private static List<Long> missingPersonIds(Set<Long> personIds,
+                                               List<Long> instanceIds,
+                                               Map<Long, Set<Long>> personIdsByInstanceId) {
+        Set<Long> assigned = instanceIds
+                .stream()
+                .flatMap(id -> personIdsByInstanceId.getOrDefault(id, emptySet()).stream())
+                .collect(toSet());
+
+        return personIds
+                .stream()
+                .filter(p -> ! assigned.contains(p))
+                .sorted()
+                .collect(toList());
+    }
+
+
+    private static List<Long> unassignedInstanceIds(List<Long> instanceIds,
+                                                    Map<Long, Set<Long>> personIdsByInstanceId) {
+        return instanceIds
+                .stream()
+                .filter(id -> personIdsByInstanceId.getOrDefault(id, emptySet()).isEmpty())
+                .collect(toList());
+    }
+
+}
@@ -26,6 +26,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.Checks.checkTrue;
@@ -62,6 +63,14 @@ public class SurveyQuestionService {
     }
 
 
+    /**
+     * @return active questions for every instance in the run, keyed by survey instance id
+     */
+    public Map<Long, List<SurveyQuestion>> findForSurveyInstancesInRun(long surveyRunId) {
+        return evaluator.determineActiveQuestionsForSurveyRun(surveyRunId);
+    }
+
+
     public List<SurveyQuestion> findForSurveyInstanceOld(long surveyInstanceId) {
         return surveyQuestionDao.findForSurveyInstance(surveyInstanceId);
     }
@@ -18,6 +18,7 @@
 
 package com.khartec.waltz.service.survey;
 
+import com.khartec.waltz.common.BatchProcessingCollector;
 import com.khartec.waltz.common.ListUtilities;
 import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.data.GenericSelector;
@@ -27,11 +28,15 @@ import com.khartec.waltz.data.person.PersonDao;
 import com.khartec.waltz.data.survey.*;
 import com.khartec.waltz.model.*;
 import com.khartec.waltz.model.changelog.ImmutableChangeLog;
+import com.khartec.waltz.model.issuance.IssuanceJob;
 import com.khartec.waltz.model.person.Person;
 import com.khartec.waltz.model.survey.*;
 import com.khartec.waltz.service.changelog.ChangeLogService;
+import com.khartec.waltz.service.issuance.IssuanceJobService;
+import com.khartec.waltz.service.issuance.IssuanceProgress;
 import org.jooq.Record1;
 import org.jooq.Select;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -39,15 +44,18 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.Checks.checkTrue;
 import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.common.MapUtilities.indexBy;
 import static com.khartec.waltz.common.SetUtilities.fromCollection;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.stream.Collectors.*;
 
 @Service
 public class SurveyRunService {
@@ -60,6 +68,7 @@ public class SurveyRunService {
     private final SurveyRunDao surveyRunDao;
     private final SurveyTemplateDao surveyTemplateDao;
     private final SurveyQuestionResponseDao surveyQuestionResponseDao;
+    private final IssuanceJobService issuanceJobService;
 
     private final GenericSelectorFactory genericSelectorFactory = new GenericSelectorFactory();
     private final SurveyInstanceIdSelectorFactory surveyInstanceIdSelectorFactory = new SurveyInstanceIdSelectorFactory();
@@ -73,7 +82,8 @@ public class SurveyRunService {
                             SurveyInstanceRecipientDao surveyInstanceRecipientDao,
                             SurveyRunDao surveyRunDao,
                             SurveyTemplateDao surveyTemplateDao,
-                            SurveyQuestionResponseDao surveyQuestionResponseDao) {
+                            SurveyQuestionResponseDao surveyQuestionResponseDao,
+                            IssuanceJobService issuanceJobService) {
         checkNotNull(changeLogService, "changeLogService cannot be null");
         checkNotNull(involvementDao, "involvementDao cannot be null");
         checkNotNull(personDao, "personDao cannot be null");
@@ -82,6 +92,7 @@ public class SurveyRunService {
         checkNotNull(surveyRunDao, "surveyRunDao cannot be null");
         checkNotNull(surveyTemplateDao, "surveyTemplateDao cannot be null");
         checkNotNull(surveyQuestionResponseDao, "surveyQuestionResponseDao cannot be null");
+        checkNotNull(issuanceJobService, "issuanceJobService cannot be null");
 
         this.changeLogService = changeLogService;
         this.involvementDao = involvementDao;
@@ -91,6 +102,7 @@ public class SurveyRunService {
         this.surveyRunDao = surveyRunDao;
         this.surveyTemplateDao = surveyTemplateDao;
         this.surveyQuestionResponseDao = surveyQuestionResponseDao;
+        this.issuanceJobService = issuanceJobService;
     }
 
 
@@ -275,68 +287,140 @@ public class SurveyRunService {
     }
 
 
+    /**
+     * Replaces the instances and recipients of the run, whilst the caller waits.
+     * See {@link #submitSurveyInstancesAndRecipients(String, long, String, List)}
+     * for the background equivalent.
+     */
     public boolean createSurveyInstancesAndRecipients(long surveyRunId,
                                                       List<SurveyInstanceRecipient> excludedRecipients) {
+        return createSurveyInstancesAndRecipients(surveyRunId, null, excludedRecipients);
+    }
 
-        SurveyRun surveyRun = surveyRunDao.getById(surveyRunId);
-        checkNotNull(surveyRun, "surveyRun " + surveyRunId + " not found");
 
-        Set<SurveyInstanceRecipient> excludedRecipientSet = fromCollection(excludedRecipients);
-        List<SurveyInstanceRecipient> surveyInstanceRecipients = generateSurveyInstanceRecipients(surveyRunId).stream()
-                .filter(r -> !excludedRecipientSet.contains(r))
-                .collect(toList());
+    public boolean createSurveyInstancesAndRecipients(long surveyRunId,
+                                                      String owningRole,
+                                                      List<SurveyInstanceRecipient> excludedRecipients) {
 
-        Map<SurveyInstance, List<SurveyInstanceRecipient>> instancesAndRecipientsToSave = surveyInstanceRecipients.stream()
-                .collect(groupingBy(
-                        SurveyInstanceRecipient::surveyInstance,
-                        toList()
-                ));
+        SurveyRun surveyRun = surveyRunDao.getById(surveyRunId);
+        checkNotNull(surveyRun, "surveyRun " + surveyRunId + " not found");
 
         // delete existing instances and recipients
         deleteSurveyInstancesAndRecipients(surveyRunId);
 
-        // insert new instances and recipients
-        instancesAndRecipientsToSave.forEach(
-                (k,v) -> {
-                    if (surveyRun.issuanceKind() == SurveyIssuanceKind.GROUP) {
-                        // one instance per group
-                        long instanceId = createSurveyInstance(k);
-                        v.forEach(r -> createSurveyInstanceRecipient(instanceId, r));
-                    } else {
-                        // one instance for each individual
-                        v.forEach(r -> {
-                            long instanceId = createSurveyInstance(k);
-                            createSurveyInstanceRecipient(instanceId, r);
-                        });
-                    }
-                }
-        );
+        issueSurveyInstancesAndRecipients(surveyRun, owningRole, excludedRecipients, IssuanceProgress.NONE);
 
         return true;
     }
 
 
-    private void deleteSurveyInstancesAndRecipients(long surveyRunId) {
-        surveyInstanceRecipientDao.deleteForSurveyRun(surveyRunId);
-        surveyInstanceDao.deleteForSurveyRun(surveyRunId);
+    /**
+     * Replaces the instances and recipients of the run in the background,
+     * progress may be followed via {@link #findIssuanceJob(long)}.  Existing
+     * instances are removed once, when the job first starts, retries resume
+     * from whatever the failed attempt managed to write.
+     *
+     * @param owningRole  role given to each created instance, may be null
+     * @throws IllegalStateException if the run is already being issued
+     */
+    public IssuanceJob submitSurveyInstancesAndRecipients(String userName,
+                                                          long surveyRunId,
+                                                          String owningRole,
+                                                          List<SurveyInstanceRecipient> excludedRecipients) {
+        checkNotNull(userName, "userName cannot be null");
+
+        SurveyRun surveyRun = surveyRunDao.getById(surveyRunId);
+        checkNotNull(surveyRun, "surveyRun " + surveyRunId + " not found");
+
+        AtomicBoolean cleared = new AtomicBoolean(false);
+
+        return issuanceJobService.submit(
+                mkRef(EntityKind.SURVEY_RUN, surveyRunId),
+                userName,
+                progress -> {
+                    if (! cleared.get()) {
+                        deleteSurveyInstancesAndRecipients(surveyRunId);
+                        cleared.set(true);
+                    }
+                    issueSurveyInstancesAndRecipients(surveyRun, owningRole, excludedRecipients, progress);
+                });
     }
 
 
-    private long createSurveyInstance(SurveyInstance surveyInstance) {
-        return surveyInstanceDao.create(ImmutableSurveyInstanceCreateCommand.builder()
-                .surveyRunId(surveyInstance.surveyRunId())
-                .entityReference(surveyInstance.surveyEntity())
-                .status(surveyInstance.status())
-                .dueDate(surveyInstance.dueDate())
-                .build());
+    public Optional<IssuanceJob> findIssuanceJob(long surveyRunId) {
+        return issuanceJobService.findJob(mkRef(EntityKind.SURVEY_RUN, surveyRunId));
     }
 
 
-    private long createSurveyInstanceRecipient(long surveyInstanceId, SurveyInstanceRecipient surveyInstanceRecipient) {
-        return surveyInstanceRecipientDao.create(ImmutableSurveyInstanceRecipientCreateCommand.builder()
-                .surveyInstanceId(surveyInstanceId)
-                .personId(surveyInstanceRecipient.person().id().get())
-                .build());
+    /**
+     * Writes the instances and recipients of the run using chunked multi-row
+     * inserts.  Rows already present for the run are taken into account (see
+     * {@link SurveyIssuancePlan}) therefore this may safely be re-run after a
+     * partial failure.
+     */
+    private void issueSurveyInstancesAndRecipients(SurveyRun surveyRun,
+                                                   String owningRole,
+                                                   List<SurveyInstanceRecipient> excludedRecipients,
+                                                   IssuanceProgress progress) {
+        long surveyRunId = surveyRun.id().get();
+
+        Set<SurveyInstanceRecipient> excludedRecipientSet = fromCollection(excludedRecipients);
+        Map<EntityReference, Set<Long>> personIdsByEntity = generateSurveyInstanceRecipients(surveyRunId)
+                .stream()
+                .filter(r -> !excludedRecipientSet.contains(r))
+                .collect(groupingBy(
+                        r -> mkRef(r.surveyInstance().surveyEntity().kind(), r.surveyInstance().surveyEntity().id()),
+                        mapping(r -> r.person().id().get(), toSet())));
+
+        SurveyIssuancePlan plan = new SurveyIssuancePlan(surveyRun.issuanceKind(), personIdsByEntity);
+        int chunkSize = issuanceJobService.getChunkSize();
+
+        // store instances
+        List<EntityReference> instancesToCreate = plan.determineInstancesToCreate(
+                surveyInstanceDao.findEntitiesByInstanceIdForSurveyRun(surveyRunId),
+                surveyInstanceRecipientDao.findPersonIdsByInstanceIdForSurveyRun(surveyRunId));
+
+        int instanceCount = plan.instanceCount();
+        AtomicInteger instancesIssued = new AtomicInteger(instanceCount - instancesToCreate.size());
+        progress.instances(instancesIssued.get(), instanceCount);
+
+        instancesToCreate
+                .stream()
+                .map(ref -> (SurveyInstanceCreateCommand) ImmutableSurveyInstanceCreateCommand.builder()
+                        .surveyRunId(surveyRunId)
+                        .entityReference(ref)
+                        .status(SurveyInstanceStatus.NOT_STARTED)
+                        .dueDate(surveyRun.dueDate())
+                        .owningRole(owningRole)
+                        .build())
+                .collect(new BatchProcessingCollector<>(
+                        chunkSize,
+                        chunk -> progress.instances(
+                                instancesIssued.addAndGet(surveyInstanceDao.createAll(chunk)),
+                                instanceCount)));
+
+        // store recipients against the (now generated) instance ids
+        List<Tuple2<Long, Long>> recipientsToCreate = plan.determineRecipientsToCreate(
+                surveyInstanceDao.findEntitiesByInstanceIdForSurveyRun(surveyRunId),
+                surveyInstanceRecipientDao.findPersonIdsByInstanceIdForSurveyRun(surveyRunId));
+
+        int recipientCount = plan.recipientCount();
+        AtomicInteger recipientsIssued = new AtomicInteger(recipientCount - recipientsToCreate.size());
+        progress.recipients(recipientsIssued.get(), recipientCount);
+
+        recipientsToCreate
+                .stream()
+                .collect(new BatchProcessingCollector<>(
+                        chunkSize,
+                        chunk -> progress.recipients(
+                                recipientsIssued.addAndGet(surveyInstanceRecipientDao.createAll(chunk)),
+                                recipientCount)));
+    }
+
+
+    private void deleteSurveyInstancesAndRecipients(long surveyRunId) {
+        surveyInstanceRecipientDao.deleteForSurveyRun(surveyRunId);
+        surveyInstanceDao.deleteForSurveyRun(surveyRunId);
     }
 
 
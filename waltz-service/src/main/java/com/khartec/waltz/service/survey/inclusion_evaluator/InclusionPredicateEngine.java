@@ -0,0 +1,132 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.survey.inclusion_evaluator;
+
+import com.khartec.waltz.model.survey.SurveyQuestion;
+import org.apache.commons.jexl3.JexlBuilder;
+import org.apache.commons.jexl3.JexlContext;
+import org.apache.commons.jexl3.JexlEngine;
+import org.apache.commons.jexl3.JexlExpression;
+import org.apache.commons.jexl3.MapContext;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.StringUtilities.isEmpty;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+/**
+ * Evaluates question inclusion predicates using a single, thread safe, JEXL
+ * engine.  Compiled predicates are cached by question id and are only
+ * re-parsed if the question's predicate text changes.
+ *
+ * The namespace (i.e. the subject and responses) is supplied per evaluation
+ * via the context rather than being bound into the engine, which is what
+ * allows the engine and compiled predicates to be shared.
+ */
+public class InclusionPredicateEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InclusionPredicateEngine.class);
+
+    private final JexlEngine jexl = new JexlBuilder().create();
+    private final Map<Long, Tuple2<String, JexlExpression>> compiledPredicatesByQuestionId = new ConcurrentHashMap<>();
+
+
+    public List<SurveyQuestion> determineActiveQuestions(List<SurveyQuestion> qs,
+                                                         QuestionBasePredicateNamespace namespace) {
+        checkNotNull(qs, "qs cannot be null");
+        checkNotNull(namespace, "namespace cannot be null");
+
+        PredicateContext ctx = new PredicateContext(namespace);
+        namespace.usingEvaluator(q -> isIncluded(q, ctx));
+
+        return qs
+                .stream()
+                .filter(q -> isIncluded(q, ctx))
+                .collect(Collectors.toList());
+    }
+
+
+    public int compiledPredicateCount() {
+        return compiledPredicatesByQuestionId.size();
+    }
+
+
+    // --- HELPER ---
+
+    private boolean isIncluded(SurveyQuestion q, JexlContext ctx) {
+        return q.inclusionPredicate()
+                .map(p -> {
+                    if (isEmpty(p)) {
+                        return true;
+                    } else {
+                        Boolean result = Boolean.valueOf(compile(q, p).evaluate(ctx).toString());
+                        LOG.debug("{} [{}] => {}", q.questionText(), p, result);
+                        return result;
+                    }
+                })
+                .orElse(true);
+    }
+
+
+    private JexlExpression compile(SurveyQuestion q, String predicate) {
+        if (! q.id().isPresent()) {
+            return jexl.createExpression(predicate);
+        }
+
+        return compiledPredicatesByQuestionId
+                .compute(
+                    q.id().get(),
+                    (id, existing) -> existing != null && existing.v1.equals(predicate)
+                            ? existing
+                            : tuple(predicate, jexl.createExpression(predicate)))
+                .v2;
+    }
+
+
+    /**
+     * Resolves the default (unprefixed) namespace to the namespace for the
+     * subject being evaluated.
+     */
+    private static class PredicateContext extends MapContext implements JexlContext.NamespaceResolver {
+
+        private final QuestionBasePredicateNamespace namespace;
+
+
+        private PredicateContext(QuestionBasePredicateNamespace namespace) {
+            this.namespace = namespace;
+        }
+
+
+        @Override
+        public Object resolveNamespace(String name) {
+            return name == null
+                    ? namespace
+                    : null;
+        }
+    }
+
+}
@@ -3,13 +3,12 @@ package com.khartec.waltz.service.survey.inclusion_evaluator;
 import com.khartec.waltz.model.ExternalIdProvider;
 import com.khartec.waltz.model.survey.SurveyQuestion;
 import com.khartec.waltz.model.survey.SurveyQuestionResponse;
-import org.apache.commons.jexl3.JexlEngine;
-import org.apache.commons.jexl3.MapContext;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.jooq.lambda.tuple.Tuple.tuple;
@@ -23,7 +22,7 @@ public class QuestionBasePredicateNamespace {
 
     private final Map<String, SurveyQuestion> questionsByExtId;
     private final Map<Long, SurveyQuestionResponse> responsesByQuestionId;
-    private JexlEngine jexl;
+    private Predicate<SurveyQuestion> evaluator;
 
 
     public QuestionBasePredicateNamespace(List<SurveyQuestion> questions,
@@ -68,11 +67,7 @@ public class QuestionBasePredicateNamespace {
         SurveyQuestion referencedQuestion = questionsByExtId
                 .get(qExtId);
 
-        return referencedQuestion
-                .inclusionPredicate()
-                .map(p -> jexl.createExpression(p).evaluate(new MapContext()))
-                .map(r -> Boolean.valueOf(r.toString()))
-                .orElse(true);
+        return evaluator.test(referencedQuestion);
     }
 
 
@@ -117,10 +112,10 @@ public class QuestionBasePredicateNamespace {
 
     /**
      * Need to pass in the evaluator so that 'recursive' functions can be computed (e.g. 'DITTO')
-     * @param jexl
+     * @param evaluator  determines if a question should be included, using this namespace
      */
-    public void usingEvaluator(JexlEngine jexl) {
-        this.jexl = jexl;
+    public void usingEvaluator(Predicate<SurveyQuestion> evaluator) {
+        this.evaluator = evaluator;
     }
 
 
@@ -21,8 +21,6 @@ package com.khartec.waltz.service.survey.inclusion_evaluator;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.survey.SurveyQuestion;
 import com.khartec.waltz.model.survey.SurveyQuestionResponse;
-import com.khartec.waltz.schema.tables.ChangeInitiative;
-import org.jooq.DSLContext;
 
 import java.util.List;
 import java.util.Map;
@@ -34,17 +32,11 @@ import java.util.Map;
  */
 public class QuestionChangeInitiativePredicateNamespace extends QuestionEntityPredicateNamespace {
 
-    public QuestionChangeInitiativePredicateNamespace(DSLContext dsl,
-                                                       EntityReference subjectRef,
+    public QuestionChangeInitiativePredicateNamespace(QuestionSubjectFacts facts,
+                                                      EntityReference subjectRef,
                                                       List<SurveyQuestion> questions,
                                                       Map<Long, SurveyQuestionResponse> responsesByQuestionId) {
-        super(dsl, subjectRef, questions, responsesByQuestionId);
-    }
-
-
-    public boolean belongsToOrgUnit(String name) {
-        ChangeInitiative ci = ChangeInitiative.CHANGE_INITIATIVE.as("ci");
-        return belongsToOrgUnit(name, ci, ci.ID, ci.ORGANISATIONAL_UNIT_ID);
+        super(facts, subjectRef, questions, responsesByQuestionId);
     }
 
 }
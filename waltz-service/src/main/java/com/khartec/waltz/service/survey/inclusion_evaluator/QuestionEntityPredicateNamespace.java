@@ -21,17 +21,11 @@ package com.khartec.waltz.service.survey.inclusion_evaluator;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.survey.SurveyQuestion;
 import com.khartec.waltz.model.survey.SurveyQuestionResponse;
-import com.khartec.waltz.schema.tables.EntityHierarchy;
-import com.khartec.waltz.schema.tables.OrganisationalUnit;
-import org.jooq.*;
-import org.jooq.impl.DSL;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
-import static com.khartec.waltz.schema.Tables.*;
-
 /**
  *
  * NOTE: methods in this class may show as unused.  This is to be expected as they are referred to via
@@ -39,34 +33,23 @@ import static com.khartec.waltz.schema.Tables.*;
  */
 public class QuestionEntityPredicateNamespace extends QuestionBasePredicateNamespace {
 
-    protected final DSLContext dsl;
+    protected final QuestionSubjectFacts facts;
     protected final EntityReference subjectRef;
 
 
-    public QuestionEntityPredicateNamespace(DSLContext dsl,
+    public QuestionEntityPredicateNamespace(QuestionSubjectFacts facts,
                                             EntityReference subjectRef,
                                             List<SurveyQuestion> questions,
                                             Map<Long, SurveyQuestionResponse> responsesByQuestionId) {
         super(questions, responsesByQuestionId);
-        this.dsl = dsl;
+        this.facts = facts;
         this.subjectRef = subjectRef;
     }
 
 
     public String assessmentRating(String name, String defaultVal) {
-        String result = dsl
-                .select(RATING_SCHEME_ITEM.CODE)
-                .from(ASSESSMENT_DEFINITION)
-                .innerJoin(ASSESSMENT_RATING).on(ASSESSMENT_RATING.ASSESSMENT_DEFINITION_ID.eq(ASSESSMENT_DEFINITION.ID))
-                .innerJoin(RATING_SCHEME).on(RATING_SCHEME.ID.eq(ASSESSMENT_DEFINITION.RATING_SCHEME_ID))
-                .innerJoin(RATING_SCHEME_ITEM).on(RATING_SCHEME_ITEM.ID.eq(ASSESSMENT_RATING.RATING_ID))
-                .where(ASSESSMENT_DEFINITION.EXTERNAL_ID.eq(name).or(ASSESSMENT_DEFINITION.NAME.eq(name)))
-                .and(ASSESSMENT_RATING.ENTITY_KIND.eq(subjectRef.kind().name()))
-                .and(ASSESSMENT_RATING.ENTITY_ID.eq(subjectRef.id()))
-                .fetchOne(RATING_SCHEME_ITEM.CODE);
-
         return Optional
-                .ofNullable(result)
+                .ofNullable(facts.assessmentRating(subjectRef.id(), name))
                 .orElse(defaultVal);
     }
 
@@ -77,46 +60,12 @@ public class QuestionEntityPredicateNamespace extends QuestionBasePredicateNames
 
 
     public boolean hasInvolvement(String name) {
-        return dsl.fetchExists(DSL
-                .select()
-                .from(INVOLVEMENT)
-                .innerJoin(INVOLVEMENT_KIND).on(INVOLVEMENT.KIND_ID.eq(INVOLVEMENT_KIND.ID))
-                .where(INVOLVEMENT_KIND.NAME.equalIgnoreCase(name))
-                .and(INVOLVEMENT.ENTITY_ID.eq(subjectRef.id()))
-                .and(INVOLVEMENT.ENTITY_KIND.eq(subjectRef.kind().name())));
+        return facts.hasInvolvement(subjectRef.id(), name);
     }
 
 
-    // --- HELPER ---
-
-    protected boolean belongsToOrgUnit(String name,
-                                       Table<?> subjectTable,
-                                       Field<Long> subjectId,
-                                       Field<Long> subjectOu) {
-        EntityHierarchy eh = ENTITY_HIERARCHY.as("eh");
-        OrganisationalUnit ou = OrganisationalUnit.ORGANISATIONAL_UNIT.as("ou");
-
-        SelectConditionStep<Record1<Long>> targetOrgUnitId = DSL
-                .select(ou.ID)
-                .from(ou)
-                .where(ou.NAME.eq(name))
-                .or(ou.EXTERNAL_ID.eq(name));
-
-        Condition subjectInTargetOuTree = subjectOu.in(DSL
-                .selectDistinct(eh.ID)
-                .from(eh)
-                .where(eh.ANCESTOR_ID.eq(targetOrgUnitId)));
-
-        Condition subjectEntitiesMatch = subjectId.eq(subjectRef.id());
-
-        SelectConditionStep<Record1<Long>> qry = DSL
-                .select(subjectId)
-                .from(subjectTable)
-                .where(subjectEntitiesMatch)
-                .and(subjectInTargetOuTree);
-
-        return dsl
-                .fetchExists(qry);
+    public boolean belongsToOrgUnit(String name) {
+        return facts.belongsToOrgUnit(subjectRef.id(), name);
     }
 
 }
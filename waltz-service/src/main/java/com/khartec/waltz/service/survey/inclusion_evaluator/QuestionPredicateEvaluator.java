@@ -21,26 +21,39 @@ package com.khartec.waltz.service.survey.inclusion_evaluator;
 import com.khartec.waltz.data.survey.SurveyInstanceDao;
 import com.khartec.waltz.data.survey.SurveyQuestionDao;
 import com.khartec.waltz.data.survey.SurveyQuestionResponseDao;
+import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.survey.SurveyInstance;
 import com.khartec.waltz.model.survey.SurveyInstanceQuestionResponse;
 import com.khartec.waltz.model.survey.SurveyQuestion;
 import com.khartec.waltz.model.survey.SurveyQuestionResponse;
-import com.khartec.waltz.service.DIConfiguration;
-import org.apache.commons.jexl3.*;
 import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.MapUtilities.groupBy;
 import static com.khartec.waltz.common.MapUtilities.indexBy;
-import static com.khartec.waltz.common.MapUtilities.newHashMap;
-import static com.khartec.waltz.common.StringUtilities.isEmpty;
+import static com.khartec.waltz.schema.Tables.SURVEY_INSTANCE;
 
+/**
+ * Determines which questions are active for a survey instance by evaluating
+ * each question's inclusion predicate against the instance's subject and
+ * responses.
+ *
+ * Predicates are compiled once and shared, see {@link InclusionPredicateEngine}.
+ * Facts about subjects (org unit, data types etc.) are fetched in bulk, see
+ * {@link QuestionSubjectFacts}.
+ */
 @Service
 public class QuestionPredicateEvaluator {
 
@@ -49,12 +62,18 @@ public class QuestionPredicateEvaluator {
     private final SurveyInstanceDao instanceDao;
     private final SurveyQuestionResponseDao responseDao;
 
+    private final InclusionPredicateEngine engine = new InclusionPredicateEngine();
+
 
     @Autowired
     public QuestionPredicateEvaluator(DSLContext dsl,
                                       SurveyQuestionDao questionDao,
                                       SurveyInstanceDao instanceDao,
                                       SurveyQuestionResponseDao responseDao) {
+        checkNotNull(dsl, "dsl cannot be null");
+        checkNotNull(questionDao, "questionDao cannot be null");
+        checkNotNull(instanceDao, "instanceDao cannot be null");
+        checkNotNull(responseDao, "responseDao cannot be null");
         this.dsl = dsl;
         this.questionDao = questionDao;
         this.instanceDao = instanceDao;
@@ -68,38 +87,76 @@ public class QuestionPredicateEvaluator {
 
         SurveyInstance instance = instanceDao.getById(surveyInstanceId);
         EntityReference subjectRef = instance.surveyEntity();
-        return eval(qs, subjectRef, responsesByQuestionId);
-    }
 
+        QuestionSubjectFacts facts = new QuestionSubjectFacts(
+                dsl,
+                subjectRef.kind(),
+                DSL.select(DSL.val(subjectRef.id())));
 
-    private List<SurveyQuestion> eval(List<SurveyQuestion> qs,
-                                      EntityReference subjectRef,
-                                      Map<Long, SurveyQuestionResponse> responsesByQuestionId) {
+        return eval(qs, subjectRef, facts, responsesByQuestionId);
+    }
 
-        QuestionBasePredicateNamespace namespace = mkPredicateNameSpace(qs, subjectRef, responsesByQuestionId);
 
-        JexlBuilder builder = new JexlBuilder();
-        JexlEngine jexl = builder
-                .namespaces(newHashMap(null, namespace))
-                .create();
+    /**
+     * Batch equivalent of {@link #determineActiveQuestions(long)} for every (original)
+     * instance in a survey run.  Questions, responses and subject facts are each
+     * loaded once for the whole run.
+     *
+     * @return active questions keyed by survey instance id
+     */
+    public Map<Long, List<SurveyQuestion>> determineActiveQuestionsForSurveyRun(long surveyRunId) {
+        List<SurveyQuestion> qs = questionDao.findForSurveyRun(surveyRunId);
+        List<SurveyInstance> instances = instanceDao.findForSurveyRun(surveyRunId);
+        Map<Long, Collection<SurveyInstanceQuestionResponse>> responsesByInstanceId = groupBy(
+                SurveyInstanceQuestionResponse::surveyInstanceId,
+                responseDao.findForSurveyRun(surveyRunId));
+
+        Map<EntityKind, QuestionSubjectFacts> factsBySubjectKind = new HashMap<>();
+
+        Map<Long, List<SurveyQuestion>> result = new HashMap<>();
+        instances.forEach(instance -> {
+            EntityReference subjectRef = instance.surveyEntity();
+            QuestionSubjectFacts facts = factsBySubjectKind.computeIfAbsent(
+                    subjectRef.kind(),
+                    kind -> new QuestionSubjectFacts(dsl, kind, mkSubjectIdSelector(surveyRunId, kind)));
+
+            Map<Long, SurveyQuestionResponse> responsesByQuestionId = indexBy(
+                    responsesByInstanceId.getOrDefault(instance.id().get(), Collections.emptyList()),
+                    r -> r.questionResponse().questionId(),
+                    SurveyInstanceQuestionResponse::questionResponse);
+
+            result.put(instance.id().get(), eval(qs, subjectRef, facts, responsesByQuestionId));
+        });
+
+        return result;
+    }
 
-        namespace.usingEvaluator(jexl);
 
-        return determineActiveQs(qs, jexl);
+    // --- HELPER ---
+
+    private List<SurveyQuestion> eval(List<SurveyQuestion> qs,
+                                      EntityReference subjectRef,
+                                      QuestionSubjectFacts facts,
+                                      Map<Long, SurveyQuestionResponse> responsesByQuestionId) {
+        QuestionBasePredicateNamespace namespace = mkPredicateNameSpace(qs, subjectRef, facts, responsesByQuestionId);
+        return engine.determineActiveQuestions(qs, namespace);
     }
 
 
-    private QuestionBasePredicateNamespace mkPredicateNameSpace(List<SurveyQuestion> qs, EntityReference subjectRef, Map<Long, SurveyQuestionResponse> responsesByQuestionId) {
+    private QuestionBasePredicateNamespace mkPredicateNameSpace(List<SurveyQuestion> qs,
+                                                                EntityReference subjectRef,
+                                                                QuestionSubjectFacts facts,
+                                                                Map<Long, SurveyQuestionResponse> responsesByQuestionId) {
         switch (subjectRef.kind()) {
             case APPLICATION:
                 return new QuestionAppPredicateNamespace(
-                        dsl,
+                        facts,
                         subjectRef,
                         qs,
                         responsesByQuestionId);
             case CHANGE_INITIATIVE:
                 return new QuestionChangeInitiativePredicateNamespace(
-                        dsl,
+                        facts,
                         subjectRef,
                         qs,
                         responsesByQuestionId);
@@ -109,29 +166,13 @@ public class QuestionPredicateEvaluator {
     }
 
 
-    private static List<SurveyQuestion> determineActiveQs(List<SurveyQuestion> qs, JexlEngine jexl) {
-        List<SurveyQuestion> activeQs = qs
-                .stream()
-                .filter(q -> q
-                        .inclusionPredicate()
-                        .map(p -> {
-                            if (isEmpty(p)) {
-                                return true;
-                            } else {
-                                JexlExpression expr = jexl.createExpression(p);
-                                JexlContext jexlCtx = new MapContext();
-                                Boolean result = Boolean.valueOf(expr.evaluate(jexlCtx).toString());
-                                System.out.printf(
-                                        "%s [%s] => %s\n",
-                                        q.questionText(),
-                                        q.inclusionPredicate().orElse(""),
-                                        result);
-                                return result;
-                            }
-                        })
-                        .orElse(true))
-                .collect(Collectors.toList());
-        return activeQs;
+    private Select<Record1<Long>> mkSubjectIdSelector(long surveyRunId, EntityKind subjectKind) {
+        return DSL
+                .select(SURVEY_INSTANCE.ENTITY_ID)
+                .from(SURVEY_INSTANCE)
+                .where(SURVEY_INSTANCE.SURVEY_RUN_ID.eq(surveyRunId))
+                .and(SURVEY_INSTANCE.ENTITY_KIND.eq(subjectKind.name()))
+                .and(SURVEY_INSTANCE.ORIGINAL_INSTANCE_ID.isNull());
     }
 
 
@@ -147,16 +188,4 @@ public class QuestionPredicateEvaluator {
         return questionDao.findForSurveyInstance(surveyInstanceId);
     }
 
-
-    // --- TEST ---
-
-    public static void main(String[] args) {
-        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
-        QuestionPredicateEvaluator evaluator = ctx.getBean(QuestionPredicateEvaluator.class);
-
-        long surveyInstanceId = 147L; // 95L;
-        List<SurveyQuestion> activeQs = evaluator.determineActiveQuestions(surveyInstanceId);
-        System.out.println("-------------");
-        activeQs.forEach(System.out::println);
-    }
 }
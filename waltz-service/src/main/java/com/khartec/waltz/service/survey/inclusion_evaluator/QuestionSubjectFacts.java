@@ -0,0 +1,282 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.survey.inclusion_evaluator;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.schema.tables.DataTypeUsage;
+import com.khartec.waltz.schema.tables.EntityHierarchy;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.StringUtilities.lower;
+import static com.khartec.waltz.schema.Tables.*;
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static com.khartec.waltz.schema.tables.ChangeInitiative.CHANGE_INITIATIVE;
+
+/**
+ * Facts about a set of survey subjects (all of the same kind) which may be
+ * referred to by question inclusion predicates.
+ *
+ * Each kind of fact is loaded, for every subject, the first time any
+ * predicate asks for it.  This means evaluating the predicates for all the
+ * instances in a survey run costs one query per kind of fact used, rather
+ * than one query per predicate per instance.
+ */
+public class QuestionSubjectFacts {
+
+    private final DSLContext dsl;
+    private final EntityKind subjectKind;
+    private final Select<Record1<Long>> subjectIdSelector;
+
+    private Set<Long> retiringSubjectIds;
+    private Map<Long, Set<Long>> orgUnitAncestorIdsBySubjectId;
+    private Map<String, Set<Long>> orgUnitIdsByNameOrExternalId;
+    private Map<Long, Map<Long, Set<String>>> usageKindsByDataTypeIdBySubjectId;
+    private Map<String, Set<Long>> dataTypeIdsByNameOrCode;
+    private Map<Long, Map<String, String>> assessmentRatingCodesBySubjectId;
+    private Map<Long, Set<String>> involvementKindNamesBySubjectId;
+
+
+    public QuestionSubjectFacts(DSLContext dsl,
+                                EntityKind subjectKind,
+                                Select<Record1<Long>> subjectIdSelector) {
+        checkNotNull(dsl, "dsl cannot be null");
+        checkNotNull(subjectKind, "subjectKind cannot be null");
+        checkNotNull(subjectIdSelector, "subjectIdSelector cannot be null");
+        this.dsl = dsl;
+        this.subjectKind = subjectKind;
+        this.subjectIdSelector = subjectIdSelector;
+    }
+
+
+    /**
+     * Applications with a planned retirement date which have not yet been retired
+     */
+    public synchronized boolean isRetiring(long subjectId) {
+        if (retiringSubjectIds == null) {
+            Condition isPlanned = APPLICATION.PLANNED_RETIREMENT_DATE.isNotNull();
+
+            Condition notRetiredYet = APPLICATION.ACTUAL_RETIREMENT_DATE.isNull()
+                    .or(APPLICATION.ACTUAL_RETIREMENT_DATE.greaterOrEqual(DSL.now()));
+
+            retiringSubjectIds = subjectKind == EntityKind.APPLICATION
+                    ? dsl.select(APPLICATION.ID)
+                        .from(APPLICATION)
+                        .where(APPLICATION.ID.in(subjectIdSelector))
+                        .and(isPlanned)
+                        .and(notRetiredYet)
+                        .fetchSet(APPLICATION.ID)
+                    : Collections.emptySet();
+        }
+        return retiringSubjectIds.contains(subjectId);
+    }
+
+
+    /**
+     * @param name  name or external id of the org unit
+     * @return true if the subject belongs to the named org unit, or any of its children
+     */
+    public synchronized boolean belongsToOrgUnit(long subjectId, String name) {
+        if (orgUnitAncestorIdsBySubjectId == null) {
+            orgUnitAncestorIdsBySubjectId = loadOrgUnitAncestors();
+        }
+
+        if (orgUnitIdsByNameOrExternalId == null) {
+            orgUnitIdsByNameOrExternalId = new HashMap<>();
+            dsl.select(ORGANISATIONAL_UNIT.ID, ORGANISATIONAL_UNIT.NAME, ORGANISATIONAL_UNIT.EXTERNAL_ID)
+                    .from(ORGANISATIONAL_UNIT)
+                    .fetch()
+                    .forEach(r -> {
+                        addTo(orgUnitIdsByNameOrExternalId, r.value2(), r.value1());
+                        addTo(orgUnitIdsByNameOrExternalId, r.value3(), r.value1());
+                    });
+        }
+
+        Set<Long> ancestors = orgUnitAncestorIdsBySubjectId.getOrDefault(subjectId, Collections.emptySet());
+        return orgUnitIdsByNameOrExternalId
+                .getOrDefault(name, Collections.emptySet())
+                .stream()
+                .anyMatch(ancestors::contains);
+    }
+
+
+    /**
+     * @param name  name or code of the data type
+     * @return usage kinds of the subject against the data type, or any of its children
+     */
+    public synchronized Set<String> dataTypeUsages(long subjectId, String name) {
+        if (usageKindsByDataTypeIdBySubjectId == null) {
+            usageKindsByDataTypeIdBySubjectId = loadDataTypeUsages();
+        }
+
+        if (dataTypeIdsByNameOrCode == null) {
+            dataTypeIdsByNameOrCode = new HashMap<>();
+            dsl.select(DATA_TYPE.ID, DATA_TYPE.NAME, DATA_TYPE.CODE)
+                    .from(DATA_TYPE)
+                    .fetch()
+                    .forEach(r -> {
+                        addTo(dataTypeIdsByNameOrCode, r.value2(), r.value1());
+                        addTo(dataTypeIdsByNameOrCode, r.value3(), r.value1());
+                    });
+        }
+
+        Map<Long, Set<String>> usageKindsByDataTypeId = usageKindsByDataTypeIdBySubjectId
+                .getOrDefault(subjectId, Collections.emptyMap());
+
+        Set<String> result = new HashSet<>();
+        dataTypeIdsByNameOrCode
+                .getOrDefault(name, Collections.emptySet())
+                .forEach(dtId -> result.addAll(usageKindsByDataTypeId.getOrDefault(dtId, Collections.emptySet())));
+        return result;
+    }
+
+
+    /**
+     * @param name  external id or name of the assessment definition
+     * @return  code of the rating given to the subject, or null if not rated
+     */
+    public synchronized String assessmentRating(long subjectId, String name) {
+        if (assessmentRatingCodesBySubjectId == null) {
+            assessmentRatingCodesBySubjectId = loadAssessmentRatings();
+        }
+
+        return assessmentRatingCodesBySubjectId
+                .getOrDefault(subjectId, Collections.emptyMap())
+                .get(name);
+    }
+
+
+    /**
+     * @param name  name of the involvement kind, case insensitive
+     */
+    public synchronized boolean hasInvolvement(long subjectId, String name) {
+        if (involvementKindNamesBySubjectId == null) {
+            involvementKindNamesBySubjectId = new HashMap<>();
+            dsl.select(INVOLVEMENT.ENTITY_ID, INVOLVEMENT_KIND.NAME)
+                    .from(INVOLVEMENT)
+                    .innerJoin(INVOLVEMENT_KIND).on(INVOLVEMENT.KIND_ID.eq(INVOLVEMENT_KIND.ID))
+                    .where(INVOLVEMENT.ENTITY_KIND.eq(subjectKind.name()))
+                    .and(INVOLVEMENT.ENTITY_ID.in(subjectIdSelector))
+                    .fetch()
+                    .forEach(r -> involvementKindNamesBySubjectId
+                            .computeIfAbsent(r.value1(), k -> new HashSet<>())
+                            .add(lower(r.value2())));
+        }
+
+        return involvementKindNamesBySubjectId
+                .getOrDefault(subjectId, Collections.emptySet())
+                .contains(lower(name));
+    }
+
+
+    // --- HELPER ---
+
+    private Map<Long, Set<Long>> loadOrgUnitAncestors() {
+        switch (subjectKind) {
+            case APPLICATION:
+                return loadOrgUnitAncestors(APPLICATION, APPLICATION.ID, APPLICATION.ORGANISATIONAL_UNIT_ID);
+            case CHANGE_INITIATIVE:
+                return loadOrgUnitAncestors(CHANGE_INITIATIVE, CHANGE_INITIATIVE.ID, CHANGE_INITIATIVE.ORGANISATIONAL_UNIT_ID);
+            default:
+                return Collections.emptyMap();
+        }
+    }
+
+
+    private Map<Long, Set<Long>> loadOrgUnitAncestors(Table<?> subjectTable,
+                                                      Field<Long> subjectId,
+                                                      Field<Long> subjectOu) {
+        EntityHierarchy eh = ENTITY_HIERARCHY.as("eh");
+
+        Map<Long, Set<Long>> result = new HashMap<>();
+        dsl.select(subjectId, eh.ANCESTOR_ID)
+                .from(subjectTable)
+                .innerJoin(eh)
+                .on(eh.ID.eq(subjectOu).and(eh.KIND.eq(EntityKind.ORG_UNIT.name())))
+                .where(subjectId.in(subjectIdSelector))
+                .fetch()
+                .forEach(r -> addTo(result, r.value1(), r.value2()));
+        return result;
+    }
+
+
+    private Map<Long, Map<Long, Set<String>>> loadDataTypeUsages() {
+        DataTypeUsage dtu = DATA_TYPE_USAGE.as("dtu");
+        EntityHierarchy eh = ENTITY_HIERARCHY.as("eh");
+
+        Map<Long, Map<Long, Set<String>>> result = new HashMap<>();
+        dsl.selectDistinct(dtu.ENTITY_ID, eh.ANCESTOR_ID, dtu.USAGE_KIND)
+                .from(dtu)
+                .innerJoin(eh)
+                .on(eh.ID.eq(dtu.DATA_TYPE_ID).and(eh.KIND.eq(EntityKind.DATA_TYPE.name())))
+                .where(dtu.ENTITY_KIND.eq(subjectKind.name()))
+                .and(dtu.ENTITY_ID.in(subjectIdSelector))
+                .fetch()
+                .forEach(r -> addTo(
+                        result.computeIfAbsent(r.value1(), k -> new HashMap<>()),
+                        r.value2(),
+                        r.value3()));
+        return result;
+    }
+
+
+    private Map<Long, Map<String, String>> loadAssessmentRatings() {
+        Map<Long, Map<String, String>> result = new HashMap<>();
+        dsl.select(ASSESSMENT_RATING.ENTITY_ID,
+                    ASSESSMENT_DEFINITION.EXTERNAL_ID,
+                    ASSESSMENT_DEFINITION.NAME,
+                    RATING_SCHEME_ITEM.CODE)
+                .from(ASSESSMENT_DEFINITION)
+                .innerJoin(ASSESSMENT_RATING).on(ASSESSMENT_RATING.ASSESSMENT_DEFINITION_ID.eq(ASSESSMENT_DEFINITION.ID))
+                .innerJoin(RATING_SCHEME_ITEM).on(RATING_SCHEME_ITEM.ID.eq(ASSESSMENT_RATING.RATING_ID))
+                .where(ASSESSMENT_RATING.ENTITY_KIND.eq(subjectKind.name()))
+                .and(ASSESSMENT_RATING.ENTITY_ID.in(subjectIdSelector))
+                .fetch()
+                .forEach(r -> {
+                    Map<String, String> codes = result.computeIfAbsent(r.value1(), k -> new HashMap<>());
+                    // external ids take precedence over names
+                    if (r.value2() != null) {
+                        codes.put(r.value2(), r.value4());
+                    }
+                    codes.putIfAbsent(r.value3(), r.value4());
+                });
+        return result;
+    }
+
+
+    private static <K, V> void addTo(Map<K, Set<V>> map, K key, V value) {
+        if (key != null) {
+            map.computeIfAbsent(key, k -> new HashSet<>()).add(value);
+        }
+    }
+
+}
@@ -18,58 +18,167 @@
 
 package com.khartec.waltz.service.svg;
 
+import com.khartec.waltz.common.ExpiringCache;
 import com.khartec.waltz.common.SvgUtilities;
 import com.khartec.waltz.data.svg.SvgDiagramDao;
 import com.khartec.waltz.model.svg.ImmutableSvgDiagram;
 import com.khartec.waltz.model.svg.SvgDiagram;
 import org.jooq.lambda.Unchecked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.xpath.XPathExpressionException;
-import java.io.IOException;
+import javax.xml.stream.XMLStreamException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
 import static java.util.stream.Collectors.toList;
 
+
+/**
+ * Provides svg diagrams with any product specific conversion (e.g. for
+ * visio) applied.
+ *
+ * Conversion of large diagrams is expensive, so the converted svg is held
+ * in a bounded cache keyed by diagram id.  Cached entries record a
+ * fingerprint of the source they were converted from, if the source has
+ * since changed the diagram is converted again.
+ *
+ * The fingerprint is a single pass over the source, which has to be read
+ * from the database regardless as the svg_diagram table has no version or
+ * last updated column to check instead.  The pass is cheap by comparison
+ * with the conversion (around 30ms against 950ms for a 17MB diagram) and,
+ * unlike the length alone, also notices edits which preserve the length.
+ */
 @Service
 public class SvgDiagramService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SvgDiagramService.class);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     private final SvgDiagramDao svgDiagramDao;
+    private final ExpiringCache<Long, ConvertedSvg> conversions;
+
+
+    private static class ConvertedSvg {
+        private final long sourceFingerprint;
+        private final String svg;
+        private final long fingerprint;
+
+        private ConvertedSvg(long sourceFingerprint, String svg) {
+            this.sourceFingerprint = sourceFingerprint;
+            this.svg = svg;
+            this.fingerprint = fingerprint(FNV_OFFSET_BASIS, svg);
+        }
+    }
 
 
     @Autowired
-    public SvgDiagramService(SvgDiagramDao svgDiagramDao) {
+    public SvgDiagramService(SvgDiagramDao svgDiagramDao,
+                             @Value("${waltz.svg_diagram.cache.maxEntries:100}") int maxEntries,
+                             @Value("${waltz.svg_diagram.cache.ttlMinutes:1440}") int ttlMinutes) {
+        checkNotNull(svgDiagramDao, "svgDiagramDao cannot be null");
         this.svgDiagramDao = svgDiagramDao;
+        this.conversions = new ExpiringCache<>(maxEntries, ttlMinutes, TimeUnit.MINUTES);
     }
 
 
     public SvgDiagram getById(long id) {
         SvgDiagram diagram = svgDiagramDao.getById(id);
-        return Unchecked.supplier(() -> {
-            String updatedSvg = convertProductSpecificSvg(diagram);
-            return ImmutableSvgDiagram.copyOf(diagram)
-                    .withSvg(updatedSvg);
-        }).get();
+        return diagram == null
+                ? null
+                : convert(diagram);
     }
 
 
     public Collection<SvgDiagram> findByGroups(String... groups) {
         return svgDiagramDao.findByGroups(groups)
                 .stream()
-                .map(Unchecked.function(diagram -> {
-                    String updatedSvg = convertProductSpecificSvg(diagram);
-                    return ImmutableSvgDiagram.copyOf(diagram)
-                            .withSvg(updatedSvg);
-                }))
+                .map(this::convert)
                 .collect(toList());
     }
 
 
-    private String convertProductSpecificSvg(SvgDiagram diagram) throws ParserConfigurationException, IOException, SAXException, XPathExpressionException, TransformerException {
+    /**
+     * Calculates an ETag for the given, converted, diagram (or its absence).
+     *
+     * @return quoted entity tag
+     */
+    public String calcETag(SvgDiagram diagram) {
+        return calcETag(diagram == null
+                ? Collections.emptyList()
+                : Collections.singletonList(diagram));
+    }
+
+
+    /**
+     * Calculates an ETag for the given, converted, diagrams.  The fingerprint
+     * of each svg is taken from the conversion cache where possible.
+     *
+     * @return quoted entity tag
+     */
+    public String calcETag(Collection<SvgDiagram> diagrams) {
+        checkNotNull(diagrams, "diagrams cannot be null");
+
+        long hash = FNV_OFFSET_BASIS;
+        for (SvgDiagram diagram : diagrams) {
+            long svgFingerprint = diagram
+                    .id()
+                    .flatMap(conversions::getIfPresent)
+                    .filter(c -> c.svg == diagram.svg())  // same instance, so it came from the cache
+                    .map(c -> c.fingerprint)
+                    .orElseGet(() -> fingerprint(FNV_OFFSET_BASIS, diagram.svg()));
+
+            hash = mix(hash, svgFingerprint);
+            hash = mix(hash, Objects.hash(
+                    diagram.id(),
+                    diagram.name(),
+                    diagram.description(),
+                    diagram.group(),
+                    diagram.priority(),
+                    diagram.keyProperty(),
+                    diagram.product(),
+                    diagram.displayWidthPercent(),
+                    diagram.displayHeightPercent()));
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+
+    // -- HELPERS ---
+
+    private SvgDiagram convert(SvgDiagram diagram) {
+        Optional<Long> id = diagram.id();
+        long sourceFingerprint = fingerprint(
+                fingerprint(fingerprint(FNV_OFFSET_BASIS, diagram.product()), diagram.keyProperty()),
+                diagram.svg());
+
+        ConvertedSvg converted = id
+                .flatMap(conversions::getIfPresent)
+                .filter(c -> c.sourceFingerprint == sourceFingerprint)
+                .orElseGet(() -> {
+                    ConvertedSvg c = new ConvertedSvg(
+                            sourceFingerprint,
+                            Unchecked.supplier(() -> convertProductSpecificSvg(diagram)).get());
+                    id.ifPresent(k -> conversions.put(k, c));
+                    return c;
+                });
+
+        return ImmutableSvgDiagram
+                .copyOf(diagram)
+                .withSvg(converted.svg);
+    }
+
+
+    private String convertProductSpecificSvg(SvgDiagram diagram) throws XMLStreamException {
         switch (diagram.product()) {
             case "visio":
                 return convertVisioSvg(diagram);
@@ -79,11 +188,34 @@ public class SvgDiagramService {
     }
 
 
-    private String convertVisioSvg(SvgDiagram diagram) throws ParserConfigurationException, IOException, SAXException, XPathExpressionException, TransformerException {
+    private String convertVisioSvg(SvgDiagram diagram) throws XMLStreamException {
         String key = diagram.keyProperty();
         String svgStr = diagram.svg();
 
-        return SvgUtilities.convertVisioSvg(key, svgStr);
+        long st = System.currentTimeMillis();
+        String converted = SvgUtilities.convertVisioSvg(key, svgStr);
+        LOG.debug("Converted visio diagram: {} ({} chars) in {}ms", diagram.name(), svgStr.length(), System.currentTimeMillis() - st);
+        return converted;
+    }
+
+
+    /**
+     * 64 bit FNV-1a hash over the characters of the string, computed without
+     * copying the (potentially very large) string.
+     */
+    private static long fingerprint(long hash, String str) {
+        if (str == null) {
+            return mix(hash, 0);
+        }
+        for (int i = 0; i < str.length(); i++) {
+            hash = mix(hash, str.charAt(i));
+        }
+        return hash;
+    }
+
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
     }
 
-}
\ No newline at end of file
+}
@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.Map;
 
 import static com.khartec.waltz.common.Checks.*;
+import static com.khartec.waltz.model.EntityReference.mkRef;
 import static java.util.stream.Collectors.toMap;
 import static org.jooq.lambda.tuple.Tuple.tuple;
 
@@ -130,8 +131,13 @@ public class TaxonomyChangeService {
 
         updatedCommand = taxonomyChangeDao.update(updatedCommand);
 
-        // rebuild measurable hierarchy
+        // rebuild measurable hierarchy, moves only affect the moved subtree
         if (command.changeDomain().kind() == EntityKind.MEASURABLE_CATEGORY
+                && command.changeType() == TaxonomyChangeType.MOVE) {
+            entityHierarchyService.buildForMovedNode(mkRef(
+                    EntityKind.MEASURABLE,
+                    command.primaryReference().id()));
+        } else if (command.changeDomain().kind() == EntityKind.MEASURABLE_CATEGORY
                 && isHierarchyChange(command)) {
             entityHierarchyService.buildForMeasurableByCategory(command.changeDomain().id());
         }
@@ -0,0 +1,217 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.usage_info;
+
+import com.khartec.waltz.data.data_type_usage.DataTypeUsageDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.CollectionUtilities.map;
+import static com.khartec.waltz.common.MapUtilities.groupBy;
+import static com.khartec.waltz.schema.tables.Actor.ACTOR;
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+
+
+/**
+ * Applications/actors awaiting recalculation of their data type usages,
+ * see {@link DataTypeUsageService#queueRecalculation(Collection)}.
+ *
+ * Queued entities are coalesced and recalculated, in batches (each with its
+ * own transaction), by <code>process</code>.  The entities of a failed batch
+ * are queued again, up to <code>maxRetries</code> times, then dropped.
+ */
+class DataTypeUsageRecalculationQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataTypeUsageRecalculationQueue.class);
+
+    private final DataTypeUsageDao dataTypeUsageDao;
+    private final int batchSize;
+    private final int maxRetries;
+
+    private final Set<EntityReference> queuedRecalculations = ConcurrentHashMap.newKeySet();
+    private final Map<EntityReference, Integer> retriesByRef = new ConcurrentHashMap<>();
+    private final AtomicLong cycleCount = new AtomicLong();
+    private final AtomicLong lastCycleEntityCount = new AtomicLong();
+    private final AtomicLong lastCycleRowsChanged = new AtomicLong();
+    private final AtomicLong totalRowsChanged = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+    private final AtomicLong droppedEntityCount = new AtomicLong();
+
+
+    DataTypeUsageRecalculationQueue(DataTypeUsageDao dataTypeUsageDao,
+                                    int batchSize,
+                                    int maxRetries) {
+        checkNotNull(dataTypeUsageDao, "dataTypeUsageDao cannot be null");
+        this.dataTypeUsageDao = dataTypeUsageDao;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+
+    /**
+     * Queues the given applications/actors, other kinds of entity are ignored.
+     */
+    void queue(Collection<EntityReference> refs) {
+        checkNotNull(refs, "refs cannot be null");
+        refs.stream()
+                .filter(r -> r.kind() == EntityKind.APPLICATION || r.kind() == EntityKind.ACTOR)
+                .map(r -> EntityReference.mkRef(r.kind(), r.id()))  // strip names etc. so duplicates coalesce
+                .forEach(queuedRecalculations::add);
+    }
+
+
+    /**
+     * Recalculates all queued entities, in batches.  A failed batch is
+     * logged and its entities queued again for the next cycle.  Once an
+     * entity has failed <code>maxRetries</code> times it is dropped and left
+     * for the full recalculation to correct.
+     *
+     * @return number of usage rows changed
+     */
+    int process() {
+        List<EntityReference> refs = drainQueue();
+        if (refs.isEmpty()) {
+            return 0;
+        }
+
+        int rowsChanged = 0;
+        for (Map.Entry<EntityKind, Collection<EntityReference>> kindAndRefs : groupBy(EntityReference::kind, refs).entrySet()) {
+            EntityKind kind = kindAndRefs.getKey();
+            List<Long> ids = new ArrayList<>(map(kindAndRefs.getValue(), EntityReference::id));
+
+            for (int i = 0; i < ids.size(); i += batchSize) {
+                Set<Long> batch = new HashSet<>(ids.subList(i, Math.min(i + batchSize, ids.size())));
+                try {
+                    rowsChanged += dataTypeUsageDao.recalculateUsagesForIdSelector(
+                            kind,
+                            kind == EntityKind.APPLICATION
+                                ? convertApplicationIdsToIdSelector(batch)
+                                : convertActorIdsToIdSelector(batch));
+                    batch.forEach(id -> retriesByRef.remove(EntityReference.mkRef(kind, id)));
+                } catch (Exception e) {
+                    failedBatchCount.incrementAndGet();
+                    LOG.warn("Failed to recalculate data type usages for {} {}/s: {}", batch.size(), kind, e.getMessage());
+                    batch.forEach(id -> requeueOrDrop(EntityReference.mkRef(kind, id)));
+                }
+            }
+        }
+
+        cycleCount.incrementAndGet();
+        lastCycleEntityCount.set(refs.size());
+        lastCycleRowsChanged.set(rowsChanged);
+        totalRowsChanged.addAndGet(rowsChanged);
+
+        LOG.debug("Recalculated data type usages for {} queued entities, {} rows changed", refs.size(), rowsChanged);
+        return rowsChanged;
+    }
+
+
+    int getQueueDepth() {
+        return queuedRecalculations.size();
+    }
+
+
+    long getCycleCount() {
+        return cycleCount.get();
+    }
+
+
+    long getLastCycleEntityCount() {
+        return lastCycleEntityCount.get();
+    }
+
+
+    long getLastCycleRowsChanged() {
+        return lastCycleRowsChanged.get();
+    }
+
+
+    long getTotalRowsChanged() {
+        return totalRowsChanged.get();
+    }
+
+
+    long getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+
+    long getDroppedEntityCount() {
+        return droppedEntityCount.get();
+    }
+
+
+    static Select<Record1<Long>> convertApplicationIdsToIdSelector(Set<Long> appIds) {
+        return DSL.select(APPLICATION.ID)
+                .from(APPLICATION)
+                .where(APPLICATION.ID.in(appIds));
+    }
+
+
+    static Select<Record1<Long>> convertActorIdsToIdSelector(Set<Long> actorIds) {
+        return DSL.select(ACTOR.ID)
+                .from(ACTOR)
+                .where(ACTOR.ID.in(actorIds));
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Queues the entity again unless it has already failed
+     * <code>maxRetries</code> times, in which case it is dropped and left
+     * for reconciliation.
+     */
+    private void requeueOrDrop(EntityReference ref) {
+        int retries = retriesByRef.merge(ref, 1, Integer::sum);
+        if (retries <= maxRetries) {
+            queuedRecalculations.add(ref);
+        } else {
+            retriesByRef.remove(ref);
+            droppedEntityCount.incrementAndGet();
+            LOG.error("Giving up recalculating data type usages for {} after {} retries, leaving it for reconciliation", ref, maxRetries);
+        }
+    }
+
+
+    /**
+     * Removes and returns all queued entities.  Entities queued whilst
+     * draining are either included or left for the next cycle, never lost.
+     */
+    private List<EntityReference> drainQueue() {
+        List<EntityReference> refs = new ArrayList<>();
+        Iterator<EntityReference> iterator = queuedRecalculations.iterator();
+        while (iterator.hasNext()) {
+            refs.add(iterator.next());
+            iterator.remove();
+        }
+        return refs;
+    }
+
+}
@@ -33,23 +33,34 @@ import com.khartec.waltz.model.usage_info.UsageKind;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import org.jooq.Record1;
 import org.jooq.Select;
-import org.jooq.impl.DSL;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.CollectionUtilities.*;
 import static com.khartec.waltz.common.SetUtilities.fromCollection;
 import static com.khartec.waltz.model.usage_info.UsageInfoUtilities.mkChangeSet;
-import static com.khartec.waltz.schema.tables.Actor.ACTOR;
-import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static com.khartec.waltz.service.usage_info.DataTypeUsageRecalculationQueue.convertActorIdsToIdSelector;
+import static com.khartec.waltz.service.usage_info.DataTypeUsageRecalculationQueue.convertApplicationIdsToIdSelector;
 
+/**
+ * Data type usages are derived from logical flows and their decorators.
+ *
+ * When flows or decorators change the affected applications/actors can be
+ * queued via {@link #queueRecalculation(Collection)}.  Queued entities are
+ * coalesced and recalculated periodically, in small batches (each with its
+ * own transaction), rather than holding locks on the usage table whilst the
+ * whole estate is recalculated.  The entities of a failed batch are queued
+ * again, up to a configurable number of retries.  Changes made outside of
+ * Waltz, or which exhausted their retries, are reconciled by the full
+ * recalculation (the <code>DATA_TYPE_USAGE_RECALC_APPLICATION</code>
+ * scheduled job).
+ */
 @Service
 public class DataTypeUsageService {
 
@@ -58,18 +69,25 @@ public class DataTypeUsageService {
     private final ApplicationIdSelectorFactory appIdSelectorFactor = new ApplicationIdSelectorFactory();
     private final DataTypeIdSelectorFactory dataTypeIdSelectorFactory = new DataTypeIdSelectorFactory();
     private final ChangeLogService changeLogService;
+    private final boolean incrementalEnabled;
+    private final DataTypeUsageRecalculationQueue recalculationQueue;
 
 
     @Autowired
     public DataTypeUsageService(DataTypeUsageDao dataTypeUsageDao,
                                 DataTypeDao dataTypeDao,
-                                ChangeLogService changeLogService) {
+                                ChangeLogService changeLogService,
+                                @Value("${waltz.data_type_usage.incremental.enabled:true}") boolean incrementalEnabled,
+                                @Value("${waltz.data_type_usage.incremental.batch.size:50}") int batchSize,
+                                @Value("${waltz.data_type_usage.incremental.max.retries:5}") int maxRetries) {
         checkNotNull(dataTypeUsageDao, "dataTypeUsageDao cannot be null");
         checkNotNull(dataTypeDao, "dataTypeDao cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
         this.dataTypeUsageDao = dataTypeUsageDao;
         this.dataTypeDao = dataTypeDao;
         this.changeLogService = changeLogService;
+        this.incrementalEnabled = incrementalEnabled;
+        this.recalculationQueue = new DataTypeUsageRecalculationQueue(dataTypeUsageDao, batchSize, maxRetries);
     }
 
 
@@ -150,6 +168,73 @@ public class DataTypeUsageService {
     }
 
 
+    /**
+     * Queues the given applications/actors for recalculation.  Other kinds
+     * of entity are ignored.  If incremental recalculation is disabled the
+     * entities are recalculated immediately.
+     */
+    public void queueRecalculation(Collection<EntityReference> refs) {
+        checkNotNull(refs, "refs cannot be null");
+        if (! incrementalEnabled) {
+            recalculateForApplications(refs);
+            return;
+        }
+
+        recalculationQueue.queue(refs);
+    }
+
+
+    /**
+     * Recalculates all queued entities, see {@link DataTypeUsageRecalculationQueue#process()}.
+     *
+     * @return number of usage rows changed
+     */
+    @Scheduled(fixedDelayString = "${waltz.data_type_usage.incremental.millis:2000}")
+    public int processQueuedRecalculations() {
+        return recalculationQueue.process();
+    }
+
+
+    public boolean isIncrementalEnabled() {
+        return incrementalEnabled;
+    }
+
+
+    public int getQueueDepth() {
+        return recalculationQueue.getQueueDepth();
+    }
+
+
+    public long getCycleCount() {
+        return recalculationQueue.getCycleCount();
+    }
+
+
+    public long getLastCycleEntityCount() {
+        return recalculationQueue.getLastCycleEntityCount();
+    }
+
+
+    public long getLastCycleRowsChanged() {
+        return recalculationQueue.getLastCycleRowsChanged();
+    }
+
+
+    public long getTotalRowsChanged() {
+        return recalculationQueue.getTotalRowsChanged();
+    }
+
+
+    public long getFailedBatchCount() {
+        return recalculationQueue.getFailedBatchCount();
+    }
+
+
+    public long getDroppedEntityCount() {
+        return recalculationQueue.getDroppedEntityCount();
+    }
+
+
     public boolean recalculateForApplications(Collection<EntityReference> refs) {
         checkNotNull(refs, "refs cannot be null");
         Set<Long> appIds = refs
@@ -175,20 +260,6 @@ public class DataTypeUsageService {
     }
 
 
-    private Select<Record1<Long>> convertApplicationIdsToIdSelector(Set<Long> appIds) {
-        return DSL.select(APPLICATION.ID)
-                .from(APPLICATION)
-                .where(APPLICATION.ID.in(appIds));
-    }
-
-
-    private Select<Record1<Long>> convertActorIdsToIdSelector(Set<Long> actorIds) {
-        return DSL.select(ACTOR.ID)
-                .from(ACTOR)
-                .where(ACTOR.ID.in(actorIds));
-    }
-
-
     private void logChanges(String user,
                             EntityReference ref,
                             Long dataTypeId,
@@ -18,6 +18,7 @@
 
 package com.khartec.waltz.service.user;
 
+import com.khartec.waltz.common.ExpiringCache;
 import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.data.user.UserRoleDao;
 import com.khartec.waltz.model.EntityKind;
@@ -33,13 +34,15 @@ import com.khartec.waltz.service.person.PersonService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
 import static com.khartec.waltz.common.CollectionUtilities.sort;
 import static com.khartec.waltz.common.SetUtilities.asSet;
 import static com.khartec.waltz.model.EntityReference.mkRef;
@@ -47,49 +50,91 @@ import static java.lang.String.format;
 
 /**
  * Created by dwatkins on 30/03/2016.
+ *
+ * User roles are held in a short lived, per-user cache as they are checked
+ * on (almost) every write request.  Entries are invalidated immediately when
+ * roles are updated via this service.  Changes made directly in the database
+ * (or on another server) will be picked up once the entry expires.
+ *
+ * Optionally the role snapshot carried in a JWT may be used to populate the
+ * cache, see {@link #seedRoles(String, Set, long)}.
  */
 @Service
 public class UserRoleService {
 
     private static final Logger LOG = LoggerFactory.getLogger(UserRoleService.class);
 
+    private static final int MAX_CACHED_USERS = 10_000;
+
     private final UserRoleDao userRoleDao;
 
     private final ChangeLogService changeLogService;
 
     private final PersonService personService;
 
+    private final ExpiringCache<String, Set<String>> roleCache;
+
+    private final boolean trustTokenRoles;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    // userName (lower case) -> time roles were last updated via this service
+    private final Map<String, Long> lastRoleUpdates = new ConcurrentHashMap<>();
+
 
     @Autowired
     public UserRoleService(UserRoleDao userRoleDao,
-                           ChangeLogService changeLogService, PersonService personService) {
-        this.personService = personService;
+                           ChangeLogService changeLogService,
+                           PersonService personService,
+                           @Value("${waltz.user.roles.cache.ttl.seconds:30}") int cacheTtlSeconds,
+                           @Value("${waltz.user.roles.trust.token:false}") boolean trustTokenRoles) {
         checkNotNull(userRoleDao, "userRoleDao must not be null");
+        checkTrue(cacheTtlSeconds > 0, "cacheTtlSeconds must be positive");
 
+        this.personService = personService;
         this.userRoleDao = userRoleDao;
         this.changeLogService = changeLogService;
+        this.roleCache = new ExpiringCache<>(MAX_CACHED_USERS, cacheTtlSeconds, TimeUnit.SECONDS);
+        this.trustTokenRoles = trustTokenRoles;
     }
 
 
-
     public boolean hasRole(String userName, SystemRole... requiredRoles) {
-        return hasRole(userName, SetUtilities.map(asSet(requiredRoles), Enum::name));
+        Set<String> userRoles = getUserRoles(userName);
+        for (SystemRole requiredRole : requiredRoles) {
+            if (! userRoles.contains(requiredRole.name())) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
     public boolean hasRole(String userName, String... requiredRoles) {
-        return hasRole(userName, SetUtilities.fromArray(requiredRoles));
+        Set<String> userRoles = getUserRoles(userName);
+        for (String requiredRole : requiredRoles) {
+            if (! userRoles.contains(requiredRole)) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
     public boolean hasRole(String userName, Set<String> requiredRoles) {
-        Set<String> userRoles = userRoleDao.getUserRoles(userName);
+        Set<String> userRoles = getUserRoles(userName);
         return userRoles.containsAll(requiredRoles);
     }
 
 
     public boolean hasAnyRole(String userName, SystemRole... requiredRoles) {
-        return hasAnyRole(userName, SetUtilities.map(asSet(requiredRoles), Enum::name));
+        Set<String> userRoles = getUserRoles(userName);
+        for (SystemRole requiredRole : requiredRoles) {
+            if (userRoles.contains(requiredRole.name())) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -98,7 +143,7 @@ public class UserRoleService {
     }
 
     public boolean hasAnyRole(String userName, Set<String> requiredRoles) {
-        Set<String> userRoles = userRoleDao.getUserRoles(userName);
+        Set<String> userRoles = getUserRoles(userName);
         return ! SetUtilities.intersection(userRoles, requiredRoles)
                     .isEmpty();
     }
@@ -139,12 +184,86 @@ public class UserRoleService {
             changeLogService.write(logEntry);
         }
 
-        return userRoleDao.updateRoles(targetUserName, newRoles);
+        boolean result = userRoleDao.updateRoles(targetUserName, newRoles);
+
+        String key = toCacheKey(targetUserName);
+        lastRoleUpdates.put(key, System.currentTimeMillis());
+        roleCache.invalidate(key);
+
+        return result;
     }
 
 
+    /**
+     * @return an unmodifiable set of the roles held by the user, possibly cached
+     */
     public Set<String> getUserRoles(String userName) {
-        return userRoleDao.getUserRoles(userName);
+        if (userName == null) {
+            return Collections.emptySet();
+        }
+
+        return roleCache.get(
+                toCacheKey(userName),
+                k -> Collections.unmodifiableSet(userRoleDao.getUserRoles(userName)));
+    }
+
+
+    /**
+     * Populates the cache with a role snapshot (typically taken from a JWT)
+     * if the user is not already cached.  Snapshots are only used when
+     * trusting of token roles has been enabled
+     * (<code>waltz.user.roles.trust.token</code>) and the snapshot was
+     * taken after both this service started and the user's roles were last
+     * updated via this service.
+     *
+     * @param issuedAt  time (in millis) the snapshot was taken
+     * @return true if the snapshot was accepted
+     */
+    public boolean seedRoles(String userName, Set<String> roles, long issuedAt) {
+        if (! trustTokenRoles || userName == null || roles == null) {
+            return false;
+        }
+
+        String key = toCacheKey(userName);
+        long lastUpdate = lastRoleUpdates.getOrDefault(key, startedAt);
+
+        return issuedAt >= Math.max(lastUpdate, startedAt)
+                && roleCache.putIfAbsent(key, Collections.unmodifiableSet(new HashSet<>(roles)));
+    }
+
+
+    public void invalidateRoleCache(String userName) {
+        if (userName != null) {
+            roleCache.invalidate(toCacheKey(userName));
+        }
+    }
+
+
+    public void invalidateRoleCache() {
+        roleCache.invalidateAll();
+    }
+
+
+    public int getRoleCacheSize() {
+        return roleCache.size();
+    }
+
+
+    public long getRoleCacheHitCount() {
+        return roleCache.getHitCount();
+    }
+
+
+    public long getRoleCacheMissCount() {
+        return roleCache.getMissCount();
+    }
+
+
+    // -- HELPERS ---
+
+    private static String toCacheKey(String userName) {
+        // role lookups are case insensitive
+        return userName.toLowerCase(Locale.ROOT);
     }
 
 }
@@ -0,0 +1,84 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.access_log;
+
+import com.khartec.waltz.model.accesslog.AccessTime;
+import com.khartec.waltz.model.accesslog.ImmutableAccessTime;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static org.junit.Assert.*;
+
+public class ActiveUserWindowTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 6, 1, 12, 0);
+
+
+    @Test
+    public void onlyLatestAccessPerUserIsKept() {
+        ActiveUserWindow window = new ActiveUserWindow(Duration.ofHours(1));
+        window.record("bob", NOW.minusMinutes(10));
+        window.record("bob", NOW.minusMinutes(30));
+        window.record("alice", NOW.minusMinutes(20));
+
+        List<AccessTime> active = window.findActiveUsersSince(NOW, NOW.minusHours(1));
+
+        assertEquals(newArrayList("bob", "alice"), map(active, AccessTime::userId));
+        assertEquals(NOW.minusMinutes(10), active.get(0).createdAt());
+    }
+
+
+    @Test
+    public void usersOutsideTheQueryAreExcludedAndOutsideTheWindowArePruned() {
+        ActiveUserWindow window = new ActiveUserWindow(Duration.ofHours(1));
+        window.seed(newArrayList(
+                ImmutableAccessTime.builder().userId("old").createdAt(NOW.minusHours(2)).build(),
+                ImmutableAccessTime.builder().userId("alice").createdAt(NOW.minusMinutes(40)).build()));
+        window.record("bob", NOW.minusMinutes(5));
+
+        assertTrue(window.isSeeded());
+        assertEquals(
+                newArrayList("bob"),
+                map(window.findActiveUsersSince(NOW, NOW.minusMinutes(30)), AccessTime::userId));
+        assertEquals("'old' is pruned, it is outside the window", 2, window.size());
+    }
+
+
+
+    @Test
+    public void mergedAccessesFromOtherNodesNeverRewindALaterAccess() {
+        ActiveUserWindow window = new ActiveUserWindow(Duration.ofHours(1));
+        window.record("bob", NOW.minusMinutes(5));
+        window.merge(newArrayList(
+                ImmutableAccessTime.builder().userId("bob").createdAt(NOW.minusMinutes(15)).build(),
+                ImmutableAccessTime.builder().userId("carol").createdAt(NOW.minusMinutes(10)).build()));
+
+        List<AccessTime> active = window.findActiveUsersSince(NOW, NOW.minusHours(1));
+
+        assertEquals(newArrayList("bob", "carol"), map(active, AccessTime::userId));
+        assertEquals(NOW.minusMinutes(5), active.get(0).createdAt());
+    }
+
+}
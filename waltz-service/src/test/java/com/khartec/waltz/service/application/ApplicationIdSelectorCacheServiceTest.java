@@ -0,0 +1,55 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.application;
+
+import org.jooq.Record1;
+import org.jooq.SQLDialect;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+
+import java.util.stream.LongStream;
+
+import static com.khartec.waltz.service.application.ApplicationIdSelectorCacheService.MAX_INLINE_IDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ApplicationIdSelectorCacheServiceTest {
+
+    @Test
+    public void smallIdSetsAreGivenAsBindParams() {
+        Select<Record1<Long>> selector = ApplicationIdSelectorCacheService.mkSelector(new long[]{1, 2, 3});
+
+        assertEquals(3, selector.getBindValues().size());
+    }
+
+
+    @Test
+    public void largeIdSetsAreGivenAsChunkedLiterals() {
+        long[] ids = LongStream.range(0, MAX_INLINE_IDS * 2 + 1).toArray();
+        Select<Record1<Long>> selector = ApplicationIdSelectorCacheService.mkSelector(ids);
+
+        String sql = DSL.using(SQLDialect.H2).render(selector).toLowerCase();
+
+        assertTrue("no bind params", selector.getBindValues().isEmpty());
+        assertEquals("one in list per chunk", 3, sql.split(" in \\(").length - 1);
+        assertTrue(sql.contains(Long.toString(ids.length - 1)));
+    }
+
+}
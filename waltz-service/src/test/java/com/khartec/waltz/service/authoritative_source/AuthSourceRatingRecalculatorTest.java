@@ -0,0 +1,193 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.authoritative_source;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.application.ApplicationKind;
+import com.khartec.waltz.model.application.ImmutableApplication;
+import com.khartec.waltz.model.application.LifecyclePhase;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingChange;
+import com.khartec.waltz.model.authoritativesource.ImmutableAuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.datatype.DataTypeDecorator;
+import com.khartec.waltz.model.datatype.ImmutableDataType;
+import com.khartec.waltz.model.datatype.ImmutableDataTypeDecorator;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlow;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import com.khartec.waltz.model.rating.RagRating;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.model.utils.IdUtilities.indexById;
+
+public class AuthSourceRatingRecalculatorTest {
+
+    private static final long ORG_UNIT_ID = 20L;
+    private static final long AUTH_APP_ID = 200L;
+    private static final long OTHER_APP_ID = 201L;
+    private static final long TARGET_APP_ID = 300L;
+    private static final long DATA_TYPE_ID = 10L;
+
+    private final Map<Long, Application> appsById = indexById(newArrayList(
+            mkApp(AUTH_APP_ID),
+            mkApp(OTHER_APP_ID),
+            mkApp(TARGET_APP_ID)));
+
+    private final Map<Long, DataType> dataTypesById = indexById(newArrayList(
+            ImmutableDataType.builder()
+                    .id(DATA_TYPE_ID)
+                    .code("TRADE_DATA")
+                    .name("Trade Data")
+                    .description("")
+                    .build()));
+
+    private final AuthoritativeSourceResolver resolver = new AuthoritativeSourceResolver(newArrayList(
+            ImmutableAuthoritativeRatingVantagePoint.builder()
+                    .vantagePoint(mkRef(EntityKind.ORG_UNIT, ORG_UNIT_ID))
+                    .vantagePointRank(1)
+                    .dataTypeCode("TRADE_DATA")
+                    .dataType(mkRef(EntityKind.DATA_TYPE, DATA_TYPE_ID))
+                    .dataTypeRank(1)
+                    .applicationId(AUTH_APP_ID)
+                    .rating(AuthoritativenessRating.PRIMARY)
+                    .build()));
+
+
+    @Test
+    public void onlyChangedDecoratorsAreReturned() {
+        Map<Long, LogicalFlow> flowsById = indexById(newArrayList(
+                mkFlow(1L, mkRef(EntityKind.APPLICATION, AUTH_APP_ID)),
+                mkFlow(2L, mkRef(EntityKind.APPLICATION, OTHER_APP_ID))));
+
+        List<DataTypeDecorator> decorators = newArrayList(
+                mkDecorator(100L, 1L, AuthoritativenessRating.PRIMARY),
+                mkDecorator(101L, 2L, AuthoritativenessRating.NO_OPINION));
+
+        List<AuthoritativeRatingChange> changes = AuthSourceRatingRecalculator.calculateChanges(
+                decorators,
+                flowsById,
+                appsById,
+                dataTypesById,
+                resolver);
+
+        Assert.assertEquals(1, changes.size());
+        AuthoritativeRatingChange change = changes.get(0);
+        Assert.assertEquals(101L, change.decoratorId());
+        Assert.assertEquals(2L, change.logicalFlowId());
+        Assert.assertEquals(AuthoritativenessRating.NO_OPINION, change.currentRating());
+        Assert.assertEquals(AuthoritativenessRating.DISCOURAGED, change.newRating());
+    }
+
+
+    @Test
+    public void missingRatingsAreTreatedAsNoOpinion() {
+        Map<Long, LogicalFlow> flowsById = indexById(newArrayList(
+                mkFlow(1L, mkRef(EntityKind.APPLICATION, AUTH_APP_ID))));
+
+        List<AuthoritativeRatingChange> changes = AuthSourceRatingRecalculator.calculateChanges(
+                newArrayList(mkDecorator(100L, 1L, null)),
+                flowsById,
+                appsById,
+                dataTypesById,
+                resolver);
+
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(AuthoritativenessRating.NO_OPINION, changes.get(0).currentRating());
+        Assert.assertEquals(AuthoritativenessRating.PRIMARY, changes.get(0).newRating());
+    }
+
+
+    @Test
+    public void nonApplicationFlowsAreRatedAsNoOpinion() {
+        Map<Long, LogicalFlow> flowsById = indexById(newArrayList(
+                mkFlow(1L, mkRef(EntityKind.ACTOR, 5L))));
+
+        List<AuthoritativeRatingChange> changes = AuthSourceRatingRecalculator.calculateChanges(
+                newArrayList(mkDecorator(100L, 1L, AuthoritativenessRating.DISCOURAGED)),
+                flowsById,
+                appsById,
+                dataTypesById,
+                resolver);
+
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(AuthoritativenessRating.NO_OPINION, changes.get(0).newRating());
+    }
+
+
+    @Test
+    public void decoratorsOfUnknownFlowsAreIgnored() {
+        List<AuthoritativeRatingChange> changes = AuthSourceRatingRecalculator.calculateChanges(
+                newArrayList(mkDecorator(100L, 99L, AuthoritativenessRating.DISCOURAGED)),
+                indexById(newArrayList(mkFlow(1L, mkRef(EntityKind.APPLICATION, AUTH_APP_ID)))),
+                appsById,
+                dataTypesById,
+                resolver);
+
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+
+    // -- HELPERS ---
+
+    private static Application mkApp(long id) {
+        return ImmutableApplication.builder()
+                .id(id)
+                .name("app-" + id)
+                .description("")
+                .organisationalUnitId(ORG_UNIT_ID)
+                .applicationKind(ApplicationKind.IN_HOUSE)
+                .lifecyclePhase(LifecyclePhase.PRODUCTION)
+                .overallRating(RagRating.G)
+                .build();
+    }
+
+
+    private static LogicalFlow mkFlow(long id, EntityReference source) {
+        return ImmutableLogicalFlow.builder()
+                .id(id)
+                .source(source)
+                .target(mkRef(EntityKind.APPLICATION, TARGET_APP_ID))
+                .lastUpdatedBy("test")
+                .build();
+    }
+
+
+    private static DataTypeDecorator mkDecorator(long id,
+                                                 long flowId,
+                                                 AuthoritativenessRating rating) {
+        return ImmutableDataTypeDecorator.builder()
+                .id(id)
+                .entityReference(mkRef(EntityKind.LOGICAL_DATA_FLOW, flowId))
+                .decoratorEntity(mkRef(EntityKind.DATA_TYPE, DATA_TYPE_ID))
+                .rating(Optional.ofNullable(rating))
+                .lastUpdatedBy("test")
+                .build();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.complexity;
+
+import com.khartec.waltz.model.complexity.ComplexityKind;
+import com.khartec.waltz.model.complexity.ComplexityScore;
+import com.khartec.waltz.model.complexity.ComplexityScoreDelta;
+import com.khartec.waltz.model.complexity.ImmutableComplexityScore;
+import org.junit.Test;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+
+public class ComplexityRatingServiceTest {
+
+    @Test
+    public void deltaContainsOnlyChangedScores() {
+        ComplexityScoreDelta delta = ComplexityRatingService.calculateDelta(
+                newArrayList(
+                        mkScore(1, ComplexityKind.CONNECTION, 0.5),
+                        mkScore(1, ComplexityKind.SERVER, 0.25),
+                        mkScore(2, ComplexityKind.CONNECTION, 0.75)),
+                newArrayList(
+                        mkScore(1, ComplexityKind.CONNECTION, 0.5),
+                        mkScore(1, ComplexityKind.SERVER, 0.3),
+                        mkScore(3, ComplexityKind.MEASURABLE, 1)));
+
+        assertEquals(newArrayList(mkScore(3, ComplexityKind.MEASURABLE, 1)), delta.inserts());
+        assertEquals(newArrayList(mkScore(1, ComplexityKind.SERVER, 0.3)), delta.updates());
+        assertEquals(newArrayList(mkScore(2, ComplexityKind.CONNECTION, 0.75)), delta.deletes());
+    }
+
+
+    @Test
+    public void scoresAreComparedAtStoredPrecision() {
+        ComplexityScoreDelta delta = ComplexityRatingService.calculateDelta(
+                newArrayList(mkScore(1, ComplexityKind.CONNECTION, 0.333)),
+                newArrayList(mkScore(1, ComplexityKind.CONNECTION, 1.0 / 3)));
+
+        assertEquals(0, delta.size());
+    }
+
+
+    @Test
+    public void noExistingScoresGivesOnlyInserts() {
+        ComplexityScoreDelta delta = ComplexityRatingService.calculateDelta(
+                emptyList(),
+                newArrayList(mkScore(1, ComplexityKind.CONNECTION, 0.1)));
+
+        assertEquals(1, delta.inserts().size());
+        assertEquals(1, delta.size());
+    }
+
+
+    // -- HELPERS ---
+
+    private static ComplexityScore mkScore(long appId, ComplexityKind kind, double score) {
+        return ImmutableComplexityScore
+                .builder()
+                .id(appId)
+                .kind(kind)
+                .score(score)
+                .build();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.entity_hierarchy;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyDelta;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
+import com.khartec.waltz.model.entity_hierarchy.ImmutableEntityHierarchyItem;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static java.util.Collections.emptyList;
+
+public class EntityHierarchyServiceTest {
+
+    @Test
+    public void subtreeItemsIncludeSelfAndAllAncestors() {
+        // 1 -> 2 -> [3 -> [4]]   where 3 is the subtree root
+        Map<Long, Long> subtree = new HashMap<>();
+        subtree.put(3L, null);
+        subtree.put(4L, 3L);
+
+        List<EntityHierarchyItem> items = EntityHierarchyService.mkSubtreeItems(
+                EntityKind.ORG_UNIT,
+                newArrayList(2L, 1L),
+                subtree);
+
+        Set<EntityHierarchyItem> expected = new HashSet<>(newArrayList(
+                mkItem(3, 3, 3),
+                mkItem(3, 2, 2),
+                mkItem(3, 1, 1),
+                mkItem(4, 4, 4),
+                mkItem(4, 3, 3),
+                mkItem(4, 2, 2),
+                mkItem(4, 1, 1)));
+
+        Assert.assertEquals(expected, new HashSet<>(items));
+    }
+
+
+    @Test
+    public void subtreeRootWithNoAncestorsIsLevelOne() {
+        Map<Long, Long> subtree = new HashMap<>();
+        subtree.put(3L, null);
+
+        List<EntityHierarchyItem> items = EntityHierarchyService.mkSubtreeItems(
+                EntityKind.ORG_UNIT,
+                emptyList(),
+                subtree);
+
+        Assert.assertEquals(newArrayList(mkItem(3, 3, 1)), items);
+    }
+
+
+    @Test
+    public void deltaOnlyContainsDifferences() {
+        List<EntityHierarchyItem> existing = newArrayList(
+                mkItem(3, 3, 2),
+                mkItem(3, 1, 1),
+                mkItem(4, 4, 3));
+
+        List<EntityHierarchyItem> required = newArrayList(
+                mkItem(3, 3, 3),
+                mkItem(3, 2, 2),
+                mkItem(4, 4, 3));
+
+        EntityHierarchyDelta delta = EntityHierarchyService.calculateDelta(existing, required);
+
+        Assert.assertEquals(newArrayList(mkItem(3, 2, 2)), delta.inserts());
+        Assert.assertEquals(newArrayList(mkItem(3, 3, 3)), delta.updates());
+        Assert.assertEquals(newArrayList(mkItem(3, 1, 1)), delta.deletes());
+        Assert.assertEquals(3, delta.size());
+    }
+
+
+    @Test
+    public void deltaIsEmptyWhenNothingHasChanged() {
+        List<EntityHierarchyItem> items = newArrayList(
+                mkItem(3, 3, 2),
+                mkItem(3, 1, 1));
+
+        Assert.assertEquals(0, EntityHierarchyService.calculateDelta(items, items).size());
+    }
+
+
+    // -- HELPERS ---
+
+    private static EntityHierarchyItem mkItem(long id, long ancestorId, int level) {
+        return ImmutableEntityHierarchyItem.builder()
+                .id(id)
+                .parentId(ancestorId)
+                .level(level)
+                .kind(EntityKind.ORG_UNIT)
+                .build();
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.entity_search;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.ImmutableEntityReference;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.EntitySearchOptions;
+import com.khartec.waltz.model.entity_search.ImmutableEntitySearchDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class EntitySearchIndexTest {
+
+    private final EntitySearchIndex index = new EntitySearchIndex();
+
+
+    @Before
+    public void setUp() {
+        index.replaceAll(newArrayList(
+                mkDoc(1, "Trade Booking", "TB-001"),
+                mkDoc(2, "Booking Engine", "BE-002", "Bookie"),
+                mkDoc(3, "Settlements", "TRADE-003"),
+                mkDoc(4, "Reporting", "RP-004", "Trade Reporter")));
+    }
+
+
+    @Test
+    public void matchesAreRankedByTier() {
+        // code prefix, then name, then alias
+        assertEquals(newArrayList(3L, 1L, 4L), search("trade"));
+    }
+
+
+    @Test
+    public void namesAreRankedByRelevancy() {
+        assertEquals(newArrayList(2L, 1L), search("booking"));
+    }
+
+
+    @Test
+    public void allTermsMustMatch() {
+        assertEquals(newArrayList(1L), search("trade book"));
+        assertTrue(search("trade nothing").isEmpty());
+    }
+
+
+    @Test
+    public void searchIsCaseInsensitive() {
+        assertEquals(newArrayList(2L), search("BE-00"));
+    }
+
+
+    @Test
+    public void updatesAreVisibleImmediately() {
+        index.update(
+                newArrayList(mkDoc(5, "Trade Capture", "TC-005")),
+                newArrayList(1L));
+
+        assertEquals(newArrayList(3L, 5L, 4L), search("trade"));
+        assertEquals(4, index.size());
+    }
+
+
+    @Test
+    public void replacedDocumentsAreNotMatchedOnOldValues() {
+        index.update(
+                newArrayList(mkDoc(1, "Order Management", "OM-001")),
+                Collections.emptyList());
+
+        assertEquals(newArrayList(3L, 4L), search("trade"));
+        assertEquals(newArrayList(1L), search("order"));
+    }
+
+
+    @Test
+    public void lifecycleStatusIsRespected() {
+        EntitySearchDocument removed = ImmutableEntitySearchDocument
+                .copyOf(mkDoc(6, "Trade Archive", "TA-006"))
+                .withEntityReference(ImmutableEntityReference.builder()
+                        .kind(EntityKind.APPLICATION)
+                        .id(6)
+                        .name("Trade Archive")
+                        .entityLifecycleStatus(EntityLifecycleStatus.REMOVED)
+                        .build());
+        index.update(newArrayList(removed), Collections.emptyList());
+
+        assertEquals(newArrayList(3L, 1L, 4L), search("trade"));
+    }
+
+
+    // -- HELPERS ---
+
+    private List<Long> search(String query) {
+        return index
+                .search(EntitySearchOptions.mkForEntity(EntityKind.APPLICATION, query))
+                .stream()
+                .map(EntityReference::id)
+                .collect(toList());
+    }
+
+
+    private static EntitySearchDocument mkDoc(long id, String name, String code, String... aliases) {
+        return ImmutableEntitySearchDocument.builder()
+                .entityReference(EntityReference.mkRef(EntityKind.APPLICATION, id, name))
+                .codes(newArrayList(code))
+                .aliases(newArrayList(aliases))
+                .build();
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.issuance;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.issuance.IssuanceJob;
+import com.khartec.waltz.model.system.job_log.JobStatus;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.*;
+
+public class IssuanceJobServiceTest {
+
+    private static final EntityReference RUN = mkRef(EntityKind.SURVEY_RUN, 1);
+
+
+    @Test
+    public void failedAttemptsAreRetriedAndProgressIsReported() throws InterruptedException {
+        IssuanceJobService service = new IssuanceJobService(1, 10, 3, 0, 60);
+        AtomicInteger calls = new AtomicInteger();
+
+        service.submit(RUN, "admin", progress -> {
+            progress.instances(5, 10);
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("boom");
+            }
+            progress.instances(10, 10);
+            progress.recipients(20, 20);
+        });
+
+        IssuanceJob job = awaitCompletion(service, RUN);
+
+        assertEquals(JobStatus.SUCCESS, job.status());
+        assertEquals(3, job.attempts());
+        assertEquals(10, job.instancesIssued());
+        assertEquals(10, job.instanceCount());
+        assertEquals(20, job.recipientsIssued());
+        assertEquals(20, job.recipientCount());
+        assertFalse(job.error().isPresent());
+    }
+
+
+    @Test
+    public void successActionRunsOnceAfterRetries() throws InterruptedException {
+        IssuanceJobService service = new IssuanceJobService(1, 10, 3, 0, 60);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger notifications = new AtomicInteger();
+
+        service.submit(
+                RUN,
+                "admin",
+                progress -> {
+                    if (calls.incrementAndGet() < 3) {
+                        throw new IllegalStateException("boom");
+                    }
+                },
+                () -> {
+                    notifications.incrementAndGet();
+                    throw new IllegalStateException("mail server down");
+                });
+
+        IssuanceJob job = awaitCompletion(service, RUN);
+
+        assertEquals(JobStatus.SUCCESS, job.status());
+        assertEquals(3, job.attempts());
+        assertEquals(1, notifications.get());
+    }
+
+
+    @Test
+    public void jobFailsOnceAttemptsAreExhausted() throws InterruptedException {
+        IssuanceJobService service = new IssuanceJobService(1, 10, 2, 0, 60);
+
+        service.submit(RUN, "admin", progress -> {
+            throw new IllegalStateException("boom");
+        });
+
+        IssuanceJob job = awaitCompletion(service, RUN);
+
+        assertEquals(JobStatus.FAILURE, job.status());
+        assertEquals(2, job.attempts());
+        assertEquals("boom", job.error().orElse(null));
+    }
+
+
+    @Test
+    public void onlyOneJobPerRunIsActive() throws InterruptedException {
+        IssuanceJobService service = new IssuanceJobService(2, 10, 1, 0, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        IssuanceJob first = service.submit(RUN, "admin", progress -> {
+            calls.incrementAndGet();
+            awaitQuietly(release);
+        });
+        try {
+            service.submit(RUN, "someone-else", progress -> calls.incrementAndGet());
+            fail("a second job for an active run should be rejected");
+        } catch (IllegalStateException expected) {
+            // the existing job is untouched
+            assertEquals(first.submittedAt(), service.findJob(RUN).get().submittedAt());
+        }
+
+        release.countDown();
+        assertEquals(JobStatus.SUCCESS, awaitCompletion(service, RUN).status());
+        assertEquals(1, calls.get());
+
+        // once finished the run may be issued again
+        service.submit(RUN, "admin", progress -> calls.incrementAndGet());
+        awaitCompletion(service, RUN);
+        assertEquals(2, calls.get());
+    }
+
+
+    @Test
+    public void jobsAreKeyedByRunIgnoringName() {
+        IssuanceJobService service = new IssuanceJobService(1, 10, 1, 0, 60);
+
+        service.submit(mkRef(EntityKind.ATTESTATION_RUN, 2, "named"), "admin", progress -> {});
+
+        assertTrue(service.findJob(mkRef(EntityKind.ATTESTATION_RUN, 2)).isPresent());
+        assertFalse(service.findJob(mkRef(EntityKind.SURVEY_RUN, 2)).isPresent());
+    }
+
+
+    // -- HELPERS ---
+
+    private static IssuanceJob awaitCompletion(IssuanceJobService service,
+                                               EntityReference run) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            IssuanceJob job = service.findJob(run).orElseThrow(IllegalStateException::new);
+            if (job.completedAt().isPresent()) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Issuance job did not complete in time");
+    }
+
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.data.logical_flow.LogicalFlowGraphDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.HierarchyQueryScope;
+import com.khartec.waltz.model.IdSelectionOptions;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowStatistics;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.model.IdSelectionOptions.mkOpts;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class LogicalFlowGraphServiceTest {
+
+    private static final IdSelectionOptions ORG_UNIT_OPTIONS = mkOpts(
+            mkRef(EntityKind.ORG_UNIT, 1),
+            HierarchyQueryScope.CHILDREN);
+
+    private static final long[] APP_IDS = {1, 2};
+
+    // flows currently in the 'database'
+    private final Map<Long, LogicalFlowGraphEdge> flows = new ConcurrentHashMap<>();
+
+    // runs after flows have been loaded by id, before they are returned
+    private Runnable afterFlowLoad = () -> {};
+
+    private final LogicalFlowGraphDao dao = new LogicalFlowGraphDao(DSL.using(SQLDialect.H2)) {
+        @Override
+        public List<LogicalFlowGraphEdge> findAllActive() {
+            return new ArrayList<>(flows.values());
+        }
+
+        @Override
+        public List<LogicalFlowGraphEdge> findActiveByFlowIds(Collection<Long> flowIds) {
+            List<LogicalFlowGraphEdge> edges = flowIds
+                    .stream()
+                    .map(flows::get)
+                    .filter(e -> e != null)
+                    .collect(Collectors.toList());
+            Runnable hook = afterFlowLoad;
+            afterFlowLoad = () -> {};
+            hook.run();
+            return edges;
+        }
+
+        @Override
+        public List<LogicalFlowGraphEdge> findActiveByEndpoints(Collection<EntityReference> refs,
+                                                                boolean inbound,
+                                                                boolean outbound) {
+            return flows.values()
+                    .stream()
+                    .filter(e -> (inbound && refs.contains(e.target())) || (outbound && refs.contains(e.source())))
+                    .collect(Collectors.toList());
+        }
+    };
+
+    private final LogicalFlowGraphService svc = new LogicalFlowGraphService(dao, true);
+
+
+    @Test
+    public void statisticsAreNotAvailableUntilLoaded() {
+        put(mkEdge(12, 1, 2, 10L));
+
+        assertFalse(svc.isReady());
+        svc.rebuild();
+        assertTrue(svc.isReady());
+    }
+
+
+    @Test
+    public void lineageIsAnsweredFromTheDatabaseUntilLoaded() {
+        put(mkEdge(12, 1, 2, 10L));
+        put(mkEdge(23, 2, 3, 10L));
+        put(mkEdge(34, 3, 4, 20L));
+
+        assertEquals(
+                asSet(12L, 23L, 34L),
+                flowIds(svc.findDownstream(app(1), Optional.empty(), Collections.emptySet())));
+        assertEquals(
+                asSet(12L, 23L),
+                flowIds(svc.findDownstream(app(1), Optional.empty(), asSet(10L))));
+        assertEquals(
+                newArrayList(12L, 23L, 34L),
+                svc.findShortestPath(app(1), app(4), Collections.emptySet())
+                        .stream()
+                        .map(LogicalFlowGraphEdge::flowId)
+                        .collect(Collectors.toList()));
+        assertFalse(svc.isReady());
+    }
+
+
+    @Test
+    public void rollupsAreReusedWhilstNothingChanges() {
+        put(mkEdge(12, 1, 2, 10L));
+        put(mkEdge(23, 2, 3, 10L));
+        svc.rebuild();
+
+        LogicalFlowStatistics first = svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS);
+        LogicalFlowStatistics second = svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS.clone());
+
+        assertEquals(first, second);
+        assertEquals(1, svc.getStatisticsRollupMissCount());
+        assertEquals(1, svc.getStatisticsRollupHitCount());
+    }
+
+
+    @Test
+    public void rollupsAreUpdatedInPlaceWhenFlowsChange() {
+        put(mkEdge(12, 1, 2, 10L));
+        put(mkEdge(23, 2, 3, 10L));
+        put(mkEdge(42, 4, 2, 20L));
+        svc.rebuild();
+
+        LogicalFlowStatistics before = svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS);
+        assertEquals(1, before.flowCounts().outbound(), 0);
+        assertEquals(1, before.flowCounts().inbound(), 0);
+
+        // add an outbound flow, change the data types of another and remove the inbound flow
+        put(mkEdge(15, 1, 5, 20L));
+        put(mkEdge(23, 2, 3, 20L));
+        flows.remove(42L);
+        svc.refreshFlows(newArrayList(15L, 23L, 42L));
+
+        LogicalFlowStatistics after = svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS);
+
+        assertEquals("rollup should not have been recalculated", 1, svc.getStatisticsRollupMissCount());
+        assertEquals(2, after.flowCounts().outbound(), 0);
+        assertEquals(0, after.flowCounts().inbound(), 0);
+        assertEquals(2, after.appCounts().outbound(), 0);
+        assertEquals(0, after.appCounts().inbound(), 0);
+        assertEquals(
+                "incrementally maintained rollup matches a full recalculation",
+                new LogicalFlowGraph(flows.values()).calculateStatistics(APP_IDS),
+                after);
+    }
+
+
+    @Test
+    public void rollupsAreRecalculatedWhenTheirAppsChange() {
+        put(mkEdge(12, 1, 2, 10L));
+        put(mkEdge(23, 2, 3, 10L));
+        svc.rebuild();
+
+        svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS);
+        LogicalFlowStatistics moved = svc.calculateStatistics(ORG_UNIT_OPTIONS, new long[] {1, 2, 3});
+
+        assertEquals(2, svc.getStatisticsRollupMissCount());
+        assertEquals(2, moved.flowCounts().intra(), 0);
+        assertEquals(0, moved.flowCounts().outbound(), 0);
+    }
+
+
+    @Test
+    public void rebuildDiscardsRollups() {
+        put(mkEdge(12, 1, 2, 10L));
+        svc.rebuild();
+        svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS);
+
+        // changed without notifying the service, e.g. by a bulk load
+        put(mkEdge(13, 1, 3, 10L));
+        svc.rebuild();
+
+        assertEquals(1, svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS).flowCounts().outbound(), 0);
+        assertEquals(2, svc.getStatisticsRollupMissCount());
+    }
+
+
+    @Test(timeout = 10_000)  // would deadlock were the update lock held whilst loading
+    public void rollupsCanBeReadWhilstFlowsAreLoaded() throws Exception {
+        put(mkEdge(12, 1, 2, 10L));
+        svc.rebuild();
+
+        AtomicReference<LogicalFlowStatistics> readDuringLoad = new AtomicReference<>();
+        afterFlowLoad = () -> readDuringLoad.set(CompletableFuture
+                .supplyAsync(() -> svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS))
+                .join());
+
+        put(mkEdge(13, 1, 3, 10L));
+        svc.refreshFlows(newArrayList(13L));
+
+        assertEquals(1, readDuringLoad.get().flowCounts().intra(), 0);
+        assertEquals(1, svc.calculateStatistics(ORG_UNIT_OPTIONS, APP_IDS).flowCounts().outbound(), 0);
+    }
+
+
+    @Test
+    public void flowsChangedWhilstLoadingAreLoadedAgain() {
+        put(mkEdge(23, 2, 3, 10L));
+        svc.rebuild();
+
+        put(mkEdge(23, 2, 4, 10L));
+
+        // whilst the first refresh is loading the flow it changes again, and that change is applied first
+        afterFlowLoad = () -> {
+            put(mkEdge(23, 2, 5, 10L));
+            svc.refreshFlows(newArrayList(23L));
+        };
+        svc.refreshFlows(newArrayList(23L));
+
+        assertEquals(
+                "the stale load should not overwrite the newer change",
+                asSet(app(5)),
+                svc.findDownstream(app(2), Optional.empty(), Collections.emptySet())
+                        .stream()
+                        .map(LogicalFlowGraphEdge::target)
+                        .collect(Collectors.toSet()));
+    }
+
+
+    // -- HELPERS ---
+
+    private void put(LogicalFlowGraphEdge edge) {
+        flows.put(edge.flowId(), edge);
+    }
+
+
+    private static EntityReference app(long id) {
+        return mkRef(EntityKind.APPLICATION, id);
+    }
+
+
+    private static LogicalFlowGraphEdge mkEdge(long flowId, long source, long target, Long... dataTypeIds) {
+        return ImmutableLogicalFlowGraphEdge.builder()
+                .flowId(flowId)
+                .source(app(source))
+                .target(app(target))
+                .dataTypeIds(asSet(dataTypeIds))
+                .build();
+    }
+
+
+    private static Set<Long> flowIds(List<LogicalFlowGraphEdge> edges) {
+        return edges.stream().map(LogicalFlowGraphEdge::flowId).collect(Collectors.toSet());
+    }
+
+}
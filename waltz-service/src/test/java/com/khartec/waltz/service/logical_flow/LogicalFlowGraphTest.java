@@ -0,0 +1,183 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowStatistics;
+import com.khartec.waltz.model.tally.Tally;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.Direction;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LogicalFlowGraphTest {
+
+    private static final Set<Long> ANY_DATA_TYPE = Collections.emptySet();
+
+    // 1 -> 2 -> 3 -> 4, 1 -> 5 -> 4 (data type 20), 6 -> 1
+    private final LogicalFlowGraph graph = new LogicalFlowGraph(newArrayList(
+            mkEdge(12, 1, 2, 10L),
+            mkEdge(23, 2, 3, 10L),
+            mkEdge(34, 3, 4, 10L, 20L),
+            mkEdge(15, 1, 5, 20L),
+            mkEdge(54, 5, 4, 20L),
+            mkEdge(61, 6, 1, 10L)));
+
+
+    @Test
+    public void downstreamClosureFollowsAllOutboundFlows() {
+        assertEquals(
+                asSet(12L, 23L, 34L, 15L, 54L),
+                flowIds(graph.traverse(app(1), Direction.DOWNSTREAM, Integer.MAX_VALUE, ANY_DATA_TYPE)));
+    }
+
+
+    @Test
+    public void upstreamClosureFollowsAllInboundFlows() {
+        assertEquals(
+                asSet(34L, 54L, 23L, 12L, 15L, 61L),
+                flowIds(graph.traverse(app(4), Direction.UPSTREAM, Integer.MAX_VALUE, ANY_DATA_TYPE)));
+    }
+
+
+    @Test
+    public void traversalsCanBeRestrictedByHopsAndDataType() {
+        assertEquals(
+                asSet(12L, 15L, 61L),
+                flowIds(graph.traverse(app(1), Direction.BOTH, 1, ANY_DATA_TYPE)));
+
+        assertEquals(
+                asSet(15L, 54L),
+                flowIds(graph.traverse(app(1), Direction.DOWNSTREAM, Integer.MAX_VALUE, asSet(20L))));
+    }
+
+
+    @Test
+    public void shortestPathHasFewestHops() {
+        assertEquals(
+                newArrayList(15L, 54L),
+                pathFlowIds(graph.findShortestPath(app(1), app(4), ANY_DATA_TYPE)));
+
+        assertEquals(
+                newArrayList(12L, 23L, 34L),
+                pathFlowIds(graph.findShortestPath(app(1), app(4), asSet(10L))));
+
+        assertTrue(graph.findShortestPath(app(4), app(1), ANY_DATA_TYPE).isEmpty());
+        assertTrue(graph.findShortestPath(app(99), app(1), ANY_DATA_TYPE).isEmpty());
+    }
+
+
+    @Test
+    public void updatesAddChangeAndRemoveFlows() {
+        graph.update(
+                newArrayList(15L, 34L, 47L),
+                newArrayList(mkEdge(34, 3, 4, 20L), mkEdge(47, 4, 7, 10L)));
+
+        assertEquals(6, graph.edgeCount());
+        assertEquals(
+                newArrayList(12L, 23L, 34L, 47L),
+                pathFlowIds(graph.findShortestPath(app(1), app(7), ANY_DATA_TYPE)));
+        assertTrue(graph.findShortestPath(app(1), app(7), asSet(10L)).isEmpty());
+
+        // removed edge slot is reused
+        graph.update(newArrayList(99L), newArrayList(mkEdge(99, 7, 8, 10L)));
+        assertEquals(7, graph.edgeCount());
+        assertEquals(asSet(99L), flowIds(graph.traverse(app(8), Direction.UPSTREAM, 1, ANY_DATA_TYPE)));
+    }
+
+
+    // -- HELPERS ---
+
+    @Test
+    public void statisticsAreRelativeToTheGivenApps() {
+        LogicalFlowStatistics stats = graph.calculateStatistics(new long[] {1, 2});
+
+        assertEquals(1, stats.flowCounts().intra(), 0);      // 12
+        assertEquals(2, stats.flowCounts().outbound(), 0);   // 23, 15
+        assertEquals(1, stats.flowCounts().inbound(), 0);    // 61
+
+        assertEquals(2, stats.appCounts().intra(), 0);
+        assertEquals(2, stats.appCounts().outbound(), 0);    // 3, 5
+        assertEquals(1, stats.appCounts().inbound(), 0);     // 6
+
+        Map<Long, Map<String, Double>> tallies = stats
+                .dataTypeCounts()
+                .stream()
+                .collect(toMap(
+                        tp -> tp.entityReference().id(),
+                        tp -> tp.tallies().stream().collect(toMap(Tally::id, Tally::count))));
+
+        assertEquals(3, tallies.get(10L).size());
+        assertEquals(1, tallies.get(10L).get("INBOUND"), 0);
+        assertEquals(1, tallies.get(20L).get("OUTBOUND"), 0);
+        assertEquals(1, tallies.get(20L).size());
+    }
+
+
+    @Test
+    public void versionChangesOnUpdate() {
+        long before = graph.version();
+        graph.update(newArrayList(12L), Collections.emptyList());
+        assertTrue(graph.version() > before);
+        assertEquals(0, graph.calculateStatistics(new long[] {1, 2}).flowCounts().intra(), 0);
+    }
+
+
+    private static EntityReference app(long id) {
+        return mkRef(EntityKind.APPLICATION, id);
+    }
+
+
+    private static LogicalFlowGraphEdge mkEdge(long flowId, long source, long target, Long... dataTypeIds) {
+        return ImmutableLogicalFlowGraphEdge.builder()
+                .flowId(flowId)
+                .source(app(source))
+                .target(app(target))
+                .dataTypeIds(asSet(dataTypeIds))
+                .build();
+    }
+
+
+    private static Set<Long> flowIds(List<LogicalFlowGraphEdge> edges) {
+        return edges.stream().map(LogicalFlowGraphEdge::flowId).collect(toSet());
+    }
+
+
+    private static List<Long> pathFlowIds(List<LogicalFlowGraphEdge> edges) {
+        return edges.stream().map(LogicalFlowGraphEdge::flowId).collect(toList());
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.person_hierarchy;
+
+import com.khartec.waltz.common.hierarchy.FlatNode;
+import com.khartec.waltz.common.hierarchy.Forest;
+import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
+import com.khartec.waltz.common.hierarchy.Node;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.*;
+
+public class PersonHierarchyBuilderTest {
+
+    @Test
+    public void recordsAreProducedForEachAncestorWithTheAncestorsLevel() {
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(4)
+                .add("ceo", null)
+                .add("cto", "ceo")
+                .add("dev", "cto")
+                .add("cfo", "ceo")
+                .build();
+
+        assertEquals(
+                asSet(tuple("ceo", "cto", 1),
+                        tuple("ceo", "dev", 1),
+                        tuple("cto", "dev", 2),
+                        tuple("ceo", "cfo", 1)),
+                collect(builder));
+        assertEquals(4, builder.recordCount());
+    }
+
+
+    @Test
+    public void unknownSelfAndBlankManagersAreTreatedAsNoManager() {
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(4)
+                .add("a", "a")
+                .add("b", "nobody")
+                .add("c", null)
+                .add("d", "b")
+                .build();
+
+        assertEquals(asSet(tuple("b", "d", 1)), collect(builder));
+        assertNull(builder.getManagerEmployeeId("a"));
+        assertNull(builder.getManagerEmployeeId("b"));
+        assertEquals("b", builder.getManagerEmployeeId("d"));
+    }
+
+
+    @Test
+    public void peopleInOrBeneathACycleAreExcluded() {
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(5)
+                .add("x", "y")
+                .add("y", "x")
+                .add("z", "x")
+                .add("boss", null)
+                .add("minion", "boss")
+                .build();
+
+        assertEquals(3, builder.excludedCount());
+        assertEquals(asSet(tuple("boss", "minion", 1)), collect(builder));
+        assertNull(builder.getManagerEmployeeId("z"));
+    }
+
+
+    @Test
+    public void changedManagersAreDetectedAndTheirSubtreesFound() {
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(5)
+                .add("ceo", null)
+                .add("cto", "ceo")
+                .add("dev", "cto")
+                .add("cfo", "ceo")
+                .add("new", "cfo")
+                .build();
+
+        Map<String, String> previous = new HashMap<>();
+        previous.put("cto", "cfo");  // cto has moved
+        previous.put("dev", "cto");
+        previous.put("cfo", "ceo");
+
+        Set<String> changed = builder.findEmployeeIdsWithChangedManager(previous);
+        assertEquals(asSet("cto", "new"), changed);
+        assertEquals(asSet("cto", "dev", "new"), builder.findSubtreeEmployeeIds(changed));
+
+        Set<Tuple3<String, String, Integer>> records = new HashSet<>();
+        builder.forEachRecord(singletonList("dev"), (m, e, l) -> records.add(tuple(m, e, l)));
+        assertEquals(asSet(tuple("ceo", "dev", 1), tuple("cto", "dev", 2)), records);
+
+        // with no previous hierarchy everybody with a manager has changed
+        assertEquals(
+                asSet("cto", "dev", "cfo", "new"),
+                builder.findEmployeeIdsWithChangedManager(emptyMap()));
+    }
+
+
+    @Test
+    public void matchesForestBasedDerivation() {
+        Random random = new Random(42);
+        int count = 2_000;
+
+        PersonHierarchyBuilder builder = new PersonHierarchyBuilder(count);
+        List<FlatNode<String, String>> flatNodes = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            String employeeId = "e" + i;
+            // managers always precede their reports, so there are no cycles
+            String managerId = i == 0 || random.nextInt(50) == 0
+                    ? null
+                    : "e" + random.nextInt(i);
+            builder.add(employeeId, managerId);
+            flatNodes.add(new FlatNode<>(employeeId, Optional.ofNullable(managerId), employeeId));
+        }
+        builder.build();
+
+        assertEquals(deriveFromForest(HierarchyUtilities.toForest(flatNodes)), collect(builder));
+    }
+
+
+    // -- HELPERS ---
+
+    private static Set<Tuple3<String, String, Integer>> collect(PersonHierarchyBuilder builder) {
+        Set<Tuple3<String, String, Integer>> records = new HashSet<>();
+        builder.forEachRecord((m, e, l) -> assertTrue(records.add(tuple(m, e, l))));
+        return records;
+    }
+
+
+    private static Set<Tuple3<String, String, Integer>> deriveFromForest(Forest<String, String> forest) {
+        Set<Tuple3<String, String, Integer>> records = new HashSet<>();
+        for (Node<String, String> node : forest.getAllNodes().values()) {
+            List<Node<String, String>> ancestors = HierarchyUtilities.parents(node);
+            for (int i = 0; i < ancestors.size(); i++) {
+                records.add(tuple(ancestors.get(i).getId(), node.getId(), ancestors.size() - i));
+            }
+        }
+        return records;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.query_stats;
+
+import com.khartec.waltz.model.query_stats.QueryStatistic;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class QueryStatsRegistryTest {
+
+    @Test
+    public void fingerprintReplacesLiterals() {
+        assertEquals(
+                "select * from application where id = ? and name = ?",
+                QueryStatsRegistry.fingerprint("select *  from application\n where id = 12 and name = 'it''s'"));
+    }
+
+
+    @Test
+    public void fingerprintCollapsesInLists() {
+        assertEquals(
+                QueryStatsRegistry.fingerprint("select * from t1 where id in (?, ?, ?)"),
+                QueryStatsRegistry.fingerprint("select * from t1 where id in (?)"));
+    }
+
+
+    @Test
+    public void fingerprintOfNullIsBatch() {
+        assertEquals("<batch>", QueryStatsRegistry.fingerprint(null));
+    }
+
+
+    @Test
+    public void executionsAreGroupedByFingerprintAndCaller() {
+        QueryStatsRegistry registry = new QueryStatsRegistry();
+        registry.recordExecution("select 1 from t", "ADao.find", ms(10), 1, 0);
+        registry.recordExecution("select 2 from t", "ADao.find", ms(30), 2, 0);
+        registry.recordExecution("select 2 from t", "BDao.find", ms(5), 1, 0);
+
+        List<QueryStatistic> stats = registry.getQueryStatistics(10);
+        assertEquals(2, stats.size());
+
+        QueryStatistic top = stats.get(0);
+        assertEquals("ADao.find", top.caller());
+        assertEquals(2, top.executionCount());
+        assertEquals(3, top.rowCount());
+        assertTrue(top.maxMillis() >= 30);
+    }
+
+
+    @Test
+    public void resetClearsStatistics() {
+        QueryStatsRegistry registry = new QueryStatsRegistry();
+        registry.recordExecution("select 1 from t", "ADao.find", ms(10), 1, 0);
+        registry.reset();
+        assertEquals(0, registry.getTrackedQueryCount());
+    }
+
+
+    @Test
+    public void histogramPercentilesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+    }
+
+
+    // -- HELPERS ---
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+
+    private static void assertWithin(long expected, long actual) {
+        double precision = expected * 0.125;
+        assertTrue(
+                "expected ~" + expected + " but was " + actual,
+                Math.abs(expected - actual) <= precision);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.report_grid;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.application.ApplicationKind;
+import com.khartec.waltz.model.application.ImmutableApplication;
+import com.khartec.waltz.model.application.LifecyclePhase;
+import com.khartec.waltz.model.rating.RagRating;
+import com.khartec.waltz.model.report_grid.ImmutableReportGridColumnDefinition;
+import com.khartec.waltz.model.report_grid.ReportGridColumnData;
+import com.khartec.waltz.model.report_grid.ReportGridColumnDefinition;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ReportGridColumnarBuilderTest {
+
+    private static final ReportGridColumnDefinition MEASURABLE_COL = mkColumn(EntityKind.MEASURABLE, 10, 1);
+    private static final ReportGridColumnDefinition ASSESSMENT_COL = mkColumn(EntityKind.ASSESSMENT_DEFINITION, 20, 2);
+
+
+    @Test
+    public void cellsAreDictionaryEncodedPerColumnAndOrderedByRow() {
+        ReportGridColumnarBuilder builder = new ReportGridColumnarBuilder(newArrayList(MEASURABLE_COL, ASSESSMENT_COL));
+
+        builder.accept(EntityKind.MEASURABLE, 10, 3, 100);
+        builder.accept(EntityKind.MEASURABLE, 10, 1, 200);
+        builder.accept(EntityKind.MEASURABLE, 10, 2, 100);
+        builder.accept(EntityKind.ASSESSMENT_DEFINITION, 20, 2, 300);
+
+        List<ReportGridColumnData> columns = builder.build(newArrayList(mkApp(1), mkApp(2), mkApp(3)));
+
+        assertEquals(2, columns.size());
+
+        ReportGridColumnData measurableData = columns.get(0);
+        assertEquals(EntityKind.MEASURABLE, measurableData.columnEntityKind());
+        assertEquals(10, measurableData.columnEntityId());
+        assertArrayEquals(new long[] {100, 200}, measurableData.ratingIds());
+        assertArrayEquals(new int[] {0, 1, 2}, measurableData.rows());
+        assertArrayEquals(new int[] {1, 0, 0}, measurableData.ratings());
+
+        ReportGridColumnData assessmentData = columns.get(1);
+        assertEquals(EntityKind.ASSESSMENT_DEFINITION, assessmentData.columnEntityKind());
+        assertArrayEquals(new long[] {300}, assessmentData.ratingIds());
+        assertArrayEquals(new int[] {1}, assessmentData.rows());
+        assertArrayEquals(new int[] {0}, assessmentData.ratings());
+
+        assertEquals(asSet(100L, 200L, 300L), builder.ratingIds());
+    }
+
+
+    @Test
+    public void cellsForUnknownColumnsOrApplicationsAreIgnored() {
+        ReportGridColumnarBuilder builder = new ReportGridColumnarBuilder(newArrayList(MEASURABLE_COL));
+
+        builder.accept(EntityKind.MEASURABLE, 99, 1, 100);
+        builder.accept(EntityKind.ASSESSMENT_DEFINITION, 10, 1, 100);
+        builder.accept(EntityKind.MEASURABLE, 10, 42, 100);
+        builder.accept(EntityKind.MEASURABLE, 10, 1, 200);
+
+        List<ReportGridColumnData> columns = builder.build(newArrayList(mkApp(1)));
+
+        assertEquals(1, columns.size());
+        assertArrayEquals(new int[] {0}, columns.get(0).rows());
+        assertEquals(200L, columns.get(0).ratingIds()[columns.get(0).ratings()[0]]);
+    }
+
+
+    // --- HELPERS ---
+
+    private static ReportGridColumnDefinition mkColumn(EntityKind kind, long id, long position) {
+        return ImmutableReportGridColumnDefinition
+                .builder()
+                .columnEntityReference(mkRef(kind, id))
+                .position(position)
+                .build();
+    }
+
+
+    private static Application mkApp(long id) {
+        return ImmutableApplication.builder()
+                .id(id)
+                .name("app-" + id)
+                .description("")
+                .organisationalUnitId(1L)
+                .applicationKind(ApplicationKind.IN_HOUSE)
+                .lifecyclePhase(LifecyclePhase.PRODUCTION)
+                .overallRating(RagRating.G)
+                .build();
+    }
+
+}
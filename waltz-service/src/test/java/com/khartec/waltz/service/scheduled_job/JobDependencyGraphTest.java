@@ -0,0 +1,152 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.scheduled_job;
+
+import com.khartec.waltz.model.scheduled_job.JobKey;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JobDependencyGraphTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cyclesAreRejected() {
+        new JobDependencyGraph()
+                .declare(JobKey.COMPLEXITY_REBUILD, JobKey.HIERARCHY_REBUILD_MEASURABLE)
+                .declare(JobKey.HIERARCHY_REBUILD_MEASURABLE, JobKey.COMPLEXITY_REBUILD);
+    }
+
+
+    @Test
+    public void declaredServiceDependenciesAreValid() {
+        JobDependencyGraph graph = ScheduledJobService.mkDependencies();
+        assertTrue(graph
+                .prerequisitesOf(JobKey.AUTH_SOURCE_RECALC_FLOW_RATINGS)
+                .contains(JobKey.HIERARCHY_REBUILD_DATA_TYPE));
+        assertTrue(graph
+                .prerequisitesOf(JobKey.HIERARCHY_REBUILD_PERSON)
+                .isEmpty());
+    }
+
+
+    @Test
+    public void entityHierarchyRebuildsRunOneAtATime() throws Exception {
+        List<JobKey> entityHierarchyRebuilds = Arrays.asList(
+                JobKey.HIERARCHY_REBUILD_CHANGE_INITIATIVE,
+                JobKey.HIERARCHY_REBUILD_DATA_TYPE,
+                JobKey.HIERARCHY_REBUILD_ENTITY_STATISTICS,
+                JobKey.HIERARCHY_REBUILD_MEASURABLE,
+                JobKey.HIERARCHY_REBUILD_ORG_UNIT);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Map<JobKey, Runnable> jobs = new EnumMap<>(JobKey.class);
+        entityHierarchyRebuilds.forEach(jk -> jobs.put(jk, () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }));
+
+        ExecutorService executor = Executors.newFixedThreadPool(entityHierarchyRebuilds.size());
+        try {
+            ScheduledJobService
+                    .mkDependencies()
+                    .execute(jobs, jk -> {}, executor)
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(1, maxRunning.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void dependentsRunAfterPrerequisitesEvenIfTheyFail() throws Exception {
+        JobDependencyGraph graph = new JobDependencyGraph()
+                .declare(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, JobKey.HIERARCHY_REBUILD_DATA_TYPE)
+                .declare(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION, JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL);
+
+        List<JobKey> completed = Collections.synchronizedList(new ArrayList<>());
+        Map<JobKey, Runnable> jobs = new EnumMap<>(JobKey.class);
+        jobs.put(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION, () -> completed.add(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION));
+        jobs.put(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, () -> {
+            completed.add(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL);
+            throw new IllegalStateException("expected failure");
+        });
+        jobs.put(JobKey.HIERARCHY_REBUILD_DATA_TYPE, () -> completed.add(JobKey.HIERARCHY_REBUILD_DATA_TYPE));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<JobKey> queued = new ArrayList<>();
+            graph.execute(jobs, queued::add, executor)
+                    .handle((r, e) -> null)
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(
+                    Arrays.asList(
+                            JobKey.HIERARCHY_REBUILD_DATA_TYPE,
+                            JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
+                            JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION),
+                    completed);
+            assertEquals(3, queued.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void independentJobsRunConcurrently() throws Exception {
+        JobDependencyGraph graph = new JobDependencyGraph();
+
+        // each job waits for the other to start, this only completes if they run at the same time
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Runnable job = () -> {
+            bothStarted.countDown();
+            try {
+                assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        Map<JobKey, Runnable> jobs = new EnumMap<>(JobKey.class);
+        jobs.put(JobKey.HIERARCHY_REBUILD_PERSON, job);
+        jobs.put(JobKey.HIERARCHY_REBUILD_ORG_UNIT, job);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            graph.execute(jobs, jk -> {}, executor).get(10, TimeUnit.SECONDS);
+            assertEquals(0, bothStarted.getCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.survey;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.survey.SurveyIssuanceKind;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+
+public class SurveyIssuancePlanTest {
+
+    private static final EntityReference APP_A = mkRef(EntityKind.APPLICATION, 1);
+    private static final EntityReference APP_B = mkRef(EntityKind.APPLICATION, 2);
+
+
+    @Test
+    public void groupIssuanceHasOneInstancePerEntity() {
+        SurveyIssuancePlan plan = new SurveyIssuancePlan(SurveyIssuanceKind.GROUP, mkWanted());
+
+        assertEquals(2, plan.instanceCount());
+        assertEquals(3, plan.recipientCount());
+        assertEquals(
+                newArrayList(APP_A, APP_B),
+                plan.determineInstancesToCreate(emptyMap(), emptyMap()));
+
+        Map<Long, EntityReference> instances = new HashMap<>();
+        instances.put(100L, APP_A);
+        instances.put(101L, APP_B);
+
+        assertEquals(
+                newArrayList(tuple(100L, 10L), tuple(100L, 11L), tuple(101L, 12L)),
+                plan.determineRecipientsToCreate(instances, emptyMap()));
+    }
+
+
+    @Test
+    public void individualIssuanceHasOneInstancePerRecipient() {
+        SurveyIssuancePlan plan = new SurveyIssuancePlan(SurveyIssuanceKind.INDIVIDUAL, mkWanted());
+
+        assertEquals(3, plan.instanceCount());
+        assertEquals(3, plan.recipientCount());
+        assertEquals(
+                newArrayList(APP_A, APP_A, APP_B),
+                plan.determineInstancesToCreate(emptyMap(), emptyMap()));
+
+        Map<Long, EntityReference> instances = new HashMap<>();
+        instances.put(100L, APP_A);
+        instances.put(101L, APP_A);
+        instances.put(102L, APP_B);
+
+        assertEquals(
+                newArrayList(tuple(100L, 10L), tuple(101L, 11L), tuple(102L, 12L)),
+                plan.determineRecipientsToCreate(instances, emptyMap()));
+    }
+
+
+    @Test
+    public void retryingAPartialIndividualIssuanceReusesUnassignedInstances() {
+        SurveyIssuancePlan plan = new SurveyIssuancePlan(SurveyIssuanceKind.INDIVIDUAL, mkWanted());
+
+        // previous attempt created two instances for A, but only attached one recipient
+        Map<Long, EntityReference> instances = new HashMap<>();
+        instances.put(100L, APP_A);
+        instances.put(101L, APP_A);
+
+        Map<Long, Set<Long>> recipients = new HashMap<>();
+        recipients.put(100L, asSet(11L));
+
+        assertEquals(
+                newArrayList(APP_B),
+                plan.determineInstancesToCreate(instances, recipients));
+
+        instances.put(102L, APP_B);
+
+        List<Tuple2<Long, Long>> recipientsToCreate = plan.determineRecipientsToCreate(instances, recipients);
+        assertEquals(
+                newArrayList(tuple(101L, 10L), tuple(102L, 12L)),
+                recipientsToCreate);
+
+        // once complete, nothing more to do
+        recipients.put(101L, asSet(10L));
+        recipients.put(102L, asSet(12L));
+
+        assertEquals(emptyList(), plan.determineInstancesToCreate(instances, recipients));
+        assertEquals(emptyList(), plan.determineRecipientsToCreate(instances, recipients));
+    }
+
+
+    @Test
+    public void retryingAPartialGroupIssuanceOnlyAddsMissingRows() {
+        SurveyIssuancePlan plan = new SurveyIssuancePlan(SurveyIssuanceKind.GROUP, mkWanted());
+
+        Map<Long, EntityReference> instances = new HashMap<>();
+        instances.put(100L, APP_A);
+
+        Map<Long, Set<Long>> recipients = new HashMap<>();
+        recipients.put(100L, asSet(10L));
+
+        assertEquals(
+                newArrayList(APP_B),
+                plan.determineInstancesToCreate(instances, recipients));
+
+        instances.put(101L, APP_B);
+
+        assertEquals(
+                newArrayList(tuple(100L, 11L), tuple(101L, 12L)),
+                plan.determineRecipientsToCreate(instances, recipients));
+    }
+
+
+    // -- HELPERS ---
+
+    private static Map<EntityReference, Set<Long>> mkWanted() {
+        Map<EntityReference, Set<Long>> wanted = new HashMap<>();
+        wanted.put(APP_A, asSet(10L, 11L));
+        wanted.put(APP_B, asSet(12L));
+        return wanted;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.survey.inclusion_evaluator;
+
+import com.khartec.waltz.model.survey.ImmutableSurveyQuestion;
+import com.khartec.waltz.model.survey.ImmutableSurveyQuestionResponse;
+import com.khartec.waltz.model.survey.SurveyQuestion;
+import com.khartec.waltz.model.survey.SurveyQuestionFieldType;
+import com.khartec.waltz.model.survey.SurveyQuestionResponse;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+
+public class InclusionPredicateEngineTest {
+
+    private static final SurveyQuestion checkbox = mkQuestion(1L, "A", null);
+    private static final SurveyQuestion dependent = mkQuestion(2L, "B", "isChecked('A')");
+    private static final SurveyQuestion ditto = mkQuestion(3L, "C", "ditto('B')");
+    private static final List<SurveyQuestion> questions = newArrayList(checkbox, dependent, ditto);
+
+
+    @Test
+    public void predicatesAreEvaluatedAgainstTheSuppliedNamespace() {
+        InclusionPredicateEngine engine = new InclusionPredicateEngine();
+
+        assertEquals(
+                newArrayList("A", "B", "C"),
+                activeExtIds(engine, questions, mkNamespace(questions, true)));
+
+        assertEquals(
+                "same engine, different responses, gives different results",
+                newArrayList("A"),
+                activeExtIds(engine, questions, mkNamespace(questions, false)));
+    }
+
+
+    @Test
+    public void compiledPredicatesAreReusedUntilTheyChange() {
+        InclusionPredicateEngine engine = new InclusionPredicateEngine();
+
+        activeExtIds(engine, questions, mkNamespace(questions, true));
+        activeExtIds(engine, questions, mkNamespace(questions, false));
+        assertEquals(2, engine.compiledPredicateCount());
+
+        SurveyQuestion negated = mkQuestion(2L, "B", "!isChecked('A')");
+        List<SurveyQuestion> updated = newArrayList(checkbox, negated, ditto);
+
+        assertEquals(
+                "changed predicate should be recompiled",
+                newArrayList("A", "B", "C"),
+                activeExtIds(engine, updated, mkNamespace(updated, false)));
+        assertEquals(2, engine.compiledPredicateCount());
+    }
+
+
+    // -- HELPERS ---
+
+    private static List<String> activeExtIds(InclusionPredicateEngine engine,
+                                             List<SurveyQuestion> qs,
+                                             QuestionBasePredicateNamespace namespace) {
+        return engine
+                .determineActiveQuestions(qs, namespace)
+                .stream()
+                .map(q -> q.externalId().get())
+                .collect(toList());
+    }
+
+
+    private static QuestionBasePredicateNamespace mkNamespace(List<SurveyQuestion> qs, boolean aChecked) {
+        SurveyQuestionResponse response = ImmutableSurveyQuestionResponse.builder()
+                .questionId(checkbox.id().get())
+                .booleanResponse(aChecked)
+                .build();
+
+        Map<Long, SurveyQuestionResponse> responsesByQuestionId = Collections.singletonMap(1L, response);
+        return new QuestionBasePredicateNamespace(qs, responsesByQuestionId);
+    }
+
+
+    private static SurveyQuestion mkQuestion(long id, String extId, String predicate) {
+        return ImmutableSurveyQuestion.builder()
+                .id(id)
+                .externalId(extId)
+                .surveyTemplateId(1L)
+                .questionText(extId)
+                .fieldType(SurveyQuestionFieldType.BOOLEAN)
+                .inclusionPredicate(Optional.ofNullable(predicate))
+                .build();
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.service.usage_info;
+
+import com.khartec.waltz.data.data_type_usage.DataTypeUsageDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import org.jooq.Record1;
+import org.jooq.SQLDialect;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.stream.Collectors.toSet;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class DataTypeUsageRecalculationQueueTest {
+
+    // batches passed to the dao, in order
+    private final List<Tuple2<EntityKind, Set<Long>>> batches = new ArrayList<>();
+
+    // batches containing any of these ids fail
+    private final Set<Long> failingIds = new HashSet<>();
+
+    private final DataTypeUsageDao dao = new DataTypeUsageDao(DSL.using(SQLDialect.H2)) {
+        @Override
+        public int recalculateUsagesForIdSelector(EntityKind kind, Select<Record1<Long>> idSelector) {
+            Set<Long> ids = idSelector
+                    .getBindValues()
+                    .stream()
+                    .map(v -> ((Number) v).longValue())
+                    .collect(toSet());
+            batches.add(tuple(kind, ids));
+            if (! Collections.disjoint(ids, failingIds)) {
+                throw new IllegalStateException("expected failure");
+            }
+            return ids.size();  // pretend one usage row changed per entity
+        }
+    };
+
+
+    @Test
+    public void duplicateRefsAreCoalesced() {
+        DataTypeUsageRecalculationQueue queue = new DataTypeUsageRecalculationQueue(dao, 50, 5);
+
+        queue.queue(newArrayList(app(1), mkRef(EntityKind.APPLICATION, 1, "named"), app(2)));
+        queue.queue(newArrayList(app(1)));
+
+        assertEquals(2, queue.getQueueDepth());
+        assertEquals(2, queue.process());
+        assertEquals(newArrayList(tuple(EntityKind.APPLICATION, asSet(1L, 2L))), batches);
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+
+    @Test
+    public void otherKindsAreIgnored() {
+        DataTypeUsageRecalculationQueue queue = new DataTypeUsageRecalculationQueue(dao, 50, 5);
+
+        queue.queue(newArrayList(
+                mkRef(EntityKind.ORG_UNIT, 1),
+                mkRef(EntityKind.ACTOR, 3),
+                app(1)));
+
+        assertEquals(2, queue.getQueueDepth());
+        queue.process();
+        assertEquals(
+                asSet(tuple(EntityKind.APPLICATION, asSet(1L)), tuple(EntityKind.ACTOR, asSet(3L))),
+                new HashSet<>(batches));
+    }
+
+
+    @Test
+    public void failedBatchesAreRequeuedThenDropped() {
+        DataTypeUsageRecalculationQueue queue = new DataTypeUsageRecalculationQueue(dao, 1, 2);
+        failingIds.add(1L);
+
+        queue.queue(newArrayList(app(1), app(2)));
+        assertEquals("only the successful batch counts", 1, queue.process());
+        assertEquals(1, queue.getFailedBatchCount());
+        assertEquals("failed entity requeued", 1, queue.getQueueDepth());
+
+        queue.process();
+        assertEquals(1, queue.getQueueDepth());
+
+        queue.process();
+        assertEquals("dropped after max retries", 0, queue.getQueueDepth());
+        assertEquals(3, queue.getFailedBatchCount());
+        assertEquals(1, queue.getDroppedEntityCount());
+
+        batches.clear();
+        assertEquals(0, queue.process());
+        assertTrue("nothing left to recalculate", batches.isEmpty());
+    }
+
+
+    @Test
+    public void successfulRetriesResetTheRetryCount() {
+        DataTypeUsageRecalculationQueue queue = new DataTypeUsageRecalculationQueue(dao, 1, 1);
+        failingIds.add(1L);
+
+        queue.queue(newArrayList(app(1)));
+        queue.process();
+        failingIds.clear();
+        queue.process();
+
+        // fails once more, would be dropped had the earlier failure still counted
+        failingIds.add(1L);
+        queue.queue(newArrayList(app(1)));
+        queue.process();
+
+        assertEquals(1, queue.getQueueDepth());
+        assertEquals(0, queue.getDroppedEntityCount());
+    }
+
+
+    @Test
+    public void metricsAreMaintainedPerCycle() {
+        DataTypeUsageRecalculationQueue queue = new DataTypeUsageRecalculationQueue(dao, 2, 5);
+
+        assertEquals("empty queues are not counted as cycles", 0, queue.process());
+        assertEquals(0, queue.getCycleCount());
+
+        queue.queue(newArrayList(app(1), app(2), app(3), app(4), app(5)));
+        assertEquals(5, queue.process());
+        assertEquals(3, batches.size());
+        assertEquals(1, queue.getCycleCount());
+        assertEquals(5, queue.getLastCycleEntityCount());
+        assertEquals(5, queue.getLastCycleRowsChanged());
+
+        queue.queue(newArrayList(app(6)));
+        queue.process();
+        assertEquals(2, queue.getCycleCount());
+        assertEquals(1, queue.getLastCycleEntityCount());
+        assertEquals(1, queue.getLastCycleRowsChanged());
+        assertEquals(6, queue.getTotalRowsChanged());
+        assertEquals(0, queue.getFailedBatchCount());
+        assertEquals(0, queue.getDroppedEntityCount());
+    }
+
+
+    // -- HELPERS ---
+
+    private static EntityReference app(long id) {
+        return mkRef(EntityKind.APPLICATION, id);
+    }
+
+}
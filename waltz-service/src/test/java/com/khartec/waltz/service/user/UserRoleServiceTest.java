@@ -0,0 +1,108 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.service.user;
+
+import com.khartec.waltz.data.user.UserRoleDao;
+import com.khartec.waltz.model.user.SystemRole;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.khartec.waltz.common.SetUtilities.asSet;
+
+public class UserRoleServiceTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final UserRoleDao dao = new UserRoleDao(DSL.using(SQLDialect.H2)) {
+        @Override
+        public Set<String> getUserRoles(String userName) {
+            lookups.incrementAndGet();
+            return asSet(SystemRole.ADMIN.name());
+        }
+    };
+
+
+    @Test
+    public void rolesAreCachedCaseInsensitively() {
+        UserRoleService svc = mkService(false);
+
+        Assert.assertTrue(svc.hasRole("bob", SystemRole.ADMIN));
+        Assert.assertTrue(svc.hasRole("BOB", SystemRole.ADMIN.name()));
+        Assert.assertFalse(svc.hasRole("Bob", SystemRole.ADMIN, SystemRole.BOOKMARK_EDITOR));
+
+        Assert.assertEquals(1, lookups.get());
+        Assert.assertEquals(2, svc.getRoleCacheHitCount());
+        Assert.assertEquals(1, svc.getRoleCacheMissCount());
+    }
+
+
+    @Test
+    public void invalidationForcesReload() {
+        UserRoleService svc = mkService(false);
+
+        svc.getUserRoles("bob");
+        svc.invalidateRoleCache("BOB");
+        svc.getUserRoles("bob");
+
+        Assert.assertEquals(2, lookups.get());
+    }
+
+
+    @Test
+    public void tokenRolesIgnoredUnlessTrusted() {
+        UserRoleService svc = mkService(false);
+
+        Assert.assertFalse(svc.seedRoles("bob", asSet("X"), System.currentTimeMillis()));
+        Assert.assertFalse(svc.hasRole("bob", "X"));
+    }
+
+
+    @Test
+    public void trustedTokenRolesAvoidLookup() {
+        UserRoleService svc = mkService(true);
+
+        Assert.assertTrue(svc.seedRoles("bob", asSet("X"), System.currentTimeMillis()));
+        Assert.assertTrue(svc.hasRole("bob", "X"));
+        Assert.assertEquals(0, lookups.get());
+    }
+
+
+    @Test
+    public void tokensIssuedBeforeStartupAreIgnored() {
+        UserRoleService svc = mkService(true);
+
+        Assert.assertFalse(svc.seedRoles("bob", asSet("X"), 0));
+        Assert.assertFalse(svc.hasRole("bob", "X"));
+        Assert.assertEquals(1, lookups.get());
+    }
+
+
+    // -- HELPERS ---
+
+    private UserRoleService mkService(boolean trustTokenRoles) {
+        return new UserRoleService(dao, null, null, 30, trustTokenRoles);
+    }
+
+}
@@ -25,6 +25,7 @@ import com.khartec.waltz.common.exception.NotFoundException;
 import com.khartec.waltz.common.exception.UpdateFailedException;
 import com.khartec.waltz.service.DIConfiguration;
 import com.khartec.waltz.service.settings.SettingsService;
+import com.khartec.waltz.web.compression.ResponseCompression;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import com.khartec.waltz.web.endpoints.api.StaticResourcesEndpoint;
 import com.khartec.waltz.web.endpoints.extracts.DataExtractor;
@@ -48,6 +49,7 @@ public class Main {
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
     private final static String GZIP_ENABLED_NAME = "server.gzip.enabled";
     private final static String GZIP_MIN_SIZE_NAME = "server.gzip.minimum-size";
+    private final static String GZIP_FAST_SIZE_NAME = "server.gzip.fast-size";
 
     private static AnnotationConfigApplicationContext ctx;
 
@@ -211,29 +213,31 @@ public class Main {
                 .map(x -> x.equalsIgnoreCase("true"))
                 .orElse(false);
 
-        if(gzipEnabled) {
-
-            //now fetch the minimum size
-            int minimumLength = settingsService
-                    .getValue(GZIP_MIN_SIZE_NAME)
-                    .map(Integer::parseInt)
-                    .orElse(8192);
-
-            after(((request, response) -> {
-                if(response.body() != null && response.body().length() >= minimumLength) {
-                    response.header("Content-Encoding", "gzip");
-                }
-            }));
-
-            LOG.info("Enabled GZIP (size: " + minimumLength + ")");
-
+        //now fetch the minimum size
+        int minimumLength = settingsService
+                .getValue(GZIP_MIN_SIZE_NAME)
+                .map(Integer::parseInt)
+                .orElse(8192);
+
+        // responses larger than this are compressed using the fastest level
+        long fastLength = settingsService
+                .getValue(GZIP_FAST_SIZE_NAME)
+                .map(Long::parseLong)
+                .orElse(1024L * 1024L);
+
+        ResponseCompression.configure(
+                gzipEnabled,
+                minimumLength,
+                Math.max(minimumLength, fastLength));
+
+        if (gzipEnabled) {
+            LOG.info("Enabled GZIP (size: " + minimumLength + ", fast size: " + fastLength + ")");
         } else {
             LOG.info("GZIP not enabled");
         }
-
-
     }
 
+
     private void enableCORS() {
 
         options("/*", (req, res) -> {
@@ -0,0 +1,40 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web;
+
+import spark.Request;
+import spark.Response;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+
+/**
+ * A route which provides a (potentially large) list of items lazily.  The
+ * route passes a stream of the items to the given consumer, which serializes
+ * each item as the stream is consumed.  The stream need only remain valid
+ * (e.g. its cursor and transaction open) until the consumer returns, the
+ * serialized items are sent to the client afterwards.
+ */
+@FunctionalInterface
+public interface StreamRoute<T>  {
+
+    void apply(Request request, Response response, Consumer<Stream<T>> consumer) throws Exception;
+}
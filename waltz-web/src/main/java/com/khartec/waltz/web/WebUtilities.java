@@ -18,7 +18,10 @@
 
 package com.khartec.waltz.web;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
@@ -37,11 +40,13 @@ import spark.Response;
 import spark.ResponseTransformer;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ObjectUtilities.firstNotNull;
@@ -74,6 +79,46 @@ public class WebUtilities {
 
     public static final ResponseTransformer transformer = mapper::writeValueAsString;
 
+    // shared writer for streamed elements, flushing after each would defeat response compression
+    private static final ObjectWriter elementWriter = mapper
+            .writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+
+    /**
+     * Serializes the object as json directly to the given stream, the stream is
+     * closed once the object has been written.
+     */
+    public static void writeJson(OutputStream out, Object obj) throws IOException {
+        checkNotNull(out, "out must not be null");
+        mapper.writeValue(out, obj);
+    }
+
+
+    /**
+     * Serializes each element of the stream, as it is consumed, into a json
+     * array written directly to the given output stream.  The output stream
+     * is closed once the array has been written, the element stream is not.
+     *
+     * @return number of elements written
+     */
+    public static long writeJsonArray(OutputStream out, Stream<?> elements) throws IOException {
+        checkNotNull(out, "out must not be null");
+        checkNotNull(elements, "elements must not be null");
+
+        long count = 0;
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            Iterator<?> iterator = elements.iterator();
+            while (iterator.hasNext()) {
+                elementWriter.writeValue(generator, iterator.next());
+                count++;
+            }
+            generator.writeEndArray();
+        }
+        return count;
+    }
+
 
     /**
      * @see StringUtilities
@@ -347,6 +392,28 @@ public class WebUtilities {
     }
 
 
+    /**
+     * Compares the value of an <code>If-None-Match</code> header with an
+     * ETag, using the weak comparison the spec requires for that header.
+     *
+     * @param ifNoneMatch  header value, may be null
+     * @param etag  quoted entity tag of the current representation
+     * @return true if the client already has the current representation
+     */
+    public static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (StringUtilities.isEmpty(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.replaceFirst("^W/", "").equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
     public static Optional<Integer> getLimit(Request request) {
         String limitVal = request.queryParams("limit");
         return Optional
@@ -0,0 +1,253 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.web.assets;
+
+import com.khartec.waltz.web.WebUtilities;
+import com.khartec.waltz.web.compression.ContentEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * An immutable, in-memory, static resource along with any compressed
+ * variants.  Each variant (representation) has its own strong ETag.
+ *
+ * Variant byte arrays are shared and must not be modified.
+ */
+public final class StaticAsset {
+
+    /**
+     * Compressed variants are only kept if they save at least this fraction
+     * of the original size, already compressed formats (images, fonts,
+     * spreadsheets) therefore end up with just the identity variant.
+     */
+    private static final double MIN_COMPRESSION_SAVING = 0.1;
+
+    private static final String BROTLI = "br";
+
+
+    public static final class Variant {
+
+        private final byte[] content;
+        private final String contentEncoding;
+        private final String etag;
+
+
+        private Variant(byte[] content, String contentEncoding, String etag) {
+            this.content = content;
+            this.contentEncoding = contentEncoding;
+            this.etag = etag;
+        }
+
+
+        public byte[] getContent() {
+            return content;
+        }
+
+
+        /**
+         * @return value for the <code>Content-Encoding</code> header, or null for identity
+         */
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+
+        public String getETag() {
+            return etag;
+        }
+
+
+        /**
+         * Compares the value of an <code>If-None-Match</code> header with
+         * this variant's ETag (using the weak comparison the spec requires
+         * for that header).
+         */
+        public boolean isMatchedBy(String ifNoneMatch) {
+            return WebUtilities.matchesETag(ifNoneMatch, etag);
+        }
+    }
+
+
+    private final String path;
+    private final String mimeType;
+    private final Variant identity;
+    private final Variant gzip;
+    private final Variant brotli;
+
+
+    private StaticAsset(String path,
+                        String mimeType,
+                        Variant identity,
+                        Variant gzip,
+                        Variant brotli) {
+        this.path = path;
+        this.mimeType = mimeType;
+        this.identity = identity;
+        this.gzip = gzip;
+        this.brotli = brotli;
+    }
+
+
+    /**
+     * Creates an asset, a gzip variant is computed unless one is supplied.
+     *
+     * @param path  path of the asset, relative to the static root
+     * @param mimeType  content type
+     * @param content  uncompressed content
+     * @param preCompressedGzip  gzip variant produced at build time, may be null
+     * @param preCompressedBrotli  brotli variant produced at build time, may be null
+     */
+    public static StaticAsset mkAsset(String path,
+                                      String mimeType,
+                                      byte[] content,
+                                      byte[] preCompressedGzip,
+                                      byte[] preCompressedBrotli) {
+        checkNotNull(path, "path cannot be null");
+        checkNotNull(mimeType, "mimeType cannot be null");
+        checkNotNull(content, "content cannot be null");
+
+        String hash = hash(content);
+
+        byte[] gzipContent = preCompressedGzip == null
+                ? gzip(content)
+                : preCompressedGzip;
+
+        return new StaticAsset(
+                path,
+                mimeType,
+                new Variant(content, null, quote(hash)),
+                mkVariantIfWorthwhile(content, gzipContent, ContentEncoding.GZIP.getHeaderValue(), hash),
+                mkVariantIfWorthwhile(content, preCompressedBrotli, BROTLI, hash));
+    }
+
+
+    public String getPath() {
+        return path;
+    }
+
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+
+    public byte[] getContent() {
+        return identity.content;
+    }
+
+
+    public boolean hasCompressedVariants() {
+        return gzip != null || brotli != null;
+    }
+
+
+    /**
+     * Picks the smallest variant acceptable to the client.
+     *
+     * @param acceptEncoding  value of the <code>Accept-Encoding</code> header, may be null
+     */
+    public Variant selectVariant(String acceptEncoding) {
+        if (brotli != null && ContentEncoding.accepts(acceptEncoding, BROTLI)) {
+            return brotli;
+        }
+        if (gzip != null && ContentEncoding.accepts(acceptEncoding, gzip.contentEncoding)) {
+            return gzip;
+        }
+        return identity;
+    }
+
+
+    /**
+     * @return approximate number of bytes held by this asset
+     */
+    public long getSize() {
+        return identity.content.length
+                + (gzip == null ? 0 : gzip.content.length)
+                + (brotli == null ? 0 : brotli.content.length);
+    }
+
+
+    // -- HELPERS ---
+
+    private static Variant mkVariantIfWorthwhile(byte[] original,
+                                                 byte[] compressed,
+                                                 String encoding,
+                                                 String hash) {
+        if (compressed == null || compressed.length > original.length * (1 - MIN_COMPRESSION_SAVING)) {
+            return null;
+        }
+        return new Variant(compressed, encoding, quote(hash + "-" + encoding));
+    }
+
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new BestCompressionGZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest
+                    .getInstance("SHA-256")
+                    .digest(content);
+
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+
+    private static String quote(String s) {
+        return "\"" + s + "\"";
+    }
+
+
+    /**
+     * Assets are compressed once, at start up, so we can afford the best level.
+     */
+    private static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+        BestCompressionGZIPOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+}
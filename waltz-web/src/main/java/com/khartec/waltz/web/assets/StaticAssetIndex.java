@@ -0,0 +1,324 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.web.assets;
+
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.IOUtilities.copyStream;
+import static com.khartec.waltz.common.StringUtilities.notEmpty;
+import static com.khartec.waltz.web.WebUtilities.getMimeType;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * In-memory index of the static resources (the compiled front end) which
+ * Waltz serves.  The index is built once, at start up, by reading every
+ * resource beneath the static root into memory along with gzip variants
+ * (computed here) and brotli/gzip variants (if the front end build
+ * supplies them as <code>.br</code>/<code>.gz</code> siblings).
+ *
+ * <code>index.html</code> pages have their <code>&lt;base href&gt;</code>
+ * tag rewritten to include the context path Waltz is deployed under, the
+ * rewritten pages are cached per context path.
+ *
+ * If the static root cannot be enumerated (e.g. an unusual class loader)
+ * the index falls back to loading, and then retaining, resources on demand.
+ */
+public class StaticAssetIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StaticAssetIndex.class);
+
+    public static final String INDEX_PAGE = "index.html";
+
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String BROTLI_SUFFIX = ".br";
+
+    private final ConcurrentMap<String, StaticAsset> assets;
+    private final ConcurrentMap<Tuple2<String, String>, StaticAsset> rewrittenIndexPages = new ConcurrentHashMap<>();
+    private final ClassLoader fallbackLoader;
+    private final String fallbackRoot;
+
+
+    private StaticAssetIndex(Map<String, StaticAsset> assets,
+                             ClassLoader fallbackLoader,
+                             String fallbackRoot) {
+        this.assets = new ConcurrentHashMap<>(assets);
+        this.fallbackLoader = fallbackLoader;
+        this.fallbackRoot = fallbackRoot;
+    }
+
+
+    /**
+     * Builds an index from the given resources.
+     *
+     * @param resources  resource content keyed by path (relative to the static root)
+     */
+    public static StaticAssetIndex mkIndex(Map<String, byte[]> resources) {
+        checkNotNull(resources, "resources cannot be null");
+        return new StaticAssetIndex(mkAssets(resources), null, null);
+    }
+
+
+    /**
+     * Builds an index of all resources, visible to the class loader, beneath the given root.
+     *
+     * @param classLoader  loader used to locate the resources
+     * @param root  root resource 'directory', e.g. <code>static</code>
+     */
+    public static StaticAssetIndex scan(ClassLoader classLoader, String root) {
+        checkNotNull(classLoader, "classLoader cannot be null");
+        checkNotNull(root, "root cannot be null");
+
+        Map<String, byte[]> resources = new HashMap<>();
+        try {
+            Enumeration<URL> rootUrls = classLoader.getResources(root);
+            while (rootUrls.hasMoreElements()) {
+                // earlier class path entries take precedence
+                readResources(rootUrls.nextElement()).forEach(resources::putIfAbsent);
+            }
+        } catch (IOException | URISyntaxException e) {
+            LOG.warn("Failed to scan static resources beneath: " + root, e);
+        }
+
+        if (resources.isEmpty()) {
+            LOG.warn("No static resources found beneath: {}, resources will be loaded on demand", root);
+            return new StaticAssetIndex(Collections.emptyMap(), classLoader, root);
+        }
+
+        StaticAssetIndex index = new StaticAssetIndex(mkAssets(resources), null, null);
+        LOG.info("Indexed {} static resources, holding {} bytes", index.size(), index.getTotalBytes());
+        return index;
+    }
+
+
+    public Optional<StaticAsset> find(String path) {
+        checkNotNull(path, "path cannot be null");
+        StaticAsset asset = assets.get(path);
+        if (asset == null && fallbackLoader != null) {
+            asset = loadOnDemand(path);
+        }
+        return Optional.ofNullable(asset);
+    }
+
+
+    /**
+     * Resolves a request path to an asset.  Directories resolve to their
+     * <code>index.html</code> and anything not found resolves to the root
+     * <code>index.html</code> (so client side routes work when bookmarked).
+     *
+     * @param requestPath  path being requested, e.g. <code>/js/app.js</code>
+     * @param contextPath  context path Waltz is deployed under, may be empty
+     * @return the asset or null if the path cannot be resolved (no index page)
+     */
+    public StaticAsset resolve(String requestPath, String contextPath) {
+        String path = requestPath == null
+                ? ""
+                : requestPath.replaceFirst("^/+", "");
+
+        Optional<StaticAsset> asset = path.isEmpty()
+                ? Optional.empty()
+                : find(path);
+
+        if (! asset.isPresent() && ! path.isEmpty()) {
+            asset = find(path.replaceFirst("/+$", "") + "/" + INDEX_PAGE);
+        }
+
+        if (! asset.isPresent()) {
+            asset = find(INDEX_PAGE);
+        }
+
+        return asset
+                .map(a -> a.getPath().endsWith(INDEX_PAGE) && notEmpty(contextPath)
+                        ? rewrittenIndexPages.computeIfAbsent(
+                                tuple(a.getPath(), contextPath),
+                                k -> rewriteBaseTag(a, contextPath))
+                        : a)
+                .orElse(null);
+    }
+
+
+    public int size() {
+        return assets.size();
+    }
+
+
+    /**
+     * @return number of bytes held, including compressed variants
+     */
+    public long getTotalBytes() {
+        return assets
+                .values()
+                .stream()
+                .mapToLong(StaticAsset::getSize)
+                .sum();
+    }
+
+
+    /**
+     * index.html need to have a <base href="/[site_context]/" /> tag in the head section to ensure
+     * html5 mode works correctly in AngularJS.  This method will ensure the existing <base href="/" /> tag
+     * is replaced with one that includes the correct site context as deployed.
+     *
+     * @return an asset with the amended <base> tag or the original asset if no tag was found
+     */
+    static StaticAsset rewriteBaseTag(StaticAsset indexPage, String contextPath) {
+        String[] lines = new String(indexPage.getContent(), UTF_8).split("\r?\n", -1);
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].toLowerCase();
+
+            if (line.contains("<base href=")) {
+                lines[i] = String.format("\t<base href=\"%s/\" />", contextPath);
+                LOG.info("Updated <base> tag in {} for context path: {}", indexPage.getPath(), contextPath);
+
+                return StaticAsset.mkAsset(
+                        indexPage.getPath(),
+                        indexPage.getMimeType(),
+                        String.join(System.lineSeparator(), lines).getBytes(UTF_8),
+                        null,
+                        null);
+            }
+
+            if (line.contains("</head>")) {
+                // don't need to continue if have reached here and no base tag found
+                break;
+            }
+        }
+
+        return indexPage;
+    }
+
+
+    // -- HELPERS ---
+
+    private static Map<String, StaticAsset> mkAssets(Map<String, byte[]> resources) {
+        Map<String, StaticAsset> assets = new HashMap<>(resources.size() * 2);
+        resources.forEach((path, content) -> {
+            if (isPreCompressedVariant(path, resources)) {
+                return;
+            }
+            assets.put(path, StaticAsset.mkAsset(
+                    path,
+                    getMimeType(path),
+                    content,
+                    resources.get(path + GZIP_SUFFIX),
+                    resources.get(path + BROTLI_SUFFIX)));
+        });
+        return assets;
+    }
+
+
+    private static boolean isPreCompressedVariant(String path, Map<String, byte[]> resources) {
+        return (path.endsWith(GZIP_SUFFIX) && resources.containsKey(path.substring(0, path.length() - GZIP_SUFFIX.length())))
+                || (path.endsWith(BROTLI_SUFFIX) && resources.containsKey(path.substring(0, path.length() - BROTLI_SUFFIX.length())));
+    }
+
+
+    private StaticAsset loadOnDemand(String path) {
+        if (path.contains("..")) {
+            return null;
+        }
+
+        try (InputStream in = fallbackLoader.getResourceAsStream(fallbackRoot + "/" + path)) {
+            if (in == null) {
+                return null;
+            }
+            StaticAsset asset = StaticAsset.mkAsset(path, getMimeType(path), readAll(in), null, null);
+            StaticAsset existing = assets.putIfAbsent(path, asset);
+            return existing == null
+                    ? asset
+                    : existing;
+        } catch (IOException e) {
+            // directories, amongst other things, cannot be read
+            LOG.debug("Could not load static resource: {}", path, e);
+            return null;
+        }
+    }
+
+
+    private static Map<String, byte[]> readResources(URL rootUrl) throws IOException, URISyntaxException {
+        Map<String, byte[]> resources = new HashMap<>();
+
+        switch (rootUrl.getProtocol()) {
+            case "file":
+                Path rootPath = Paths.get(rootUrl.toURI());
+                try (Stream<Path> files = Files.walk(rootPath)) {
+                    Iterator<Path> it = files.filter(Files::isRegularFile).iterator();
+                    while (it.hasNext()) {
+                        Path file = it.next();
+                        String relativePath = rootPath.relativize(file).toString().replace('\\', '/');
+                        resources.put(relativePath, Files.readAllBytes(file));
+                    }
+                }
+                break;
+            case "jar":
+                URLConnection connection = rootUrl.openConnection();
+                if (connection instanceof JarURLConnection) {
+                    JarURLConnection jarConnection = (JarURLConnection) connection;
+                    jarConnection.setUseCaches(false);
+                    String prefix = jarConnection.getEntryName().replaceFirst("/*$", "/");
+                    try (JarFile jar = jarConnection.getJarFile()) {
+                        Enumeration<JarEntry> entries = jar.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
+                            if (! entry.isDirectory() && entry.getName().startsWith(prefix)) {
+                                try (InputStream in = jar.getInputStream(entry)) {
+                                    resources.put(entry.getName().substring(prefix.length()), readAll(in));
+                                }
+                            }
+                        }
+                    }
+                }
+                break;
+            default:
+                LOG.warn("Cannot scan static resources from: {}", rootUrl);
+        }
+
+        return resources;
+    }
+
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copyStream(in, out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web.compression;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * Output stream which compresses a response body as it is written.
+ *
+ * The first <code>minimumSize</code> bytes are buffered, if the body is
+ * smaller than this it is sent uncompressed (with a content length).
+ * Otherwise the <code>Content-Encoding</code> header is set and the buffer,
+ * along with everything that follows, is compressed directly to the
+ * servlet output stream.  Once the body exceeds <code>fastSize</code>
+ * bytes the compression level is dropped to <code>BEST_SPEED</code> as,
+ * for very large payloads, cpu time costs more than the extra bytes.
+ *
+ * If writing the body fails {@link #abort()} should be called instead of
+ * {@link #close()}, so that a partial body is not completed and flushed
+ * as if it were the whole response.
+ */
+public class AdaptiveCompressionOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HttpServletResponse response;
+    private final ContentEncoding encoding;
+    private final int minimumSize;
+    private final long fastSize;
+
+    private ByteArrayOutputStream buffer;
+    private CountingOutputStream target;
+    private DeflaterOutputStream compressor;
+    private Deflater deflater;
+    private OutputStream out;
+
+    private long uncompressedBytes = 0;
+    private boolean closed = false;
+
+
+    public AdaptiveCompressionOutputStream(HttpServletResponse response,
+                                           ContentEncoding encoding,
+                                           int minimumSize,
+                                           long fastSize) {
+        checkNotNull(response, "response cannot be null");
+        checkNotNull(encoding, "encoding cannot be null");
+
+        this.response = response;
+        this.encoding = encoding;
+        this.minimumSize = minimumSize;
+        this.fastSize = fastSize;
+        this.buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+        this.out = buffer;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        uncompressedBytes += len;
+
+        if (buffer != null && uncompressedBytes > minimumSize) {
+            startStreaming();
+        }
+
+        if (deflater != null && uncompressedBytes > fastSize) {
+            deflater.setLevel(Deflater.BEST_SPEED);
+            deflater = null; // level only needs adjusting once
+        }
+
+        out.write(b, off, len);
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer == null) {
+            out.flush();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (buffer != null) {
+            // small body, send as is
+            response.setContentLength(buffer.size());
+            target = new CountingOutputStream(response.getOutputStream());
+            buffer.writeTo(target);
+            buffer = null;
+            target.close();
+        } else if (compressor instanceof LevelledDeflaterOutputStream) {
+            compressor.close();
+            // deflaters we create ourselves must be explicitly released
+            ((LevelledDeflaterOutputStream) compressor).end();
+        } else {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Discards anything still buffered and releases the compressor without
+     * writing any trailer.  Nothing further is written to the response, it
+     * is left to the caller to reset (or abandon) it.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer = null;
+
+        if (compressor instanceof LevelledGZIPOutputStream) {
+            ((LevelledGZIPOutputStream) compressor).end();
+        } else if (compressor instanceof LevelledDeflaterOutputStream) {
+            ((LevelledDeflaterOutputStream) compressor).end();
+        }
+    }
+
+
+    public boolean isCompressed() {
+        return compressor != null;
+    }
+
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+
+    /**
+     * @return number of bytes written to the underlying response
+     */
+    public long getCompressedBytes() {
+        return target == null
+                ? 0
+                : target.count;
+    }
+
+
+    // -- HELPERS ---
+
+    private void startStreaming() throws IOException {
+        target = new CountingOutputStream(response.getOutputStream());
+
+        switch (encoding) {
+            case GZIP:
+                LevelledGZIPOutputStream gzip = new LevelledGZIPOutputStream(target);
+                compressor = gzip;
+                deflater = gzip.getDeflater();
+                break;
+            case DEFLATE:
+                LevelledDeflaterOutputStream deflate = new LevelledDeflaterOutputStream(target);
+                compressor = deflate;
+                deflater = deflate.getDeflater();
+                break;
+            default:
+                compressor = null;
+                deflater = null;
+        }
+
+        if (compressor != null) {
+            response.setHeader("Content-Encoding", encoding.getHeaderValue());
+            out = compressor;
+        } else {
+            out = target;
+        }
+
+        buffer.writeTo(out);
+        buffer = null;
+    }
+
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+
+    private static class LevelledGZIPOutputStream extends GZIPOutputStream {
+
+        LevelledGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+        }
+
+        Deflater getDeflater() {
+            return def;
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+
+
+    private static class LevelledDeflaterOutputStream extends DeflaterOutputStream {
+
+        LevelledDeflaterOutputStream(OutputStream out) {
+            super(out, new Deflater(Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE);
+        }
+
+        Deflater getDeflater() {
+            return def;
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web.compression;
+
+import com.khartec.waltz.common.StringUtilities;
+
+
+/**
+ * Response content encodings supported by Waltz, in order of preference.
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip"),
+    DEFLATE("deflate"),
+    IDENTITY("identity");
+
+
+    private final String headerValue;
+
+
+    ContentEncoding(String headerValue) {
+        this.headerValue = headerValue;
+    }
+
+
+    public String getHeaderValue() {
+        return headerValue;
+    }
+
+
+    /**
+     * Selects the most appropriate encoding given the value of an
+     * <code>Accept-Encoding</code> request header.  The encoding with the
+     * highest quality value wins, ties are broken by our own preference.
+     * Unsupported encodings (e.g. <code>br</code>) are ignored.
+     *
+     * @param acceptEncoding  header value, may be null
+     * @return  chosen encoding, <code>IDENTITY</code> if nothing suitable
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (StringUtilities.isEmpty(acceptEncoding)) {
+            return IDENTITY;
+        }
+
+        ContentEncoding best = IDENTITY;
+        double bestQuality = 0;
+        double wildcardQuality = -1;
+        boolean[] mentioned = new boolean[values().length];
+
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            double quality = parseQuality(tokens);
+
+            if (coding.equals("*")) {
+                wildcardQuality = quality;
+                continue;
+            }
+
+            for (ContentEncoding encoding : values()) {
+                if (encoding != IDENTITY && encoding.headerValue.equals(coding)) {
+                    mentioned[encoding.ordinal()] = true;
+                    if (isBetter(encoding, quality, best, bestQuality)) {
+                        best = encoding;
+                        bestQuality = quality;
+                    }
+                }
+            }
+        }
+
+        if (wildcardQuality > 0) {
+            for (ContentEncoding encoding : values()) {
+                if (encoding != IDENTITY
+                        && ! mentioned[encoding.ordinal()]
+                        && isBetter(encoding, wildcardQuality, best, bestQuality)) {
+                    best = encoding;
+                    bestQuality = wildcardQuality;
+                }
+            }
+        }
+
+        return best;
+    }
+
+
+    /**
+     * Determines whether the given coding, which need not be one of the
+     * encodings Waltz can produce on the fly (e.g. <code>br</code> for
+     * pre-compressed content), is acceptable to the client.
+     *
+     * @param acceptEncoding  header value, may be null
+     * @param coding  content coding, e.g. <code>gzip</code>
+     * @return  true if the coding is listed (or matched by a wildcard) with a non zero quality
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        if (StringUtilities.isEmpty(acceptEncoding)) {
+            return false;
+        }
+
+        double wildcardQuality = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String candidate = tokens[0].trim().toLowerCase();
+
+            if (candidate.equals(coding)) {
+                return parseQuality(tokens) > 0;
+            } else if (candidate.equals("*")) {
+                wildcardQuality = parseQuality(tokens);
+            }
+        }
+        return wildcardQuality > 0;
+    }
+
+
+    // -- HELPERS ---
+
+    private static boolean isBetter(ContentEncoding candidate,
+                                    double candidateQuality,
+                                    ContentEncoding current,
+                                    double currentQuality) {
+        return candidateQuality > 0
+                && (candidateQuality > currentQuality
+                    || (candidateQuality == currentQuality && candidate.ordinal() < current.ordinal()));
+    }
+
+
+    private static double parseQuality(String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            String param = tokens[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+}
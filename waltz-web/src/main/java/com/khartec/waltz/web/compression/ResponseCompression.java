@@ -0,0 +1,241 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web.compression;
+
+import com.khartec.waltz.common.SpoolingOutputStream;
+import com.khartec.waltz.model.compression.ImmutableRouteCompressionStatistic;
+import com.khartec.waltz.model.compression.RouteCompressionStatistic;
+import com.khartec.waltz.web.StreamRoute;
+import com.khartec.waltz.web.WebUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * Writes json responses directly to the servlet output stream, compressing
+ * them (if the client allows) as they are serialized.  This avoids building
+ * the complete response as an intermediate String.
+ *
+ * Compression is disabled until {@link #configure(boolean, int, long)} is
+ * called, typically during server start up, whilst disabled bodies are
+ * streamed straight through without any buffering.  Per route size
+ * statistics are recorded regardless.
+ *
+ * If serialization fails the partial body is discarded and the exception
+ * rethrown so the usual exception handlers can build the response.  Should
+ * the response already have been committed the connection is aborted, the
+ * client will see a broken response rather than truncated json with a 200.
+ */
+public class ResponseCompression {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCompression.class);
+
+    // streamed arrays larger than this are spooled to a temporary file
+    private static final int SPOOL_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    private static final ConcurrentMap<String, RouteStats> statsByRoute = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled = false;
+    private static volatile int minimumSize = 8192;
+    private static volatile long fastSize = 1024 * 1024;
+
+
+    private static class RouteStats {
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder compressedCount = new LongAdder();
+        private final LongAdder uncompressedBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+    }
+
+
+    public static void configure(boolean enabled, int minimumSize, long fastSize) {
+        checkTrue(minimumSize >= 0, "minimumSize cannot be negative");
+        checkTrue(fastSize >= minimumSize, "fastSize cannot be less than minimumSize");
+
+        ResponseCompression.minimumSize = minimumSize;
+        ResponseCompression.fastSize = fastSize;
+        ResponseCompression.enabled = enabled;
+    }
+
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Serializes the result as json to the response, the response will be
+     * committed once this method returns.
+     *
+     * @param route  route (path pattern) the statistics are recorded against
+     * @return  the raw servlet response, so Spark knows there is nothing left to write
+     */
+    public static HttpServletResponse writeJson(String route,
+                                                Object result,
+                                                Request request,
+                                                Response response) throws Exception {
+        return write(route, request, response, out -> WebUtilities.writeJson(out, result));
+    }
+
+
+    /**
+     * Serializes the elements supplied by the source, as the stream is
+     * consumed, as a json array which is then written to the response.
+     *
+     * The array is spooled (to memory, then a temporary file) rather than
+     * written straight to the client, so the source's cursor, transaction
+     * and connection are released after serialization and are not held
+     * whilst a slow client reads the response.  Failures whilst reading the
+     * source therefore happen before anything has been sent.
+     *
+     * @see #writeJson(String, Object, Request, Response)
+     */
+    public static <T> HttpServletResponse writeJsonArray(String route,
+                                                         StreamRoute<T> source,
+                                                         Request request,
+                                                         Response response) throws Exception {
+        SpoolingOutputStream spool = new SpoolingOutputStream(SPOOL_MEMORY_THRESHOLD);
+        try {
+            try {
+                source.apply(request, response, elements -> writeJsonArray(spool, elements));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return write(route, request, response, spool::writeTo);
+        } finally {
+            spool.dispose();
+        }
+    }
+
+
+    public static List<RouteCompressionStatistic> getStatistics() {
+        return statsByRoute
+                .entrySet()
+                .stream()
+                .map(e -> ImmutableRouteCompressionStatistic.builder()
+                        .route(e.getKey())
+                        .requestCount(e.getValue().requestCount.sum())
+                        .compressedCount(e.getValue().compressedCount.sum())
+                        .uncompressedBytes(e.getValue().uncompressedBytes.sum())
+                        .compressedBytes(e.getValue().compressedBytes.sum())
+                        .build())
+                .sorted(Comparator.comparingLong(RouteCompressionStatistic::uncompressedBytes).reversed())
+                .collect(toList());
+    }
+
+
+    public static void resetStatistics() {
+        LOG.info("Resetting response compression statistics");
+        statsByRoute.clear();
+    }
+
+
+    // -- HELPERS ---
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+
+    private static HttpServletResponse write(String route,
+                                             Request request,
+                                             Response response,
+                                             BodyWriter bodyWriter) throws Exception {
+        HttpServletResponse raw = response.raw();
+
+        ContentEncoding encoding = ContentEncoding.IDENTITY;
+        if (enabled) {
+            encoding = ContentEncoding.negotiate(request.headers("Accept-Encoding"));
+            raw.addHeader("Vary", "Accept-Encoding");
+        }
+
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(
+                raw,
+                encoding,
+                enabled ? minimumSize : 0,
+                fastSize);
+
+        try {
+            bodyWriter.write(out);
+            out.close();
+        } catch (Exception e) {
+            out.abort();
+            discard(request, raw, e);
+            throw e;
+        }
+
+        record(route, out);
+        return raw;
+    }
+
+
+    private static void writeJsonArray(OutputStream out, Stream<?> elements) {
+        try {
+            WebUtilities.writeJsonArray(out, elements);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private static void discard(Request request, HttpServletResponse raw, Throwable cause) {
+        if (! raw.isCommitted()) {
+            raw.resetBuffer();
+            raw.setHeader("Content-Encoding", null);
+            raw.setHeader("Content-Length", null);
+            return;
+        }
+
+        LOG.warn("Aborting partially written response for: {}", request.pathInfo());
+        org.eclipse.jetty.server.Request baseRequest = org.eclipse.jetty.server.Request.getBaseRequest(request.raw());
+        if (baseRequest != null) {
+            baseRequest.getHttpChannel().abort(cause);
+        }
+    }
+
+
+    private static void record(String route, AdaptiveCompressionOutputStream out) {
+        RouteStats stats = statsByRoute.computeIfAbsent(route, r -> new RouteStats());
+        stats.requestCount.increment();
+        stats.uncompressedBytes.add(out.getUncompressedBytes());
+        stats.compressedBytes.add(out.getCompressedBytes());
+        if (out.isCompressed()) {
+            stats.compressedCount.increment();
+        }
+    }
+
+}
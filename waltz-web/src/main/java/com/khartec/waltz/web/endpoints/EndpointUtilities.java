@@ -20,19 +20,24 @@ package com.khartec.waltz.web.endpoints;
 
 import com.khartec.waltz.web.DatumRoute;
 import com.khartec.waltz.web.ListRoute;
-import com.khartec.waltz.web.WebUtilities;
-import spark.ResponseTransformer;
+import com.khartec.waltz.web.StreamRoute;
+import com.khartec.waltz.web.compression.ResponseCompression;
+import org.eclipse.jetty.http.HttpHeader;
+import spark.Request;
+import spark.Response;
 import spark.Route;
 import spark.Spark;
 
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collection;
+import java.util.function.Function;
+
 import static com.khartec.waltz.web.WebUtilities.TYPE_JSON;
+import static com.khartec.waltz.web.WebUtilities.matchesETag;
 
 
 public class EndpointUtilities {
 
-    private static final ResponseTransformer transformer = WebUtilities.transformer;
-
-
     /**
      * Helper method to register a route which provides a list of items.
      * This helps comprehension as the return types of routes becomes explicit.
@@ -41,7 +46,29 @@ public class EndpointUtilities {
      * @param <T>
      */
     public static <T> void getForList(String path, ListRoute<T> handler) {
-        Spark.get(path, wrapListHandler(handler), transformer);
+        Spark.get(path, wrapListHandler(path, handler));
+    }
+
+
+    /**
+     * As {@link #getForList(String, ListRoute)} but the response carries an
+     * ETag, calculated from the result.  Requests whose
+     * <code>If-None-Match</code> header matches it are answered with a 304
+     * (and no body), saving the cost of serializing and sending large results.
+     * @param path
+     * @param handler
+     * @param etagCalculator  gives the (quoted) ETag of a result
+     * @param <T>
+     */
+    public static <T> void getForList(String path,
+                                      ListRoute<T> handler,
+                                      Function<Collection<T>, String> etagCalculator) {
+        Spark.get(path, (request, response) -> writeWithETag(
+                path,
+                handler.apply(request, response),
+                etagCalculator,
+                request,
+                response));
     }
 
 
@@ -54,47 +81,116 @@ public class EndpointUtilities {
      * @param <T>
      */
     public static <T> void getForDatum(String path, DatumRoute<T> handler) {
-        Spark.get(path, wrapDatumHandler(handler), transformer);
+        Spark.get(path, wrapDatumHandler(path, handler));
+    }
+
+    /**
+     * As {@link #getForDatum(String, DatumRoute)} but the response carries an
+     * ETag, see {@link #getForList(String, ListRoute, Function)}.
+     * @param path
+     * @param handler
+     * @param etagCalculator  gives the (quoted) ETag of a result, which may be null
+     * @param <T>
+     */
+    public static <T> void getForDatum(String path,
+                                       DatumRoute<T> handler,
+                                       Function<T, String> etagCalculator) {
+        Spark.get(path, (request, response) -> writeWithETag(
+                path,
+                handler.apply(request, response),
+                etagCalculator,
+                request,
+                response));
     }
 
     public static <T> void postForDatum(String path, DatumRoute<T> handler) {
-        Spark.post(path, wrapDatumHandler(handler), transformer);
+        Spark.post(path, wrapDatumHandler(path, handler));
     }
 
     public static <T> void postForList(String path, ListRoute<T> handler) {
-        Spark.post(path, wrapListHandler(handler), transformer);
+        Spark.post(path, wrapListHandler(path, handler));
     }
 
     public static <T> void deleteForList(String path, ListRoute<T> handler) {
-        Spark.delete(path, wrapListHandler(handler), transformer);
+        Spark.delete(path, wrapListHandler(path, handler));
     }
 
     public static <T> void deleteForDatum(String path, DatumRoute<T> handler) {
-        Spark.delete(path, wrapDatumHandler(handler), transformer);
+        Spark.delete(path, wrapDatumHandler(path, handler));
     }
 
     public static <T> void putForDatum(String path, DatumRoute<T> handler) {
-        Spark.put(path, wrapDatumHandler(handler), transformer);
+        Spark.put(path, wrapDatumHandler(path, handler));
     }
 
     public static <T> void putForList(String path, ListRoute<T> handler) {
-        Spark.put(path, wrapListHandler(handler), transformer);
+        Spark.put(path, wrapListHandler(path, handler));
+    }
+
+
+    /**
+     * Helper method to register a route which provides a (potentially large)
+     * list of items as a lazy stream.  Each element is serialized as it is
+     * read, so neither the full list nor its json representation is held in
+     * memory.  Should writing fail part way the connection is aborted rather
+     * than a truncated body being sent.
+     * @param path
+     * @param handler
+     * @param <T>
+     */
+    public static <T> void getForStream(String path, StreamRoute<T> handler) {
+        Spark.get(path, wrapStreamHandler(path, handler));
+    }
+
+    public static <T> void postForStream(String path, StreamRoute<T> handler) {
+        Spark.post(path, wrapStreamHandler(path, handler));
     }
 
 
     // -- helpers ---
 
-    private static <T> Route wrapListHandler(ListRoute<T> handler) {
+    /*
+     * Results are written (and possibly compressed) straight to the response
+     * stream rather than via a response transformer, see ResponseCompression.
+     */
+
+    private static <T> Route wrapListHandler(String path, ListRoute<T> handler) {
         return (request, response) -> {
             response.type(TYPE_JSON);
-            return handler.apply(request, response);
+            return ResponseCompression.writeJson(path, handler.apply(request, response), request, response);
         };
     }
 
-    private static <T> Route wrapDatumHandler(DatumRoute<T> handler) {
+    private static <T> Route wrapDatumHandler(String path, DatumRoute<T> handler) {
+        return (request, response) -> {
+            response.type(TYPE_JSON);
+            return ResponseCompression.writeJson(path, handler.apply(request, response), request, response);
+        };
+    }
+
+    private static <R> Object writeWithETag(String path,
+                                            R result,
+                                            Function<R, String> etagCalculator,
+                                            Request request,
+                                            Response response) throws Exception {
+        String etag = etagCalculator.apply(result);
+        response.header(HttpHeader.ETAG.asString(), etag);
+
+        if (matchesETag(request.headers(HttpHeader.IF_NONE_MATCH.asString()), etag)) {
+            HttpServletResponse raw = response.raw();
+            raw.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            raw.flushBuffer();
+            return raw;
+        }
+
+        response.type(TYPE_JSON);
+        return ResponseCompression.writeJson(path, result, request, response);
+    }
+
+    private static <T> Route wrapStreamHandler(String path, StreamRoute<T> handler) {
         return (request, response) -> {
             response.type(TYPE_JSON);
-            return handler.apply(request, response);
+            return ResponseCompression.writeJsonArray(path, handler, request, response);
         };
     }
 
@@ -26,6 +26,7 @@ import com.khartec.waltz.model.attestation.AttestationCreateSummary;
 import com.khartec.waltz.model.attestation.AttestationRun;
 import com.khartec.waltz.model.attestation.AttestationRunCreateCommand;
 import com.khartec.waltz.model.attestation.AttestationRunResponseSummary;
+import com.khartec.waltz.model.issuance.IssuanceJob;
 import com.khartec.waltz.model.user.SystemRole;
 import com.khartec.waltz.service.attestation.AttestationRunService;
 import com.khartec.waltz.service.user.UserRoleService;
@@ -68,6 +69,8 @@ public class AttestationRunEndpoint implements Endpoint {
         String findBySelectorPath = mkPath(BASE_URL, "selector");
         String findResponseSummariesPath = mkPath(BASE_URL, "summary", "response");
         String getCreateSummaryPath = mkPath(BASE_URL, "create-summary");
+        String getIssuanceJobPath = mkPath(BASE_URL, "id", ":id", "issuance");
+        String resubmitIssuancePath = mkPath(BASE_URL, "id", ":id", "issuance", "resubmit");
 
 
         DatumRoute<AttestationRun> getByIdRoute = (req, res) ->
@@ -89,6 +92,19 @@ public class AttestationRunEndpoint implements Endpoint {
                 attestationRunService
                         .findResponseSummaries();
 
+        DatumRoute<IssuanceJob> getIssuanceJobRoute = (req, res) ->
+                attestationRunService
+                        .findIssuanceJob(getId(req))
+                        .orElse(null);
+
+        DatumRoute<IssuanceJob> resubmitIssuanceRoute = (req, res) -> {
+            ensureUserHasAttestationAdminRights(req);
+            return attestationRunService
+                    .resubmitIssuance(
+                            getUsername(req),
+                            getId(req));
+        };
+
         DatumRoute<AttestationCreateSummary> getCreateSummaryRoute = (req, res) ->
                 attestationRunService
                         .getCreateSummary(readCreateCommand(req));
@@ -105,6 +121,7 @@ public class AttestationRunEndpoint implements Endpoint {
         };
 
         getForDatum(getByIdPath, getByIdRoute);
+        getForDatum(getIssuanceJobPath, getIssuanceJobRoute);
         getForList(findAllPath, findAllRoute);
         getForList(findByEntityRefPath, findByEntityRefRoute);
         getForList(findByRecipientPath, findByRecipientRoute);
@@ -112,6 +129,7 @@ public class AttestationRunEndpoint implements Endpoint {
         postForList(findBySelectorPath, findBySelectorRoute);
         postForDatum(BASE_URL, attestationRunCreateRoute);
         postForDatum(getCreateSummaryPath, getCreateSummaryRoute);
+        postForDatum(resubmitIssuancePath, resubmitIssuanceRoute);
     }
 
 
@@ -22,6 +22,7 @@ package com.khartec.waltz.web.endpoints.api;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.Entry;
 import com.khartec.waltz.model.IdSelectionOptions;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingRecalculation;
 import com.khartec.waltz.model.authoritativesource.AuthoritativeSource;
 import com.khartec.waltz.model.authoritativesource.AuthoritativeSourceCreateCommand;
 import com.khartec.waltz.model.authoritativesource.AuthoritativeSourceUpdateCommand;
@@ -76,6 +77,7 @@ public class AuthoritativeSourceEndpoint implements Endpoint {
         // -- PATHS
 
         String recalculateFlowRatingsPath = mkPath(BASE_URL, "recalculate-flow-ratings");
+        String recalculateFlowRatingsDryRunPath = mkPath(BASE_URL, "recalculate-flow-ratings", "dry-run");
         String findNonAuthSourcesPath = mkPath(BASE_URL, "non-auth");
         String findAuthSourcesPath = mkPath(BASE_URL, "auth");
         String calculateConsumersForDataTypeIdSelectorPath = mkPath(BASE_URL, "data-type", "consumers");
@@ -103,6 +105,7 @@ public class AuthoritativeSourceEndpoint implements Endpoint {
                 -> authoritativeSourceService.findAll();
 
         getForDatum(recalculateFlowRatingsPath, this::recalculateFlowRatingsRoute);
+        getForDatum(recalculateFlowRatingsDryRunPath, this::recalculateFlowRatingsDryRunRoute);
         getForDatum(cleanupOrphansPath, this::cleanupOrphansRoute);
         postForList(calculateConsumersForDataTypeIdSelectorPath, this::calculateConsumersForDataTypeIdSelectorRoute);
         postForList(findNonAuthSourcesPath, findNonAuthSourcesRoute);
@@ -161,6 +164,16 @@ public class AuthoritativeSourceEndpoint implements Endpoint {
     }
 
 
+    private AuthoritativeRatingRecalculation recalculateFlowRatingsDryRunRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+
+        String username = getUsername(request);
+        LOG.info("Calculating changes to all flow ratings, dry run (requested by: {})", username);
+
+        return authoritativeSourceService.recalculateAllFlowRatings(true);
+    }
+
+
     private List<Entry<EntityReference, Collection<EntityReference>>> calculateConsumersForDataTypeIdSelectorRoute(
             Request request,
             Response response) throws IOException
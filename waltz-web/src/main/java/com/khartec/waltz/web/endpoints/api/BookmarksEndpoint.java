@@ -24,6 +24,8 @@ import com.khartec.waltz.model.user.SystemRole;
 import com.khartec.waltz.service.bookmark.BookmarkService;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import com.khartec.waltz.service.user.UserRoleService;
+import com.khartec.waltz.web.DatumRoute;
+import com.khartec.waltz.web.ListRoute;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +34,7 @@ import org.springframework.stereotype.Service;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.web.WebUtilities.*;
-import static spark.Spark.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.*;
 
 @Service
 public class BookmarksEndpoint implements Endpoint {
@@ -61,38 +63,31 @@ public class BookmarksEndpoint implements Endpoint {
 
     @Override
     public void register() {
+        String findByRefPath = mkPath(BASE_URL, ":kind", ":id");
+        String savePath = mkPath(BASE_URL);
+        String deletePath = mkPath(BASE_URL, ":id");
 
-        get(mkPath(BASE_URL, ":kind", ":id"),
-                (request, response) -> {
-                    response.type(TYPE_JSON);
-                    EntityReference ref = getEntityReference(request);
-                    return bookmarkService.findByReference(ref);
+        ListRoute<Bookmark> findByRefRoute = (request, response) -> {
+            EntityReference ref = getEntityReference(request);
+            return bookmarkService.findByReference(ref);
+        };
 
-                },
-                transformer);
-
-        post(mkPath(BASE_URL),
-                (request, response) -> {
-                    requireRole(userRoleService, request, SystemRole.BOOKMARK_EDITOR);
-
-                    response.type(TYPE_JSON);
-                    Bookmark bookmark = readBody(request, Bookmark.class);
+        DatumRoute<Bookmark> saveRoute = (request, response) -> {
+            requireRole(userRoleService, request, SystemRole.BOOKMARK_EDITOR);
 
-                    LOG.info("Saving bookmark: "+bookmark);
-                    boolean isUpdate = bookmark.id().isPresent();
+            Bookmark bookmark = readBody(request, Bookmark.class);
 
-                    return isUpdate
-                            ? bookmarkService.update(bookmark, getUsername(request))
-                            : bookmarkService.create(bookmark, getUsername(request));
-                },
-                transformer);
+            LOG.info("Saving bookmark: "+bookmark);
+            boolean isUpdate = bookmark.id().isPresent();
 
+            return isUpdate
+                    ? bookmarkService.update(bookmark, getUsername(request))
+                    : bookmarkService.create(bookmark, getUsername(request));
+        };
 
-        delete(mkPath(BASE_URL, ":id"), (request, response) -> {
+        DatumRoute<Boolean> deleteRoute = (request, response) -> {
             requireRole(userRoleService, request, SystemRole.BOOKMARK_EDITOR);
 
-            response.type(TYPE_JSON);
-
             long bookmarkId = getId(request);
 
             Bookmark bookmark = bookmarkService.getById(bookmarkId);
@@ -103,9 +98,11 @@ public class BookmarksEndpoint implements Endpoint {
 
             LOG.info("Deleting bookmark: " + bookmark);
             return bookmarkService.deleteById(bookmark, getUsername(request));
+        };
 
-        }, transformer);
-
+        getForList(findByRefPath, findByRefRoute);
+        postForDatum(savePath, saveRoute);
+        deleteForDatum(deletePath, deleteRoute);
     }
 
 
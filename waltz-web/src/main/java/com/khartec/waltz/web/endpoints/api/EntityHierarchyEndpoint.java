@@ -64,6 +64,7 @@ public class EntityHierarchyEndpoint implements Endpoint {
         String findRootTalliesPath = mkPath(BASE, "root-tallies");
         String findRootsPath = mkPath(BASE, "roots", ":kind");
         String buildByKindPath = mkPath(BASE, "build", ":kind");
+        String buildForMovedNodePath = mkPath(BASE, "build", ":kind", ":id");
 
         ListRoute<Tally<String>> findTalliesRoute = (request, response) -> entityHierarchyService.tallyByKind();
         ListRoute<Tally<String>> findRootTalliesRoute = (request, response) -> entityHierarchyService.getRootTallies();
@@ -73,6 +74,7 @@ public class EntityHierarchyEndpoint implements Endpoint {
         getForList(findRootTalliesPath, findRootTalliesRoute);
         getForList(findRootsPath, findRootsRoute);
         postForDatum(buildByKindPath, this::buildByKindRoute);
+        postForDatum(buildForMovedNodePath, this::buildForMovedNodeRoute);
     }
 
 
@@ -83,4 +85,12 @@ public class EntityHierarchyEndpoint implements Endpoint {
         return entityHierarchyService.buildFor(kind);
     }
 
+
+    private int buildForMovedNodeRoute(Request request, Response response) {
+        requireRole(userRoleService, request, ADMIN);
+        EntityReference ref = getEntityReference(request);
+        LOG.info("Incrementally building entity hierarchy for moved node: {}", ref);
+        return entityHierarchyService.buildForMovedNode(ref);
+    }
+
 }
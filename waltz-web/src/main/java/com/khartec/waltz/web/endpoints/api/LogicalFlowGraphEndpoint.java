@@ -0,0 +1,126 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web.endpoints.api;
+
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphEdge;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphStatistics;
+import com.khartec.waltz.model.user.SystemRole;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
+import com.khartec.waltz.service.user.UserRoleService;
+import com.khartec.waltz.web.endpoints.Endpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import spark.Request;
+import spark.Response;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.SetUtilities.map;
+import static com.khartec.waltz.web.WebUtilities.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.*;
+import static java.util.Arrays.asList;
+
+
+@Service
+public class LogicalFlowGraphEndpoint implements Endpoint {
+
+    private static final String BASE_URL = mkPath("api", "logical-flow-graph");
+    private static final int DEFAULT_NEIGHBOURHOOD_HOPS = 1;
+
+    private final LogicalFlowGraphService logicalFlowGraphService;
+    private final UserRoleService userRoleService;
+
+
+    @Autowired
+    public LogicalFlowGraphEndpoint(LogicalFlowGraphService logicalFlowGraphService,
+                                    UserRoleService userRoleService) {
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
+        checkNotNull(userRoleService, "userRoleService cannot be null");
+
+        this.logicalFlowGraphService = logicalFlowGraphService;
+        this.userRoleService = userRoleService;
+    }
+
+
+    @Override
+    public void register() {
+        String findUpstreamPath = mkPath(BASE_URL, "upstream", ":kind", ":id");
+        String findDownstreamPath = mkPath(BASE_URL, "downstream", ":kind", ":id");
+        String findNeighbourhoodPath = mkPath(BASE_URL, "neighbourhood", ":kind", ":id");
+        String findShortestPathPath = mkPath(BASE_URL, "shortest-path", ":sourceKind", ":sourceId", ":targetKind", ":targetId");
+        String getStatisticsPath = mkPath(BASE_URL, "stats");
+        String rebuildPath = mkPath(BASE_URL, "rebuild");
+
+        getForList(findUpstreamPath, (request, response) -> logicalFlowGraphService.findUpstream(
+                getEntityReference(request),
+                getHops(request),
+                getDataTypeIds(request)));
+
+        getForList(findDownstreamPath, (request, response) -> logicalFlowGraphService.findDownstream(
+                getEntityReference(request),
+                getHops(request),
+                getDataTypeIds(request)));
+
+        getForList(findNeighbourhoodPath, (request, response) -> logicalFlowGraphService.findNeighbourhood(
+                getEntityReference(request),
+                getHops(request).orElse(DEFAULT_NEIGHBOURHOOD_HOPS),
+                getDataTypeIds(request)));
+
+        getForList(findShortestPathPath, this::findShortestPathRoute);
+        getForDatum(getStatisticsPath, (request, response) -> logicalFlowGraphService.getStatistics());
+        postForDatum(rebuildPath, this::rebuildRoute);
+    }
+
+
+    private List<LogicalFlowGraphEdge> findShortestPathRoute(Request request, Response response) {
+        return logicalFlowGraphService.findShortestPath(
+                getEntityReference(request, "sourceKind", "sourceId"),
+                getEntityReference(request, "targetKind", "targetId"),
+                getDataTypeIds(request));
+    }
+
+
+    private LogicalFlowGraphStatistics rebuildRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+        return logicalFlowGraphService.rebuild();
+    }
+
+
+    // -- HELPERS ---
+
+    private static Optional<Integer> getHops(Request request) {
+        return Optional
+                .ofNullable(request.queryParams("hops"))
+                .map(Integer::valueOf);
+    }
+
+
+    private static Set<Long> getDataTypeIds(Request request) {
+        String dataTypeIds = request.queryParams("data-type-ids");
+        return dataTypeIds == null
+                ? Collections.emptySet()
+                : map(asList(dataTypeIds.split(",")), Long::valueOf);
+    }
+
+}
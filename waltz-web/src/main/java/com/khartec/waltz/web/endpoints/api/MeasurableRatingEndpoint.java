@@ -27,6 +27,7 @@ import com.khartec.waltz.model.tally.Tally;
 import com.khartec.waltz.service.measurable_rating.MeasurableRatingService;
 import com.khartec.waltz.service.user.UserRoleService;
 import com.khartec.waltz.web.ListRoute;
+import com.khartec.waltz.web.StreamRoute;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -87,8 +88,8 @@ public class MeasurableRatingEndpoint implements Endpoint {
         ListRoute<MeasurableRating> findByAppSelectorRoute = (request, response)
                 -> measurableRatingService.findByAppIdSelector(readIdSelectionOptionsFromBody(request));
 
-        ListRoute<MeasurableRating> findByCategoryRoute = (request, response)
-                -> measurableRatingService.findByCategory(getId(request));
+        StreamRoute<MeasurableRating> findByCategoryRoute = (request, response, consumer)
+                -> measurableRatingService.streamByCategory(getId(request), consumer);
 
         ListRoute<Tally<Long>> countByMeasurableCategoryRoute = (request, response)
                 -> measurableRatingService.tallyByMeasurableCategoryId(getId(request));
@@ -102,7 +103,7 @@ public class MeasurableRatingEndpoint implements Endpoint {
         getForList(findForEntityPath, findForEntityRoute);
         postForList(findByMeasurableSelectorPath, findByMeasurableSelectorRoute);
         postForList(findByAppSelectorPath, findByAppSelectorRoute);
-        getForList(findByCategoryPath, findByCategoryRoute);
+        getForStream(findByCategoryPath, findByCategoryRoute);
         postForList(modifyMeasurableForEntityPath, this::saveRoute);
         deleteForList(modifyMeasurableForEntityPath, this::removeRoute);
         deleteForList(modifyCategoryForEntityPath, this::removeCategoryRoute);
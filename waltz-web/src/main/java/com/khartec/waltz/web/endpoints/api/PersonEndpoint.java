@@ -46,6 +46,7 @@ public class PersonEndpoint implements Endpoint {
     private static final String GET_BY_USERID_PATH = mkPath(BASE_URL, "user-id", ":userId");
     private static final String GET_BY_ID = mkPath(BASE_URL, "id", ":id");
     private static final String REBUILD_HIERARCHY_PATH = mkPath(BASE_URL, "rebuild-hierarchy");
+    private static final String UPDATE_HIERARCHY_PATH = mkPath(BASE_URL, "update-hierarchy");
 
     private final PersonService personService;
     private final PersonHierarchyService personHierarchyService;
@@ -91,6 +92,7 @@ public class PersonEndpoint implements Endpoint {
                 personService.getPersonByUserId(request.params("userId"))));
 
         getForDatum(REBUILD_HIERARCHY_PATH, this::rebuildHierarchyRoute);
+        getForDatum(UPDATE_HIERARCHY_PATH, this::updateHierarchyRoute);
 
         getForDatum(COUNT_CUMULATIVE_REPORTS_BY_KIND_PATH, (req, res) ->
                 personService.countAllUnderlingsByKind(req.params("empId")));
@@ -102,4 +104,10 @@ public class PersonEndpoint implements Endpoint {
         personHierarchyService.build();
         return true;
     }
+
+
+    private int updateHierarchyRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+        return personHierarchyService.update();
+    }
 }
@@ -24,6 +24,7 @@ import com.khartec.waltz.model.SetAttributeCommand;
 import com.khartec.waltz.model.physical_flow.*;
 import com.khartec.waltz.model.user.SystemRole;
 import com.khartec.waltz.service.physical_flow.PhysicalFlowService;
+import com.khartec.waltz.service.physical_flow.PhysicalFlowUploadJobService;
 import com.khartec.waltz.service.physical_flow.PhysicalFlowUploadService;
 import com.khartec.waltz.service.user.UserRoleService;
 import com.khartec.waltz.web.DatumRoute;
@@ -57,18 +58,22 @@ public class PhysicalFlowEndpoint implements Endpoint {
     private final PhysicalFlowService physicalFlowService;
     private final UserRoleService userRoleService;
     private final PhysicalFlowUploadService physicalFlowUploadService;
+    private final PhysicalFlowUploadJobService physicalFlowUploadJobService;
 
 
     @Autowired
     public PhysicalFlowEndpoint(PhysicalFlowService physicalFlowService,
                                 PhysicalFlowUploadService physicalFlowUploadService,
+                                PhysicalFlowUploadJobService physicalFlowUploadJobService,
                                 UserRoleService userRoleService) {
         checkNotNull(physicalFlowService, "physicalFlowService cannot be null");
         checkNotNull(physicalFlowUploadService, "physicalFlowUploadService cannot be null");
+        checkNotNull(physicalFlowUploadJobService, "physicalFlowUploadJobService cannot be null");
         checkNotNull(userRoleService, "userRoleService cannot be null");
 
         this.physicalFlowService = physicalFlowService;
         this.physicalFlowUploadService = physicalFlowUploadService;
+        this.physicalFlowUploadJobService = physicalFlowUploadJobService;
         this.userRoleService = userRoleService;
     }
 
@@ -154,6 +159,17 @@ public class PhysicalFlowEndpoint implements Endpoint {
                 BASE_URL,
                 "upload");
 
+        String uploadAsyncPath = mkPath(
+                BASE_URL,
+                "upload",
+                "async");
+
+        String getUploadJobPath = mkPath(
+                BASE_URL,
+                "upload",
+                "job",
+                ":id");
+
         String cleanupOrphansPath = mkPath(BASE_URL, "cleanup-orphans");
 
 
@@ -210,6 +226,8 @@ public class PhysicalFlowEndpoint implements Endpoint {
         postForDatum(updateAttributePath, this::updateAttribute);
         postForDatum(validateUploadPath, this::validateUpload);
         postForDatum(uploadPath, this::upload);
+        postForDatum(uploadAsyncPath, this::uploadAsync);
+        getForDatum(getUploadJobPath, this::getUploadJob);
 
         deleteForDatum(deletePath, this::deleteFlow);
         getForDatum(cleanupOrphansPath, this::cleanupOrphansRoute);
@@ -299,6 +317,26 @@ public class PhysicalFlowEndpoint implements Endpoint {
     }
 
 
+    private PhysicalFlowUploadJob uploadAsync(Request request, Response response) throws IOException {
+        requireRole(userRoleService, request, SystemRole.LOGICAL_DATA_FLOW_EDITOR);
+        List<PhysicalFlowUploadCommand> commands = asList(readBody(request, PhysicalFlowUploadCommand[].class));
+        String username = getUsername(request);
+
+        return physicalFlowUploadJobService.submit(username, commands);
+    }
+
+
+    private PhysicalFlowUploadJob getUploadJob(Request request, Response response) {
+        String username = getUsername(request);
+
+        // jobs are only visible to the user who submitted them
+        return physicalFlowUploadJobService
+                .findJob(request.params("id"))
+                .filter(j -> j.submittedBy().equals(username))
+                .orElse(null);
+    }
+
+
     private Integer cleanupOrphansRoute(Request request, Response response) throws IOException {
         requireRole(userRoleService, request, SystemRole.ADMIN);
 
@@ -0,0 +1,81 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.web.endpoints.api;
+
+import com.khartec.waltz.model.query_stats.QueryStatsSummary;
+import com.khartec.waltz.model.user.SystemRole;
+import com.khartec.waltz.service.query_stats.QueryStatsService;
+import com.khartec.waltz.service.user.UserRoleService;
+import com.khartec.waltz.web.endpoints.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import spark.Request;
+import spark.Response;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.web.WebUtilities.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.deleteForDatum;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
+
+
+@Service
+public class QueryStatsEndpoint implements Endpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryStatsEndpoint.class);
+    private static final String BASE_URL = mkPath("api", "sys", "query-stats");
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final QueryStatsService queryStatsService;
+    private final UserRoleService userRoleService;
+
+
+    @Autowired
+    public QueryStatsEndpoint(QueryStatsService queryStatsService,
+                              UserRoleService userRoleService) {
+        checkNotNull(queryStatsService, "queryStatsService cannot be null");
+        checkNotNull(userRoleService, "userRoleService cannot be null");
+
+        this.queryStatsService = queryStatsService;
+        this.userRoleService = userRoleService;
+    }
+
+
+    @Override
+    public void register() {
+        getForDatum(BASE_URL, this::getSummaryRoute);
+        deleteForDatum(BASE_URL, this::resetRoute);
+    }
+
+
+    private QueryStatsSummary getSummaryRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+        return queryStatsService.getSummary(getLimit(request).orElse(DEFAULT_LIMIT));
+    }
+
+
+    private boolean resetRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+        LOG.info("Query statistics reset (requested by: {})", getUsername(request));
+        queryStatsService.reset();
+        return true;
+    }
+
+}
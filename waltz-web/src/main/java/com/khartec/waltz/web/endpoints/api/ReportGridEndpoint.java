@@ -19,6 +19,7 @@
 package com.khartec.waltz.web.endpoints.api;
 
 import com.khartec.waltz.model.report_grid.ReportGrid;
+import com.khartec.waltz.model.report_grid.ReportGridColumnar;
 import com.khartec.waltz.service.report_grid.ReportGridService;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,11 +51,13 @@ public class ReportGridEndpoint implements Endpoint {
     public void register() {
         String findAllPath = mkPath(BASE_URL, "all");
         String getViewByIdPath = mkPath(BASE_URL, "view", "id", ":id");
+        String getColumnarViewByIdPath = mkPath(BASE_URL, "view", "id", ":id", "columnar");
 //        String findByExtIdPath = mkPath(BASE_URL, "view", "external-id", ":externalId");
 
 
         getForDatum(findAllPath, (req, resp) -> reportGridService.findAll());
         postForDatum(getViewByIdPath, this::getViewByIdRoute);
+        postForDatum(getColumnarViewByIdPath, this::getColumnarViewByIdRoute);
 //        postForDatum(findByExtIdPath, this::getByExtIdRoute);
     }
 
@@ -66,4 +69,11 @@ public class ReportGridEndpoint implements Endpoint {
     }
 
 
+    public ReportGridColumnar getColumnarViewByIdRoute(Request req, Response resp) throws IOException {
+        return reportGridService.getColumnarByIdAndSelectionOptions(
+                getId(req),
+                readIdSelectionOptionsFromBody(req));
+    }
+
+
 }
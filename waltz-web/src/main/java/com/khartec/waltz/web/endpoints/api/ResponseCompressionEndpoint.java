@@ -0,0 +1,78 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web.endpoints.api;
+
+import com.khartec.waltz.model.compression.RouteCompressionStatistic;
+import com.khartec.waltz.model.user.SystemRole;
+import com.khartec.waltz.service.user.UserRoleService;
+import com.khartec.waltz.web.compression.ResponseCompression;
+import com.khartec.waltz.web.endpoints.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import spark.Request;
+import spark.Response;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.web.WebUtilities.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.deleteForDatum;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+
+
+@Service
+public class ResponseCompressionEndpoint implements Endpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCompressionEndpoint.class);
+    private static final String BASE_URL = mkPath("api", "sys", "compression-stats");
+
+    private final UserRoleService userRoleService;
+
+
+    @Autowired
+    public ResponseCompressionEndpoint(UserRoleService userRoleService) {
+        checkNotNull(userRoleService, "userRoleService cannot be null");
+        this.userRoleService = userRoleService;
+    }
+
+
+    @Override
+    public void register() {
+        getForList(BASE_URL, this::findAllRoute);
+        deleteForDatum(BASE_URL, this::resetRoute);
+    }
+
+
+    private List<RouteCompressionStatistic> findAllRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+        return ResponseCompression.getStatistics();
+    }
+
+
+    private boolean resetRoute(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.ADMIN);
+        LOG.info("Response compression statistics reset (requested by: {})", getUsername(request));
+        ResponseCompression.resetStatistics();
+        return true;
+    }
+
+}
@@ -18,6 +18,8 @@
 
 package com.khartec.waltz.web.endpoints.api;
 
+import com.khartec.waltz.web.assets.StaticAsset;
+import com.khartec.waltz.web.assets.StaticAssetIndex;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.eclipse.jetty.http.HttpHeader;
 import org.slf4j.Logger;
@@ -26,26 +28,41 @@ import spark.Request;
 import spark.Response;
 import spark.Spark;
 
-import java.io.*;
-import java.net.URL;
-import java.util.List;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 
-import static com.khartec.waltz.common.IOUtilities.copyStream;
-import static com.khartec.waltz.common.IOUtilities.readLines;
-import static com.khartec.waltz.common.StringUtilities.lower;
-import static com.khartec.waltz.common.StringUtilities.notEmpty;
-import static com.khartec.waltz.web.WebUtilities.getMimeType;
-import static java.lang.String.format;
+import static com.khartec.waltz.common.Checks.checkNotNull;
 
+
+/**
+ * Serves the compiled front end from an in-memory {@link StaticAssetIndex},
+ * built at start up.  Responses carry strong ETags, conditional requests
+ * (<code>If-None-Match</code>) are answered with a 304, and pre-compressed
+ * variants are sent to clients which accept them.
+ */
 public class StaticResourcesEndpoint implements Endpoint {
 
     private static final Logger LOG = LoggerFactory.getLogger(StaticResourcesEndpoint.class);
     private static final String CACHE_MAX_AGE_VALUE = "max-age=" + TimeUnit.DAYS.toSeconds(30);
+    private static final String STATIC_ROOT = "static";
+
+
+    private final StaticAssetIndex assetIndex;
+
+
+    public StaticResourcesEndpoint() {
+        this(StaticAssetIndex.scan(
+                StaticResourcesEndpoint.class.getClassLoader(),
+                STATIC_ROOT));
+    }
 
 
-    private final ClassLoader classLoader = StaticResourcesEndpoint.class
-            .getClassLoader();
+    public StaticResourcesEndpoint(StaticAssetIndex assetIndex) {
+        checkNotNull(assetIndex, "assetIndex cannot be null");
+        this.assetIndex = assetIndex;
+    }
 
 
     @Override
@@ -54,39 +71,19 @@ public class StaticResourcesEndpoint implements Endpoint {
 
         Spark.get("/*", (request, response) -> {
 
-            String resolvedPath = resolvePath(request);
+            StaticAsset asset = assetIndex.resolve(
+                    request.pathInfo(),
+                    request.contextPath());
 
-            if (resolvedPath == null) {
+            if (asset == null) {
                 return null;
             }
 
-            try (
-                InputStream resourceAsStream = classLoader.getResourceAsStream(resolvedPath)
-            ) {
-                if (resourceAsStream == null) {
-                    return null;
-                } else {
-                    String message = format(
-                            "Serving %s in response to request for %s",
-                            resolvedPath,
-                            request.pathInfo());
-                    LOG.info(message);
-
-                    response.type(getMimeType(resolvedPath));
-
-                    addCacheHeadersIfNeeded(response, resolvedPath);
-                    InputStream modifiedStream = modifyIndexBaseTagIfNeeded(request, resolvedPath, resourceAsStream);
-
-                    OutputStream out = response
-                            .raw()
-                            .getOutputStream();
-                    copyStream(modifiedStream, out);
-                    out.flush();
-
-                    return new Object(); // indicate we have handled the request
-                }
+            try {
+                LOG.debug("Serving {} in response to request for {}", asset.getPath(), request.pathInfo());
+                return serve(asset, request, response);
             } catch (Exception e) {
-                LOG.warn("Encountered error when attempting to serve: "+resolvedPath, e);
+                LOG.warn("Encountered error when attempting to serve: " + asset.getPath(), e);
                 return null;
             }
         });
@@ -94,94 +91,59 @@ public class StaticResourcesEndpoint implements Endpoint {
 
 
     /**
-     * We want to add a cache-control: max-age value to all resources except html.
-     * This is because the html resources have references to 'cache-busted' js files
-     * and other resources.  If the html was also cached then it would be difficult
-     * to detect client code updates.
+     * Writes the most suitable variant of the asset (or a 304 if the client
+     * already has it).  The content is written in a single call directly from
+     * the shared, in-memory, byte array.
      *
-     * @param response - the http response we are servicing
-     * @param resolvedPath - the resolved path to the resource we are serving
+     * @return the raw response, so Spark knows there is nothing left to write
      */
-    private void addCacheHeadersIfNeeded(Response response, String resolvedPath) {
-        if (! resolvedPath.endsWith(".html")) {
-            response.header(HttpHeader.CACHE_CONTROL.toString(), CACHE_MAX_AGE_VALUE);
+    private HttpServletResponse serve(StaticAsset asset,
+                                      Request request,
+                                      Response response) throws IOException {
+        StaticAsset.Variant variant = asset.selectVariant(request.headers(HttpHeader.ACCEPT_ENCODING.asString()));
+        HttpServletResponse raw = response.raw();
+
+        raw.setContentType(asset.getMimeType());
+        raw.setHeader(HttpHeader.ETAG.asString(), variant.getETag());
+        addCacheHeadersIfNeeded(response, asset.getPath());
+        if (asset.hasCompressedVariants()) {
+            raw.addHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
         }
-    }
 
+        if (variant.isMatchedBy(request.headers(HttpHeader.IF_NONE_MATCH.asString()))) {
+            raw.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            raw.flushBuffer();
+            return raw;
+        }
 
-    /**
-     * index.html need to have a <base href="/[site_context]/" /> tag in the head section to ensure
-     * html5 mode works correctly in AngularJS.  This method will ensure the existing <base href="/" /> tag
-     * is replace with one that includes the correct site context as deployed.
-     * @param request
-     * @param resolvedPath
-     * @param resourceStream
-     * @return the modified input stream with the amended <base> tag or the original unmodified resourceStream
-     * @throws IOException
-     */
-    private InputStream modifyIndexBaseTagIfNeeded(Request request,
-                                                   String resolvedPath,
-                                                   InputStream resourceStream) throws IOException {
-        if(resolvedPath.endsWith("index.html") && notEmpty(request.contextPath())) {
-            List<String> lines = readLines(resourceStream);
-
-            for(int i = 0; i < lines.size(); i++) {
-                String line = lower(lines.get(i));
-
-                if (line.contains("<base href=")) {
-                    LOG.info("Found <base> tag: " + line + ", adding context path: " + request.contextPath());
-                    line = String.format("\t<base href=\"%s/\" />", request.contextPath());
-                    LOG.info("Updated <base> tag: " + line);
-                    lines.set(i, line);
-
-                    // done, exit loop
-                    break;
-                }
-
-                if (line.contains("</head>") ) {
-                    // don't need to continue if have reached here and no base tag found
-                    break;
-                }
-            }
+        if (variant.getContentEncoding() != null) {
+            raw.setHeader(HttpHeader.CONTENT_ENCODING.asString(), variant.getContentEncoding());
+        }
 
-            // copy amended file into a stream
-            try(ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                 OutputStreamWriter writer = new OutputStreamWriter(outputStream)) {
+        byte[] content = variant.getContent();
+        raw.setContentLength(content.length);
 
-                for(String line : lines) {
-                    writer.write(line);
-                    writer.write(System.lineSeparator());
-                }
+        OutputStream out = raw.getOutputStream();
+        out.write(content);
+        out.flush();
 
-                writer.flush();
-                ByteArrayInputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
-                return inputStream;
-            }
-        }
-        return resourceStream;
+        return raw;
     }
 
 
-    private String resolvePath(Request request) {
-        final String indexPath = "static/index.html";
-        String path = request.pathInfo().replaceFirst("/", "");
-        String resourcePath = path.length() > 0 ? ("static/" + path) : indexPath;
-
-        URL resource = classLoader.getResource(resourcePath);
-
-        if (resource == null) {
-            // 404: return index.html
-            resource = classLoader.getResource(indexPath);
-            resourcePath = indexPath;
+    /**
+     * We want to add a cache-control: max-age value to all resources except html.
+     * This is because the html resources have references to 'cache-busted' js files
+     * and other resources.  If the html was also cached then it would be difficult
+     * to detect client code updates.  Html is instead revalidated using its ETag.
+     *
+     * @param response - the http response we are servicing
+     * @param resolvedPath - the resolved path to the resource we are serving
+     */
+    private void addCacheHeadersIfNeeded(Response response, String resolvedPath) {
+        if (! resolvedPath.endsWith(".html")) {
+            response.header(HttpHeader.CACHE_CONTROL.toString(), CACHE_MAX_AGE_VALUE);
         }
-
-        boolean isDirectory = resource
-                .getPath()
-                .endsWith("/");
-
-        return isDirectory
-                ? resourcePath + "/index.html"
-                : resourcePath;
     }
 
 }
@@ -20,6 +20,7 @@ package com.khartec.waltz.web.endpoints.api;
 
 import com.khartec.waltz.model.DateChangeCommand;
 import com.khartec.waltz.model.IdCommandResponse;
+import com.khartec.waltz.model.issuance.IssuanceJob;
 import com.khartec.waltz.model.survey.*;
 import com.khartec.waltz.model.user.SystemRole;
 import com.khartec.waltz.service.survey.SurveyRunService;
@@ -75,6 +76,7 @@ public class SurveyRunEndpoint implements Endpoint {
         String updateSurveyRunDueDatePath = mkPath(BASE_URL, ":id", "due-date");
         String updateOwningRolePath = mkPath(BASE_URL, ":id", "role");
         String getSurveyRunCompletionRate = mkPath(BASE_URL, ":id", "completion-rate");
+        String getIssuanceJobPath = mkPath(BASE_URL, ":id", "issuance");
 
         DatumRoute<SurveyRun> getByIdRoute = (req, res) ->
                 surveyRunService.getById(getId(req));
@@ -146,14 +148,22 @@ public class SurveyRunEndpoint implements Endpoint {
             return surveyRunService.generateSurveyInstanceRecipients(getId(request));
         };
 
-        DatumRoute<Boolean> createSurveyRunInstancesAndRecipientsRoute = (request, response) -> {
+        DatumRoute<IssuanceJob> createSurveyRunInstancesAndRecipientsRoute = (request, response) -> {
             ensureUserHasAdminRights(request);
 
-            return surveyRunService.createSurveyInstancesAndRecipients(
+            // optional, the role given to each issued instance
+            String owningRole = request.queryParams("owningRole");
+
+            return surveyRunService.submitSurveyInstancesAndRecipients(
+                    getUsername(request),
                     getId(request),
+                    owningRole,
                     newArrayList(readBody(request, SurveyInstanceRecipient[].class)));
         };
 
+        DatumRoute<IssuanceJob> getIssuanceJobRoute = (request, response)
+                -> surveyRunService.findIssuanceJob(getId(request)).orElse(null);
+
         DatumRoute<Boolean> createSurveyInstancesRoute = (request, response) -> {
             long runId = getId(request);
 
@@ -178,6 +188,7 @@ public class SurveyRunEndpoint implements Endpoint {
         deleteForDatum(surveyRunDeletePath, surveyRunDeleteRoute);
         putForDatum(surveyRunUpdatePath, surveyRunUpdateRoute);
         postForDatum(createSurveyRunInstancesAndRecipientsPath, createSurveyRunInstancesAndRecipientsRoute);
+        getForDatum(getIssuanceJobPath, getIssuanceJobRoute);
         postForDatum(createSurveyInstancesPath, createSurveyInstancesRoute);
         putForDatum(updateSurveyRunStatusPath, surveyRunUpdateStatusRoute);
         putForDatum(updateSurveyRunDueDatePath, surveyRunUpdateDueDateRoute);
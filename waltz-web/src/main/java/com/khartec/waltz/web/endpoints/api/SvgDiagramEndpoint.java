@@ -20,12 +20,15 @@ package com.khartec.waltz.web.endpoints.api;
 
 import com.khartec.waltz.model.svg.SvgDiagram;
 import com.khartec.waltz.service.svg.SvgDiagramService;
+import com.khartec.waltz.web.DatumRoute;
 import com.khartec.waltz.web.ListRoute;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import static com.khartec.waltz.web.WebUtilities.getId;
 import static com.khartec.waltz.web.WebUtilities.mkPath;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
 
 
@@ -45,11 +48,16 @@ public class SvgDiagramEndpoint implements Endpoint {
 
     @Override
     public void register() {
+        String getByIdPath = mkPath(BASE_URL, "id", ":id");
         String findByGroupsPath = mkPath(BASE_URL, "group");
 
+        DatumRoute<SvgDiagram> getByIdRoute = (request, response) ->
+                svgDiagramService.getById(getId(request));
+
         ListRoute<SvgDiagram> findByGroupsRoute = (request, response) ->
                 svgDiagramService.findByGroups(request.queryParamsValues("group"));
 
-        getForList(findByGroupsPath, findByGroupsRoute);
+        getForDatum(getByIdPath, getByIdRoute, svgDiagramService::calcETag);
+        getForList(findByGroupsPath, findByGroupsRoute, svgDiagramService::calcETag);
     }
 }
@@ -30,6 +30,7 @@ import com.khartec.waltz.model.user.LoginRequest;
 import com.khartec.waltz.service.settings.SettingsService;
 import com.khartec.waltz.service.user.UserRoleService;
 import com.khartec.waltz.service.user.UserService;
+import com.khartec.waltz.web.DatumRoute;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,13 +40,14 @@ import spark.Filter;
 
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Date;
 import java.util.Optional;
 import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.MapUtilities.newHashMap;
 import static com.khartec.waltz.web.WebUtilities.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.postForDatum;
 import static spark.Spark.before;
-import static spark.Spark.post;
 
 
 @Service
@@ -79,7 +81,7 @@ public class AuthenticationEndpoint implements Endpoint {
     private Supplier<Filter> createDefaultFilter() {
         return () -> {
             LOG.info("Using default (jwt) authentication filter");
-            return new JWTAuthenticationFilter(settingsService);
+            return new JWTAuthenticationFilter(settingsService, userRoleService);
         };
     }
 
@@ -104,7 +106,7 @@ public class AuthenticationEndpoint implements Endpoint {
     @Override
     public void register() {
 
-        post(mkPath(BASE_URL, "login"), (request, response) -> {
+        DatumRoute<Object> loginRoute = (request, response) -> {
 
             LoginRequest login = readBody(request, LoginRequest.class);
             AuthenticationResponse authResponse = authenticate(login);
@@ -119,7 +121,8 @@ public class AuthenticationEndpoint implements Endpoint {
                 String token = JWT.create()
                         .withIssuer(JWTUtilities.ISSUER)
                         .withSubject(authResponse.waltzUserName())
-                        .withArrayClaim("roles", roles)
+                        .withIssuedAt(new Date())
+                        .withArrayClaim(JWTUtilities.ROLES_CLAIM, roles)
                         .withClaim("displayName", login.userName())
                         .withClaim("employeeId", login.userName())
                         .sign(algorithmHS);
@@ -129,7 +132,9 @@ public class AuthenticationEndpoint implements Endpoint {
                 response.status(401);
                 return authResponse.errorMessage();
             }
-        }, transformer);
+        };
+
+        postForDatum(mkPath(BASE_URL, "login"), loginRoute);
 
         before(mkPath("api", "*"), filter);
 
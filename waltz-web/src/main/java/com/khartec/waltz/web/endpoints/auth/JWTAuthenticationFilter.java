@@ -21,17 +21,24 @@ package com.khartec.waltz.web.endpoints.auth;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.service.settings.SettingsService;
+import com.khartec.waltz.service.user.UserRoleService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 
+import java.util.Optional;
+
 
 /**
- * Authentication filter which verifies a jwt token.  We only care
- * about the bearer name.
+ * Authentication filter which verifies a jwt token.  We mostly care
+ * about the bearer name, however if a role service is provided the
+ * role snapshot carried in the token is offered to it (see
+ * {@link UserRoleService#seedRoles}).
  */
 public class JWTAuthenticationFilter extends WaltzFilter {
 
@@ -39,10 +46,18 @@ public class JWTAuthenticationFilter extends WaltzFilter {
 
     private final JWTVerifier verifier256;
     private final JWTVerifier verifier512;
+    private final Optional<UserRoleService> userRoleService;
 
 
     public JWTAuthenticationFilter(SettingsService settingsService) {
+        this(settingsService, null);
+    }
+
+
+    public JWTAuthenticationFilter(SettingsService settingsService,
+                                   UserRoleService userRoleService) {
         super(settingsService);
+        this.userRoleService = Optional.ofNullable(userRoleService);
         try {
             Algorithm algorithm256 = Algorithm.HMAC256(JWTUtilities.SECRET);
             Algorithm algorithm512 = Algorithm.HMAC512(JWTUtilities.SECRET);
@@ -71,7 +86,25 @@ public class JWTAuthenticationFilter extends WaltzFilter {
 
             DecodedJWT decodedJWT = verifier.verify(token);
             AuthenticationUtilities.setUser(request, decodedJWT.getSubject());
+            userRoleService.ifPresent(svc -> seedRoles(svc, decodedJWT));
+        }
+    }
+
+
+    private void seedRoles(UserRoleService svc, DecodedJWT token) {
+        Claim rolesClaim = token.getClaim(JWTUtilities.ROLES_CLAIM);
+        String[] roles = rolesClaim.isNull()
+                ? null
+                : rolesClaim.asArray(String.class);
+
+        if (roles == null || token.getIssuedAt() == null) {
+            return;
         }
+
+        svc.seedRoles(
+                token.getSubject(),
+                SetUtilities.fromArray(roles),
+                token.getIssuedAt().getTime());
     }
 
 
@@ -26,4 +26,9 @@ public class JWTUtilities {
     public static final String SECRET = "secret";
 
     public static final String ISSUER = "Waltz";
+
+    /**
+     * Claim holding a snapshot of the user's roles at the time the token was issued
+     */
+    public static final String ROLES_CLAIM = "roles";
 }
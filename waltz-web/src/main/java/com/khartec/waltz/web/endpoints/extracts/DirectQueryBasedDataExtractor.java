@@ -19,22 +19,30 @@
 package com.khartec.waltz.web.endpoints.extracts;
 
 
+import com.khartec.waltz.common.SpoolingOutputStream;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.eclipse.jetty.http.MimeTypes;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.Record;
 import org.jooq.Select;
 import spark.Request;
 import spark.Response;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -42,8 +50,41 @@ import static com.khartec.waltz.common.Checks.checkNotNull;
 import static java.util.Optional.ofNullable;
 
 
+/**
+ * Base class for extracts which are driven directly from a jOOQ query.
+ *
+ * Results are read from the database via a lazy cursor rather than being
+ * materialised in full.  Excel output uses a windowed (SXSSF) workbook so
+ * only a small number of rows are held in memory at any one time, the
+ * remainder being flushed to a temporary file.  CSV output is similarly
+ * spooled (to memory, then a temporary file).  In both cases the cursor and
+ * its transaction are closed before anything is sent, so a database
+ * connection is not held whilst a slow client reads the extract.
+ * No content length is set, therefore the response is sent using chunked
+ * transfer encoding.
+ */
 public abstract class DirectQueryBasedDataExtractor implements DataExtractor {
 
+    /**
+     * Number of rows the database driver should fetch per round trip
+     */
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Number of rows formatted per CSV chunk
+     */
+    private static final int CSV_CHUNK_SIZE = 1000;
+
+    /**
+     * Number of rows kept in memory by the streaming workbook before being flushed to disk
+     */
+    private static final int EXCEL_ROW_WINDOW = 100;
+
+    /**
+     * Number of bytes of CSV kept in memory before being spooled to disk
+     */
+    private static final int CSV_SPOOL_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
     protected DSLContext dsl;
 
 
@@ -72,31 +113,36 @@ public abstract class DirectQueryBasedDataExtractor implements DataExtractor {
     private Object writeAsExcel(String suggestedFilenameStem,
                                 Select<?> qry,
                                 Response response) throws IOException {
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet sheet = workbook.createSheet(sanitizeSheetName(suggestedFilenameStem));
+        HttpServletResponse httpResponse = response.raw();
 
-        writeExcelHeader(qry, sheet);
-        writeExcelBody(qry, sheet);
+        httpResponse.setHeader("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        httpResponse.setHeader("Content-Disposition", "attachment; filename=" + suggestedFilenameStem + ".xlsx");
+        httpResponse.setHeader("Content-Transfer-Encoding", "7bit");
 
-        int endFilterColumnIndex = qry.fields().length == 0
-                ? 0
-                : qry.fields().length - 1;
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
 
-        sheet.setAutoFilter(new CellRangeAddress(0, 0, 0, endFilterColumnIndex));
-        sheet.createFreezePane(0, 1);
+        try {
+            SXSSFSheet sheet = workbook.createSheet(sanitizeSheetName(suggestedFilenameStem));
 
-        byte[] bytes = convertExcelToByteArray(workbook);
+            writeExcelHeader(qry, sheet);
+            streamQuery(qry, cursor -> writeExcelBody(cursor, sheet));
 
-        HttpServletResponse httpResponse = response.raw();
+            int endFilterColumnIndex = qry.fields().length == 0
+                    ? 0
+                    : qry.fields().length - 1;
 
-        httpResponse.setHeader("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        httpResponse.setHeader("Content-Disposition", "attachment; filename=" + suggestedFilenameStem + ".xlsx");
-        httpResponse.setHeader("Content-Transfer-Encoding", "7bit");
+            sheet.setAutoFilter(new CellRangeAddress(0, 0, 0, endFilterColumnIndex));
+            sheet.createFreezePane(0, 1);
 
-        httpResponse.setContentLength(bytes.length);
-        httpResponse.getOutputStream().write(bytes);
-        httpResponse.getOutputStream().flush();
-        httpResponse.getOutputStream().close();
+            ServletOutputStream outputStream = httpResponse.getOutputStream();
+            workbook.write(outputStream);
+            outputStream.flush();
+            outputStream.close();
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
 
         return httpResponse;
     }
@@ -104,25 +150,70 @@ public abstract class DirectQueryBasedDataExtractor implements DataExtractor {
 
     private Object writeAsCSV(String suggestedFilenameStem,
                               Select<?> qry,
-                              Response response) {
-        String csv = qry.fetch().formatCSV();
+                              Response response) throws IOException {
         response.type(MimeTypes.Type.TEXT_PLAIN.name());
         response.header("Content-disposition", "attachment; filename=" + suggestedFilenameStem + ".csv");
-        return csv;
+
+        HttpServletResponse httpResponse = response.raw();
+
+        SpoolingOutputStream spool = new SpoolingOutputStream(CSV_SPOOL_MEMORY_THRESHOLD);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    spool,
+                    StandardCharsets.UTF_8));
+
+            streamQuery(qry, cursor -> writeCSVBody(cursor, writer));
+            writer.close();
+
+            ServletOutputStream outputStream = httpResponse.getOutputStream();
+            spool.writeTo(outputStream);
+            outputStream.flush();
+            outputStream.close();
+        } finally {
+            spool.dispose();
+        }
+
+        return httpResponse;
+    }
+
+
+    /**
+     * Executes the query and passes the resultant (lazy) cursor to the given consumer.
+     * The query is executed within a transaction as some drivers (e.g. Postgres) will
+     * only honour the fetch size when auto-commit is disabled, otherwise they
+     * read the entire result set into memory.
+     */
+    private void streamQuery(Select<?> qry,
+                             CursorConsumer consumer) throws IOException {
+        try {
+            dsl.transaction(ctx -> {
+                try (Cursor<? extends Record> cursor = ctx.dsl().fetchLazy(qry.fetchSize(FETCH_SIZE))) {
+                    consumer.accept(cursor);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
 
-    private byte[] convertExcelToByteArray(XSSFWorkbook workbook) throws IOException {
-        ByteArrayOutputStream outByteStream = new ByteArrayOutputStream();
-        workbook.write(outByteStream);
-        workbook.close();
-        return outByteStream.toByteArray();
+    private void writeCSVBody(Cursor<? extends Record> cursor,
+                              Writer writer) throws IOException {
+        // first chunk always written, so we get a header row even if there are no results
+        cursor.fetchNext(CSV_CHUNK_SIZE).formatCSV(writer, true);
+
+        while (cursor.hasNext()) {
+            cursor.fetchNext(CSV_CHUNK_SIZE).formatCSV(writer, false);
+        }
     }
 
 
-    private void writeExcelBody(Select<?> qry, XSSFSheet sheet) {
+    private void writeExcelBody(Cursor<? extends Record> cursor,
+                                SXSSFSheet sheet) {
         AtomicInteger rowNum = new AtomicInteger(1);
-        qry.fetch().forEach(r -> {
+        for (Record r : cursor) {
             Row row = sheet.createRow(rowNum.getAndIncrement());
             AtomicInteger colNum = new AtomicInteger(0);
             for (Field<?> field : r.fields()) {
@@ -136,11 +227,11 @@ public abstract class DirectQueryBasedDataExtractor implements DataExtractor {
                     }
                 });
             }
-        });
+        }
     }
 
 
-    private void writeExcelHeader(Select<?> qry, XSSFSheet sheet) {
+    private void writeExcelHeader(Select<?> qry, SXSSFSheet sheet) {
         Row headerRow = sheet.createRow(0);
         AtomicInteger colNum = new AtomicInteger();
         qry.fieldStream().forEach(f -> {
@@ -149,4 +240,10 @@ public abstract class DirectQueryBasedDataExtractor implements DataExtractor {
         });
     }
 
+
+    @FunctionalInterface
+    private interface CursorConsumer {
+        void accept(Cursor<? extends Record> cursor) throws IOException;
+    }
+
 }
@@ -18,14 +18,14 @@
 
 package com.khartec.waltz.web.endpoints.extracts;
 
-import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.IdSelectionOptions;
 import com.khartec.waltz.model.application.Application;
 import com.khartec.waltz.model.rating.RagName;
-import com.khartec.waltz.model.report_grid.ReportGrid;
+import com.khartec.waltz.model.report_grid.ReportGridColumnData;
 import com.khartec.waltz.model.report_grid.ReportGridColumnDefinition;
+import com.khartec.waltz.model.report_grid.ReportGridColumnar;
+import com.khartec.waltz.model.report_grid.ReportGridColumnarInstance;
 import com.khartec.waltz.model.report_grid.ReportGridDefinition;
-import com.khartec.waltz.model.report_grid.ReportGridRatingCell;
 import com.khartec.waltz.service.report_grid.ReportGridService;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
@@ -47,11 +47,9 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.ListUtilities.*;
-import static com.khartec.waltz.common.MapUtilities.groupBy;
 import static com.khartec.waltz.common.MapUtilities.indexBy;
 import static com.khartec.waltz.web.WebUtilities.*;
 import static java.lang.String.format;
-import static java.util.stream.Collectors.toList;
 import static org.jooq.lambda.fi.util.function.CheckedConsumer.unchecked;
 import static org.jooq.lambda.tuple.Tuple.tuple;
 import static spark.Spark.post;
@@ -89,7 +87,7 @@ public class ReportGridExtractor implements DataExtractor {
                                                                 long gridId,
                                                                 IdSelectionOptions selectionOptions) throws IOException {
 
-        ReportGrid reportGrid = reportGridService.getByIdAndSelectionOptions(gridId, selectionOptions);
+        ReportGridColumnar reportGrid = reportGridService.getColumnarByIdAndSelectionOptions(gridId, selectionOptions);
 
         List<Tuple2<Application, ArrayList<RagName>>> reportRows = prepareReportRows(reportGrid);
 
@@ -123,39 +121,48 @@ public class ReportGridExtractor implements DataExtractor {
     }
 
 
-    private List<Tuple2<Application, ArrayList<RagName>>> prepareReportRows(ReportGrid reportGrid) {
+    private List<Tuple2<Application, ArrayList<RagName>>> prepareReportRows(ReportGridColumnar reportGrid) {
 
-        Set<ReportGridRatingCell> tableData = reportGrid.instance().cellData();
+        ReportGridColumnarInstance instance = reportGrid.instance();
+        List<Application> applications = instance.applications();  // already sorted by name
+        List<ReportGridColumnData> columns = instance.columns();
 
-        Map<Long, Application> applicationsById = indexBy(reportGrid.instance().applications(), d -> d.entityReference().id());
-        Map<Long, RagName> ratingsById = indexBy(reportGrid.instance().ratingSchemeItems(), d -> d.id().get());
+        Map<Long, RagName> ratingsById = indexBy(instance.ratingSchemeItems(), d -> d.id().get());
 
-        Map<Long, Collection<ReportGridRatingCell>> tableDataByAppId = groupBy(tableData, ReportGridRatingCell::applicationId);
+        // decode each column into a dense array of ratings, indexed by row
+        RagName[][] ratingsByColumnAndRow = new RagName[columns.size()][];
+        boolean[] rowHasData = new boolean[applications.size()];
 
-        return tableDataByAppId
-                .entrySet()
-                .stream()
-                .map(r -> {
-                    Long appId = r.getKey();
-                    Application app = applicationsById.getOrDefault(appId, null);
+        for (int c = 0; c < columns.size(); c++) {
+            ReportGridColumnData column = columns.get(c);
+            RagName[] dictionary = Arrays
+                    .stream(column.ratingIds())
+                    .mapToObj(ratingsById::get)
+                    .toArray(RagName[]::new);
+            int[] rows = column.rows();
+            int[] ratings = column.ratings();
 
-                    ArrayList<RagName> reportRow = new ArrayList<>();
+            RagName[] columnRatings = new RagName[applications.size()];
+            for (int i = 0; i < rows.length; i++) {
+                columnRatings[rows[i]] = dictionary[ratings[i]];
+                rowHasData[rows[i]] = true;
+            }
+            ratingsByColumnAndRow[c] = columnRatings;
+        }
 
-                    Map<Tuple2<Long, EntityKind>, RagName> ratingsByColumnRefForApp = indexBy(r.getValue(),
-                            k -> tuple(k.columnEntityId(), k.columnEntityKind()),
-                            v -> ratingsById.getOrDefault(v.ratingId(), null));
+        List<Tuple2<Application, ArrayList<RagName>>> reportRows = new ArrayList<>();
+        for (int r = 0; r < applications.size(); r++) {
+            if (! rowHasData[r]) {
+                continue;
+            }
+            ArrayList<RagName> reportRow = new ArrayList<>(columns.size());
+            for (RagName[] columnRatings : ratingsByColumnAndRow) {
+                reportRow.add(columnRatings[r]);
+            }
+            reportRows.add(tuple(applications.get(r), reportRow));
+        }
 
-                    //find data for columns
-                    reportGrid.definition().columnDefinitions()
-                            .stream()
-                            .forEach(t -> reportRow.add(
-                                    ratingsByColumnRefForApp.getOrDefault(
-                                            tuple(t.columnEntityReference().id(), t.columnEntityReference().kind()),
-                                            null)));
-                    return tuple(app, reportRow);
-                })
-                .sorted(Comparator.comparing(t2 -> t2.v1.name()))
-                .collect(toList());
+        return reportRows;
     }
 
 
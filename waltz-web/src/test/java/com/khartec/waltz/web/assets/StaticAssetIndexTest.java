@@ -0,0 +1,144 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+package com.khartec.waltz.web.assets;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static com.khartec.waltz.common.IOUtilities.copyStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+
+public class StaticAssetIndexTest {
+
+    private static final String INDEX_HTML = "<html>\n<head>\n\t<base href=\"/\" />\n</head>\n<body></body>\n</html>";
+
+
+    @Test
+    public void compressibleAssetsHaveGzipVariantsWithDistinctETags() throws IOException {
+        StaticAsset asset = mkIndex().find("js/app.js").get();
+
+        StaticAsset.Variant identity = asset.selectVariant(null);
+        StaticAsset.Variant gzip = asset.selectVariant("gzip, deflate");
+
+        assertNull(identity.getContentEncoding());
+        assertEquals("gzip", gzip.getContentEncoding());
+        assertNotEquals(identity.getETag(), gzip.getETag());
+        assertArrayEquals(identity.getContent(), gunzip(gzip.getContent()));
+        assertSame(identity, asset.selectVariant("gzip;q=0"));
+    }
+
+
+    @Test
+    public void incompressibleAssetsOnlyHaveIdentityVariant() {
+        StaticAsset asset = mkIndex().find("img/logo.png").get();
+
+        assertFalse(asset.hasCompressedVariants());
+        assertNull(asset.selectVariant("gzip").getContentEncoding());
+    }
+
+
+    @Test
+    public void preCompressedBrotliSiblingsArePreferredAndNotIndexedSeparately() {
+        StaticAssetIndex index = mkIndex();
+        StaticAsset asset = index.find("js/app.js").get();
+
+        assertEquals("br", asset.selectVariant("gzip, br").getContentEncoding());
+        assertEquals("gzip", asset.selectVariant("gzip").getContentEncoding());
+        assertFalse(index.find("js/app.js.br").isPresent());
+    }
+
+
+    @Test
+    public void ifNoneMatchUsesWeakComparison() {
+        StaticAsset.Variant variant = mkIndex().find("js/app.js").get().selectVariant(null);
+        String etag = variant.getETag();
+
+        assertTrue(variant.isMatchedBy(etag));
+        assertTrue(variant.isMatchedBy("\"other\", W/" + etag));
+        assertTrue(variant.isMatchedBy("*"));
+        assertFalse(variant.isMatchedBy("\"other\""));
+        assertFalse(variant.isMatchedBy(null));
+    }
+
+
+    @Test
+    public void unknownPathsAndDirectoriesResolveToIndexPages() {
+        StaticAssetIndex index = mkIndex();
+
+        assertEquals("index.html", index.resolve("/", "").getPath());
+        assertEquals("index.html", index.resolve("/application/12", "").getPath());
+        assertEquals("docs/index.html", index.resolve("/docs/", "").getPath());
+        assertEquals("js/app.js", index.resolve("/js/app.js", "").getPath());
+    }
+
+
+    @Test
+    public void indexPagesAreRewrittenOncePerContextPath() {
+        StaticAssetIndex index = mkIndex();
+
+        StaticAsset rewritten = index.resolve("/", "/waltz");
+        String html = new String(rewritten.getContent(), UTF_8);
+
+        assertTrue(html.contains("<base href=\"/waltz/\" />"));
+        assertFalse(html.contains("<base href=\"/\" />"));
+        assertSame(rewritten, index.resolve("/some/route", "/waltz"));
+        assertNotSame(rewritten, index.resolve("/", "/other"));
+        assertNotEquals(
+                index.resolve("/", "").selectVariant(null).getETag(),
+                rewritten.selectVariant(null).getETag());
+    }
+
+
+    // -- HELPERS ---
+
+    private static StaticAssetIndex mkIndex() {
+        StringBuilder js = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            js.append("function f").append(i).append("() { return ").append(i).append("; }\n");
+        }
+
+        byte[] png = new byte[2048];
+        new Random(42).nextBytes(png);
+
+        Map<String, byte[]> resources = new HashMap<>();
+        resources.put("index.html", INDEX_HTML.getBytes(UTF_8));
+        resources.put("docs/index.html", "<html></html>".getBytes(UTF_8));
+        resources.put("js/app.js", js.toString().getBytes(UTF_8));
+        resources.put("js/app.js.br", new byte[] { 1, 2, 3 });
+        resources.put("img/logo.png", png);
+        return StaticAssetIndex.mkIndex(resources);
+    }
+
+
+    private static byte[] gunzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copyStream(new GZIPInputStream(new ByteArrayInputStream(content)), out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific
+ *
+ */
+
+
+package com.khartec.waltz.web.compression;
+
+import com.khartec.waltz.web.WebUtilities;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+
+public class ResponseCompressionTest {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final Map<String, Object> headers = new HashMap<>();
+    private final HttpServletResponse response = mkResponse();
+
+    // simulates the client going away
+    private volatile boolean failWrites = false;
+
+
+    @Test
+    public void negotiatePrefersGzip() {
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("deflate, gzip, br"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("*"));
+    }
+
+
+    @Test
+    public void negotiateHonoursQualityValues() {
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, *"));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate("gzip;q=0"));
+    }
+
+
+    @Test
+    public void negotiateWithNothingSuitableGivesIdentity() {
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(null));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(""));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate("br"));
+    }
+
+
+    @Test
+    public void acceptsChecksCodingsWeCannotProduce() {
+        assertTrue(ContentEncoding.accepts("gzip, br", "br"));
+        assertTrue(ContentEncoding.accepts("*", "br"));
+        assertFalse(ContentEncoding.accepts("gzip, br;q=0", "br"));
+        assertFalse(ContentEncoding.accepts("br;q=0, *", "br"));
+        assertFalse(ContentEncoding.accepts(null, "gzip"));
+    }
+
+
+    @Test
+    public void smallBodiesAreNotCompressed() throws IOException {
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.GZIP, 100, 1000);
+        out.write("hello".getBytes(UTF_8));
+        out.close();
+
+        assertFalse(out.isCompressed());
+        assertEquals("hello", body.toString("UTF-8"));
+        assertEquals(5, headers.get("Content-Length"));
+        assertNull(headers.get("Content-Encoding"));
+        assertEquals(5, out.getCompressedBytes());
+    }
+
+
+    @Test
+    public void largeBodiesAreGzipped() throws IOException {
+        String payload = mkPayload(5000);
+
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.GZIP, 100, 1000);
+        out.write(payload.getBytes(UTF_8));
+        out.close();
+
+        assertTrue(out.isCompressed());
+        assertEquals("gzip", headers.get("Content-Encoding"));
+        assertEquals(payload.length(), out.getUncompressedBytes());
+        assertEquals(body.size(), out.getCompressedBytes());
+        assertTrue(out.getCompressedBytes() < out.getUncompressedBytes());
+        assertEquals(payload, readAll(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+
+    @Test
+    public void largeBodiesCanBeDeflated() throws IOException {
+        String payload = mkPayload(5000);
+
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.DEFLATE, 100, 1000);
+        for (byte b : payload.getBytes(UTF_8)) {
+            out.write(b);
+        }
+        out.close();
+
+        assertEquals("deflate", headers.get("Content-Encoding"));
+        assertEquals(payload, readAll(new InflaterInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+
+    @Test
+    public void identityEncodingStreamsUncompressed() throws IOException {
+        String payload = mkPayload(500);
+
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.IDENTITY, 100, 1000);
+        out.write(payload.getBytes(UTF_8));
+        out.close();
+
+        assertFalse(out.isCompressed());
+        assertNull(headers.get("Content-Encoding"));
+        assertEquals(payload, body.toString("UTF-8"));
+    }
+
+
+    @Test
+    public void streamedArraysMatchSerializedLists() throws IOException {
+        List<Map<String, Object>> items = IntStream
+                .range(0, 5000)
+                .mapToObj(i -> Collections.<String, Object>singletonMap("id", i))
+                .collect(Collectors.toList());
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        WebUtilities.writeJson(expected, items);
+
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.GZIP, 100, 1000);
+        long written = WebUtilities.writeJsonArray(out, items.stream());
+
+        assertEquals(items.size(), written);
+        assertTrue(out.isCompressed());
+        assertEquals(
+                expected.toString("UTF-8"),
+                readAll(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+
+    @Test
+    public void emptyStreamsGiveEmptyArrays() throws IOException {
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.GZIP, 100, 1000);
+        long written = WebUtilities.writeJsonArray(out, Stream.empty());
+
+        assertEquals(0, written);
+        assertFalse(out.isCompressed());
+        assertEquals("[]", body.toString("UTF-8"));
+    }
+
+
+    @Test
+    public void zeroMinimumSizeStreamsWithoutBuffering() throws IOException {
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.IDENTITY, 0, 1000);
+        out.write("hello".getBytes(UTF_8));
+
+        assertEquals("hello", body.toString("UTF-8"));
+        out.close();
+
+        assertNull(headers.get("Content-Length"));
+        assertEquals(5, out.getCompressedBytes());
+    }
+
+
+    @Test
+    public void abortingDiscardsBufferedBody() throws IOException {
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.GZIP, 100, 1000);
+        out.write("partial".getBytes(UTF_8));
+        out.abort();
+        out.close();
+
+        assertEquals(0, body.size());
+        assertNull(headers.get("Content-Length"));
+    }
+
+
+    @Test
+    public void abortingCompressedBodyWritesNoTrailer() throws IOException {
+        AdaptiveCompressionOutputStream out = new AdaptiveCompressionOutputStream(response, ContentEncoding.DEFLATE, 100, 1000);
+        out.write(mkPayload(5000).getBytes(UTF_8));
+        int written = body.size();
+        out.abort();
+
+        assertEquals(written, body.size());
+        try {
+            out.write(1);
+            fail("writes after abort should fail");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void streamRoutesWriteTheSameBodyAsListRoutes() throws Exception {
+        List<Map<String, Object>> items = mkItems(5000);
+
+        ResponseCompression.writeJson("list", items, mkSparkRequest(), mkSparkResponse());
+        String fromList = body.toString("UTF-8");
+        body.reset();
+
+        ResponseCompression.writeJsonArray(
+                "stream",
+                (req, resp, consumer) -> consumer.accept(items.stream()),
+                mkSparkRequest(),
+                mkSparkResponse());
+
+        assertEquals(fromList, body.toString("UTF-8"));
+    }
+
+
+    @Test
+    public void streamSourcesAreReleasedBeforeTheResponseIsWritten() throws Exception {
+        AtomicInteger bytesSentWhilstSourceOpen = new AtomicInteger(-1);
+
+        ResponseCompression.writeJsonArray(
+                "stream",
+                (req, resp, consumer) -> {
+                    // e.g. the cursor and transaction are closed once the consumer returns
+                    consumer.accept(mkItems(5000).stream());
+                    bytesSentWhilstSourceOpen.set(body.size());
+                },
+                mkSparkRequest(),
+                mkSparkResponse());
+
+        assertEquals(0, bytesSentWhilstSourceOpen.get());
+        assertTrue(body.size() > 0);
+    }
+
+
+    @Test
+    public void streamSourceFailuresSendNothing() throws Exception {
+        try {
+            ResponseCompression.writeJsonArray(
+                    "stream",
+                    (req, resp, consumer) -> consumer.accept(mkItems(5000)
+                            .stream()
+                            .peek(item -> {
+                                if (item.get("id").equals(4000)) {
+                                    throw new IllegalStateException("expected failure");
+                                }
+                            })),
+                    mkSparkRequest(),
+                    mkSparkResponse());
+            fail("source failure should be rethrown");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        assertEquals("no partial json is sent", 0, body.size());
+    }
+
+
+    @Test
+    public void clientFailuresAfterCommitAbortTheResponse() throws Exception {
+        AtomicInteger sourceReleased = new AtomicInteger();
+        failWrites = true;
+
+        try {
+            ResponseCompression.writeJsonArray(
+                    "stream",
+                    (req, resp, consumer) -> {
+                        consumer.accept(mkItems(5000).stream());
+                        sourceReleased.incrementAndGet();
+                    },
+                    mkSparkRequest(),
+                    mkSparkResponse());
+            fail("client failure should be rethrown");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        assertEquals("source was released before the client failed", 1, sourceReleased.get());
+    }
+
+
+    // -- HELPERS ---
+
+    private static List<Map<String, Object>> mkItems(int count) {
+        return IntStream
+                .range(0, count)
+                .mapToObj(i -> Collections.<String, Object>singletonMap("id", i))
+                .collect(Collectors.toList());
+    }
+
+
+    private static Request mkSparkRequest() {
+        HttpServletRequest raw = (HttpServletRequest) Proxy.newProxyInstance(
+                ResponseCompressionTest.class.getClassLoader(),
+                new Class[] { HttpServletRequest.class },
+                (proxy, method, args) -> null);
+
+        return new Request() {
+            @Override
+            public String headers(String header) {
+                return null;
+            }
+
+            @Override
+            public String pathInfo() {
+                return "/test";
+            }
+
+            @Override
+            public HttpServletRequest raw() {
+                return raw;
+            }
+        };
+    }
+
+
+    private Response mkSparkResponse() {
+        return new Response() {
+            @Override
+            public HttpServletResponse raw() {
+                return response;
+            }
+        };
+    }
+
+
+    private static String mkPayload(int entries) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < entries; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"thing\"},");
+        }
+        return sb.append("]").toString();
+    }
+
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            result.write(buf, 0, read);
+        }
+        return result.toString("UTF-8");
+    }
+
+
+    private HttpServletResponse mkResponse() {
+        ServletOutputStream servletOut = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (failWrites) {
+                    throw new IOException("expected failure");
+                }
+                body.write(b);
+            }
+        };
+
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[] { HttpServletResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return servletOut;
+                        case "setHeader":
+                        case "addHeader":
+                            headers.put((String) args[0], args[1]);
+                            return null;
+                        case "setContentLength":
+                            headers.put("Content-Length", args[0]);
+                            return null;
+                        case "isCommitted":
+                            return failWrites || body.size() > 0;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+}